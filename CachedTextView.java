@@ -0,0 +1,311 @@
+import java.awt.Color;
+import java.awt.Container;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.Rectangle;
+import java.awt.Shape;
+
+import javax.swing.JTextArea;
+import javax.swing.event.DocumentEvent;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.BoxView;
+import javax.swing.text.Element;
+import javax.swing.text.Position;
+import javax.swing.text.View;
+import javax.swing.text.ViewFactory;
+
+/**
+ * Class for showing the text of a text area with layouts from the
+ * TextLayoutCache.
+ *
+ * Replaces the plain and wrapped views of JTextArea: the text is a column
+ * of paragraphs, one per line of the document, and a paragraph gets its
+ * line breaks and glyphs from the cache. A paragraph is only laid out
+ * again when its own text, the font or the width changes, and then only if
+ * the cache has not seen it before, so setText() with mostly unchanged text
+ * does not measure the unchanged paragraphs at all.
+ *
+ * Wrapping follows the lineWrap and wrapStyleWord properties of the text
+ * area. Tabs are measured like other characters and selected text is not
+ * painted in another color, neither is used by the virtual keyboards.
+ */
+public class CachedTextView extends BoxView implements ViewFactory
+{
+	/**
+	 * View of one line of the document, painted as one or more wrapped lines
+	 */
+	private class Paragraph extends View
+	{
+		private TextLayoutCache.Layout layout = null;
+		private int width = 0;
+
+		/**
+		 * Constructor
+		 *
+		 * @param elem Line element of the document
+		 */
+		public Paragraph(Element elem)
+		{
+			super(elem);
+		}
+
+		/**
+		 * Returns the layout for the current text and width
+		 *
+		 * @return Layout
+		 */
+		private TextLayoutCache.Layout getLayout()
+		{
+			FontMetrics fm = getMetrics();
+			if(layout == null || !layout.isFor(fm))
+			{
+				JTextArea area = (JTextArea)getContainer();
+				int wrapWidth = area.getLineWrap() && width > 0 ? width : Integer.MAX_VALUE;
+				layout = TextLayoutCache.getInstance().getLayout(getParagraphText(), fm, wrapWidth, area.getWrapStyleWord());
+			}
+			return layout;
+		}
+
+		/**
+		 * Returns the text of this line without its line break
+		 *
+		 * @return String
+		 */
+		private String getParagraphText()
+		{
+			Element elem = getElement();
+			int start = elem.getStartOffset();
+			int end = Math.min(elem.getEndOffset(), getDocument().getLength() + 1);
+			try
+			{
+				return getDocument().getText(start, Math.max(0, end - start - 1));
+			}
+			catch(BadLocationException e)
+			{
+				return "";
+			}
+		}
+
+		// Overridden method
+		public float getPreferredSpan(int axis)
+		{
+			if(axis == View.X_AXIS)
+			{
+				return ((JTextArea)getContainer()).getLineWrap() ? 0 : getLayout().getMaxWidth();
+			}
+			return getLayout().getLineCount() * getMetrics().getHeight();
+		}
+
+		// Overridden method
+		public int getResizeWeight(int axis)
+		{
+			// Takes the whole width of the area
+			return axis == View.X_AXIS ? 1 : 0;
+		}
+
+		// Overridden method
+		public void setSize(float width, float height)
+		{
+			int w = (int)width;
+			if(w != this.width)
+			{
+				this.width = w;
+				if(((JTextArea)getContainer()).getLineWrap())
+				{
+					int lines = layout == null ? -1 : layout.getLineCount();
+					layout = null;
+					if(getLayout().getLineCount() != lines)
+					{
+						preferenceChanged(this, false, true);
+					}
+				}
+			}
+		}
+
+		// Overridden method
+		public void paint(Graphics g, Shape a)
+		{
+			Rectangle alloc = a.getBounds();
+			Rectangle clip = g.getClipBounds();
+			TextLayoutCache.Layout l = getLayout();
+			FontMetrics fm = getMetrics();
+			int height = fm.getHeight();
+			JTextArea area = (JTextArea)getContainer();
+			g.setColor(area.isEnabled() ? area.getForeground() : area.getDisabledTextColor());
+			for(int line = 0; line < l.getLineCount(); line++)
+			{
+				int y = alloc.y + line * height;
+				if(clip != null && (y + height <= clip.y || y >= clip.y + clip.height))
+				{
+					continue;
+				}
+				if(l.getLineEnd(line) > l.getLineStart(line))
+				{
+					((Graphics2D)g).drawGlyphVector(l.getGlyphs(line), alloc.x, y + fm.getAscent());
+				}
+			}
+		}
+
+		// Overridden method
+		public Shape modelToView(int pos, Shape a, Position.Bias b) throws BadLocationException
+		{
+			Element elem = getElement();
+			if(pos < elem.getStartOffset() || pos > elem.getEndOffset())
+			{
+				throw new BadLocationException("Position not in paragraph", pos);
+			}
+			Rectangle alloc = a.getBounds();
+			TextLayoutCache.Layout l = getLayout();
+			int offset = Math.min(pos - elem.getStartOffset(), l.getText().length());
+			int line = l.lineAt(offset);
+			int height = getMetrics().getHeight();
+			return new Rectangle(alloc.x + l.getX(line, offset), alloc.y + line * height, 1, height);
+		}
+
+		// Overridden method
+		public int viewToModel(float fx, float fy, Shape a, Position.Bias[] bias)
+		{
+			bias[0] = Position.Bias.Forward;
+			Rectangle alloc = a.getBounds();
+			TextLayoutCache.Layout l = getLayout();
+			int line = (int)(fy - alloc.y) / Math.max(1, getMetrics().getHeight());
+			line = Math.max(0, Math.min(l.getLineCount() - 1, line));
+			return getElement().getStartOffset() + l.getOffset(line, (int)fx - alloc.x);
+		}
+
+		// Overridden method
+		public void insertUpdate(DocumentEvent e, Shape a, ViewFactory f)
+		{
+			textChanged(e, a);
+		}
+
+		// Overridden method
+		public void removeUpdate(DocumentEvent e, Shape a, ViewFactory f)
+		{
+			textChanged(e, a);
+		}
+
+		// Overridden method
+		public void changedUpdate(DocumentEvent e, Shape a, ViewFactory f)
+		{
+			textChanged(e, a);
+		}
+
+		/**
+		 * Takes the new text of the line and repaints the lines that changed
+		 *
+		 * @param e
+		 * @param a
+		 */
+		private void textChanged(DocumentEvent e, Shape a)
+		{
+			Container host = getContainer();
+			if(host == null)
+			{
+				layout = null;
+				return;
+			}
+			int lines = layout == null ? -1 : layout.getLineCount();
+			layout = null;
+			TextLayoutCache.Layout l = getLayout();
+			boolean wrap = ((JTextArea)host).getLineWrap();
+			boolean linesChanged = l.getLineCount() != lines;
+			if(linesChanged || !wrap)
+			{
+				// Without wrapping the widest line may have changed
+				preferenceChanged(this, !wrap, linesChanged);
+			}
+			if(a == null || linesChanged)
+			{
+				host.repaint();
+				return;
+			}
+			// Lines before the change are the same
+			Rectangle alloc = a.getBounds();
+			int height = getMetrics().getHeight();
+			int first = l.lineAt(Math.max(0, e.getOffset() - getElement().getStartOffset()));
+			if(first > 0)
+			{
+				// A shorter word may now fit on the line above
+				first--;
+			}
+			host.repaint(alloc.x, alloc.y + first * height, alloc.width, alloc.height - first * height);
+		}
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param elem Root element of the document
+	 */
+	public CachedTextView(Element elem)
+	{
+		super(elem, View.Y_AXIS);
+	}
+
+	/**
+	 * Returns the metrics of the font of the text area
+	 *
+	 * @return FontMetrics
+	 */
+	private FontMetrics getMetrics()
+	{
+		Container host = getContainer();
+		return host.getFontMetrics(host.getFont());
+	}
+
+	// Overridden method
+	public View create(Element elem)
+	{
+		return new Paragraph(elem);
+	}
+
+	// Overridden method
+	public ViewFactory getViewFactory()
+	{
+		return this;
+	}
+
+	// Overridden method
+	public void paint(Graphics g, Shape a)
+	{
+		g.setFont(getContainer().getFont());
+		super.paint(g, a);
+	}
+
+	// Overridden method
+	public void insertUpdate(DocumentEvent e, Shape a, ViewFactory f)
+	{
+		super.insertUpdate(e, a, this);
+		repaintAfterLineChange(e);
+	}
+
+	// Overridden method
+	public void removeUpdate(DocumentEvent e, Shape a, ViewFactory f)
+	{
+		super.removeUpdate(e, a, this);
+		repaintAfterLineChange(e);
+	}
+
+	// Overridden method
+	public void changedUpdate(DocumentEvent e, Shape a, ViewFactory f)
+	{
+		super.changedUpdate(e, a, this);
+		repaintAfterLineChange(e);
+	}
+
+	/**
+	 * Repaints everything when lines were added or removed, as the lines
+	 * below them move
+	 *
+	 * @param e
+	 */
+	private void repaintAfterLineChange(DocumentEvent e)
+	{
+		if(e.getChange(getElement()) != null && getContainer() != null)
+		{
+			getContainer().repaint();
+		}
+	}
+}
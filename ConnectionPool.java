@@ -0,0 +1,448 @@
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.Timer;
+import java.util.TimerTask;
+
+/**
+ * Class for keeping a bounded pool of database connections.
+ *
+ * Connections are validated when they are borrowed, and a background thread
+ * evicts connections that have been idle too long or have been broken
+ * (e.g. by the MySQL idle timeout). Broken connections are replaced with
+ * new ones on demand, so callers never get a dead socket.
+ *
+ * Each connection caches its prepared statements; the cache counters of
+ * all connections are collected here.
+ */
+public class ConnectionPool
+{
+	// JDBC url for opening new connections
+	private String url;
+
+	// Maximum number of open connections
+	private int maxSize;
+	// Idle connections older than this are closed by the eviction thread
+	private long maxIdleMillis;
+	// How long a borrower may wait for a free connection
+	private long borrowTimeoutMillis;
+	// Timeout for Connection.isValid()
+	private int validationTimeoutSeconds;
+	// Prepared statements cached per connection
+	private int statementCacheSize;
+
+	// Idle connections, most recently returned first
+	private LinkedList<PooledConnection> idle = new LinkedList<PooledConnection>();
+	// Number of connections currently borrowed
+	private int activeCount = 0;
+	// Number of open connections, borrowed or idle
+	private int openCount = 0;
+	private boolean closed = false;
+
+	// Background eviction of idle and broken connections
+	private Timer evictionTimer = null;
+
+	// Metrics
+	private long borrowCount = 0;
+	private long totalBorrowNanos = 0;
+	private long maxBorrowNanos = 0;
+	private long waitCount = 0;
+	private long totalWaitNanos = 0;
+	private long createdCount = 0;
+	private long evictedCount = 0;
+	private long brokenCount = 0;
+	private StatementCache.Counters statementCounters = new StatementCache.Counters();
+
+	/**
+	 * Constructor
+	 *
+	 * @param url JDBC url including user name and password
+	 * @param maxSize Maximum number of open connections
+	 * @param maxIdleSeconds Idle connections are closed after this time
+	 * @param borrowTimeoutMillis How long to wait for a free connection
+	 * @param evictionIntervalSeconds How often idle connections are checked
+	 * @param statementCacheSize Prepared statements cached per connection
+	 */
+	public ConnectionPool(String url, int maxSize, int maxIdleSeconds, long borrowTimeoutMillis, int evictionIntervalSeconds,
+			int statementCacheSize)
+	{
+		this.url = url;
+		this.maxSize = Math.max(1, maxSize);
+		this.maxIdleMillis = maxIdleSeconds * 1000L;
+		this.borrowTimeoutMillis = borrowTimeoutMillis;
+		this.validationTimeoutSeconds = 2;
+		this.statementCacheSize = statementCacheSize;
+
+		evictionTimer = new Timer("ConnectionPool-evictor", true);
+		long interval = Math.max(1, evictionIntervalSeconds) * 1000L;
+		evictionTimer.schedule(new TimerTask() {
+			public void run()
+			{
+				evict();
+			}
+		}, interval, interval);
+	}
+
+	/**
+	 * Borrows a validated connection from the pool, opening a new one if
+	 * no idle connection is available and the pool is not full.
+	 * The connection must be given back with release() or invalidate().
+	 *
+	 * @return PooledConnection
+	 * @throws SQLException if no connection could be opened in time
+	 */
+	public PooledConnection borrow() throws SQLException
+	{
+		long start = System.nanoTime();
+		long deadline = start + borrowTimeoutMillis * 1000000L;
+
+		while(true)
+		{
+			PooledConnection pc = null;
+			synchronized(this)
+			{
+				if(closed)
+				{
+					throw new SQLException("Connection pool is closed");
+				}
+				// Wait until a connection is returned or a slot is freed
+				if(idle.isEmpty() && openCount >= maxSize)
+				{
+					long waitStart = System.nanoTime();
+					waitCount++;
+					while(idle.isEmpty() && openCount >= maxSize && !closed)
+					{
+						long remaining = (deadline - System.nanoTime()) / 1000000L;
+						if(remaining <= 0)
+						{
+							totalWaitNanos += System.nanoTime() - waitStart;
+							throw new SQLException("Timed out waiting for a database connection");
+						}
+						try
+						{
+							wait(remaining);
+						}
+						catch(InterruptedException e)
+						{
+							Thread.currentThread().interrupt();
+							throw new SQLException("Interrupted while waiting for a database connection");
+						}
+					}
+					totalWaitNanos += System.nanoTime() - waitStart;
+					if(closed)
+					{
+						throw new SQLException("Connection pool is closed");
+					}
+				}
+				if(!idle.isEmpty())
+				{
+					pc = idle.removeFirst();
+				}
+				else
+				{
+					// Reserve a slot for a new connection
+					openCount++;
+				}
+				activeCount++;
+			}
+
+			if(pc == null)
+			{
+				try
+				{
+					pc = new PooledConnection(DriverManager.getConnection(url), statementCacheSize, statementCounters);
+				}
+				catch(SQLException e)
+				{
+					synchronized(this)
+					{
+						openCount--;
+						activeCount--;
+						notifyAll();
+					}
+					throw e;
+				}
+				synchronized(this)
+				{
+					createdCount++;
+				}
+			}
+			else if(!pc.validate(validationTimeoutSeconds))
+			{
+				// Broken while idle, drop it and try again
+				log("Discarding broken database connection");
+				synchronized(this)
+				{
+					brokenCount++;
+				}
+				discard(pc);
+				continue;
+			}
+
+			long elapsed = System.nanoTime() - start;
+			synchronized(this)
+			{
+				borrowCount++;
+				totalBorrowNanos += elapsed;
+				if(elapsed > maxBorrowNanos)
+				{
+					maxBorrowNanos = elapsed;
+				}
+			}
+			return pc;
+		}
+	}
+
+	/**
+	 * Gives a healthy connection back to the pool
+	 *
+	 * @param pc
+	 */
+	public void release(PooledConnection pc)
+	{
+		if(pc == null)
+		{
+			return;
+		}
+		int leaked = pc.releaseLeakedStatements();
+		if(leaked > 0)
+		{
+			log("WARNING: " + leaked + " prepared statement(s) not released before returning the connection");
+		}
+		boolean close = false;
+		synchronized(this)
+		{
+			activeCount--;
+			if(closed)
+			{
+				openCount--;
+				close = true;
+			}
+			else
+			{
+				pc.touch();
+				idle.addFirst(pc);
+			}
+			notifyAll();
+		}
+		if(close)
+		{
+			pc.close();
+		}
+	}
+
+	/**
+	 * Removes a connection that failed during use from the pool.
+	 * A new connection will be opened in its place when needed.
+	 *
+	 * @param pc
+	 */
+	public void invalidate(PooledConnection pc)
+	{
+		if(pc == null)
+		{
+			return;
+		}
+		synchronized(this)
+		{
+			brokenCount++;
+		}
+		discard(pc);
+	}
+
+	/**
+	 * Closes a borrowed connection and frees its slot
+	 *
+	 * @param pc
+	 */
+	private void discard(PooledConnection pc)
+	{
+		synchronized(this)
+		{
+			activeCount--;
+			openCount--;
+			notifyAll();
+		}
+		pc.close();
+	}
+
+	/**
+	 * Closes idle connections that have been unused too long or are no
+	 * longer valid. Run periodically by the eviction timer.
+	 */
+	void evict()
+	{
+		LinkedList<PooledConnection> candidates = new LinkedList<PooledConnection>();
+		long now = System.currentTimeMillis();
+		synchronized(this)
+		{
+			if(closed)
+			{
+				return;
+			}
+			// Take all idle connections out while they are checked, so that
+			// validation does not hold the pool lock
+			candidates.addAll(idle);
+			idle.clear();
+			activeCount += candidates.size();
+		}
+
+		Iterator<PooledConnection> it = candidates.iterator();
+		while(it.hasNext())
+		{
+			PooledConnection pc = it.next();
+			if(now - pc.getLastUsedAt() > maxIdleMillis)
+			{
+				synchronized(this)
+				{
+					evictedCount++;
+				}
+				discard(pc);
+			}
+			else if(!pc.validate(validationTimeoutSeconds))
+			{
+				log("Evicting broken database connection");
+				invalidate(pc);
+			}
+			else
+			{
+				synchronized(this)
+				{
+					activeCount--;
+					if(closed)
+					{
+						openCount--;
+						pc.close();
+					}
+					else
+					{
+						idle.addLast(pc);
+					}
+					notifyAll();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Closes all connections and stops the eviction thread.
+	 * Borrowed connections are closed when they are released.
+	 */
+	public void close()
+	{
+		LinkedList<PooledConnection> toClose;
+		synchronized(this)
+		{
+			closed = true;
+			toClose = new LinkedList<PooledConnection>(idle);
+			openCount -= idle.size();
+			idle.clear();
+			notifyAll();
+		}
+		evictionTimer.cancel();
+		for(PooledConnection pc : toClose)
+		{
+			pc.close();
+		}
+	}
+
+	/**
+	 * Returns the number of connections currently borrowed
+	 *
+	 * @return int
+	 */
+	public synchronized int getActiveCount()
+	{
+		return activeCount;
+	}
+
+	/**
+	 * Returns the number of idle connections in the pool
+	 *
+	 * @return int
+	 */
+	public synchronized int getIdleCount()
+	{
+		return idle.size();
+	}
+
+	/**
+	 * Returns the number of successful borrows
+	 *
+	 * @return long
+	 */
+	public synchronized long getBorrowCount()
+	{
+		return borrowCount;
+	}
+
+	/**
+	 * Returns the average time taken by borrow(), including validation
+	 * and opening new connections
+	 *
+	 * @return milliseconds
+	 */
+	public synchronized double getAverageBorrowMillis()
+	{
+		return borrowCount == 0 ? 0 : totalBorrowNanos / 1000000.0 / borrowCount;
+	}
+
+	/**
+	 * Returns the longest time taken by borrow()
+	 *
+	 * @return milliseconds
+	 */
+	public synchronized double getMaxBorrowMillis()
+	{
+		return maxBorrowNanos / 1000000.0;
+	}
+
+	/**
+	 * Returns the total time borrowers have waited for a connection
+	 * because the pool was full
+	 *
+	 * @return milliseconds
+	 */
+	public synchronized double getTotalWaitMillis()
+	{
+		return totalWaitNanos / 1000000.0;
+	}
+
+	/**
+	 * Returns the statement cache counters of all connections
+	 *
+	 * @return counters
+	 */
+	public StatementCache.Counters getStatementCounters()
+	{
+		return statementCounters;
+	}
+
+	/**
+	 * Returns a one line summary of the pool metrics
+	 *
+	 * @return String
+	 */
+	public synchronized String getStatistics()
+	{
+		return "active=" + activeCount + " idle=" + idle.size() + " open=" + openCount
+				+ " borrows=" + borrowCount
+				+ String.format(" avgBorrowMs=%.2f maxBorrowMs=%.2f", getAverageBorrowMillis(), getMaxBorrowMillis())
+				+ " waits=" + waitCount + String.format(" waitMs=%.1f", getTotalWaitMillis())
+				+ " created=" + createdCount + " evicted=" + evictedCount + " broken=" + brokenCount
+				+ " stmtHits=" + statementCounters.hits.get() + " stmtMisses=" + statementCounters.misses.get()
+				+ " stmtEvictions=" + statementCounters.evictions.get() + " stmtLeaks=" + statementCounters.leaks.get();
+	}
+
+	/**
+	 * Simple convenience method for logging text to console output.
+	 * Should be replaced with a log file in the future
+	 *
+	 * @param log
+	 */
+	private void log(String text)
+	{
+		System.out.println(text);
+	}
+}
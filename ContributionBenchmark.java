@@ -0,0 +1,107 @@
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Hashtable;
+import java.util.List;
+import java.util.Properties;
+
+/**
+ * Class for comparing the latency of saving contributions one statement at
+ * a time with the batched, transactional path of DatabasePlugin.
+ *
+ * Uses the database from settings.properties and writes two stories named
+ * "benchmark", so it should be run against a test database only.
+ *
+ * Usage: java ContributionBenchmark [contributions] [batch size] [user name]
+ */
+public class ContributionBenchmark
+{
+	public static void main(String[] args) throws Exception
+	{
+		int contributions = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+		int batchSize = args.length > 1 ? Integer.parseInt(args[1]) : 16;
+		String userName = args.length > 2 ? args[2] : "Guest1";
+
+		Properties properties = new Properties();
+		InputStream input = new FileInputStream("settings.properties");
+		try
+		{
+			properties.load(input);
+		}
+		finally
+		{
+			input.close();
+		}
+		Hashtable<String, String> settings = new Hashtable<String, String>();
+		for(String name : properties.stringPropertyNames())
+		{
+			settings.put(name, properties.getProperty(name));
+		}
+		DatabasePlugin db = new DatabasePlugin(settings);
+		db.connect();
+
+		String text = "The quick brown fox jumps over the lazy dog. ";
+
+		// Old path, five auto-committed statements per contribution
+		int storyId = db.createStory("benchmark");
+		long[] unbatched = new long[contributions];
+		for(int i = 0; i < contributions; i++)
+		{
+			long start = System.nanoTime();
+			db.saveAddedContributionUnbatched(userName, text, 0, storyId, i);
+			unbatched[i] = System.nanoTime() - start;
+		}
+		db.finishStory(storyId);
+
+		// Batched path, the time of a batch is divided among its contributions
+		storyId = db.createStory("benchmark");
+		long[] batched = new long[contributions];
+		for(int i = 0; i < contributions; i += batchSize)
+		{
+			List<StoryEvent> batch = new ArrayList<StoryEvent>();
+			for(int j = i; j < Math.min(contributions, i + batchSize); j++)
+			{
+				StoryEvent e = StoryEvent.contribution(null, j, userName, text, 0);
+				e.setStoryId(storyId);
+				batch.add(e);
+			}
+			long start = System.nanoTime();
+			db.saveAddedContributions(batch);
+			long each = (System.nanoTime() - start) / batch.size();
+			for(int j = 0; j < batch.size(); j++)
+			{
+				batched[i + j] = each;
+			}
+		}
+		db.finishStory(storyId);
+
+		System.out.println("Contributions: " + contributions + ", batch size: " + batchSize);
+		report("unbatched", unbatched);
+		report("batched", batched);
+		System.out.println("Pool: " + db.getConnectionPool().getStatistics());
+		db.disconnect();
+	}
+
+	/**
+	 * Prints the average, median and 99th percentile of the given times
+	 *
+	 * @param name
+	 * @param nanos
+	 */
+	private static void report(String name, long[] nanos)
+	{
+		long[] sorted = nanos.clone();
+		Arrays.sort(sorted);
+		long total = 0;
+		for(long n : sorted)
+		{
+			total += n;
+		}
+		System.out.println(String.format("%-10s avg=%.3f ms p50=%.3f ms p99=%.3f ms total=%.1f ms", name,
+				total / 1000000.0 / sorted.length,
+				sorted[sorted.length / 2] / 1000000.0,
+				sorted[Math.min(sorted.length - 1, sorted.length * 99 / 100)] / 1000000.0,
+				total / 1000000.0));
+	}
+}
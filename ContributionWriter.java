@@ -0,0 +1,671 @@
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Class for storing story events to the database in the background.
+ *
+ * Events are put into a bounded in-memory queue and acknowledged to the
+ * user interface immediately. A dedicated writer thread drains the queue
+ * in batches and applies the events to the database in submission order,
+ * so the Swing event thread never waits for database round trips.
+ * Consecutive contributions to known stories are saved together in one
+ * database transaction.
+ *
+ * If a journal is given, every event is appended to it before it is queued,
+ * and acknowledged in it once applied. While the database is unreachable the
+ * writer holds at most one batch in its backlog and retries it with a growing
+ * delay. Later events wait in the bounded queue, so back-pressure is signalled
+ * and events are refused once the queue is full, instead of memory growing
+ * for as long as the outage lasts. Events left in the journal by a previous
+ * run are written first.
+ *
+ * The acknowledgements of a batch are synced to the journal right after the
+ * batch is applied, not in the same transaction. A crash between the two
+ * replays the batch on the next start, so the store must ignore contributions
+ * whose story id and sequence it has already saved, as StoryStore requires.
+ * A journal must not be used with a store that is not replay safe. The
+ * database id of a created story is synced to the journal right away, so a
+ * replay does not create the story again.
+ *
+ * An event that keeps failing is given up on eventually. It is parked in a
+ * dead letter journal, if one is set, and so are all later events of a
+ * story whose creation was given up on, instead of being acknowledged away.
+ * The dead letter journal has the journal format, so it can be replayed
+ * once the cause has been fixed.
+ */
+public class ContributionWriter implements Runnable
+{
+	/**
+	 * Listener that is told when the queue becomes nearly full and when it
+	 * has drained again. Always called on the Swing event thread.
+	 */
+	public interface BackPressureListener
+	{
+		public void backPressureChanged(boolean saturated);
+	}
+
+	/**
+	 * Listener that is told about every contribution once it is stored.
+	 * Called on the writer thread, so it must not block.
+	 */
+	public interface ContributionListener
+	{
+		public void contributionSaved(StoryEvent contribution);
+	}
+
+	// Store the events are written to
+	private StoryStore db = null;
+
+	// Events waiting to be written
+	private ArrayBlockingQueue<StoryEvent> queue;
+	private int capacity;
+	private int batchSize;
+
+	// Queue sizes at which back-pressure is switched on and off again
+	private int highWaterMark;
+	private int lowWaterMark;
+	private boolean saturated = false;
+	private BackPressureListener listener = null;
+	private ContributionListener contributionListener = null;
+
+	// Database ids of stories by their local keys, used by the writer thread only
+	private HashMap<String, Integer> storyIds = new HashMap<String, Integer>();
+
+	// Local journal, or null if events are only kept in memory
+	private StoryJournal journal = null;
+	// Journal for events that could not be applied, can be null
+	private StoryJournal deadLetters = null;
+	// Journal is compacted when everything is written and it has grown past this size
+	private long journalCompactBytes = 64 * 1024;
+
+	// Events taken from the queue but not yet written, used by the writer thread only
+	private LinkedList<StoryEvent> backlog = new LinkedList<StoryEvent>();
+
+	// Retry delays while the database is unreachable
+	private static final long MIN_RETRY_MILLIS = 500;
+	private static final long MAX_RETRY_MILLIS = 30000;
+	// An event failing this many times while the database is reachable is dropped
+	private static final int MAX_ATTEMPTS = 10;
+	private int failedAttempts = 0;
+
+	// Latencies, retries and dropped events
+	private PersistenceMetrics metrics = PersistenceMetrics.getInstance();
+
+	// Counters used for flushing, guarded by this
+	private long submittedCount = 0;
+	private long writtenCount = 0;
+
+	private Thread thread = null;
+	private volatile boolean running = false;
+	// FALSE once shutdown has begun, guarded by this
+	private boolean accepting = false;
+
+	/**
+	 * Constructor
+	 *
+	 * @param db Story store
+	 * @param capacity Maximum number of queued events
+	 * @param batchSize Maximum number of events written in one go
+	 */
+	public ContributionWriter(StoryStore db, int capacity, int batchSize)
+	{
+		this.db = db;
+		this.capacity = Math.max(4, capacity);
+		this.batchSize = Math.max(1, batchSize);
+		this.queue = new ArrayBlockingQueue<StoryEvent>(this.capacity);
+		this.highWaterMark = this.capacity * 3 / 4;
+		this.lowWaterMark = this.capacity / 4;
+	}
+
+	/**
+	 * Sets the listener for back-pressure changes
+	 *
+	 * @param listener
+	 */
+	public void setBackPressureListener(BackPressureListener listener)
+	{
+		this.listener = listener;
+	}
+
+	/**
+	 * Sets the listener for stored contributions. Must be called before start().
+	 *
+	 * @param contributionListener
+	 */
+	public void setContributionListener(ContributionListener contributionListener)
+	{
+		this.contributionListener = contributionListener;
+	}
+
+	/**
+	 * Sets the journal for the events. Must be called before start().
+	 * Unwritten events from a previous run are taken from the journal.
+	 *
+	 * @param journal Opened journal
+	 */
+	public void setJournal(StoryJournal journal)
+	{
+		this.journal = journal;
+		storyIds.putAll(journal.getStoryIds());
+		backlog.addAll(journal.getUnacknowledgedEvents());
+		synchronized(this)
+		{
+			submittedCount += backlog.size();
+		}
+	}
+
+	/**
+	 * Sets the journal that keeps events that could not be applied.
+	 * Must be called before start().
+	 *
+	 * @param deadLetters Opened journal
+	 */
+	public void setDeadLetterJournal(StoryJournal deadLetters)
+	{
+		this.deadLetters = deadLetters;
+	}
+
+	/**
+	 * Starts the writer thread
+	 */
+	public void start()
+	{
+		running = true;
+		synchronized(this)
+		{
+			accepting = true;
+		}
+		thread = new Thread(this, "ContributionWriter");
+		thread.setDaemon(true);
+		thread.start();
+	}
+
+	/**
+	 * Queues events for writing. Either all of the given events are queued
+	 * or, if there is not enough room, none of them.
+	 *
+	 * @param events
+	 * @return TRUE if the events were accepted
+	 */
+	public boolean submit(StoryEvent... events)
+	{
+		boolean accepted = false;
+		synchronized(this)
+		{
+			if(accepting && queue.remainingCapacity() >= events.length)
+			{
+				long now = System.nanoTime();
+				for(StoryEvent e : events)
+				{
+					e.setSubmittedAt(now);
+					// Record the event before it can be applied
+					if(journal != null)
+					{
+						try
+						{
+							journal.append(e);
+						}
+						catch(IOException ex)
+						{
+							log("Could not write event to journal: " + ex.getMessage());
+						}
+					}
+					queue.add(e);
+				}
+				submittedCount += events.length;
+				accepted = true;
+			}
+		}
+		if(!accepted)
+		{
+			log("Write queue full, rejected " + events.length + " event(s)");
+			metrics.error("writer.submit");
+		}
+		updateBackPressure(!accepted || queue.size() >= highWaterMark);
+		return accepted;
+	}
+
+	/**
+	 * Waits until all events submitted before this call have been written
+	 *
+	 * @param timeoutMillis
+	 * @return TRUE if everything was written within the timeout
+	 */
+	public boolean flush(long timeoutMillis)
+	{
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		synchronized(this)
+		{
+			long target = submittedCount;
+			while(writtenCount < target)
+			{
+				long remaining = deadline - System.currentTimeMillis();
+				if(remaining <= 0 || thread == null || !thread.isAlive())
+				{
+					return false;
+				}
+				try
+				{
+					wait(remaining);
+				}
+				catch(InterruptedException e)
+				{
+					Thread.currentThread().interrupt();
+					return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Stops accepting events, writes everything submitted so far in order
+	 * and stops the writer thread
+	 *
+	 * @param timeoutMillis How long to wait for the queue to drain
+	 */
+	public void shutdown(long timeoutMillis)
+	{
+		synchronized(this)
+		{
+			if(!accepting)
+			{
+				return;
+			}
+			accepting = false;
+		}
+		long deadline = System.currentTimeMillis() + timeoutMillis;
+		// Keep retrying while waiting, a database that comes back in time gets everything
+		if(!flush(timeoutMillis))
+		{
+			log("Write queue not flushed within " + timeoutMillis + " ms");
+		}
+		running = false;
+		try
+		{
+			thread.join(Math.max(1, deadline - System.currentTimeMillis()));
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		int left = queue.size() + backlog.size();
+		if(left > 0)
+		{
+			if(journal != null)
+			{
+				log("Write queue not drained at shutdown, " + left + " event(s) left in the journal");
+			}
+			else
+			{
+				log("Write queue not drained at shutdown, " + left + " event(s) lost");
+			}
+		}
+		if(journal != null)
+		{
+			journal.close();
+		}
+		if(deadLetters != null)
+		{
+			deadLetters.close();
+		}
+	}
+
+	/**
+	 * Returns the number of events waiting to be written
+	 *
+	 * @return int
+	 */
+	public int getQueueSize()
+	{
+		return queue.size();
+	}
+
+	// Overridden method
+	public void run()
+	{
+		long retryDelay = 0;
+		long retryAt = 0;
+		while(running || !queue.isEmpty() || (!backlog.isEmpty() && retryDelay == 0))
+		{
+			try
+			{
+				// Wait for new events, or until the next retry is due
+				long wait = backlog.isEmpty() ? 200 : Math.max(0, retryAt - System.currentTimeMillis());
+				if(backlog.size() < batchSize)
+				{
+					StoryEvent next = queue.poll(wait, TimeUnit.MILLISECONDS);
+					if(next != null)
+					{
+						// At most one batch is taken, the rest stays in the bounded queue
+						backlog.add(next);
+						queue.drainTo(backlog, batchSize - backlog.size());
+					}
+				}
+				else if(wait > 0)
+				{
+					Thread.sleep(Math.min(wait, 200));
+				}
+				if(queue.size() <= lowWaterMark)
+				{
+					updateBackPressure(false);
+				}
+				if(backlog.isEmpty() || System.currentTimeMillis() < retryAt)
+				{
+					continue;
+				}
+
+				long start = System.nanoTime();
+				if(write())
+				{
+					metrics.record("writer.write", start);
+					retryDelay = 0;
+					retryAt = 0;
+					compactJournal();
+				}
+				else
+				{
+					// Database unreachable, try again later
+					metrics.retry("writer.write");
+					retryDelay = retryDelay == 0 ? MIN_RETRY_MILLIS : Math.min(retryDelay * 2, MAX_RETRY_MILLIS);
+					retryAt = System.currentTimeMillis() + retryDelay;
+					log("Database write failed, " + backlog.size() + " event(s) pending, retrying in " + retryDelay + " ms");
+					if(!running)
+					{
+						// Shutting down, the journal keeps the rest
+						break;
+					}
+				}
+			}
+			catch(InterruptedException e)
+			{
+				// Keep draining until shutdown() has been called
+			}
+			catch(Exception e)
+			{
+				e.printStackTrace();
+			}
+		}
+	}
+
+	/**
+	 * Applies up to one batch of events from the backlog to the database in order
+	 *
+	 * @return FALSE if writing stopped because the database could not be reached
+	 */
+	private boolean write() throws IOException
+	{
+		if(journal != null)
+		{
+			// One disk sync for the whole batch
+			journal.sync();
+		}
+		int count = 0;
+		while(!backlog.isEmpty() && count < batchSize)
+		{
+			// After a failure events are retried one by one, so that a single
+			// bad contribution does not hold back the others
+			ArrayList<StoryEvent> contributions = collectContributions(failedAttempts > 0 ? 1 : batchSize - count);
+			int n = contributions.isEmpty() ? 1 : contributions.size();
+			StoryEvent first = backlog.getFirst();
+			boolean applied;
+			if(contributions.isEmpty() && isOrphan(first))
+			{
+				// The creation of its story was given up on, so the event can not be applied
+				log("ERROR: event of a story that was never created: " + first);
+				applied = false;
+			}
+			else
+			{
+				applied = contributions.isEmpty() ? apply(first) : db.saveAddedContributions(contributions);
+				if(!applied)
+				{
+					// Keep the events while the database is down, they are written once the connection is back
+					if(!db.isReachable())
+					{
+						return false;
+					}
+					// The database works but this event keeps failing, give up on it eventually
+					failedAttempts++;
+					if(failedAttempts < MAX_ATTEMPTS)
+					{
+						return false;
+					}
+					log("ERROR: giving up on event that failed " + failedAttempts + " times: " + first);
+				}
+			}
+			if(!applied)
+			{
+				metrics.error("writer.write");
+				if(!park(first))
+				{
+					return false;
+				}
+			}
+			failedAttempts = 0;
+			for(int i = 0; i < n; i++)
+			{
+				StoryEvent e = backlog.removeFirst();
+				if(journal != null)
+				{
+					journal.acknowledge(e);
+				}
+				if(e.getSubmittedAt() != 0)
+				{
+					// Time from the user pressing a button until the event is stored
+					metrics.record("writer.submitToWritten", e.getSubmittedAt());
+				}
+				if(applied && contributionListener != null && e.getType() == StoryEvent.CONTRIBUTION)
+				{
+					contributionListener.contributionSaved(e);
+				}
+			}
+			synchronized(this)
+			{
+				writtenCount += n;
+				notifyAll();
+			}
+			count += n;
+		}
+		if(journal != null && count > 0)
+		{
+			// Acknowledgements reach the disk right after the database commit
+			journal.sync();
+		}
+		return true;
+	}
+
+	/**
+	 * Returns whether an event belongs to a story that has no database id,
+	 * which only happens if creating the story was given up on
+	 *
+	 * @param e
+	 * @return TRUE for a contribution or finish of an unknown story
+	 */
+	private boolean isOrphan(StoryEvent e)
+	{
+		return e.getType() != StoryEvent.CREATE_STORY && e.getStoryKey() != null && !storyIds.containsKey(e.getStoryKey());
+	}
+
+	/**
+	 * Keeps an event that can not be applied in the dead letter journal,
+	 * so it can be acknowledged in the journal without being lost
+	 *
+	 * @param e
+	 * @return FALSE if the event could not be kept and must stay in the backlog
+	 */
+	private boolean park(StoryEvent e)
+	{
+		if(deadLetters == null)
+		{
+			log("ERROR: no dead letter journal, dropping " + e);
+			return true;
+		}
+		try
+		{
+			deadLetters.appendCopy(e);
+			deadLetters.sync();
+			log("Event parked in the dead letter journal: " + e);
+			return true;
+		}
+		catch(IOException ex)
+		{
+			log("Could not write event to dead letter journal: " + ex.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Returns the contributions at the head of the backlog whose stories
+	 * already have database ids, with the ids set on the events
+	 *
+	 * @param max Maximum number of contributions
+	 * @return list, empty if the first event is not such a contribution
+	 */
+	private ArrayList<StoryEvent> collectContributions(int max)
+	{
+		ArrayList<StoryEvent> contributions = new ArrayList<StoryEvent>();
+		for(StoryEvent e : backlog)
+		{
+			if(contributions.size() >= max || e.getType() != StoryEvent.CONTRIBUTION)
+			{
+				break;
+			}
+			Integer id = storyIds.get(e.getStoryKey());
+			if(id == null)
+			{
+				break;
+			}
+			e.setStoryId(id);
+			contributions.add(e);
+		}
+		return contributions;
+	}
+
+	/**
+	 * Applies one event to the database
+	 *
+	 * @param e
+	 * @return TRUE if the event was applied
+	 */
+	private boolean apply(StoryEvent e) throws IOException
+	{
+		switch(e.getType())
+		{
+			case StoryEvent.CREATE_STORY:
+				if(storyIds.containsKey(e.getStoryKey()))
+				{
+					// Already created before a restart
+					return true;
+				}
+				int storyId = db.createStory(e.getStoryName());
+				if(storyId == -1)
+				{
+					return false;
+				}
+				storyIds.put(e.getStoryKey(), storyId);
+				if(journal != null)
+				{
+					// Synced before anything else, a replay must not create a second row
+					journal.storyCreated(e.getStoryKey(), storyId);
+					journal.sync();
+				}
+				return true;
+			case StoryEvent.CONTRIBUTION:
+				Integer id = storyIds.get(e.getStoryKey());
+				if(id == null)
+				{
+					log("ERROR: contribution for unknown story " + e);
+					return false;
+				}
+				e.setStoryId(id);
+				return db.saveAddedContributions(Collections.singletonList(e));
+			case StoryEvent.FINISH_STORY:
+				Integer finishedId = storyIds.get(e.getStoryKey());
+				if(finishedId != null && !db.finishStory(finishedId))
+				{
+					return false;
+				}
+				storyIds.remove(e.getStoryKey());
+				return true;
+			default:
+				log("ERROR: unknown story event " + e);
+				return true;
+		}
+	}
+
+	/**
+	 * Compacts the journal once everything in it has been written
+	 */
+	private void compactJournal()
+	{
+		if(journal == null || !backlog.isEmpty() || !queue.isEmpty())
+		{
+			return;
+		}
+		try
+		{
+			if(journal.getSize() > journalCompactBytes && journal.isFullyAcknowledged())
+			{
+				journal.compact();
+			}
+		}
+		catch(IOException e)
+		{
+			log("Could not compact journal: " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Notifies the listener on the event thread if back-pressure state changed
+	 *
+	 * @param b
+	 */
+	private void updateBackPressure(final boolean b)
+	{
+		synchronized(this)
+		{
+			if(saturated == b)
+			{
+				return;
+			}
+			saturated = b;
+		}
+		log(b ? "Write queue saturated" : "Write queue drained");
+		if(listener == null)
+		{
+			return;
+		}
+		if(SwingUtilities.isEventDispatchThread())
+		{
+			listener.backPressureChanged(b);
+		}
+		else
+		{
+			SwingUtilities.invokeLater(new Runnable() {
+				public void run()
+				{
+					listener.backPressureChanged(b);
+				}
+			});
+		}
+	}
+
+	/**
+	 * Simple convenience method for logging text to console output.
+	 * Should be replaced with a log file in the future
+	 *
+	 * @param log
+	 */
+	private void log(String text)
+	{
+		System.out.println(text);
+	}
+}
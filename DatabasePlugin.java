@@ -2,20 +2,47 @@ import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.PreparedStatement;
 import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.sql.Statement;
 import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Hashtable;
+import java.util.List;
+import java.util.Map;
 
 /**
  * Class for creating and managing database connection and processing
- * queries and updates to the database
+ * queries and updates to the database. The MySQL backend of StoryStore.
  */
-public class DatabasePlugin
+public class DatabasePlugin implements StoryStore
 {
 	// Parameters
 	private Hashtable<String, String> properties = null;
-	// The database connection
-	private Connection conn;
+	// Pool of database connections, each operation borrows one
+	private ConnectionPool pool = null;
+	
+	// Story text storage, from the STORY_STORAGE setting: FALSE (concat, the default) appends
+	// contributions to stories.body_text, TRUE (segments) stores one story_segments row each
+	private boolean segmentStorage = false;
+	// Whether the segment table has been found
+	private boolean segmentsReady = false;
+	// Whether stories has a last_sequence column, which makes concat storage
+	// ignore replayed contributions, null until checked
+	private Boolean sequenceTracked = null;
+	
+	// Whether user_stories has a unique (user_FK, story_FK) key for upserts, null until checked
+	private Boolean upsertSupported = null;
+	
+	// Users read from the database by nickname
+	private UserDirectory users;
+	// Latencies and errors of database operations
+	private PersistenceMetrics metrics = PersistenceMetrics.getInstance();
+	// Size of users.password, -1 until checked
+	private int passwordColumnSize = -1;
 	
 	/**
 	 * Constructor
@@ -25,6 +52,9 @@ public class DatabasePlugin
 	public DatabasePlugin(Hashtable properties)
 	{
 		this.properties = properties;
+		String storage = this.properties.get("STORY_STORAGE");
+		segmentStorage = storage != null && storage.trim().equalsIgnoreCase("segments");
+		users = new UserDirectory(getIntSetting("USER_CACHE_TTL_SECONDS", 600), getIntSetting("USER_MISS_CACHE_TTL_SECONDS", 10));
 	}
 	
 	/**
@@ -35,6 +65,7 @@ public class DatabasePlugin
 	 */
 	public boolean connect() throws Exception
 	{
+		long start = System.nanoTime();
 		try
 		{
 			// Get connection parameter read from the settings.properties-file
@@ -46,28 +77,123 @@ public class DatabasePlugin
 			DriverManager.registerDriver(new com.mysql.jdbc.Driver());
 			Class.forName("com.mysql.jdbc.Driver");
 			
-			// Setup connection with the DB
-			conn = DriverManager
-					.getConnection("jdbc:mysql://" + ipAddress + ":3306/" + dbName + "?" + "user=" + userName + "&password=" + password);
+			// Setup connection pool for the DB. The pool is kept even if the test query below
+			// fails, so that the connection is restored once the database is reachable again.
+			// Batched statements are rewritten by the driver into one multi-row statement.
+			pool = new ConnectionPool("jdbc:mysql://" + ipAddress + ":3306/" + dbName + "?" + "user=" + userName + "&password=" + password
+					+ "&rewriteBatchedStatements=true",
+					getIntSetting("DB_POOL_MAX_SIZE", 4),
+					getIntSetting("DB_POOL_MAX_IDLE_SECONDS", 300),
+					getIntSetting("DB_POOL_BORROW_TIMEOUT_MILLIS", 5000),
+					getIntSetting("DB_POOL_EVICTION_INTERVAL_SECONDS", 60),
+					getIntSetting("DB_STATEMENT_CACHE_SIZE", 16));
 			
 			// Test query
-			PreparedStatement ps = conn.prepareStatement("SELECT COUNT(*) FROM stories;");
-			ResultSet rs = ps.executeQuery();
-			if(rs.next())
+			PooledConnection pc = pool.borrow();
+			PreparedStatement ps = null;
+			ResultSet rs = null;
+			try
+			{
+				ps = pc.prepareStatement("SELECT COUNT(*) FROM stories;");
+				rs = ps.executeQuery();
+				if(rs.next())
+				{
+					log("NUMBER OF STORIES IN DATABASE: " + rs.getInt(1));
+				}
+				close(pc, rs, ps);
+				
+				if(segmentStorage)
+				{
+					prepareSegments(pc);
+				}
+				else
+				{
+					prepareSequences(pc);
+				}
+				prepareUpserts(pc);
+				pool.release(pc);
+			}
+			catch(SQLException e)
 			{
-				log("NUMBER OF STORIES IN DATABASE: " + rs.getInt(1));
+				close(pc, rs, ps);
+				invalidate(pc);
+				throw e;
 			}
-			log("Connected to database");
+			log("Connected to database, story storage: " + (segmentStorage ? "segments" : "concat"));
+			metrics.record("connect", start);
 			
 			return true;
 		}
 		catch(Exception e)
 		{
 			e.printStackTrace();
+			metrics.error("connect");
 			throw e;
 		}
 	}
 	
+	/**
+	 * Closes all pooled connections
+	 */
+	public void disconnect()
+	{
+		if(pool != null)
+		{
+			log("Connection pool: " + pool.getStatistics());
+			pool.close();
+		}
+	}
+	
+	/**
+	 * Checks whether a working database connection can be obtained
+	 * 
+	 * @return TRUE if the database is reachable
+	 */
+	public boolean isReachable()
+	{
+		try
+		{
+			pool.release(borrow());
+			return true;
+		}
+		catch(SQLException e)
+		{
+			return false;
+		}
+	}
+	
+	/**
+	 * Returns a one line summary of the connection pool and user cache metrics
+	 * 
+	 * @return String
+	 */
+	public String getStatistics()
+	{
+		return (pool == null ? "not connected" : pool.getStatistics()) + " " + users.getStatistics();
+	}
+	
+	/**
+	 * Returns whether contributions can be saved again without adding their
+	 * text twice: always with segment storage, with concat storage only if
+	 * stories has a last_sequence column. FALSE until that has been checked.
+	 * 
+	 * @return TRUE if replays are ignored
+	 */
+	public boolean isReplaySafe()
+	{
+		return segmentStorage || Boolean.TRUE.equals(sequenceTracked);
+	}
+	
+	/**
+	 * Returns the connection pool, or null if connect() has not been called
+	 * 
+	 * @return ConnectionPool
+	 */
+	public ConnectionPool getConnectionPool()
+	{
+		return pool;
+	}
+	
 	/**
 	 * Gets user's password for comparison when user is trying to log in
 	 * 
@@ -76,61 +202,529 @@ public class DatabasePlugin
 	 */
 	public String getUserPassword(String userId)
 	{
+		UserDirectory.User user = users.get(userId);
+		if(user != null)
+		{
+			return user.getPassword();
+		}
+		long start = System.nanoTime();
+		PooledConnection pc = null;
+		try
+		{
+			pc = borrow();
+			user = loadUser(pc, userId);
+			pool.release(pc);
+			metrics.record("getUserPassword", start);
+			return user.getPassword();
+		}
+		catch(Exception e)
+		{
+			e.printStackTrace();
+			metrics.error("getUserPassword");
+			invalidate(pc);
+			return null;
+		}
+	}
+	
+	/**
+	 * Drops a user from the user cache, so that the next login or
+	 * contribution reads the user from the database again
+	 * 
+	 * @param nickname
+	 */
+	public void invalidateUser(String nickname)
+	{
+		if(nickname != null)
+		{
+			users.invalidate(nickname);
+		}
+	}
+	
+	/**
+	 * Replaces a user's stored password, e.g. with a hash made by PasswordHasher.
+	 * Nothing is written if the value does not fit in the password column,
+	 * since MySQL could silently cut it.
+	 * 
+	 * @param nickname
+	 * @param password Value to store
+	 * @return TRUE if the password was replaced
+	 */
+	public boolean setUserPassword(String nickname, String password)
+	{
+		long start = System.nanoTime();
+		PooledConnection pc = null;
 		PreparedStatement ps = null;
 		ResultSet rs = null;
-		String passWord = null;
 		try
 		{
-			ps = conn.prepareStatement("SELECT password FROM users WHERE nickname = ?;");
-			ps.setString(1,  userId);
-			rs = ps.executeQuery();
-			if(rs.next())
+			pc = borrow();
+			if(passwordColumnSize == -1)
 			{
-				passWord = rs.getString(1);
+				rs = pc.getConnection().getMetaData().getColumns(null, null, "users", "password");
+				passwordColumnSize = rs.next() ? rs.getInt("COLUMN_SIZE") : 0;
+				close(pc, rs, null);
+				rs = null;
 			}
+			if(password.length() > passwordColumnSize)
+			{
+				log("users.password holds " + passwordColumnSize + " chars, can not store a " + password.length() + " char password hash");
+				pool.release(pc);
+				return false;
+			}
+			ps = pc.prepareStatement("UPDATE users SET password = ? WHERE nickname = ?");
+			ps.setString(1, password);
+			ps.setString(2, nickname);
+			ps.executeUpdate();
+			close(pc, null, ps);
+			users.invalidate(nickname);
+			pool.release(pc);
+			metrics.record("setUserPassword", start);
+			return true;
 		}
 		catch(Exception e)
 		{
 			e.printStackTrace();
+			metrics.error("setUserPassword");
+			close(pc, rs, ps);
+			invalidate(pc);
+			return false;
 		}
-		finally
+	}
+	
+	/**
+	 * Returns the cache of users read from the database
+	 * 
+	 * @return UserDirectory
+	 */
+	public UserDirectory getUserDirectory()
+	{
+		return users;
+	}
+	
+	/**
+	 * Saves contribution information of one user and one writing turn
+	 * 
+	 * @param userName
+	 * @param contributedText
+	 * @param trashed How many characters were cleared from the text area by the user
+	 * @param storyId
+	 * @param sequence Order of the contribution within the story, used as the segment key
+	 * @return TRUE if the contribution was stored
+	 */
+	public boolean saveAddedContribution(String userName, String contributedText, int trashed, int storyId, int sequence)
+	{
+		StoryEvent e = StoryEvent.contribution(null, sequence, userName, contributedText, trashed);
+		e.setStoryId(storyId);
+		List<StoryEvent> contributions = new ArrayList<StoryEvent>(1);
+		contributions.add(e);
+		return saveAddedContributions(contributions);
+	}
+	
+	/**
+	 * Saves a batch of contributions in one transaction. For each contribution
+	 * the user's counters are upserted into user_stories and the text is added
+	 * to the story; each kind of statement is sent as one JDBC batch.
+	 * 
+	 * @param contributions CONTRIBUTION events with their story ids set
+	 * @return TRUE if all contributions were stored
+	 */
+	public boolean saveAddedContributions(List<StoryEvent> contributions)
+	{
+		log("saveAddedContributions, " + contributions.size() + " contribution(s)");
+
+		long start = System.nanoTime();
+		long step = start;
+		PooledConnection pc = null;
+		PreparedStatement ps = null;
+		boolean autoCommit = true;
+		try
 		{
-			try
+			pc = borrow();
+			Connection conn = pc.getConnection();
+			
+			if(segmentStorage && !segmentsReady)
+			{
+				prepareSegments(pc);
+			}
+			if(!segmentStorage && sequenceTracked == null)
+			{
+				prepareSequences(pc);
+			}
+			if(upsertSupported == null)
+			{
+				prepareUpserts(pc);
+			}
+			if(!upsertSupported.booleanValue())
 			{
+				// Schema could not be changed, fall back to one contribution at a time
+				pool.release(pc);
+				pc = null;
+				for(StoryEvent e : contributions)
+				{
+					if(!saveAddedContributionUnbatched(e.getUserName(), e.getText(), e.getTrashedChars(), e.getStoryId(), e.getSequence()))
+					{
+						return false;
+					}
+				}
+				return true;
+			}
+			
+			// Resolve user ids before the transaction, usually from the cache
+			step = System.nanoTime();
+			int[] users = new int[contributions.size()];
+			for(int i = 0; i < users.length; i++)
+			{
+				users[i] = getUserId(pc, contributions.get(i).getUserName());
+			}
+			metrics.record("saveAddedContributions.users", step);
+			
+			autoCommit = conn.getAutoCommit();
+			conn.setAutoCommit(false);
+			
+			// Contributions whose text was already stored (replayed from the journal)
+			// must not be counted again
+			boolean[] applied = new boolean[contributions.size()];
+			Arrays.fill(applied, true);
+			
+			if(segmentStorage)
+			{
+				// A rewritten batch reports SUCCESS_NO_INFO for every row, so the
+				// segments already stored are looked up instead of counted
+				step = System.nanoTime();
+				markStoredSegments(pc, contributions, applied);
+				ps = pc.prepareStatement("INSERT IGNORE INTO story_segments (story_FK, sequence, body_text) VALUES (?, ?, ?)");
+				int segments = 0;
+				for(int i = 0; i < contributions.size(); i++)
+				{
+					if(!applied[i])
+					{
+						continue;
+					}
+					StoryEvent e = contributions.get(i);
+					ps.setInt(1, e.getStoryId());
+					ps.setInt(2, e.getSequence());
+					ps.setString(3, e.getText().replace("\n", "<br>"));
+					ps.addBatch();
+					segments++;
+				}
+				if(segments > 0)
+				{
+					ps.executeBatch();
+				}
+				metrics.record("saveAddedContributions.segments", step);
+				close(pc, null, ps);
+				ps = null;
+			}
+			else if(sequenceTracked.booleanValue())
+			{
+				markAppendedContributions(pc, contributions, applied);
+			}
+			
+			ps = pc.prepareStatement("INSERT INTO user_stories (user_FK, story_FK, chars_trashed, chars_contributed) VALUES (?, ?, ?, ?) "
+					+ "ON DUPLICATE KEY UPDATE chars_trashed = chars_trashed + VALUES(chars_trashed), "
+					+ "chars_contributed = chars_contributed + VALUES(chars_contributed)");
+			int upserts = 0;
+			for(int i = 0; i < contributions.size(); i++)
+			{
+				if(!applied[i])
+				{
+					continue;
+				}
+				StoryEvent e = contributions.get(i);
+				ps.setInt(1, users[i]);
+				ps.setInt(2, e.getStoryId());
+				ps.setInt(3, e.getTrashedChars());
+				ps.setInt(4, e.getText().length());
+				ps.addBatch();
+				upserts++;
+			}
+			if(upserts > 0)
+			{
+				step = System.nanoTime();
+				ps.executeBatch();
+				metrics.record("saveAddedContributions.upsert", step);
+			}
+			close(pc, null, ps);
+			ps = null;
+			
+			if(!segmentStorage)
+			{
+				ps = prepareAppend(pc);
+				int appends = 0;
+				for(int i = 0; i < contributions.size(); i++)
+				{
+					if(!applied[i])
+					{
+						continue;
+					}
+					StoryEvent e = contributions.get(i);
+					setAppend(ps, e.getText().replace("\n", "<br>"), e.getStoryId(), e.getSequence());
+					ps.addBatch();
+					appends++;
+				}
+				if(appends > 0)
+				{
+					step = System.nanoTime();
+					ps.executeBatch();
+					metrics.record("saveAddedContributions.append", step);
+				}
+				close(pc, null, ps);
+				ps = null;
+			}
+			
+			step = System.nanoTime();
+			conn.commit();
+			metrics.record("saveAddedContributions.commit", step);
+			conn.setAutoCommit(autoCommit);
+			pool.release(pc);
+			metrics.record("saveAddedContributions", start);
+			return true;
+		}
+		catch(Exception e)
+		{
+			e.printStackTrace();
+			metrics.error("saveAddedContributions");
+			close(pc, null, ps);
+			if(pc != null)
+			{
+				try
+				{
+					pc.getConnection().rollback();
+				}
+				catch(Exception ex)
+				{
+				}
+			}
+			invalidate(pc);
+			return false;
+		}
+	}
+	
+	/**
+	 * Clears the flags of contributions whose segments are already stored,
+	 * and of repeated contributions within the list. Reads the stored
+	 * sequences with one query per story.
+	 * 
+	 * @param pc
+	 * @param contributions
+	 * @param applied Set to FALSE for contributions that must not be saved again
+	 * @throws SQLException
+	 */
+	private void markStoredSegments(PooledConnection pc, List<StoryEvent> contributions, boolean[] applied) throws SQLException
+	{
+		// Sequence range of each story in the list
+		HashMap<Integer, int[]> ranges = new HashMap<Integer, int[]>();
+		for(StoryEvent e : contributions)
+		{
+			int[] range = ranges.get(e.getStoryId());
+			if(range == null)
+			{
+				ranges.put(e.getStoryId(), new int[] {e.getSequence(), e.getSequence()});
+			}
+			else
+			{
+				range[0] = Math.min(range[0], e.getSequence());
+				range[1] = Math.max(range[1], e.getSequence());
+			}
+		}
+		HashSet<Long> stored = new HashSet<Long>();
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try
+		{
+			ps = pc.prepareStatement("SELECT sequence FROM story_segments WHERE story_FK = ? AND sequence BETWEEN ? AND ?");
+			for(Map.Entry<Integer, int[]> entry : ranges.entrySet())
+			{
+				ps.setInt(1, entry.getKey());
+				ps.setInt(2, entry.getValue()[0]);
+				ps.setInt(3, entry.getValue()[1]);
+				rs = ps.executeQuery();
+				while(rs.next())
+				{
+					stored.add(segmentKey(entry.getKey(), rs.getInt(1)));
+				}
 				rs.close();
-				ps.close();
+				rs = null;
 			}
-			catch(Exception ex)
+		}
+		finally
+		{
+			close(pc, rs, ps);
+		}
+		for(int i = 0; i < applied.length; i++)
+		{
+			StoryEvent e = contributions.get(i);
+			// add() also catches the same contribution twice in one list
+			applied[i] = stored.add(segmentKey(e.getStoryId(), e.getSequence()));
+		}
+	}
+	
+	private static long segmentKey(int storyId, int sequence)
+	{
+		return ((long)storyId << 32) | (sequence & 0xffffffffL);
+	}
+	
+	/**
+	 * Clears the flags of contributions that concat storage has already
+	 * appended, i.e. whose sequence is not above the last_sequence of their
+	 * story. The stories are locked until the transaction ends, so the
+	 * sequences can not change before the appends.
+	 * 
+	 * @param pc
+	 * @param contributions
+	 * @param applied Set to FALSE for contributions that must not be saved again
+	 * @throws SQLException
+	 */
+	private void markAppendedContributions(PooledConnection pc, List<StoryEvent> contributions, boolean[] applied) throws SQLException
+	{
+		HashMap<Integer, Integer> last = new HashMap<Integer, Integer>();
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try
+		{
+			ps = pc.prepareStatement("SELECT last_sequence FROM stories WHERE story_ID = ? FOR UPDATE");
+			for(int i = 0; i < applied.length; i++)
 			{
-				
+				StoryEvent e = contributions.get(i);
+				Integer sequence = last.get(e.getStoryId());
+				if(sequence == null)
+				{
+					ps.setInt(1, e.getStoryId());
+					rs = ps.executeQuery();
+					sequence = rs.next() ? rs.getInt(1) : -1;
+					rs.close();
+					rs = null;
+				}
+				applied[i] = e.getSequence() > sequence;
+				last.put(e.getStoryId(), Math.max(sequence, e.getSequence()));
 			}
 		}
-		return passWord;
+		finally
+		{
+			close(pc, rs, ps);
+		}
 	}
 	
 	/**
-	 * Saves contribution information of one user and one writing turn
+	 * Prepares the statement appending a contribution to a story with
+	 * concat storage, which also moves last_sequence if there is one
+	 * 
+	 * @param pc
+	 * @return PreparedStatement
+	 * @throws SQLException
+	 */
+	private PreparedStatement prepareAppend(PooledConnection pc) throws SQLException
+	{
+		if(sequenceTracked.booleanValue())
+		{
+			return pc.prepareStatement("UPDATE stories SET body_text = CONCAT(body_text, ?), last_sequence = GREATEST(last_sequence, ?) WHERE story_ID = ?");
+		}
+		return pc.prepareStatement("UPDATE stories SET body_text = CONCAT(body_text, ?) WHERE story_ID = ?");
+	}
+	
+	private void setAppend(PreparedStatement ps, String text, int storyId, int sequence) throws SQLException
+	{
+		ps.setString(1, text);
+		if(sequenceTracked.booleanValue())
+		{
+			ps.setInt(2, sequence);
+			ps.setInt(3, storyId);
+		}
+		else
+		{
+			ps.setInt(2, storyId);
+		}
+	}
+	
+	/**
+	 * Saves one contribution with separate statements in one transaction,
+	 * so the text and the counters are stored or fail together. Used when
+	 * user_stories can not be upserted, and kept for comparison in
+	 * ContributionBenchmark.
 	 * 
 	 * @param userName
 	 * @param contributedText
 	 * @param trashed How many characters were cleared from the text area by the user
 	 * @param storyId
-	 * @return
+	 * @param sequence Order of the contribution within the story, used as the segment key
+	 * @return TRUE if the contribution was stored
 	 */
-	public void saveAddedContribution(String userName, String contributedText, int trashed, int storyId)
+	boolean saveAddedContributionUnbatched(String userName, String contributedText, int trashed, int storyId, int sequence)
 	{
 		log("saveAddedContribution, userName: " + userName +", contr.: " + contributedText + ", trash: " + trashed + ", StoryID: " + storyId);
 
+		long start = System.nanoTime();
+		PooledConnection pc = null;
 		PreparedStatement ps = null;
 		ResultSet rs = null;
-		String passWord = null;
 		
 		int userStoriesID = 1;
+		boolean autoCommit = true;
 		
 		try
 		{
+			pc = borrow();
+			Connection conn = pc.getConnection();
+			
+			// Replace line breaks with HTML <br>
+			String storedText = contributedText.replace("\n", "<br>");
+			
+			if(segmentStorage)
+			{
+				if(!segmentsReady)
+				{
+					prepareSegments(pc);
+				}
+			}
+			else if(sequenceTracked == null)
+			{
+				prepareSequences(pc);
+			}
+			autoCommit = conn.getAutoCommit();
+			conn.setAutoCommit(false);
+			
+			if(!segmentStorage && sequenceTracked.booleanValue())
+			{
+				// A contribution replayed from the journal is already appended
+				boolean[] applied = new boolean[1];
+				StoryEvent e = StoryEvent.contribution(null, sequence, userName, contributedText, trashed);
+				e.setStoryId(storyId);
+				markAppendedContributions(pc, Collections.singletonList(e), applied);
+				if(!applied[0])
+				{
+					log("Contribution " + sequence + " of story " + storyId + " already stored");
+					conn.commit();
+					conn.setAutoCommit(autoCommit);
+					pool.release(pc);
+					metrics.record("saveAddedContributionUnbatched", start);
+					return true;
+				}
+			}
+			
+			if(segmentStorage)
+			{
+				// Insert-only, so the cost does not grow with the story. A contribution
+				// replayed from the journal is already stored and is not counted again
+				ps = pc.prepareStatement("INSERT IGNORE INTO story_segments (story_FK, sequence, body_text) VALUES (?, ?, ?)");
+				ps.setInt(1, storyId);
+				ps.setInt(2, sequence);
+				ps.setString(3, storedText);
+				int inserted = ps.executeUpdate();
+				close(pc, null, ps);
+				ps = null;
+				if(inserted == 0)
+				{
+					log("Contribution " + sequence + " of story " + storyId + " already stored");
+					conn.commit();
+					conn.setAutoCommit(autoCommit);
+					pool.release(pc);
+					metrics.record("saveAddedContributionUnbatched", start);
+					return true;
+				}
+			}
+			
 			// First check if this user already has contributed to this story
-			ps = conn.prepareStatement("SELECT userStory_ID FROM user_stories WHERE user_FK = (SELECT user_ID FROM users WHERE " +
+			ps = pc.prepareStatement("SELECT userStory_ID FROM user_stories WHERE user_FK = (SELECT user_ID FROM users WHERE " +
 					"nickname = ?) AND story_FK = ?");
 			ps.setString(1, userName);
 			ps.setInt(2, storyId);
@@ -141,18 +735,22 @@ public class DatabasePlugin
 				// If yes, update data
 				log("Existing user_stories entry");
 				userStoriesID = rs.getInt(1);
+				close(pc, rs, ps);
 				
-				ps = conn.prepareStatement("UPDATE user_stories SET chars_trashed = chars_trashed + ?, "
+				ps = pc.prepareStatement("UPDATE user_stories SET chars_trashed = chars_trashed + ?, "
 						+ "chars_contributed = chars_contributed + ? WHERE userStory_ID = ?");
 				ps.setInt(1,  trashed);
 				ps.setInt(2,  contributedText.length());
 				ps.setInt(3,  userStoriesID);
 				ps.executeUpdate();
+				close(pc, null, ps);
 			}
 			else
 			{
+				close(pc, rs, ps);
+				
 				// If not, create row. First select user's id
-				ps = conn.prepareStatement("SELECT user_ID from users WHERE nickname = ?");
+				ps = pc.prepareStatement("SELECT user_ID from users WHERE nickname = ?");
 				ps.setString(1, userName);
 				rs = ps.executeQuery();
 				
@@ -161,45 +759,53 @@ public class DatabasePlugin
 				{
 					userId = rs.getInt(1);
 				}
+				close(pc, rs, ps);
 				
 				log("New user_stories entry");
 				
-				// Stores data into database and returns an unique identifier for the story
-				ps = conn.prepareStatement("INSERT INTO user_stories (user_FK, story_FK, chars_trashed, chars_contributed) VALUES " +
-						"( ?, ?, ?, ?);" 
-						, Statement.RETURN_GENERATED_KEYS);
+				ps = pc.prepareStatement("INSERT INTO user_stories (user_FK, story_FK, chars_trashed, chars_contributed) VALUES " +
+						"( ?, ?, ?, ?);");
 				ps.setInt(1, userId);
 				ps.setInt(2, storyId);
 				ps.setInt(3, trashed);
 				ps.setInt(4, contributedText.length());
-				
-				// Insert into database and read the new identifier
-				userStoriesID = ps.executeUpdate();
+				ps.executeUpdate();
+				close(pc, null, ps);
 			}
+			rs = null;
 			
-			// Replace line breaks with HTML <br>
-			contributedText = contributedText.replace("\n", "<br>");
+			// Add text to the story, segments are already stored
+			if(!segmentStorage)
+			{
+				ps = prepareAppend(pc);
+				setAppend(ps, storedText, storyId, sequence);
+				ps.executeUpdate();
+				close(pc, null, ps);
+			}
 			
-			// Add text to the story
-			ps = conn.prepareStatement("UPDATE stories SET body_text = CONCAT(body_text, ?) WHERE story_ID = ?");
-			ps.setString(1, contributedText);
-			ps.setInt(2, storyId);
-			ps.executeUpdate();
+			conn.commit();
+			conn.setAutoCommit(autoCommit);
+			pool.release(pc);
+			metrics.record("saveAddedContributionUnbatched", start);
+			return true;
 		}
 		catch(Exception e)
 		{
 			e.printStackTrace();
-		}
-		finally
-		{
-			try
-			{
-				ps.close();
-				rs.close();
-			}
-			catch(Exception ex)
+			metrics.error("saveAddedContributionUnbatched");
+			close(pc, rs, ps);
+			if(pc != null)
 			{
+				try
+				{
+					pc.getConnection().rollback();
+				}
+				catch(Exception ex)
+				{
+				}
 			}
+			invalidate(pc);
+			return false;
 		}
 	}
 
@@ -211,13 +817,22 @@ public class DatabasePlugin
 	 */
 	public int createStory(String storyName)
 	{
+		long start = System.nanoTime();
 		int storyId = -1;
+		PooledConnection pc = null;
 		PreparedStatement ps = null;
-
 		ResultSet rs = null;
 		try
 		{
-			ps = conn.prepareStatement("INSERT INTO stories values (null, ?, '', null, 0, 0, 0);", Statement.RETURN_GENERATED_KEYS); 
+			pc = borrow();
+			if(!segmentStorage && sequenceTracked == null)
+			{
+				prepareSequences(pc);
+			}
+			
+			// sql/stories_last_sequence.sql adds last_sequence as the last column
+			ps = pc.prepareStatement(Boolean.TRUE.equals(sequenceTracked) ? "INSERT INTO stories values (null, ?, '', null, 0, 0, 0, -1);"
+					: "INSERT INTO stories values (null, ?, '', null, 0, 0, 0);", Statement.RETURN_GENERATED_KEYS);
 			ps.setString(1, storyName);
 			ps.executeUpdate();
 			
@@ -227,29 +842,463 @@ public class DatabasePlugin
 			{
 				storyId = rs.getInt(1);
 			}
+			close(pc, rs, ps);
+			rs = null;
 			
 			// Create a default story tag for this story
-			ps = conn.prepareStatement("INSERT INTO story_tags values(null, ?, ?, 1);");
+			ps = pc.prepareStatement("INSERT INTO story_tags values(null, ?, ?, 1);");
 			ps.setInt(1, storyId);
 			ps.setInt(2, 99); // 99 is fixed "all categories" identifier
 			ps.executeUpdate();
+			close(pc, null, ps);
+			
+			pool.release(pc);
+			metrics.record("createStory", start);
 		}
 		catch(Exception e)
 		{
 			e.printStackTrace();
+			metrics.error("createStory");
+			close(pc, rs, ps);
+			invalidate(pc);
+		}
+		return storyId;
+	}
+	
+	/**
+	 * Returns the id of a user, from the user cache if possible
+	 * 
+	 * @param pc
+	 * @param nickname
+	 * @return user id, -1 if there is no such user
+	 * @throws SQLException
+	 */
+	private int getUserId(PooledConnection pc, String nickname) throws SQLException
+	{
+		UserDirectory.User user = users.get(nickname);
+		if(user == null)
+		{
+			user = loadUser(pc, nickname);
+		}
+		return user.getUserId();
+	}
+	
+	/**
+	 * Reads a user from the database into the user cache
+	 * 
+	 * @param pc
+	 * @param nickname
+	 * @return User, with id -1 if there is no such user
+	 * @throws SQLException
+	 */
+	private UserDirectory.User loadUser(PooledConnection pc, String nickname) throws SQLException
+	{
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try
+		{
+			long start = System.nanoTime();
+			ps = pc.prepareStatement("SELECT user_ID, password FROM users WHERE nickname = ?");
+			ps.setString(1, nickname);
+			rs = ps.executeQuery();
+			metrics.record("loadUser", start);
+			if(!rs.next())
+			{
+				return users.put(nickname, -1, null);
+			}
+			return users.put(nickname, rs.getInt(1), rs.getString(2));
 		}
 		finally
 		{
-			try
+			close(pc, rs, ps);
+		}
+	}
+	
+	/**
+	 * Checks whether user_stories has a unique key on (user_FK, story_FK),
+	 * which INSERT ... ON DUPLICATE KEY UPDATE needs. The schema is not
+	 * changed here: without the key, which sql/user_stories_unique_key.sql
+	 * adds, contributions are saved with the old statements.
+	 * 
+	 * @param pc
+	 */
+	private void prepareUpserts(PooledConnection pc)
+	{
+		ResultSet rs = null;
+		try
+		{
+			// Look for a unique index covering exactly the two columns
+			HashMap<String, Integer> columns = new HashMap<String, Integer>();
+			rs = pc.getConnection().getMetaData().getIndexInfo(null, null, "user_stories", true, false);
+			while(rs.next())
 			{
-				ps.close();
+				String index = rs.getString("INDEX_NAME");
+				String column = rs.getString("COLUMN_NAME");
+				if("user_FK".equalsIgnoreCase(column) || "story_FK".equalsIgnoreCase(column))
+				{
+					columns.put(index, columns.containsKey(index) ? columns.get(index) + 1 : 1);
+				}
+				else
+				{
+					columns.put(index, -100);
+				}
 			}
-			catch(Exception ex)
+			close(pc, rs, null);
+			rs = null;
+			upsertSupported = Boolean.valueOf(columns.containsValue(2));
+			if(!upsertSupported.booleanValue())
 			{
-				
+				log("user_stories has no unique (user_FK, story_FK) key, saving contributions unbatched. "
+						+ "Run sql/user_stories_unique_key.sql to add it");
 			}
 		}
-		return storyId;
+		catch(SQLException e)
+		{
+			log("Can not check user_stories keys, saving contributions unbatched: " + e.getMessage());
+			upsertSupported = Boolean.FALSE;
+		}
+		finally
+		{
+			close(pc, rs, null);
+		}
+	}
+	
+	/**
+	 * Finishes a story. With segment storage the story's body_text is
+	 * built from its segments in one pass.
+	 * 
+	 * @param storyId
+	 * @return TRUE if the story was finished
+	 */
+	public boolean finishStory(int storyId)
+	{
+		if(!segmentStorage)
+		{
+			return true;
+		}
+		long start = System.nanoTime();
+		PooledConnection pc = null;
+		PreparedStatement ps = null;
+		try
+		{
+			pc = borrow();
+			String body = readSegments(pc, storyId);
+			
+			ps = pc.prepareStatement("UPDATE stories SET body_text = ? WHERE story_ID = ?");
+			ps.setString(1, body);
+			ps.setInt(2, storyId);
+			ps.executeUpdate();
+			close(pc, null, ps);
+			
+			log("Story " + storyId + " materialised, " + body.length() + " chars");
+			pool.release(pc);
+			metrics.record("finishStory", start);
+			return true;
+		}
+		catch(Exception e)
+		{
+			e.printStackTrace();
+			metrics.error("finishStory");
+			close(pc, null, ps);
+			invalidate(pc);
+			return false;
+		}
+	}
+	
+	/**
+	 * Returns the whole text of a story. With segment storage the text is
+	 * put together from the segments, whether the story is finished or not.
+	 * 
+	 * @param storyId
+	 * @return story text, or null on error
+	 */
+	public String getStoryText(int storyId)
+	{
+		long start = System.nanoTime();
+		PooledConnection pc = null;
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try
+		{
+			pc = borrow();
+			String body = null;
+			if(segmentStorage)
+			{
+				body = readSegments(pc, storyId);
+			}
+			else
+			{
+				ps = pc.prepareStatement("SELECT body_text FROM stories WHERE story_ID = ?");
+				ps.setInt(1, storyId);
+				rs = ps.executeQuery();
+				body = rs.next() ? rs.getString(1) : "";
+				close(pc, rs, ps);
+			}
+			pool.release(pc);
+			metrics.record("getStoryText", start);
+			return body;
+		}
+		catch(Exception e)
+		{
+			e.printStackTrace();
+			metrics.error("getStoryText");
+			close(pc, rs, ps);
+			invalidate(pc);
+			return null;
+		}
+	}
+	
+	/**
+	 * Passes the text of every story, oldest first, to a handler with one
+	 * query. The rows are streamed from the server, so only the story being
+	 * handled is held in memory. With segment storage the segments of all
+	 * stories are read in order and joined per story. The connection is
+	 * held until every story has been handled, so the handler must be quick.
+	 * 
+	 * @param handler
+	 * @return number of stories handled, -1 on error
+	 */
+	public int forEachStoryText(StoryTextHandler handler)
+	{
+		long start = System.nanoTime();
+		PooledConnection pc = null;
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try
+		{
+			pc = borrow();
+			String sql = segmentStorage ? "SELECT story_FK, body_text FROM story_segments ORDER BY story_FK, sequence"
+					: "SELECT story_ID, body_text FROM stories ORDER BY story_ID";
+			// A streamed result set can not be cached with the statement, it is closed here
+			ps = pc.getConnection().prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+			ps.setFetchSize(Integer.MIN_VALUE);
+			rs = ps.executeQuery();
+			int count = 0;
+			int storyId = -1;
+			StringBuilder body = null;
+			while(rs.next())
+			{
+				if(body != null && rs.getInt(1) != storyId)
+				{
+					handler.storyText(storyId, body.toString());
+					count++;
+					body = null;
+				}
+				if(body == null)
+				{
+					storyId = rs.getInt(1);
+					body = new StringBuilder();
+				}
+				String text = rs.getString(2);
+				if(text != null)
+				{
+					body.append(text);
+				}
+			}
+			if(body != null)
+			{
+				handler.storyText(storyId, body.toString());
+				count++;
+			}
+			close(null, rs, ps);
+			pool.release(pc);
+			metrics.record("forEachStoryText", start);
+			return count;
+		}
+		catch(Exception e)
+		{
+			e.printStackTrace();
+			metrics.error("forEachStoryText");
+			close(null, rs, ps);
+			invalidate(pc);
+			return -1;
+		}
+	}
+	
+	/**
+	 * Reads all segments of a story in order and joins them
+	 * 
+	 * @param pc
+	 * @param storyId
+	 * @return story text
+	 * @throws SQLException
+	 */
+	private String readSegments(PooledConnection pc, int storyId) throws SQLException
+	{
+		PreparedStatement ps = null;
+		ResultSet rs = null;
+		try
+		{
+			ps = pc.prepareStatement("SELECT body_text FROM story_segments WHERE story_FK = ? ORDER BY sequence");
+			ps.setInt(1, storyId);
+			rs = ps.executeQuery();
+			StringBuilder body = new StringBuilder();
+			while(rs.next())
+			{
+				body.append(rs.getString(1));
+			}
+			return body.toString();
+		}
+		finally
+		{
+			close(pc, rs, ps);
+		}
+	}
+	
+	/**
+	 * Checks whether stories has the last_sequence column that keeps concat
+	 * storage from appending a replayed contribution twice. The schema is
+	 * not changed here, sql/stories_last_sequence.sql adds the column.
+	 * 
+	 * @param pc
+	 * @throws SQLException
+	 */
+	private void prepareSequences(PooledConnection pc) throws SQLException
+	{
+		ResultSet rs = null;
+		try
+		{
+			rs = pc.getConnection().getMetaData().getColumns(null, null, "stories", "last_sequence");
+			sequenceTracked = Boolean.valueOf(rs.next());
+			if(!sequenceTracked.booleanValue())
+			{
+				log("stories has no last_sequence column, contributions replayed from the journal would be appended twice. "
+						+ "Run sql/stories_last_sequence.sql to add it");
+			}
+		}
+		finally
+		{
+			close(pc, rs, null);
+		}
+	}
+	
+	/**
+	 * Checks that the segment table exists. The schema is not changed here,
+	 * sql/story_segments.sql creates the table and migrates the stories
+	 * written with concat storage into it.
+	 * 
+	 * @param pc
+	 * @throws SQLException if there is no segment table
+	 */
+	private void prepareSegments(PooledConnection pc) throws SQLException
+	{
+		ResultSet rs = null;
+		try
+		{
+			rs = pc.getConnection().getMetaData().getTables(null, null, "story_segments", null);
+			if(!rs.next())
+			{
+				throw new SQLException("STORY_STORAGE=segments needs the story_segments table, run sql/story_segments.sql to create it");
+			}
+			segmentsReady = true;
+		}
+		finally
+		{
+			close(pc, rs, null);
+		}
+	}
+	
+	/**
+	 * Borrows a connection from the pool
+	 * 
+	 * @return PooledConnection
+	 * @throws SQLException if not connected or no connection is available
+	 */
+	private PooledConnection borrow() throws SQLException
+	{
+		if(pool == null)
+		{
+			throw new SQLException("Not connected to database");
+		}
+		long start = System.nanoTime();
+		try
+		{
+			PooledConnection pc = pool.borrow();
+			metrics.record("borrow", start);
+			return pc;
+		}
+		catch(SQLException e)
+		{
+			metrics.error("borrow");
+			throw e;
+		}
+	}
+	
+	/**
+	 * Drops a connection that failed during an operation from the pool,
+	 * so that the next operation gets a fresh connection
+	 * 
+	 * @param pc may be null if borrowing failed
+	 */
+	private void invalidate(PooledConnection pc)
+	{
+		if(pc != null)
+		{
+			pool.invalidate(pc);
+		}
+	}
+	
+	/**
+	 * Closes a result set and gives a statement back to the connection's
+	 * statement cache, ignoring errors
+	 * 
+	 * @param pc connection the statement belongs to
+	 * @param rs may be null
+	 * @param ps may be null
+	 */
+	private void close(PooledConnection pc, ResultSet rs, Statement ps)
+	{
+		try
+		{
+			if(rs != null)
+			{
+				rs.close();
+			}
+		}
+		catch(Exception ex)
+		{
+		}
+		if(ps == null)
+		{
+			return;
+		}
+		if(pc != null)
+		{
+			pc.releaseStatement(ps);
+			return;
+		}
+		try
+		{
+			ps.close();
+		}
+		catch(Exception ex)
+		{
+		}
+	}
+	
+	/**
+	 * Reads an integer setting, using the default if it is missing or invalid
+	 * 
+	 * @param name
+	 * @param defaultValue
+	 * @return int
+	 */
+	private int getIntSetting(String name, int defaultValue)
+	{
+		String value = properties.get(name);
+		if(value == null)
+		{
+			return defaultValue;
+		}
+		try
+		{
+			return Integer.parseInt(value.trim());
+		}
+		catch(NumberFormatException e)
+		{
+			log("Invalid value for setting " + name + ": " + value);
+			return defaultValue;
+		}
 	}
 	
 	/**
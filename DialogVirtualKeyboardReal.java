@@ -29,11 +29,48 @@ import javax.swing.text.JTextComponent;
 public class DialogVirtualKeyboardReal extends javax.swing.JDialog {
 
 	private boolean flipped = false;
+
+	// Angle of the keyboard, flipped is set when it is more upside down than not
+	private Orientation orientation = Orientation.NORMAL;
+	
+	// Paint the keyboard as one component instead of a button per key
+	private boolean painted = false;
 	
 	/** Creates new form DialogVirtualKeyboard */
 	public DialogVirtualKeyboardReal(java.awt.Frame parent, boolean modal, boolean flipped) {
+		this(parent, modal, flipped, false);
+	}
+
+	/**
+	 * Creates new form DialogVirtualKeyboard
+	 *
+	 * @param parent
+	 * @param modal
+	 * @param flipped Defines whether the keyboard is rotated upside down or not
+	 * @param painted Use PaintedKeyboard instead of PanelVirtualKeyboardReal
+	 */
+	public DialogVirtualKeyboardReal(java.awt.Frame parent, boolean modal, boolean flipped, boolean painted) {
+		this(parent, modal, flipped ? Orientation.FLIPPED : Orientation.NORMAL, painted);
+	}
+
+	/**
+	 * Creates new form DialogVirtualKeyboard
+	 *
+	 * @param parent
+	 * @param modal
+	 * @param orientation Angle of the keyboard, a painted keyboard can only
+	 * be turned upside down, at other angles the button keyboard is used
+	 * @param painted Use PaintedKeyboard instead of PanelVirtualKeyboardReal
+	 */
+	public DialogVirtualKeyboardReal(java.awt.Frame parent, boolean modal, Orientation orientation, boolean painted) {
 		super(parent, modal);
-		this.flipped = flipped;
+		this.orientation = orientation;
+		this.flipped = orientation.isUpsideDown();
+		if(painted && !orientation.isNormal() && !orientation.isHalfTurn()) {
+			log("A painted keyboard cannot be turned by " + orientation + ", using the button keyboard");
+			painted = false;
+		}
+		this.painted = painted;
 		this.setUndecorated(true);
 		initComponents();
 		panelVirtualKeyboard.setWindow(this);
@@ -83,8 +120,36 @@ public class DialogVirtualKeyboardReal extends javax.swing.JDialog {
 	 */
 	public void setTextComponent(JTextComponent textComponent) {
 		panelVirtualKeyboard.setTextComponent(textComponent);
+		if(suggestionStrip != null) suggestionStrip.setTextComponent(textComponent);
+	}
+
+	/**
+	 * Show suggested words above the keys for the user, e.g. below them on
+	 * the screen for a flipped keyboard. The words can only be turned by
+	 * quarter turns, at other angles they are not shown.
+	 *
+	 * @param predictor
+	 */
+	public void setWordPredictor(WordPredictor predictor) {
+		if(suggestionStrip != null) {
+			suggestionStrip.setTextComponent(null);
+			getContentPane().remove(suggestionStrip);
+			suggestionStrip = null;
+		}
+		if(predictor != null && !orientation.isQuarterTurn()) {
+			log("Word suggestions cannot be turned by " + orientation + ", not showing them");
+		} else if(predictor != null) {
+			suggestionStrip = new SuggestionStrip(predictor, predictor.getMaxSuggestions(), orientation);
+			suggestionStrip.setTextComponent(panelVirtualKeyboard.getTextComponent());
+			getContentPane().add(suggestionStrip, suggestionStrip.getEdge());
+		}
+		pack();
 	}
 	
+	public void setLatencyMonitor(InputLatencyMonitor latencyMonitor) {
+		panelVirtualKeyboard.setLatencyMonitor(latencyMonitor);
+	}
+
 	public void setTextDialog(JDialog textComponent) {
 		panelVirtualKeyboard.setTextDialog(textComponent);
 	}	
@@ -192,7 +257,11 @@ public class DialogVirtualKeyboardReal extends javax.swing.JDialog {
 	// <editor-fold defaultstate="collapsed" desc="Generated Code">//GEN-BEGIN:initComponents
 	private void initComponents() {
 
-		panelVirtualKeyboard = new PanelVirtualKeyboardReal(flipped);
+		if(painted) {
+			panelVirtualKeyboard = new PaintedKeyboard(flipped);
+		} else {
+			panelVirtualKeyboard = new PanelVirtualKeyboardReal(orientation);
+		}
 
 		setDefaultCloseOperation(javax.swing.WindowConstants.DISPOSE_ON_CLOSE);
 		addWindowFocusListener(new java.awt.event.WindowFocusListener() {
@@ -202,7 +271,7 @@ public class DialogVirtualKeyboardReal extends javax.swing.JDialog {
 				formWindowLostFocus(evt);
 			}
 		});
-		getContentPane().add(panelVirtualKeyboard, java.awt.BorderLayout.CENTER);
+		getContentPane().add((Component)panelVirtualKeyboard, java.awt.BorderLayout.CENTER);
 
 		pack();
 	}// </editor-fold>//GEN-END:initComponents
@@ -266,6 +335,19 @@ public class DialogVirtualKeyboardReal extends javax.swing.JDialog {
 
 
 	// Variables declaration - do not modify//GEN-BEGIN:variables
-	private PanelVirtualKeyboardReal panelVirtualKeyboard;
+	private VirtualKeyboard panelVirtualKeyboard;
 	// End of variables declaration//GEN-END:variables
+
+	// Suggested words, null if word prediction is not used
+	private SuggestionStrip suggestionStrip = null;
+
+	/**
+	 * Simple convenience method for logging text to console output.
+	 * Should be replaced with a log file in the future
+	 *
+	 * @param log
+	 */
+	private void log(String text) {
+		System.out.println(text);
+	}
 }
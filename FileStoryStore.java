@@ -0,0 +1,368 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.TreeMap;
+
+/**
+ * Class for storing stories in a single local file, so that a table can
+ * be run without a database server.
+ *
+ * The file is a RecordFile, the same format as the story journal. It is
+ * read into memory when the store is opened; every change is appended and
+ * synced to the disk once per call. A torn record at the end of the file is
+ * cut off when the file is opened.
+ *
+ * There is no users table: a user only exists once a password has been
+ * stored for it with setUserPassword(), and the application itself never
+ * creates users. Until then getUserPassword() returns null, so only guests
+ * can log in at a table using the file store.
+ */
+public class FileStoryStore implements StoryStore
+{
+	// Record types
+	private static final byte RECORD_STORY 			= 1;
+	private static final byte RECORD_CONTRIBUTION 	= 2;
+	private static final byte RECORD_FINISH 		= 3;
+	private static final byte RECORD_PASSWORD 		= 4;
+
+	/**
+	 * One story and its contributions by sequence
+	 */
+	private static class Story
+	{
+		String name;
+		TreeMap<Integer, String> segments = new TreeMap<Integer, String>();
+		boolean finished = false;
+
+		Story(String name)
+		{
+			this.name = name;
+		}
+	}
+
+	private RecordFile records;
+
+	private int lastStoryId = 0;
+	private HashMap<Integer, Story> stories = new HashMap<Integer, Story>();
+	private HashMap<String, String> passwords = new HashMap<String, String>();
+
+	// Metrics
+	private long contributionCount = 0;
+	private long syncCount = 0;
+	private long totalSyncNanos = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param fileName
+	 */
+	public FileStoryStore(String fileName)
+	{
+		this.records = new RecordFile(new File(fileName));
+	}
+
+	// Overridden method
+	public synchronized boolean connect() throws Exception
+	{
+		long discarded = records.open(new RecordFile.RecordHandler() {
+			public void record(DataInputStream payload) throws IOException
+			{
+				readRecord(payload);
+			}
+		});
+		if(discarded > 0)
+		{
+			log("Story file: discarding " + discarded + " bytes of incomplete records");
+		}
+		log("Using story file " + records.getFile() + ", " + stories.size() + " stories");
+		return true;
+	}
+
+	// Overridden method
+	public synchronized void disconnect()
+	{
+		if(!records.isOpen())
+		{
+			return;
+		}
+		log("Story file: " + getStatistics());
+		try
+		{
+			records.close();
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+	// Overridden method
+	public synchronized boolean isReachable()
+	{
+		return records.isOpen();
+	}
+
+	// Overridden method
+	public synchronized int createStory(String storyName)
+	{
+		try
+		{
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeByte(RECORD_STORY);
+			out.writeInt(lastStoryId + 1);
+			RecordFile.writeString(out, storyName);
+			out.flush();
+			records.write(bytes.toByteArray());
+			sync();
+			lastStoryId++;
+			stories.put(lastStoryId, new Story(storyName));
+			return lastStoryId;
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+			return -1;
+		}
+	}
+
+	// Overridden method
+	public synchronized boolean saveAddedContributions(List<StoryEvent> contributions)
+	{
+		try
+		{
+			for(StoryEvent e : contributions)
+			{
+				Story story = stories.get(e.getStoryId());
+				if(story == null)
+				{
+					log("Contribution to unknown story " + e.getStoryId());
+					return false;
+				}
+				if(story.segments.containsKey(e.getSequence()))
+				{
+					// Replayed from the journal
+					continue;
+				}
+				String text = e.getText().replace("\n", "<br>");
+				ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+				DataOutputStream out = new DataOutputStream(bytes);
+				out.writeByte(RECORD_CONTRIBUTION);
+				out.writeInt(e.getStoryId());
+				out.writeInt(e.getSequence());
+				RecordFile.writeString(out, e.getUserName());
+				RecordFile.writeString(out, text);
+				out.writeInt(e.getTrashedChars());
+				out.flush();
+				records.write(bytes.toByteArray());
+				story.segments.put(e.getSequence(), text);
+				contributionCount++;
+			}
+			// One disk sync for the whole batch
+			sync();
+			return true;
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	// Overridden method
+	public synchronized boolean finishStory(int storyId)
+	{
+		Story story = stories.get(storyId);
+		if(story == null || story.finished)
+		{
+			return true;
+		}
+		try
+		{
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeByte(RECORD_FINISH);
+			out.writeInt(storyId);
+			out.flush();
+			records.write(bytes.toByteArray());
+			sync();
+			story.finished = true;
+			return true;
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	// Overridden method
+	public synchronized String getStoryText(int storyId)
+	{
+		Story story = stories.get(storyId);
+		if(story == null)
+		{
+			return "";
+		}
+		StringBuilder body = new StringBuilder();
+		for(String segment : story.segments.values())
+		{
+			body.append(segment);
+		}
+		return body.toString();
+	}
+
+	// Overridden method
+	public synchronized int forEachStoryText(StoryTextHandler handler)
+	{
+		ArrayList<Integer> ids = new ArrayList<Integer>(stories.keySet());
+		Collections.sort(ids);
+		for(int id : ids)
+		{
+			handler.storyText(id, getStoryText(id));
+		}
+		return ids.size();
+	}
+
+	/**
+	 * Returns the password stored with setUserPassword(). The file has no
+	 * users table, so this is null for every user whose password has not
+	 * been stored that way.
+	 *
+	 * @param nickname
+	 * @return password, null if no password has been stored for the user
+	 */
+	public synchronized String getUserPassword(String nickname)
+	{
+		String password = passwords.get(nickname);
+		if(password == null)
+		{
+			log("Story file has no password for user " + nickname + ", only guests can log in without a users table");
+		}
+		return password;
+	}
+
+	// Overridden method
+	public synchronized boolean setUserPassword(String nickname, String password)
+	{
+		try
+		{
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeByte(RECORD_PASSWORD);
+			RecordFile.writeString(out, nickname);
+			RecordFile.writeString(out, password);
+			out.flush();
+			records.write(bytes.toByteArray());
+			sync();
+			passwords.put(nickname, password);
+			return true;
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+			return false;
+		}
+	}
+
+	// Overridden method
+	public void invalidateUser(String nickname)
+	{
+		// Users are always read from memory
+	}
+
+	// Overridden method
+	public boolean isReplaySafe()
+	{
+		return true;
+	}
+
+	// Overridden method
+	public synchronized String getStatistics()
+	{
+		long size = 0;
+		try
+		{
+			size = records.size();
+		}
+		catch(IOException e)
+		{
+		}
+		return "stories=" + stories.size() + " contributions=" + contributionCount + " bytes=" + size
+				+ " syncs=" + syncCount + String.format(" avgSyncMs=%.2f", syncCount == 0 ? 0 : totalSyncNanos / 1000000.0 / syncCount);
+	}
+
+	/**
+	 * Reads one record of the file into memory
+	 *
+	 * @param record
+	 * @throws IOException
+	 */
+	private void readRecord(DataInputStream record) throws IOException
+	{
+		byte recordType = record.readByte();
+		if(recordType == RECORD_STORY)
+		{
+			int id = record.readInt();
+			stories.put(id, new Story(RecordFile.readString(record)));
+			lastStoryId = Math.max(lastStoryId, id);
+		}
+		else if(recordType == RECORD_CONTRIBUTION)
+		{
+			Story story = stories.get(record.readInt());
+			int sequence = record.readInt();
+			RecordFile.readString(record);
+			String text = RecordFile.readString(record);
+			if(story != null)
+			{
+				story.segments.put(sequence, text);
+				contributionCount++;
+			}
+		}
+		else if(recordType == RECORD_FINISH)
+		{
+			Story story = stories.get(record.readInt());
+			if(story != null)
+			{
+				story.finished = true;
+			}
+		}
+		else if(recordType == RECORD_PASSWORD)
+		{
+			String nickname = RecordFile.readString(record);
+			passwords.put(nickname, RecordFile.readString(record));
+		}
+	}
+
+	/**
+	 * Forces appended records to the disk
+	 *
+	 * @throws IOException
+	 */
+	private void sync() throws IOException
+	{
+		long start = System.nanoTime();
+		if(records.force())
+		{
+			syncCount++;
+			totalSyncNanos += System.nanoTime() - start;
+		}
+	}
+
+	/**
+	 * Simple convenience method for logging text to console output.
+	 * Should be replaced with a log file in the future
+	 *
+	 * @param log
+	 */
+	private void log(String text)
+	{
+		System.out.println(text);
+	}
+}
@@ -0,0 +1,295 @@
+import java.awt.AlphaComposite;
+import java.awt.Component;
+import java.awt.Composite;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.GraphicsConfiguration;
+import java.awt.GraphicsEnvironment;
+import java.awt.Image;
+import java.awt.Rectangle;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+
+/**
+ * Class for painting a component upside down through an offscreen surface.
+ *
+ * The component paints itself unrotated into the surface, and the surface
+ * is drawn with both axes mirrored, which turns it exactly half a turn.
+ * The mirroring maps every pixel onto one pixel, so no interpolation or
+ * quality hints are needed and the drawing is a plain blit instead of a
+ * rotated transform. The surface keeps its contents between paints: only
+ * the part asked for is painted again, or nothing if the contents are
+ * still valid.
+ *
+ * The surface is a VolatileImage where the graphics device can accelerate
+ * it, and a BufferedImage if there is no screen or the volatile image keeps
+ * losing its contents. The mode can be switched off for the application,
+ * and the components then rotate their Graphics as before. Used on the
+ * Swing event thread only.
+ */
+public class FlippedSurface
+{
+	/**
+	 * Paints the unrotated contents into the surface
+	 */
+	public interface Painter
+	{
+		public void paintSurface(Graphics2D g);
+	}
+
+	// Times a volatile image may lose its contents in one paint
+	private static final int MAX_ATTEMPTS = 3;
+
+	private static boolean enabled = true;
+
+	private boolean opaque;
+	private int width = 0;
+	private int height = 0;
+	private VolatileImage volatileImage = null;
+	private BufferedImage bufferedImage = null;
+	private boolean volatileAllowed = true;
+	private boolean valid = false;
+
+	// Metrics
+	private long fullPaints = 0;
+	private long partialPaints = 0;
+	private long blits = 0;
+	private long contentsLost = 0;
+
+	/**
+	 * Sets whether flipped components paint through surfaces
+	 *
+	 * @param enabled
+	 */
+	public static void setEnabled(boolean enabled)
+	{
+		FlippedSurface.enabled = enabled;
+	}
+
+	public static boolean isEnabled()
+	{
+		return enabled;
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param opaque TRUE if the painter covers every pixel it paints
+	 */
+	public FlippedSurface(boolean opaque)
+	{
+		this.opaque = opaque;
+	}
+
+	/**
+	 * Marks the contents as changed, so the next paint paints them all
+	 */
+	public void invalidate()
+	{
+		valid = false;
+	}
+
+	/**
+	 * Draws the contents turned half a turn into an area at the origin
+	 * of a Graphics
+	 *
+	 * @param g
+	 * @param c Component painted, for its graphics configuration
+	 * @param width Width of the area
+	 * @param height Height of the area
+	 * @param area Part of the unrotated contents that changed, null if only
+	 * invalidate() changes them
+	 * @param painter
+	 */
+	public void paint(Graphics g, Component c, int width, int height, Rectangle area, Painter painter)
+	{
+		if(width <= 0 || height <= 0)
+		{
+			return;
+		}
+		if(width != this.width || height != this.height)
+		{
+			flush();
+			this.width = width;
+			this.height = height;
+		}
+		Rectangle bounds = new Rectangle(0, 0, width, height);
+		if(area != null)
+		{
+			area = area.intersection(bounds);
+			if(area.isEmpty())
+			{
+				return;
+			}
+		}
+		for(int attempt = 0; attempt < MAX_ATTEMPTS; attempt++)
+		{
+			Image surface = getSurface(c);
+			if(!valid)
+			{
+				render(surface, bounds, painter);
+				fullPaints++;
+				valid = true;
+			}
+			else if(area != null)
+			{
+				render(surface, area, painter);
+				partialPaints++;
+			}
+			Rectangle r = area == null ? bounds : area;
+			g.drawImage(surface, width - r.x, height - r.y, width - r.x - r.width, height - r.y - r.height,
+					r.x, r.y, r.x + r.width, r.y + r.height, null);
+			blits++;
+			if(volatileImage == null || !volatileImage.contentsLost())
+			{
+				return;
+			}
+			contentsLost++;
+			valid = false;
+		}
+		// The device keeps dropping the image, stay in memory from now on
+		log("Offscreen surface keeps losing its contents, using a buffered image");
+		volatileAllowed = false;
+		flush();
+		paint(g, c, width, height, null, painter);
+	}
+
+	/**
+	 * Returns the part of the unrotated contents shown in a clip of the
+	 * turned area
+	 *
+	 * @param clip Clip of the Graphics, can be null
+	 * @param width Width of the area
+	 * @param height Height of the area
+	 * @return Rectangle
+	 */
+	public static Rectangle unrotate(Rectangle clip, int width, int height)
+	{
+		if(clip == null)
+		{
+			return new Rectangle(0, 0, width, height);
+		}
+		return new Rectangle(width - clip.x - clip.width, height - clip.y - clip.height, clip.width, clip.height);
+	}
+
+	/**
+	 * Releases the surface, it is created again when needed
+	 */
+	public void flush()
+	{
+		if(volatileImage != null)
+		{
+			volatileImage.flush();
+			volatileImage = null;
+		}
+		bufferedImage = null;
+		valid = false;
+	}
+
+	/**
+	 * Returns whether the surface is a volatile image
+	 *
+	 * @return TRUE if the surface may be accelerated
+	 */
+	public boolean isVolatile()
+	{
+		return volatileImage != null;
+	}
+
+	/**
+	 * Returns the surface metrics as text
+	 *
+	 * @return String
+	 */
+	public String getStatistics()
+	{
+		return (volatileImage != null ? "volatile" : "buffered") + " " + width + "x" + height + " fullPaints=" + fullPaints
+				+ " partialPaints=" + partialPaints + " blits=" + blits + " contentsLost=" + contentsLost;
+	}
+
+	/**
+	 * Returns a surface of the current size, creating or restoring it
+	 *
+	 * @param c
+	 * @return Image
+	 */
+	private Image getSurface(Component c)
+	{
+		GraphicsConfiguration gc = c.getGraphicsConfiguration();
+		if(gc == null && !GraphicsEnvironment.isHeadless())
+		{
+			gc = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice().getDefaultConfiguration();
+		}
+		int transparency = opaque ? Transparency.OPAQUE : Transparency.TRANSLUCENT;
+		if(volatileAllowed && gc != null)
+		{
+			int status = volatileImage == null ? VolatileImage.IMAGE_OK : volatileImage.validate(gc);
+			if(status == VolatileImage.IMAGE_INCOMPATIBLE)
+			{
+				// Moved to another screen
+				flush();
+			}
+			else if(status == VolatileImage.IMAGE_RESTORED)
+			{
+				contentsLost++;
+				valid = false;
+			}
+			if(volatileImage == null)
+			{
+				volatileImage = gc.createCompatibleVolatileImage(width, height, transparency);
+				valid = false;
+			}
+			if(volatileImage != null)
+			{
+				return volatileImage;
+			}
+		}
+		if(bufferedImage == null)
+		{
+			bufferedImage = gc != null ? gc.createCompatibleImage(width, height, transparency)
+					: new BufferedImage(width, height, opaque ? BufferedImage.TYPE_INT_RGB : BufferedImage.TYPE_INT_ARGB);
+			valid = false;
+		}
+		return bufferedImage;
+	}
+
+	/**
+	 * Paints a part of the contents into the surface
+	 *
+	 * @param surface
+	 * @param area
+	 * @param painter
+	 */
+	private void render(Image surface, Rectangle area, Painter painter)
+	{
+		Graphics2D g = (Graphics2D)surface.getGraphics();
+		try
+		{
+			g.clipRect(area.x, area.y, area.width, area.height);
+			if(!opaque)
+			{
+				Composite composite = g.getComposite();
+				g.setComposite(AlphaComposite.Clear);
+				g.fillRect(area.x, area.y, area.width, area.height);
+				g.setComposite(composite);
+			}
+			painter.paintSurface(g);
+		}
+		finally
+		{
+			g.dispose();
+		}
+	}
+
+	/**
+	 * Simple convenience method for logging text to console output.
+	 * Should be replaced with a log file in the future
+	 *
+	 * @param log
+	 */
+	private void log(String text)
+	{
+		System.out.println(text);
+	}
+}
@@ -0,0 +1,281 @@
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.Graphics2D;
+import java.awt.Insets;
+import java.awt.image.BufferedImage;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.swing.AbstractButton;
+import javax.swing.ButtonModel;
+import javax.swing.Icon;
+import javax.swing.border.Border;
+
+/**
+ * Class for sharing the images of rotating buttons.
+ *
+ * A rotating button paints itself once into an image and draws the image
+ * rotated. Buttons that look the same, e.g. the same key on the four
+ * keyboards or a key returning to a state it has been in before, get the
+ * same image from this cache instead of allocating and painting a new one.
+ * The image is unrotated, so flipped and normal buttons share it too.
+ *
+ * The cache is bounded and drops the least recently used images. There is
+ * one cache for the whole application and it is only used on the Swing
+ * event thread.
+ */
+public class GlyphSpriteCache
+{
+	/**
+	 * Paints a button into a new sprite
+	 */
+	public interface Painter
+	{
+		public void paintSprite(Graphics2D g);
+	}
+
+	/**
+	 * Everything a button image depends on. Each button keeps one key that
+	 * is refilled for lookups, so finding a cached image does not allocate.
+	 */
+	public static class Key
+	{
+		private Class<?> type;
+		private String text;
+		private Icon icon;
+		private Font font;
+		private Color foreground;
+		private Color background;
+		private Border border;
+		private Insets margin;
+		private int width;
+		private int height;
+		// Model state bits, see STATE_*
+		private int state;
+		private int hash;
+
+		/**
+		 * Fills the key from the current look of a button
+		 *
+		 * @param b
+		 * @param width Width of the image
+		 * @param height Height of the image
+		 */
+		void set(AbstractButton b, int width, int height)
+		{
+			ButtonModel m = b.getModel();
+			type = b.getClass();
+			text = b.getText();
+			icon = b.getIcon();
+			font = b.getFont();
+			foreground = b.getForeground();
+			background = b.getBackground();
+			border = b.getBorder();
+			margin = b.getMargin();
+			this.width = width;
+			this.height = height;
+			state = (m.isArmed() ? STATE_ARMED : 0) | (m.isPressed() ? STATE_PRESSED : 0)
+					| (m.isRollover() ? STATE_ROLLOVER : 0) | (m.isSelected() ? STATE_SELECTED : 0)
+					| (m.isEnabled() ? STATE_ENABLED : 0) | (b.isFocusOwner() ? STATE_FOCUSED : 0);
+
+			int h = type.hashCode();
+			h = 31 * h + (text == null ? 0 : text.hashCode());
+			h = 31 * h + (icon == null ? 0 : System.identityHashCode(icon));
+			h = 31 * h + (font == null ? 0 : font.hashCode());
+			h = 31 * h + (foreground == null ? 0 : foreground.hashCode());
+			h = 31 * h + (background == null ? 0 : background.hashCode());
+			h = 31 * h + (border == null ? 0 : System.identityHashCode(border));
+			h = 31 * h + (margin == null ? 0 : margin.hashCode());
+			h = 31 * h + width;
+			h = 31 * h + height;
+			hash = 31 * h + state;
+		}
+
+		/**
+		 * Returns a copy of this key to be stored in the cache
+		 *
+		 * @return Key
+		 */
+		Key copy()
+		{
+			Key k = new Key();
+			k.type = type;
+			k.text = text;
+			k.icon = icon;
+			k.font = font;
+			k.foreground = foreground;
+			k.background = background;
+			k.border = border;
+			k.margin = margin == null ? null : (Insets)margin.clone();
+			k.width = width;
+			k.height = height;
+			k.state = state;
+			k.hash = hash;
+			return k;
+		}
+
+		// Overridden method
+		public int hashCode()
+		{
+			return hash;
+		}
+
+		// Overridden method
+		public boolean equals(Object o)
+		{
+			if(!(o instanceof Key))
+			{
+				return false;
+			}
+			Key k = (Key)o;
+			return hash == k.hash && width == k.width && height == k.height && state == k.state && type == k.type
+					&& icon == k.icon && border == k.border && equal(text, k.text) && equal(font, k.font)
+					&& equal(foreground, k.foreground) && equal(background, k.background) && equal(margin, k.margin);
+		}
+
+		private static boolean equal(Object a, Object b)
+		{
+			return a == null ? b == null : a.equals(b);
+		}
+	}
+
+	private static final int STATE_ARMED 	= 1;
+	private static final int STATE_PRESSED 	= 2;
+	private static final int STATE_ROLLOVER = 4;
+	private static final int STATE_SELECTED = 8;
+	private static final int STATE_ENABLED 	= 16;
+	private static final int STATE_FOCUSED 	= 32;
+
+	private static final GlyphSpriteCache instance = new GlyphSpriteCache(1024);
+
+	private int maxEntries;
+	private LinkedHashMap<Key, BufferedImage> sprites;
+
+	// Metrics
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+
+	/**
+	 * Returns the cache of the application
+	 *
+	 * @return GlyphSpriteCache
+	 */
+	public static GlyphSpriteCache getInstance()
+	{
+		return instance;
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxEntries
+	 */
+	private GlyphSpriteCache(int maxEntries)
+	{
+		this.maxEntries = maxEntries;
+		sprites = new LinkedHashMap<Key, BufferedImage>(64, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<Key, BufferedImage> eldest)
+			{
+				if(size() > GlyphSpriteCache.this.maxEntries)
+				{
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Sets the largest number of images kept
+	 *
+	 * @param maxEntries
+	 */
+	public void setMaxEntries(int maxEntries)
+	{
+		this.maxEntries = Math.max(1, maxEntries);
+		while(sprites.size() > this.maxEntries)
+		{
+			sprites.remove(sprites.keySet().iterator().next());
+			evictions++;
+		}
+	}
+
+	/**
+	 * Returns the image of a button in its current state, painting it
+	 * on a miss. The returned image must not be drawn into.
+	 *
+	 * @param button
+	 * @param probe Key owned by the button, refilled for the lookup
+	 * @param painter Paints the button when there is no image yet
+	 * @return BufferedImage
+	 */
+	public BufferedImage getSprite(AbstractButton button, Key probe, Painter painter)
+	{
+		int width = Math.max(1, button.getWidth());
+		int height = Math.max(1, button.getHeight());
+		probe.set(button, width, height);
+		BufferedImage sprite = sprites.get(probe);
+		if(sprite != null)
+		{
+			hits++;
+			return sprite;
+		}
+		misses++;
+		sprite = new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB);
+		Graphics2D g = sprite.createGraphics();
+		try
+		{
+			painter.paintSprite(g);
+		}
+		finally
+		{
+			g.dispose();
+		}
+		sprites.put(probe.copy(), sprite);
+		return sprite;
+	}
+
+	/**
+	 * Drops all images
+	 */
+	public void clear()
+	{
+		sprites.clear();
+	}
+
+	public long getHits()
+	{
+		return hits;
+	}
+
+	public long getMisses()
+	{
+		return misses;
+	}
+
+	public long getEvictions()
+	{
+		return evictions;
+	}
+
+	public int size()
+	{
+		return sprites.size();
+	}
+
+	/**
+	 * Returns the cache metrics as text
+	 *
+	 * @return String
+	 */
+	public String getStatistics()
+	{
+		long lookups = hits + misses;
+		return "sprites=" + sprites.size() + "/" + maxEntries + " hits=" + hits + " misses=" + misses + " evictions=" + evictions
+				+ String.format(" hitRate=%.1f%%", lookups == 0 ? 0 : 100.0 * hits / lookups);
+	}
+}
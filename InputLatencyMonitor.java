@@ -0,0 +1,411 @@
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Class for measuring how long it takes from touching a key until the
+ * text area shows the result, for one keyboard.
+ *
+ * A keystroke starts with the AWT event of the key and ends when the text
+ * area has been painted after it. On the way, the time spent in each phase
+ * is added up: waiting in the event queue, editing the document, relabelling
+ * the keys, painting key images, database calls on the event thread and
+ * painting the text area. The totals and the phases are recorded into
+ * LatencyHistograms, and a keystroke slower than the slow limit is logged
+ * with the phase that took most of the time.
+ *
+ * Phases are timed with begin() and end() around the work. They may nest,
+ * and a phase only gets the time not spent in the phases inside it. Only
+ * work done while a key is being handled is counted. Apart from reading the
+ * histograms everything here happens on the Swing event thread.
+ *
+ * The metrics of all keyboards can be written to a file periodically, and
+ * each text area can show a small overlay of its keyboard's latencies.
+ */
+public class InputLatencyMonitor
+{
+	public static final int QUEUE 		= 0;	// AWT event until the key is handled
+	public static final int EDIT 		= 1;	// Document update and its listeners
+	public static final int LABELS 		= 2;	// Relabelling keys for the layer
+	public static final int IMAGES 		= 3;	// Painting key images
+	public static final int DATABASE 	= 4;	// Database calls on the event thread
+	public static final int PAINT 		= 5;	// Painting the text area
+	public static final int PHASES 		= 6;
+
+	private static final String[] PHASE_NAMES = {"queue", "edit", "labels", "images", "database", "paint"};
+
+	// All monitors, for the periodic dump
+	private static CopyOnWriteArrayList<InputLatencyMonitor> monitors = new CopyOnWriteArrayList<InputLatencyMonitor>();
+
+	private static long slowNanos = 50 * 1000000L;
+	private static boolean overlayVisible = false;
+	private static Timer dumpTimer = null;
+
+	// Monitor whose key is being handled, event thread only
+	private static InputLatencyMonitor active = null;
+	private static volatile Thread eventThread = null;
+	// Time spent in nested phases, by nesting depth, event thread only
+	private static long[] childNanos = new long[16];
+	private static int depth = 0;
+
+	private String name;
+	private LatencyHistogram total = new LatencyHistogram();
+	private LatencyHistogram[] phases = new LatencyHistogram[PHASES];
+	private long[] slowByPhase = new long[PHASES];
+	private volatile long slowCount = 0;
+	private volatile long unpaintedCount = 0;
+
+	// Keystroke waiting for the text area to be painted, event thread only
+	private boolean pending = false;
+	private long keystrokeStart = 0;
+	private long[] keystrokePhases = new long[PHASES];
+
+	// Overlay text, refreshed at most twice a second
+	private String overlayText = "";
+	private long overlayUpdated = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param name Name of the keyboard, e.g. its default user name
+	 */
+	public InputLatencyMonitor(String name)
+	{
+		this.name = name;
+		for(int i = 0; i < PHASES; i++)
+		{
+			phases[i] = new LatencyHistogram();
+		}
+		monitors.add(this);
+	}
+
+	/**
+	 * Sets the limit for logging a slow keystroke and whether the text
+	 * areas show the overlay
+	 *
+	 * @param slowMillis
+	 * @param overlay
+	 */
+	public static void configure(int slowMillis, boolean overlay)
+	{
+		slowNanos = Math.max(1, slowMillis) * 1000000L;
+		overlayVisible = overlay;
+	}
+
+	/**
+	 * Starts appending the metrics of all keyboards to a file
+	 *
+	 * @param file
+	 * @param intervalSeconds 0 disables the dump
+	 */
+	public static synchronized void startDump(final String file, int intervalSeconds)
+	{
+		if(intervalSeconds <= 0 || dumpTimer != null)
+		{
+			return;
+		}
+		dumpTimer = new Timer("InputLatencyMonitor-dump", true);
+		long interval = intervalSeconds * 1000L;
+		dumpTimer.schedule(new TimerTask() {
+			public void run()
+			{
+				dump(file);
+			}
+		}, interval, interval);
+	}
+
+	/**
+	 * Stops the periodic dump
+	 */
+	public static synchronized void stopDump()
+	{
+		if(dumpTimer != null)
+		{
+			dumpTimer.cancel();
+			dumpTimer = null;
+		}
+	}
+
+	/**
+	 * Appends the metrics of all keyboards to a file
+	 *
+	 * @param file
+	 */
+	public static void dump(String file)
+	{
+		PrintWriter out = null;
+		try
+		{
+			out = new PrintWriter(new FileWriter(file, true));
+			String time = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss").format(new Date());
+			for(InputLatencyMonitor monitor : monitors)
+			{
+				for(String line : monitor.getSummaries())
+				{
+					out.println(time + " " + line);
+				}
+			}
+		}
+		catch(IOException e)
+		{
+			log("Could not write input latencies to " + file + ": " + e.getMessage());
+		}
+		finally
+		{
+			if(out != null)
+			{
+				out.close();
+			}
+		}
+	}
+
+	/**
+	 * Starts timing a phase of the key being handled
+	 *
+	 * @return start time for end(), 0 if no key is being handled
+	 */
+	public static long begin()
+	{
+		if(active == null || Thread.currentThread() != eventThread)
+		{
+			return 0;
+		}
+		if(depth < childNanos.length)
+		{
+			childNanos[depth] = 0;
+		}
+		depth++;
+		return System.nanoTime();
+	}
+
+	/**
+	 * Ends a phase started with begin()
+	 *
+	 * @param phase
+	 * @param start Value returned by begin()
+	 */
+	public static void end(int phase, long start)
+	{
+		if(start == 0 || depth == 0)
+		{
+			return;
+		}
+		long elapsed = System.nanoTime() - start;
+		depth--;
+		long self = elapsed - (depth < childNanos.length ? childNanos[depth] : 0);
+		if(depth > 0 && depth - 1 < childNanos.length)
+		{
+			childNanos[depth - 1] += elapsed;
+		}
+		if(active != null)
+		{
+			active.keystrokePhases[phase] += Math.max(0, self);
+		}
+	}
+
+	/**
+	 * Adds work that was timed without begin(), e.g. a database call.
+	 * Ignored if no key is being handled.
+	 *
+	 * @param phase
+	 * @param startNanos System.nanoTime() when the work started
+	 */
+	public static void phase(int phase, long startNanos)
+	{
+		if(Thread.currentThread() != eventThread || active == null)
+		{
+			return;
+		}
+		long elapsed = System.nanoTime() - startNanos;
+		if(depth > 0 && depth - 1 < childNanos.length)
+		{
+			childNanos[depth - 1] += elapsed;
+		}
+		active.keystrokePhases[phase] += elapsed;
+	}
+
+	/**
+	 * Called when a key of this keyboard is about to be handled
+	 *
+	 * @param eventWhen Time of the AWT event in milliseconds, 0 if unknown
+	 */
+	public void keyPressed(long eventWhen)
+	{
+		long now = System.nanoTime();
+		if(pending)
+		{
+			// The previous key did not change the text, e.g. shift
+			unpaintedCount++;
+			recordPhases();
+		}
+		long queued = eventWhen > 0 ? Math.max(0, System.currentTimeMillis() - eventWhen) * 1000000L : 0;
+		for(int i = 0; i < PHASES; i++)
+		{
+			keystrokePhases[i] = 0;
+		}
+		keystrokePhases[QUEUE] = queued;
+		keystrokeStart = now - queued;
+		pending = true;
+		active = this;
+		eventThread = Thread.currentThread();
+		depth = 0;
+	}
+
+	/**
+	 * Called when a key of this keyboard has been handled
+	 */
+	public void keyHandled()
+	{
+		if(active == this)
+		{
+			active = null;
+			depth = 0;
+		}
+	}
+
+	/**
+	 * Called when the text area of this keyboard has been painted
+	 *
+	 * @param paintStart System.nanoTime() when the paint started
+	 */
+	public void painted(long paintStart)
+	{
+		if(!pending)
+		{
+			return;
+		}
+		long now = System.nanoTime();
+		pending = false;
+		keystrokePhases[PAINT] += now - paintStart;
+		long elapsed = now - keystrokeStart;
+		total.record(elapsed);
+		recordPhases();
+		if(elapsed >= slowNanos)
+		{
+			int slowest = 0;
+			for(int i = 1; i < PHASES; i++)
+			{
+				if(keystrokePhases[i] > keystrokePhases[slowest])
+				{
+					slowest = i;
+				}
+			}
+			slowByPhase[slowest]++;
+			slowCount++;
+			StringBuilder text = new StringBuilder();
+			for(int i = 0; i < PHASES; i++)
+			{
+				text.append(String.format(" %s=%.1f", PHASE_NAMES[i], keystrokePhases[i] / 1e6));
+			}
+			log(String.format("Slow keystroke on %s: %.1f ms, mostly %s,%s ms", name, elapsed / 1e6, PHASE_NAMES[slowest], text));
+		}
+	}
+
+	/**
+	 * Paints the latencies of this keyboard in a corner, if the overlay is on
+	 *
+	 * @param g
+	 * @param width Width of the painted area
+	 */
+	public void paintOverlay(Graphics2D g, int width)
+	{
+		if(!overlayVisible)
+		{
+			return;
+		}
+		long now = System.currentTimeMillis();
+		if(now - overlayUpdated > 500)
+		{
+			overlayText = String.format("p50 %.1f  p99 %.1f  max %.1f ms  slow %d", total.getPercentile(50) / 1e6,
+					total.getPercentile(99) / 1e6, total.getMax() / 1e6, slowCount);
+			overlayUpdated = now;
+		}
+		Font font = g.getFont();
+		Color color = g.getColor();
+		g.setFont(font.deriveFont(Font.PLAIN, 10f));
+		FontMetrics fm = g.getFontMetrics();
+		int x = width - fm.stringWidth(overlayText) - 4;
+		g.setColor(new Color(255, 255, 200, 200));
+		g.fillRect(x - 2, 2, fm.stringWidth(overlayText) + 4, fm.getHeight());
+		g.setColor(Color.DARK_GRAY);
+		g.drawString(overlayText, x, 2 + fm.getAscent());
+		g.setFont(font);
+		g.setColor(color);
+	}
+
+	/**
+	 * Returns the latencies of this keyboard as lines of text
+	 *
+	 * @return lines
+	 */
+	public String[] getSummaries()
+	{
+		String[] lines = new String[PHASES + 1];
+		lines[0] = name + " total: " + total + " slow=" + slowCount + " unpainted=" + unpaintedCount;
+		for(int i = 0; i < PHASES; i++)
+		{
+			lines[i + 1] = name + " " + PHASE_NAMES[i] + ": " + phases[i] + " slowest=" + slowByPhase[i];
+		}
+		return lines;
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	/**
+	 * Returns the latencies from key to painted text
+	 *
+	 * @return LatencyHistogram
+	 */
+	public LatencyHistogram getTotal()
+	{
+		return total;
+	}
+
+	/**
+	 * Returns the latencies of a phase per keystroke
+	 *
+	 * @param phase
+	 * @return LatencyHistogram
+	 */
+	public LatencyHistogram getPhase(int phase)
+	{
+		return phases[phase];
+	}
+
+	/**
+	 * Records the phases of the finished keystroke
+	 */
+	private void recordPhases()
+	{
+		for(int i = 0; i < PHASES; i++)
+		{
+			if(keystrokePhases[i] > 0)
+			{
+				phases[i].record(keystrokePhases[i]);
+			}
+		}
+	}
+
+	/**
+	 * Simple convenience method for logging text to console output.
+	 * Should be replaced with a log file in the future
+	 *
+	 * @param log
+	 */
+	private static void log(String text)
+	{
+		System.out.println(text);
+	}
+}
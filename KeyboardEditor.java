@@ -0,0 +1,177 @@
+import javax.swing.text.AbstractDocument;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.JTextComponent;
+
+/**
+ * Class for applying virtual keyboard keystrokes to a text component.
+ *
+ * Every keystroke is a single insert or remove on the Document at the
+ * caret, so the cost of a key press does not depend on how long the text
+ * already is. Replacing the whole text with setText() copied the draft
+ * twice, rebuilt all of its elements and threw away the undo history and
+ * the document listeners' view of what changed.
+ */
+public class KeyboardEditor
+{
+	private JTextComponent textComponent = null;
+
+	/**
+	 * Constructor
+	 *
+	 * @param textComponent Can be null, then keystrokes are ignored
+	 */
+	public KeyboardEditor(JTextComponent textComponent)
+	{
+		this.textComponent = textComponent;
+	}
+
+	public JTextComponent getTextComponent()
+	{
+		return textComponent;
+	}
+
+	public void setTextComponent(JTextComponent textComponent)
+	{
+		this.textComponent = textComponent;
+	}
+
+	/**
+	 * Inserts text at the caret and moves the caret after it.
+	 * A selection is replaced by the text.
+	 *
+	 * @param text
+	 * @return TRUE if the text was inserted
+	 */
+	public boolean insert(String text)
+	{
+		if(textComponent == null || text == null || text.length() == 0)
+		{
+			return false;
+		}
+		Document doc = textComponent.getDocument();
+		int start = textComponent.getSelectionStart();
+		int end = textComponent.getSelectionEnd();
+		long phaseStart = InputLatencyMonitor.begin();
+		try
+		{
+			if(end > start && doc instanceof AbstractDocument)
+			{
+				((AbstractDocument)doc).replace(start, end - start, text, null);
+			}
+			else
+			{
+				if(end > start)
+				{
+					doc.remove(start, end - start);
+				}
+				doc.insertString(start, text, null);
+			}
+			textComponent.setCaretPosition(Math.min(start + text.length(), doc.getLength()));
+			return true;
+		}
+		catch(BadLocationException e)
+		{
+			log("Could not insert text at " + start + ": " + e.getMessage());
+			return false;
+		}
+		finally
+		{
+			InputLatencyMonitor.end(InputLatencyMonitor.EDIT, phaseStart);
+		}
+	}
+
+	/**
+	 * Removes the character before the caret, or the selection if there is one
+	 *
+	 * @return TRUE if something was removed
+	 */
+	public boolean backspace()
+	{
+		if(textComponent == null)
+		{
+			return false;
+		}
+		Document doc = textComponent.getDocument();
+		int start = textComponent.getSelectionStart();
+		int end = textComponent.getSelectionEnd();
+		if(end == start)
+		{
+			if(start <= 0)
+			{
+				return false;
+			}
+			start--;
+		}
+		long phaseStart = InputLatencyMonitor.begin();
+		try
+		{
+			doc.remove(start, end - start);
+			textComponent.setCaretPosition(Math.min(start, doc.getLength()));
+			return true;
+		}
+		catch(BadLocationException e)
+		{
+			log("Could not remove text at " + start + ": " + e.getMessage());
+			return false;
+		}
+		finally
+		{
+			InputLatencyMonitor.end(InputLatencyMonitor.EDIT, phaseStart);
+		}
+	}
+
+	/**
+	 * Replaces the characters just before the caret with text in one edit,
+	 * e.g. the typed part of a word with the whole word
+	 *
+	 * @param length Number of characters before the caret to replace
+	 * @param text
+	 * @return TRUE if the text was replaced
+	 */
+	public boolean replaceBeforeCaret(int length, String text)
+	{
+		if(textComponent == null || text == null)
+		{
+			return false;
+		}
+		Document doc = textComponent.getDocument();
+		int end = textComponent.getCaretPosition();
+		int start = Math.max(0, end - length);
+		long phaseStart = InputLatencyMonitor.begin();
+		try
+		{
+			if(doc instanceof AbstractDocument)
+			{
+				((AbstractDocument)doc).replace(start, end - start, text, null);
+			}
+			else
+			{
+				doc.remove(start, end - start);
+				doc.insertString(start, text, null);
+			}
+			textComponent.setCaretPosition(Math.min(start + text.length(), doc.getLength()));
+			return true;
+		}
+		catch(BadLocationException e)
+		{
+			log("Could not replace text at " + start + ": " + e.getMessage());
+			return false;
+		}
+		finally
+		{
+			InputLatencyMonitor.end(InputLatencyMonitor.EDIT, phaseStart);
+		}
+	}
+
+	/**
+	 * Simple convenience method for logging text to console output.
+	 * Should be replaced with a log file in the future
+	 *
+	 * @param log
+	 */
+	private void log(String text)
+	{
+		System.out.println(text);
+	}
+}
@@ -0,0 +1,194 @@
+import java.awt.Component;
+import java.awt.Container;
+import java.awt.Dimension;
+import java.awt.LayoutManager;
+import java.awt.LayoutManager2;
+import java.awt.Rectangle;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Class for laying out the keys of a virtual keyboard.
+ *
+ * The key rectangles are computed by a KeyGeometry once per panel size and
+ * cached. Laying out again with the same size only moves keys whose bounds
+ * differ from the cached ones, so the relayouts triggered by the keys
+ * themselves (text, margin and preferred size changes) settle without
+ * further work. A keyboard is flipped or not for its whole life, so the flip
+ * state is part of the geometry; call reset() if anything else it depends on,
+ * such as the gap, changes.
+ *
+ * Preferred, minimum and maximum sizes are taken from the layout the panel
+ * was designed with.
+ */
+public class KeyboardLayout implements LayoutManager2
+{
+	/**
+	 * Computes the bounds of every key for a panel size
+	 */
+	public interface KeyGeometry
+	{
+		public void computeKeyBounds(int width, int height, Map<Component, Rectangle> bounds);
+	}
+
+	private LayoutManager sizes;
+	private KeyGeometry geometry;
+
+	private Map<Component, Rectangle> bounds = new IdentityHashMap<Component, Rectangle>();
+	private int boundsWidth = -1;
+	private int boundsHeight = -1;
+
+	// Metrics
+	private long layoutCount = 0;
+	private long computeCount = 0;
+	private long moveCount = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param sizes Layout the sizes of the panel are taken from, can be null
+	 * @param geometry
+	 */
+	public KeyboardLayout(LayoutManager sizes, KeyGeometry geometry)
+	{
+		this.sizes = sizes;
+		this.geometry = geometry;
+	}
+
+	/**
+	 * Forgets the cached key bounds, they are computed again on the next layout
+	 */
+	public void reset()
+	{
+		boundsWidth = -1;
+		boundsHeight = -1;
+	}
+
+	// Overridden method
+	public void layoutContainer(Container parent)
+	{
+		layoutCount++;
+		int width = parent.getWidth();
+		int height = parent.getHeight();
+		if(width != boundsWidth || height != boundsHeight)
+		{
+			bounds.clear();
+			geometry.computeKeyBounds(width, height, bounds);
+			boundsWidth = width;
+			boundsHeight = height;
+			computeCount++;
+		}
+		for(Map.Entry<Component, Rectangle> e : bounds.entrySet())
+		{
+			Component c = e.getKey();
+			Rectangle r = e.getValue();
+			if(c.getX() != r.x || c.getY() != r.y || c.getWidth() != r.width || c.getHeight() != r.height)
+			{
+				c.setBounds(r.x, r.y, r.width, r.height);
+				moveCount++;
+			}
+		}
+	}
+
+	/**
+	 * Returns how many times the keyboard has been laid out
+	 *
+	 * @return count
+	 */
+	public long getLayoutCount()
+	{
+		return layoutCount;
+	}
+
+	/**
+	 * Returns how many times the key bounds have been computed
+	 *
+	 * @return count
+	 */
+	public long getComputeCount()
+	{
+		return computeCount;
+	}
+
+	/**
+	 * Returns how many times a key has been moved or resized
+	 *
+	 * @return count
+	 */
+	public long getMoveCount()
+	{
+		return moveCount;
+	}
+
+	// Overridden method
+	public Dimension preferredLayoutSize(Container parent)
+	{
+		return sizes == null ? parent.getSize() : sizes.preferredLayoutSize(parent);
+	}
+
+	// Overridden method
+	public Dimension minimumLayoutSize(Container parent)
+	{
+		return sizes == null ? new Dimension(0, 0) : sizes.minimumLayoutSize(parent);
+	}
+
+	// Overridden method
+	public Dimension maximumLayoutSize(Container parent)
+	{
+		if(sizes instanceof LayoutManager2)
+		{
+			return ((LayoutManager2)sizes).maximumLayoutSize(parent);
+		}
+		return new Dimension(Integer.MAX_VALUE, Integer.MAX_VALUE);
+	}
+
+	// Overridden method
+	public void addLayoutComponent(String name, Component comp)
+	{
+		if(sizes != null)
+		{
+			sizes.addLayoutComponent(name, comp);
+		}
+	}
+
+	// Overridden method
+	public void addLayoutComponent(Component comp, Object constraints)
+	{
+		if(sizes instanceof LayoutManager2)
+		{
+			((LayoutManager2)sizes).addLayoutComponent(comp, constraints);
+		}
+	}
+
+	// Overridden method
+	public void removeLayoutComponent(Component comp)
+	{
+		if(sizes != null)
+		{
+			sizes.removeLayoutComponent(comp);
+		}
+		bounds.remove(comp);
+	}
+
+	// Overridden method
+	public float getLayoutAlignmentX(Container target)
+	{
+		return sizes instanceof LayoutManager2 ? ((LayoutManager2)sizes).getLayoutAlignmentX(target) : 0.5f;
+	}
+
+	// Overridden method
+	public float getLayoutAlignmentY(Container target)
+	{
+		return sizes instanceof LayoutManager2 ? ((LayoutManager2)sizes).getLayoutAlignmentY(target) : 0.5f;
+	}
+
+	// Overridden method
+	public void invalidateLayout(Container target)
+	{
+		// The key bounds only depend on the panel size, which is checked on layout
+		if(sizes instanceof LayoutManager2)
+		{
+			((LayoutManager2)sizes).invalidateLayout(target);
+		}
+	}
+}
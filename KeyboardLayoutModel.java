@@ -0,0 +1,470 @@
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.MissingResourceException;
+import java.util.Properties;
+import java.util.ResourceBundle;
+
+/**
+ * Class for a keyboard layout read from a layout file.
+ *
+ * A layout file is a properties file:
+ *
+ *   locale=fi_FI          Locale of the labels
+ *   columns=15            Width of the keyboard in key widths
+ *   rows=5                Height of the keyboard in key heights
+ *   width=532             Preferred size of the keyboard in pixels
+ *   height=231
+ *   row.1=jBR1B1 jBR1B2 ... @BACKSPACE:2
+ *   jBR1B1=1              Labels of the normal, shifted and Alt Gr layers
+ *   jBR1B1_0=!
+ *   jBR1B1_1=
+ *
+ * A row lists its keys from left to right. "id[:width[:height]]" is a
+ * character key, "@TYPE[:width[:height]]" a special key (BACKSPACE, TAB,
+ * ENTER, CAPS, SHIFT or SPACE) and "_:width" empty space. Widths are in
+ * columns and heights in rows, both default to 1. A key higher than one row
+ * must not overlap the keys of the rows below it. Labels that are not in the
+ * file are read from the lang.Keyboard resource bundle of the locale, so a
+ * new language only needs a new layout file or bundle.
+ *
+ * The keys are kept in primitive arrays in row order, so computing the key
+ * bounds and finding the key under a point are simple loops.
+ */
+public class KeyboardLayoutModel
+{
+	public static final int LAYERS = 3;
+
+	// Key types
+	public static final int KEY_CHARACTER 	= 0;
+	public static final int KEY_BACKSPACE 	= 1;
+	public static final int KEY_TAB 		= 2;
+	public static final int KEY_ENTER 		= 3;
+	public static final int KEY_CAPS_LOCK 	= 4;
+	public static final int KEY_SHIFT 		= 5;
+	public static final int KEY_SPACE 		= 6;
+
+	private static final String[] TYPE_NAMES = { null, "BACKSPACE", "TAB", "ENTER", "CAPS", "SHIFT", "SPACE" };
+	private static final String[] TYPE_ICONS = { null, "/images/backspace.gif", "/images/tab.gif", "/images/enter.gif",
+			"/images/shiftInvert.gif", "/images/shift.gif", "/images/space.gif" };
+	private static final String[] LAYER_SUFFIXES = { "", "_0", "_1" };
+
+	// Layout used by keyboards unless another one is chosen
+	private static String defaultLayout = "keyboard_fi_FI.layout";
+	// Loaded layouts by name, guarded by itself
+	private static final HashMap<String, KeyboardLayoutModel> loaded = new HashMap<String, KeyboardLayoutModel>();
+
+	private String name;
+	private Locale locale;
+	private int columns;
+	private int rows;
+	private int preferredWidth;
+	private int preferredHeight;
+
+	private int keyCount;
+	private String[] ids;
+	private int[] types;
+	// Position and size of each key in columns and rows
+	private float[] column;
+	private float[] row;
+	private float[] columnSpan;
+	private float[] rowSpan;
+	// Labels by layer and key, null for keys without a label
+	private String[][] labels;
+
+	/**
+	 * Sets the layout file used by getDefault()
+	 *
+	 * @param name File name or class path resource
+	 */
+	public static void setDefaultLayout(String name)
+	{
+		defaultLayout = name;
+	}
+
+	/**
+	 * Returns the default layout
+	 *
+	 * @return KeyboardLayoutModel or null if it could not be loaded
+	 */
+	public static KeyboardLayoutModel getDefault()
+	{
+		return getInstance(defaultLayout);
+	}
+
+	/**
+	 * Returns the layout for a locale, "keyboard_[locale].layout"
+	 *
+	 * @param locale
+	 * @return KeyboardLayoutModel or null if there is no layout for the locale
+	 */
+	public static KeyboardLayoutModel forLocale(Locale locale)
+	{
+		return getInstance("keyboard_" + locale + ".layout");
+	}
+
+	/**
+	 * Returns a layout, loading it on first use. The layout is read from
+	 * the file with the given name, or from the class path if there is no
+	 * such file.
+	 *
+	 * @param name
+	 * @return KeyboardLayoutModel or null if it could not be loaded
+	 */
+	public static KeyboardLayoutModel getInstance(String name)
+	{
+		synchronized(loaded)
+		{
+			KeyboardLayoutModel model = loaded.get(name);
+			if(model == null)
+			{
+				try
+				{
+					model = load(name);
+				}
+				catch(Exception e)
+				{
+					log("Could not load keyboard layout " + name + ": " + e.getMessage());
+					return null;
+				}
+				loaded.put(name, model);
+			}
+			return model;
+		}
+	}
+
+	/**
+	 * Reads a layout
+	 *
+	 * @param name
+	 * @return KeyboardLayoutModel
+	 * @throws IOException
+	 */
+	private static KeyboardLayoutModel load(String name) throws IOException
+	{
+		InputStream in;
+		File file = new File(name);
+		if(file.isFile())
+		{
+			in = new FileInputStream(file);
+		}
+		else
+		{
+			in = KeyboardLayoutModel.class.getResourceAsStream("/" + name);
+			if(in == null)
+			{
+				throw new IOException("not found");
+			}
+		}
+		Properties properties = new Properties();
+		try
+		{
+			properties.load(in);
+		}
+		finally
+		{
+			in.close();
+		}
+		return new KeyboardLayoutModel(name, properties);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param name
+	 * @param properties Contents of the layout file
+	 * @throws IOException If the layout is not valid
+	 */
+	private KeyboardLayoutModel(String name, Properties properties) throws IOException
+	{
+		this.name = name;
+		locale = parseLocale(properties.getProperty("locale", "fi_FI"));
+
+		ArrayList<String> keyIds = new ArrayList<String>();
+		ArrayList<Integer> keyTypes = new ArrayList<Integer>();
+		ArrayList<float[]> keyBounds = new ArrayList<float[]>();
+		int rowCount = 0;
+		float maxColumns = 0;
+		for(int r = 1; properties.containsKey("row." + r); r++)
+		{
+			float x = 0;
+			for(String token : properties.getProperty("row." + r).trim().split("\\s+"))
+			{
+				if(token.length() == 0)
+				{
+					continue;
+				}
+				String[] parts = token.split(":");
+				float width = parts.length > 1 ? parseSize(parts[1], token) : 1;
+				float height = parts.length > 2 ? parseSize(parts[2], token) : 1;
+				String id = parts[0];
+				if(!id.equals("_"))
+				{
+					int type = KEY_CHARACTER;
+					if(id.startsWith("@"))
+					{
+						type = typeOf(id.substring(1));
+						if(type < 0)
+						{
+							throw new IOException("unknown key type " + token + " on row " + r);
+						}
+					}
+					keyIds.add(id);
+					keyTypes.add(type);
+					keyBounds.add(new float[] { x, r - 1, width, height });
+				}
+				x += width;
+			}
+			maxColumns = Math.max(maxColumns, x);
+			rowCount = r;
+		}
+		if(keyIds.isEmpty())
+		{
+			throw new IOException("no keys");
+		}
+		columns = Integer.parseInt(properties.getProperty("columns", String.valueOf((int)Math.ceil(maxColumns))).trim());
+		rows = Integer.parseInt(properties.getProperty("rows", String.valueOf(rowCount)).trim());
+		preferredWidth = Integer.parseInt(properties.getProperty("width", String.valueOf(columns * 36)).trim());
+		preferredHeight = Integer.parseInt(properties.getProperty("height", String.valueOf(rows * 46)).trim());
+
+		keyCount = keyIds.size();
+		ids = keyIds.toArray(new String[keyCount]);
+		types = new int[keyCount];
+		column = new float[keyCount];
+		row = new float[keyCount];
+		columnSpan = new float[keyCount];
+		rowSpan = new float[keyCount];
+		for(int i = 0; i < keyCount; i++)
+		{
+			float[] b = keyBounds.get(i);
+			types[i] = keyTypes.get(i);
+			column[i] = b[0];
+			row[i] = b[1];
+			columnSpan[i] = b[2];
+			rowSpan[i] = b[3];
+		}
+
+		ResourceBundle bundle = null;
+		try
+		{
+			bundle = ResourceBundle.getBundle("lang.Keyboard", locale);
+		}
+		catch(MissingResourceException e)
+		{
+			// All labels must then be in the layout file
+		}
+		labels = new String[LAYERS][keyCount];
+		for(int layer = 0; layer < LAYERS; layer++)
+		{
+			for(int i = 0; i < keyCount; i++)
+			{
+				if(types[i] != KEY_CHARACTER)
+				{
+					continue;
+				}
+				String key = ids[i] + LAYER_SUFFIXES[layer];
+				String label = properties.getProperty(key);
+				if(label == null && bundle != null && bundle.containsKey(key))
+				{
+					label = bundle.getString(key);
+				}
+				labels[layer][i] = label;
+			}
+		}
+	}
+
+	public String getName()
+	{
+		return name;
+	}
+
+	public Locale getLocale()
+	{
+		return locale;
+	}
+
+	public int getColumns()
+	{
+		return columns;
+	}
+
+	public int getRows()
+	{
+		return rows;
+	}
+
+	public int getPreferredWidth()
+	{
+		return preferredWidth;
+	}
+
+	public int getPreferredHeight()
+	{
+		return preferredHeight;
+	}
+
+	public int getKeyCount()
+	{
+		return keyCount;
+	}
+
+	/**
+	 * Returns the id of a key, e.g. "jBR1B1" or "@SHIFT"
+	 *
+	 * @param key
+	 * @return String
+	 */
+	public String getId(int key)
+	{
+		return ids[key];
+	}
+
+	/**
+	 * Returns the type of a key, one of KEY_*
+	 *
+	 * @param key
+	 * @return int
+	 */
+	public int getType(int key)
+	{
+		return types[key];
+	}
+
+	/**
+	 * Returns the class path of the icon of a special key
+	 *
+	 * @param key
+	 * @return resource name or null
+	 */
+	public String getIcon(int key)
+	{
+		return TYPE_ICONS[types[key]];
+	}
+
+	/**
+	 * Returns the labels of a layer. The array must not be modified.
+	 *
+	 * @param layer 0 - 2
+	 * @return labels indexed by key, null for keys without a label
+	 */
+	public String[] getLabels(int layer)
+	{
+		return labels[layer];
+	}
+
+	/**
+	 * Computes the bounds of every key for a keyboard size. The keys fill
+	 * the keyboard with the given gap around them; a flipped keyboard is the
+	 * same layout turned upside down.
+	 *
+	 * @param width Width of keyboard
+	 * @param height Height of keyboard
+	 * @param gap Space between keys
+	 * @param flipped
+	 * @param x Filled with the x of each key
+	 * @param y Filled with the y of each key
+	 * @param w Filled with the width of each key
+	 * @param h Filled with the height of each key
+	 */
+	public void computeBounds(int width, int height, int gap, boolean flipped, int[] x, int[] y, int[] w, int[] h)
+	{
+		float pitchX = (width - gap) / (float)columns;
+		float pitchY = (height - gap) / (float)rows;
+		for(int i = 0; i < keyCount; i++)
+		{
+			int left = Math.round(column[i] * pitchX);
+			int top = Math.round(row[i] * pitchY);
+			w[i] = Math.max(0, Math.round((column[i] + columnSpan[i]) * pitchX) - left - gap);
+			h[i] = Math.max(0, Math.round((row[i] + rowSpan[i]) * pitchY) - top - gap);
+			x[i] = gap + left;
+			y[i] = gap + top;
+			if(flipped)
+			{
+				x[i] = width - x[i] - w[i];
+				y[i] = height - y[i] - h[i];
+			}
+		}
+	}
+
+	/**
+	 * Returns the key at a point
+	 *
+	 * @param px
+	 * @param py
+	 * @param x Key bounds from computeBounds()
+	 * @param y
+	 * @param w
+	 * @param h
+	 * @return key or -1 if there is no key at the point
+	 */
+	public int keyAt(int px, int py, int[] x, int[] y, int[] w, int[] h)
+	{
+		for(int i = 0; i < keyCount; i++)
+		{
+			if(px >= x[i] && py >= y[i] && px < x[i] + w[i] && py < y[i] + h[i])
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Returns the key type with the given name
+	 *
+	 * @param typeName
+	 * @return KEY_* or -1
+	 */
+	private static int typeOf(String typeName)
+	{
+		for(int i = 1; i < TYPE_NAMES.length; i++)
+		{
+			if(TYPE_NAMES[i].equalsIgnoreCase(typeName))
+			{
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	private static float parseSize(String s, String token) throws IOException
+	{
+		try
+		{
+			float f = Float.parseFloat(s);
+			if(f > 0)
+			{
+				return f;
+			}
+		}
+		catch(NumberFormatException e)
+		{
+		}
+		throw new IOException("invalid size in " + token);
+	}
+
+	private static Locale parseLocale(String s)
+	{
+		String[] parts = s.trim().split("_");
+		if(parts.length > 1)
+		{
+			return new Locale(parts[0], parts[1]);
+		}
+		return new Locale(parts[0]);
+	}
+
+	/**
+	 * Simple convenience method for logging text to console output.
+	 * Should be replaced with a log file in the future
+	 *
+	 * @param log
+	 */
+	private static void log(String text)
+	{
+		System.out.println(text);
+	}
+}
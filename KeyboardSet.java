@@ -45,8 +45,13 @@ public class KeyboardSet {
 	private int posX = -1;
 	private int posY = -1;
 	private boolean flipped = false;
+	// Angle of the keyboard and the text area of this seat
+	private Orientation orientation = Orientation.NORMAL;
 	private int keyboardState = -1;
 	private int trashedChars = 0;
+	
+	// TRUE while the database write queue is nearly full and no more text should be submitted
+	private boolean writeQueueSaturated = false;
 
 	// Parent application
 	iUbiStoriesApplication app = null;
@@ -58,13 +63,16 @@ public class KeyboardSet {
 	
 	// The keyboard
 	private DialogVirtualKeyboardReal keyBoardDialog = null;
+
+	// Measures the time from a key press until the text is painted
+	private InputLatencyMonitor latencyMonitor = null;
 	
 	// Action buttons
 	private ActionButtonDialog actionDialogLeft = null;
 	private ActionButtonDialog actionDialogRight = null;
 	
 	// Database plugin
-	private DatabasePlugin db = null;
+	private StoryStore db = null;
 	
 	// Setting read from settings.properties-file
 	private Hashtable<String, String> settings = null;
@@ -78,12 +86,12 @@ public class KeyboardSet {
 	 * Constructor
 	 * 
 	 * @param app Parent application
-	 * @param db Database plugin
+	 * @param db Story store
 	 * @param settings
 	 * @param userName
 	 * @param position Where this keyboard set should be placed on the screen
 	 */
-	public KeyboardSet(iUbiStoriesApplication app, DatabasePlugin db, Hashtable<String, String> settings, String userName, int position)//, int locX, int locY)
+	public KeyboardSet(iUbiStoriesApplication app, StoryStore db, Hashtable<String, String> settings, String userName, int position)//, int locX, int locY)
 	{
 		// Guest user name, unique for each keyboard set
 		this.defaultUserName = userName;
@@ -97,6 +105,21 @@ public class KeyboardSet {
 		{
 			flipped = true;
 		}
+		orientation = flipped ? Orientation.FLIPPED : Orientation.NORMAL;
+		// A seat at any side of the table, e.g. KEYBOARD_ANGLE_Guest1=90 turns the
+		// keyboard and the text area a quarter turn clockwise
+		if(settings.containsKey("KEYBOARD_ANGLE_" + defaultUserName))
+		{
+			try
+			{
+				orientation = Orientation.fromDegrees(Double.parseDouble(settings.get("KEYBOARD_ANGLE_" + defaultUserName).trim()));
+				flipped = orientation.isUpsideDown();
+			}
+			catch(NumberFormatException e)
+			{
+				log("Invalid KEYBOARD_ANGLE_" + defaultUserName + ", using " + orientation);
+			}
+		}
 		xMargins = Integer.parseInt(settings.get("MARGINS_X"));
 		yMargins = Integer.parseInt(settings.get("MARGINS_Y"));
 		
@@ -171,9 +194,9 @@ public class KeyboardSet {
 				log("WRITING_TURN: " + this.defaultUserName + " - " + this.userName);
 				keyBoardDialog.setVisible(true);
 				actionDialogRight.setVisible(true);
-				actionDialogRight.setButtonState(1, null, true);
+				actionDialogRight.setButtonState(1, null, !writeQueueSaturated);
 				actionDialogRight.setButtonState(2, null, true);
-				actionDialogRight.setButtonState(3, null, true);
+				actionDialogRight.setButtonState(3, null, !writeQueueSaturated);
 				actionDialogLeft.setVisible(true);
 				actionDialogLeft.setButtonState(1, null, true);
 				actionDialogLeft.setButtonState(2, null, true);
@@ -196,6 +219,23 @@ public class KeyboardSet {
 		}
 	}
 
+	/**
+	 * Called when the database write queue becomes nearly full or drains again.
+	 * Submitting and finishing are disabled while the queue is saturated,
+	 * the text stays in the text area until it can be submitted.
+	 * 
+	 * @param saturated
+	 */
+	public void setBackPressure(boolean saturated)
+	{
+		writeQueueSaturated = saturated;
+		if(keyboardState == WRITING_TURN)
+		{
+			actionDialogRight.setButtonState(1, null, !saturated);
+			actionDialogRight.setButtonState(3, null, !saturated);
+		}
+	}
+
 	/**
 	 * Activates this keyboard, giving its user the writing turn
 	 */
@@ -288,13 +328,20 @@ public class KeyboardSet {
 	{
 		try
 		{
-			keyBoardDialog = new DialogVirtualKeyboardReal(new javax.swing.JFrame(), false, flipped);
+			// The keyboard of each set can be painted as one component, e.g. KEYBOARD_RENDERER_Guest1=painted
+			String renderer = settings.containsKey("KEYBOARD_RENDERER_" + defaultUserName) ? settings.get("KEYBOARD_RENDERER_" + defaultUserName)
+					: settings.containsKey("KEYBOARD_RENDERER") ? settings.get("KEYBOARD_RENDERER") : "buttons";
+			keyBoardDialog = new DialogVirtualKeyboardReal(new javax.swing.JFrame(), false, orientation, renderer.trim().equalsIgnoreCase("painted"));
 			keyBoardDialog.addWindowListener(new java.awt.event.WindowAdapter() {
 				public void windowClosing(java.awt.event.WindowEvent e) {
 					System.exit(0);
 				}
 			});
 			keyBoardDialog.setFocusableWindowState(false);
+			if(app.getWordPredictor() != null)
+			{
+				keyBoardDialog.setWordPredictor(app.getWordPredictor());
+			}
 
 			// Action buttons, left and right
 			String[] buttonNames = new String[]{"LOGOUT", "SKIP TURN", "PARTICIPATE"};
@@ -312,7 +359,7 @@ public class KeyboardSet {
 			actionDialogRight.setVisible(true);	
 
 			// Create small rotatable text area for this keyboard
-			rta = new RotatedTextArea(flipped);
+			rta = new RotatedTextArea(orientation);
 
 			rta.setText("");
 			rta.setPreferredSize(new Dimension(keyBoardDialog.getWidth() - 2*actionDialogLeft.getWidth(),
@@ -348,6 +395,10 @@ public class KeyboardSet {
 			// Pass text area to the keyboard for showing the text
 			keyBoardDialog.setTextComponent(rta);
 
+			latencyMonitor = new InputLatencyMonitor(defaultUserName);
+			keyBoardDialog.setLatencyMonitor(latencyMonitor);
+			rta.setLatencyMonitor(latencyMonitor);
+
 			// Set this keyboard to its correct position on the screen
 			Dimension screenSize = Toolkit.getDefaultToolkit().getScreenSize();
 			int screenHeight = (int)screenSize.getHeight();
@@ -457,7 +508,7 @@ public class KeyboardSet {
 	{
 		try
 		{
-			LoginDialog login = new LoginDialog(this, db, defaultUserName, flipped);
+			LoginDialog login = new LoginDialog(this, db, app.getLoginVerifier(), defaultUserName, flipped);
 			login.pack();
 
 			int x = posX;
@@ -509,12 +560,15 @@ public class KeyboardSet {
 			rta.setText("");
 
 			// Store the number of contributed characters to this user's account
-			if(addedText.length() > 0)
+			if(addedText.length() > 0 && !app.addContributedText(addedText, userName, trashedChars))
 			{
-				app.addContributedText(addedText, userName, trashedChars);
+				// Could not be queued, keep the text and the user logged in
+				rta.setText(addedText);
+				return;
 			}
 			trashedChars = 0;
 
+			db.invalidateUser(userName);
 			this.userName = null;
 			
 			this.setState(NO_USER);
@@ -534,7 +588,11 @@ public class KeyboardSet {
 			// TODO create flippable confirmation-dialog, set position over user's text area
 			
 			// Store the story in the database
-			app.finishStory(rta.getText(), userName, trashedChars);
+			if(!app.finishStory(rta.getText(), userName, trashedChars))
+			{
+				log("Write queue full, story not finished yet");
+				return;
+			}
 			rta.setText("");
 			trashedChars = 0;
 			this.setState(this.INACTIVE);
@@ -557,8 +615,12 @@ public class KeyboardSet {
 			// Clear the text area for this keyboard, move text to the shared text area
 			String addedText = rta.getText();
 
-			// Store contributed tet
-			app.addContributedText(addedText, userName, trashedChars);
+			// Store contributed tet, keep it and the writing turn if it could not be queued
+			if(!app.addContributedText(addedText, userName, trashedChars))
+			{
+				log("Write queue full, text not submitted yet");
+				return;
+			}
 			rta.setText("");
 			trashedChars = 0;
 			
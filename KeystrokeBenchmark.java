@@ -0,0 +1,154 @@
+import java.util.Arrays;
+
+import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+import javax.swing.text.JTextComponent;
+
+/**
+ * Class for comparing the per-key latency of rebuilding the whole text with
+ * setText() and of editing the Document at the caret with KeyboardEditor,
+ * as the draft grows.
+ *
+ * The keystrokes are typed on the Swing event thread into a JTextArea that
+ * is not shown, so painting is not included.
+ *
+ * Usage: java KeystrokeBenchmark [keystrokes per size] [draft sizes...]
+ */
+public class KeystrokeBenchmark
+{
+	private static final String KEYS = "the quick brown fox jumps over the lazy dog\n";
+
+	public static void main(String[] args) throws Exception
+	{
+		final int keystrokes = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+		final int[] sizes = new int[args.length > 1 ? args.length - 1 : 5];
+		if(args.length > 1)
+		{
+			for(int i = 1; i < args.length; i++)
+			{
+				sizes[i - 1] = Integer.parseInt(args[i]);
+			}
+		}
+		else
+		{
+			int[] defaults = { 100, 1000, 10000, 50000, 200000 };
+			System.arraycopy(defaults, 0, sizes, 0, sizes.length);
+		}
+
+		SwingUtilities.invokeAndWait(new Runnable() {
+			public void run()
+			{
+				System.out.println("Keystrokes per draft size: " + keystrokes);
+				for(int size : sizes)
+				{
+					report("setText", size, typeWithSetText(draft(size), keystrokes));
+					report("document", size, typeWithEditor(draft(size), keystrokes));
+				}
+			}
+		});
+	}
+
+	/**
+	 * Types into the middle of the draft the way the keyboard used to,
+	 * with every third key a backspace
+	 *
+	 * @param draft
+	 * @param keystrokes
+	 * @return time of each keystroke
+	 */
+	private static long[] typeWithSetText(String draft, int keystrokes)
+	{
+		JTextComponent textComponent = new JTextArea(draft);
+		textComponent.setCaretPosition(draft.length() / 2);
+		long[] nanos = new long[keystrokes];
+		for(int i = 0; i < keystrokes; i++)
+		{
+			long start = System.nanoTime();
+			String text = textComponent.getText();
+			int index = textComponent.getCaretPosition();
+			if(i % 3 == 2)
+			{
+				if(index > 0)
+				{
+					textComponent.setText(new StringBuffer(text).delete(index - 1, index).toString());
+					textComponent.setCaretPosition(index - 1);
+				}
+			}
+			else
+			{
+				String key = key(i);
+				textComponent.setText(new StringBuffer(text).insert(index, key).toString());
+				textComponent.setCaretPosition(index + key.length());
+			}
+			nanos[i] = System.nanoTime() - start;
+		}
+		return nanos;
+	}
+
+	/**
+	 * Types the same keys with KeyboardEditor
+	 *
+	 * @param draft
+	 * @param keystrokes
+	 * @return time of each keystroke
+	 */
+	private static long[] typeWithEditor(String draft, int keystrokes)
+	{
+		JTextComponent textComponent = new JTextArea(draft);
+		textComponent.setCaretPosition(draft.length() / 2);
+		KeyboardEditor editor = new KeyboardEditor(textComponent);
+		long[] nanos = new long[keystrokes];
+		for(int i = 0; i < keystrokes; i++)
+		{
+			long start = System.nanoTime();
+			if(i % 3 == 2)
+			{
+				editor.backspace();
+			}
+			else
+			{
+				editor.insert(key(i));
+			}
+			nanos[i] = System.nanoTime() - start;
+		}
+		return nanos;
+	}
+
+	private static String key(int i)
+	{
+		return String.valueOf(KEYS.charAt(i % KEYS.length()));
+	}
+
+	private static String draft(int size)
+	{
+		StringBuilder b = new StringBuilder(size);
+		while(b.length() < size)
+		{
+			b.append(KEYS);
+		}
+		b.setLength(size);
+		return b.toString();
+	}
+
+	/**
+	 * Prints the average, median and 99th percentile of the given times
+	 *
+	 * @param name
+	 * @param size
+	 * @param nanos
+	 */
+	private static void report(String name, int size, long[] nanos)
+	{
+		long[] sorted = nanos.clone();
+		Arrays.sort(sorted);
+		long total = 0;
+		for(long n : sorted)
+		{
+			total += n;
+		}
+		System.out.println(String.format("%-8s chars=%-7d avg=%.3f ms p50=%.3f ms p99=%.3f ms", name, size,
+				total / 1000000.0 / sorted.length,
+				sorted[sorted.length / 2] / 1000000.0,
+				sorted[Math.min(sorted.length - 1, sorted.length * 99 / 100)] / 1000000.0));
+	}
+}
@@ -0,0 +1,163 @@
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Class for recording latencies with a fixed relative precision.
+ *
+ * Values are counted in log-linear buckets: each power of two is split into
+ * 16 equal buckets, so any percentile is within about 6% of the true value
+ * from a nanosecond up to about 18 minutes. Recording is lock-free and does
+ * not allocate, so it can be done on every database call.
+ */
+public class LatencyHistogram
+{
+	// Linear buckets per power of two, as a shift
+	private static final int SUB_BITS 		= 4;
+	private static final int SUB_BUCKETS 	= 1 << SUB_BITS;
+	// Largest power of two recorded, larger values go to the last bucket
+	private static final int MAX_BITS 		= 40;
+	private static final int BUCKETS 		= (MAX_BITS - SUB_BITS + 2) * SUB_BUCKETS;
+
+	private AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+	private AtomicLong count = new AtomicLong();
+	private AtomicLong sum = new AtomicLong();
+	private AtomicLong max = new AtomicLong();
+
+	/**
+	 * Records one value
+	 *
+	 * @param nanos
+	 */
+	public void record(long nanos)
+	{
+		if(nanos < 0)
+		{
+			nanos = 0;
+		}
+		counts.incrementAndGet(index(nanos));
+		count.incrementAndGet();
+		sum.addAndGet(nanos);
+		long m = max.get();
+		while(nanos > m && !max.compareAndSet(m, nanos))
+		{
+			m = max.get();
+		}
+	}
+
+	/**
+	 * Returns the number of recorded values
+	 *
+	 * @return long
+	 */
+	public long getCount()
+	{
+		return count.get();
+	}
+
+	/**
+	 * Returns the mean of the recorded values
+	 *
+	 * @return nanoseconds
+	 */
+	public double getMean()
+	{
+		long n = count.get();
+		return n == 0 ? 0 : (double)sum.get() / n;
+	}
+
+	/**
+	 * Returns the largest recorded value
+	 *
+	 * @return nanoseconds
+	 */
+	public long getMax()
+	{
+		return max.get();
+	}
+
+	/**
+	 * Returns the value below which the given share of the values fall
+	 *
+	 * @param percentile 0 - 100
+	 * @return nanoseconds, the upper bound of the bucket
+	 */
+	public long getPercentile(double percentile)
+	{
+		long n = count.get();
+		if(n == 0)
+		{
+			return 0;
+		}
+		long target = Math.max(1, (long)Math.ceil(n * percentile / 100.0));
+		long seen = 0;
+		for(int i = 0; i < BUCKETS; i++)
+		{
+			seen += counts.get(i);
+			if(seen >= target)
+			{
+				return Math.min(upperBound(i), max.get());
+			}
+		}
+		return max.get();
+	}
+
+	/**
+	 * Clears all recorded values. Values recorded at the same time may be
+	 * partly lost, which is fine for metrics.
+	 */
+	public void reset()
+	{
+		for(int i = 0; i < BUCKETS; i++)
+		{
+			counts.set(i, 0);
+		}
+		count.set(0);
+		sum.set(0);
+		max.set(0);
+	}
+
+	// Overridden method
+	public String toString()
+	{
+		return String.format("n=%d mean=%.2f p50=%.2f p90=%.2f p99=%.2f max=%.2f ms", getCount(), getMean() / 1e6,
+				getPercentile(50) / 1e6, getPercentile(90) / 1e6, getPercentile(99) / 1e6, getMax() / 1e6);
+	}
+
+	/**
+	 * Returns the bucket of a value
+	 *
+	 * @param v
+	 * @return index
+	 */
+	private static int index(long v)
+	{
+		if(v < SUB_BUCKETS)
+		{
+			return (int)v;
+		}
+		int msb = 63 - Long.numberOfLeadingZeros(v);
+		if(msb > MAX_BITS)
+		{
+			return BUCKETS - 1;
+		}
+		int shift = msb - SUB_BITS;
+		return (shift + 1) * SUB_BUCKETS + (int)((v >> shift) & (SUB_BUCKETS - 1));
+	}
+
+	/**
+	 * Returns the largest value counted in a bucket
+	 *
+	 * @param index
+	 * @return value
+	 */
+	private static long upperBound(int index)
+	{
+		if(index < SUB_BUCKETS)
+		{
+			return index;
+		}
+		int shift = index / SUB_BUCKETS - 1;
+		long sub = index % SUB_BUCKETS;
+		return ((SUB_BUCKETS + sub) << shift) + (1L << shift) - 1;
+	}
+}
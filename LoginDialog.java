@@ -44,7 +44,10 @@ public class LoginDialog extends JDialog
 	// The keyboard that opened this dialog
 	KeyboardSet keyboard = null;
 	
-	DatabasePlugin db = null;
+	StoryStore db = null;
+	
+	// Checks passwords in the background
+	LoginVerifier verifier = null;
 	
 	private void log(String text)
 	{
@@ -55,17 +58,19 @@ public class LoginDialog extends JDialog
 	 * Contructor
 	 * 
 	 * @param keyboard
-	 * @param db Database plugin
+	 * @param db Story store
+	 * @param verifier Login password verifier
 	 * @param defaultUserName
 	 * @param flipped
 	 */
-	public LoginDialog(KeyboardSet keyboard, DatabasePlugin db, String defaultUserName, boolean flipped)
+	public LoginDialog(KeyboardSet keyboard, StoryStore db, LoginVerifier verifier, String defaultUserName, boolean flipped)
 	{
 		log("LOGIN: " + defaultUserName);
 		this.flipped = flipped;
 		this.keyboard = keyboard;
 		this.defaultUserName = defaultUserName;
 		this.db = db;
+		this.verifier = verifier;
 		
 		this.setDefaultCloseOperation(WindowConstants.DISPOSE_ON_CLOSE); 
 		this.setUndecorated(true);
@@ -156,41 +161,7 @@ public class LoginDialog extends JDialog
 		}
 		else if(button.equals(userButton)) // TODO currently not available
 		{
-			// Show login dialog
-			boolean ok = false;
-			String userId = null;
-			while(!ok)
-			{
-				String[] loginData = promptRegisteredLogin();
-				if(loginData == null)
-				{
-					// Cancelled
-					break;
-				}
-				else
-				{
-					// Check login id and password given by the user
-					userId = loginData[0];
-					String passWord = loginData[1];
-					String dbPassWord = db.getUserPassword(userId);
-					if(passWord.equals(dbPassWord))
-					{
-						ok = true;
-					}
-				}
-			}
-			
-			// Signal keyboard that login was successfull
-			if(ok)
-			{
-				this.setVisible(false);
-				this.dispose();
-				keyboard.loginSelection(userId);
-			}
-			else
-			{
-				keyboard.loginSelection(null);
-			}
+			verifyRegisteredLogin();
 		}
 		else if(button.equals(cancelButton))
 		{
@@ -200,6 +171,43 @@ public class LoginDialog extends JDialog
 		}
 	}
 	
+	/**
+	 * Asks for login id and password and checks them in the background.
+	 * Asks again if the password was wrong, until the user cancels.
+	 */
+	private void verifyRegisteredLogin()
+	{
+		String[] loginData = promptRegisteredLogin();
+		if(loginData == null)
+		{
+			// Cancelled
+			keyboard.loginSelection(null);
+			return;
+		}
+		
+		// Buttons are disabled while the password is checked, the event thread is not blocked
+		guestButton.setEnabled(false);
+		userButton.setEnabled(false);
+		verifier.verify(loginData[0], loginData[1].toCharArray(), new LoginVerifier.Callback() {
+			public void loginVerified(String nickname, boolean ok)
+			{
+				if(ok)
+				{
+					// Signal keyboard that login was successfull
+					setVisible(false);
+					dispose();
+					keyboard.loginSelection(nickname);
+				}
+				else
+				{
+					guestButton.setEnabled(true);
+					userButton.setEnabled(true);
+					verifyRegisteredLogin();
+				}
+			}
+		});
+	}
+	
 	// Method currently not called
 	private String[] promptRegisteredLogin()
 	{
@@ -39,10 +39,10 @@ public class LoginInputDialog extends JDialog
 	RotatingButton cancelButton;
 	LoginInputListener listener;
 	JTextArea rta;
-	DatabasePlugin db;
+	StoryStore db;
 	LoginDialog parent;
 	
-	public LoginInputDialog(KeyboardSet kb, LoginDialog parent, DatabasePlugin db, boolean flipped)
+	public LoginInputDialog(KeyboardSet kb, LoginDialog parent, StoryStore db, boolean flipped)
 	{
 		this.kb = kb;
 		this.flipped = flipped;
@@ -0,0 +1,227 @@
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Class for checking login passwords in the background.
+ *
+ * Reading the user and running the password hash can take a noticeable
+ * time, so it is done on a worker thread and the result is given to a
+ * callback on the Swing event thread. The other keyboards can be used
+ * normally while one user logs in.
+ *
+ * Successful verifications are remembered for a while as a keyed digest of
+ * the password, so logging in again with the same password does not run the
+ * slow hash again. The entry is only used while the stored password is
+ * unchanged. With rehashing on (PASSWORD_REHASH=true), plain text and
+ * weaker hashes are replaced with new hashes on a successful login. It is
+ * off by default, since the users table is written by a registration tool
+ * outside this application that may not read the hashes, see
+ * sql/password_hashes.sql.
+ */
+public class LoginVerifier
+{
+	/**
+	 * Callback for the result of a verification, called on the Swing event thread
+	 */
+	public interface Callback
+	{
+		public void loginVerified(String nickname, boolean ok);
+	}
+
+	/**
+	 * A remembered successful verification
+	 */
+	private static class Verified
+	{
+		String stored;
+		byte[] digest;
+		long expiresAt;
+	}
+
+	private StoryStore db;
+	private PasswordHasher hasher;
+	private long cacheTtlMillis;
+	// Whether stored passwords are replaced with new hashes on login
+	private boolean rehash;
+
+	// Successful verifications by nickname, guarded by itself
+	private HashMap<String, Verified> verified = new HashMap<String, Verified>();
+	// Random key for the digests, so that they are useless outside this process
+	private byte[] digestKey = new byte[32];
+
+	private ExecutorService executor;
+
+	/**
+	 * Constructor
+	 *
+	 * @param db
+	 * @param hasher
+	 * @param cacheTtlSeconds How long a successful verification is remembered, 0 disables
+	 * @param rehash TRUE to replace plain text and weaker stored passwords on login
+	 */
+	public LoginVerifier(StoryStore db, PasswordHasher hasher, int cacheTtlSeconds, boolean rehash)
+	{
+		this.db = db;
+		this.hasher = hasher;
+		this.cacheTtlMillis = Math.max(0, cacheTtlSeconds) * 1000L;
+		this.rehash = rehash;
+		new SecureRandom().nextBytes(digestKey);
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "LoginVerifier");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Starts verifying a login. Returns immediately, the result is given
+	 * to the callback later. The password array is cleared when done.
+	 *
+	 * @param nickname
+	 * @param password
+	 * @param callback
+	 */
+	public void verify(final String nickname, final char[] password, final Callback callback)
+	{
+		executor.execute(new Runnable() {
+			public void run()
+			{
+				boolean ok = false;
+				try
+				{
+					ok = check(nickname, password);
+				}
+				catch(Exception e)
+				{
+					e.printStackTrace();
+				}
+				finally
+				{
+					Arrays.fill(password, '\0');
+				}
+				final boolean result = ok;
+				log("Login " + nickname + (ok ? " verified" : " rejected"));
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run()
+					{
+						callback.loginVerified(nickname, result);
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Forgets a remembered verification, e.g. when the password is changed
+	 *
+	 * @param nickname
+	 */
+	public void invalidate(String nickname)
+	{
+		synchronized(verified)
+		{
+			verified.remove(nickname);
+		}
+	}
+
+	/**
+	 * Stops the worker thread
+	 */
+	public void shutdown()
+	{
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Checks a password on the worker thread
+	 *
+	 * @param nickname
+	 * @param password
+	 * @return TRUE if the password is correct
+	 * @throws Exception
+	 */
+	private boolean check(String nickname, char[] password) throws Exception
+	{
+		String stored = db.getUserPassword(nickname);
+		if(stored == null)
+		{
+			return false;
+		}
+
+		byte[] digest = digest(password);
+		synchronized(verified)
+		{
+			Verified v = verified.get(nickname);
+			if(v != null && v.expiresAt > System.currentTimeMillis() && v.stored.equals(stored))
+			{
+				if(MessageDigest.isEqual(v.digest, digest))
+				{
+					return true;
+				}
+			}
+		}
+
+		if(!hasher.verify(password, stored))
+		{
+			return false;
+		}
+
+		if(rehash && hasher.needsRehash(stored))
+		{
+			String hash = hasher.hash(password);
+			if(db.setUserPassword(nickname, hash))
+			{
+				stored = hash;
+			}
+		}
+
+		if(cacheTtlMillis > 0)
+		{
+			Verified v = new Verified();
+			v.stored = stored;
+			v.digest = digest;
+			v.expiresAt = System.currentTimeMillis() + cacheTtlMillis;
+			synchronized(verified)
+			{
+				verified.put(nickname, v);
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * Computes a keyed digest of a password for the verification cache
+	 *
+	 * @param password
+	 * @return digest
+	 * @throws Exception
+	 */
+	private byte[] digest(char[] password) throws Exception
+	{
+		MessageDigest sha = MessageDigest.getInstance("SHA-256");
+		sha.update(digestKey);
+		sha.update(new String(password).getBytes("UTF-8"));
+		return sha.digest();
+	}
+
+	/**
+	 * Simple convenience method for logging text to console output.
+	 * Should be replaced with a log file in the future
+	 *
+	 * @param log
+	 */
+	private void log(String text)
+	{
+		System.out.println(text);
+	}
+}
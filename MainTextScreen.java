@@ -6,6 +6,8 @@ import java.awt.Rectangle;
 import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
 import java.util.Hashtable;
 
 import javax.swing.BorderFactory;
@@ -28,19 +30,29 @@ public class MainTextScreen {
 
 	// Parameters
 	private Hashtable<String, String> settings = null;
+
+	// Story shown on the screen
+	private StoryBuffer story = null;
 	
 	// Rotatable text area
 	private RotatedTextArea rta;
 	private JFrame f;
 	private JScrollPane jsp = null;
 	private JViewport jvp = null;
-	private String wholeText = null;
-	
-	// Position of visible text if whole text doesn't fit into view
-	private int textPosition = 0;
-	
-	// An estimate of how many characters can be viewed at once
-	private int showableTextLength;
+
+	// Whole lines of the story that fit into the text area
+	private StoryViewport viewport = null;
+
+	// Lines scrolled at a time, 0 for one screen less a line
+	private int scrollLines = 0;
+
+	// Archive of finished stories, null if there is none
+	private StoryArchive archive = null;
+	private JButton archiveButton = null;
+
+	// Finished story shown instead of the current one, -1 for the current story
+	private int archivedStory = -1;
+	private int archiveFirstLine = 0;
 	
 	// Flag defining whether text area is upside down or not
 	private boolean flipped = false;
@@ -49,10 +61,12 @@ public class MainTextScreen {
 	 * Constructor
 	 * 
 	 * @param settings
+	 * @param story Story shown on the screen
 	 */
-	public MainTextScreen(Hashtable<String, String> settings)
+	public MainTextScreen(Hashtable<String, String> settings, StoryBuffer story)
 	{
 		this.settings = settings;
+		this.story = story;
 	}
 
 	/**
@@ -60,7 +74,10 @@ public class MainTextScreen {
 	 */
 	public boolean initialize()
 	{
-		this.showableTextLength = Integer.parseInt(settings.get("STORY_SCREEN_SCROLL"));
+		if(settings.containsKey("STORY_SCREEN_SCROLL_LINES"))
+		{
+			this.scrollLines = Integer.parseInt(settings.get("STORY_SCREEN_SCROLL_LINES").trim());
+		}
 		rta = new RotatedTextArea(false);
 
 		rta.setText("");
@@ -68,8 +85,6 @@ public class MainTextScreen {
 		
 		// RotatedTextArea size and width must be identical for it work correctly! 
 		rta.setPreferredSize(new Dimension (size, size));
-		rta.setLineWrap(true);  
-		rta.setWrapStyleWord(true);  
 		rta.setCaretVisible(false);
 
 		Border compound;
@@ -84,13 +99,25 @@ public class MainTextScreen {
 		Font myFont = new Font("Courier", Font.BOLD | Font.ITALIC, 16);
 		rta.setFont(myFont);
 
+		// The viewport wraps the story into lines itself
+		viewport = new StoryViewport(rta, story);
+		rta.addComponentListener(new ComponentAdapter() {
+			public void componentResized(ComponentEvent e) {
+				if(archivedStory >= 0)
+				{
+					// The viewport only rewraps while paused, the archive page is redone here
+					viewport.relayout();
+					scrollLines(0);
+				}
+			}
+		});
+
 		rta.getDocument().addDocumentListener((RotatedTextArea)rta);
 		f = new JFrame("RotatedTextArea");
 
 		f.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
 		// Add button listeners for handling text area scrolling
-		// TODO text area scrolling should be rewritten
 		
 		// Create button for scrolling text up
 		JButton upButton = new JButton();
@@ -99,27 +126,8 @@ public class MainTextScreen {
 		upButton.setPreferredSize(new Dimension(40,40));
 		upButton.addActionListener(new ActionListener() {  
 			public void actionPerformed(ActionEvent e) {  
-				if(!flipped)
-				{
-					int pos = textPosition-showableTextLength;
-					if(pos < 0)
-					{
-						pos = 0;
-					}
-				
-					setScrollPosition(pos, showableTextLength);
-				}
-				else
-				{
-					int length = wholeText.length();
-					int pos = textPosition+showableTextLength;
-					if(pos > length-showableTextLength)
-					{
-						pos = length-showableTextLength;
-					}
-
-					setScrollPosition(pos, showableTextLength);
-				}
+				// Upside down the beginning of the story is at the bottom
+				scrollLines(flipped ? getScrollLines() : -getScrollLines());
 			}
 		});
 
@@ -130,31 +138,25 @@ public class MainTextScreen {
 		downButton.setPreferredSize(new Dimension(40,40));
 		downButton.addActionListener(new ActionListener() {  
 			public void actionPerformed(ActionEvent e) {
-				if(!flipped)
-				{
-					int length = wholeText.length();
-					int pos = textPosition+showableTextLength;
-					if(pos > length-showableTextLength)
-					{
-						pos = length-showableTextLength;
-					}
-
-					setScrollPosition(pos, showableTextLength);
-				}
-				else
-				{
-					int pos = textPosition-showableTextLength;
-					if(pos < 0)
-					{
-						pos = 0;
-					}
-				
-					setScrollPosition(pos, showableTextLength);		
-				}
+				scrollLines(flipped ? -getScrollLines() : getScrollLines());
 			}
 		}); 
 
-		f.getContentPane().add(upButton, BorderLayout.NORTH);
+		// Create button for paging back through the finished stories
+		archiveButton = new JButton("<<");
+		archiveButton.setToolTipText("Earlier stories");
+		archiveButton.setPreferredSize(new Dimension(60,40));
+		archiveButton.setEnabled(false);
+		archiveButton.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent e) {
+				showEarlierStory();
+			}
+		});
+
+		JPanel topPanel = new JPanel(new BorderLayout());
+		topPanel.add(upButton, BorderLayout.CENTER);
+		topPanel.add(archiveButton, BorderLayout.EAST);
+		f.getContentPane().add(topPanel, BorderLayout.NORTH);
 
 		f.getContentPane().add(rta, BorderLayout.CENTER);
 		f.getContentPane().add(downButton, BorderLayout.SOUTH);
@@ -171,58 +173,159 @@ public class MainTextScreen {
 
 		f.setVisible(true);
 
-		setContentText("");
+		storyReset();
 
 		return true;
 	}
 
 	/**
-	 * Sets text for this text area
+	 * Shows the story after it has been replaced or cleared
+	 */
+	public void storyReset()
+	{
+		if(archivedStory < 0)
+		{
+			viewport.reset();
+		}
+	}
+
+	/**
+	 * Shows text appended to the story. Only the changed lines of the
+	 * text area are updated.
+	 */
+	public void storyAppended()
+	{
+		if(archivedStory < 0)
+		{
+			viewport.appended();
+		}
+	}
+
+	/**
+	 * Sets the archive of finished stories shown with the earlier stories
+	 * button
 	 * 
-	 * @param text
+	 * @param archive
+	 */
+	public void setStoryArchive(StoryArchive archive)
+	{
+		showLiveStory();
+		this.archive = archive;
+		archiveButton.setEnabled(archive != null);
+	}
+
+	/**
+	 * Shows the story finished before the one shown, starting from the
+	 * newest one. After the oldest story the current story is shown again.
 	 */
-	public void setContentText(String text)
+	public void showEarlierStory()
 	{
-		if(text.length() < showableTextLength)
+		if(archive == null)
 		{
-			this.wholeText = text;
-			textPosition = 0;
-			rta.setText(text);
+			return;
+		}
+		int story = archivedStory < 0 ? archive.getStoryCount() - 1 : archivedStory - 1;
+		if(story < 0)
+		{
+			showLiveStory();
 		}
-		// 
 		else
 		{
-			this.wholeText = text;
-			textPosition = wholeText.length() - showableTextLength;
-			rta.setText(wholeText.substring(textPosition, wholeText.length()));			
+			showArchivedStory(story);
 		}
 	}
 
-	// Return the whole text of this text area
-	public String getContentText()
+	/**
+	 * Shows a finished story from the archive instead of the current story.
+	 * The lines are read from the archive a screen at a time, so a story of
+	 * any length can be paged through.
+	 * 
+	 * @param story Index of the story in the archive
+	 */
+	public void showArchivedStory(int story)
 	{
-		return rta.getText();
+		viewport.pause();
+		this.archivedStory = story;
+		this.archiveFirstLine = 0;
+		showArchivePage();
 	}
-	
+
+	/**
+	 * Shows the current story again after an archived story
+	 */
+	public void showLiveStory()
+	{
+		if(archivedStory >= 0)
+		{
+			archivedStory = -1;
+			viewport.redisplay();
+		}
+	}
+
+	/**
+	 * Returns whether an archived story is shown
+	 * 
+	 * @return TRUE if an archived story is shown
+	 */
+	public boolean isShowingArchive()
+	{
+		return archivedStory >= 0;
+	}
+
 	/**
-	 * Sets scroll position of the text area
-	 * This functionability should be rewritten
+	 * Returns how many characters fit on a line of the text area
 	 * 
-	 * @param pos Position in characters
-	 * @param showableTextLength Estimated number of viewable characters, from settings-file
+	 * @return columns
 	 */
-	private void setScrollPosition(int pos, int showableTextLength)
+	public int getColumns()
 	{
-		textPosition = pos;
-		if(wholeText.length() < showableTextLength)
+		return viewport.getColumns();
+	}
+
+	/**
+	 * Scrolls the story shown by whole lines
+	 * 
+	 * @param delta Lines, negative towards the beginning of the story
+	 */
+	private void scrollLines(int delta)
+	{
+		if(archivedStory < 0)
 		{
-			rta.setText(wholeText);
+			viewport.scrollLines(delta);
+			return;
 		}
-		else
+		int last = Math.max(0, archive.getLineCount(archivedStory) - viewport.getVisibleLineCount());
+		archiveFirstLine = Math.max(0, Math.min(last, archiveFirstLine + delta));
+		showArchivePage();
+	}
+
+	/**
+	 * Replaces the text area contents with the archived lines from the
+	 * first shown line on
+	 */
+	private void showArchivePage()
+	{
+		int end = Math.min(archive.getLineCount(archivedStory), archiveFirstLine + viewport.getVisibleLineCount());
+		StringBuilder text = new StringBuilder();
+		for(int i = archiveFirstLine; i < end; i++)
 		{
-			String viewText = wholeText.substring(textPosition, textPosition + showableTextLength);
-			rta.setText(viewText);
+			if(i > archiveFirstLine)
+			{
+				text.append('\n');
+			}
+			text.append(archive.getLine(archivedStory, i));
 		}
+		rta.setText(text.toString());
+	}
+
+	/**
+	 * Returns the number of lines scrolled by the buttons
+	 * 
+	 * @return lines
+	 */
+	private int getScrollLines()
+	{
+		return scrollLines > 0 ? scrollLines : Math.max(1, viewport.getVisibleLineCount() - 1);
 	}
 	
 	/**
@@ -0,0 +1,174 @@
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class for keeping stories in memory only, for load tests and benchmarks.
+ *
+ * Nothing is written anywhere, so the latency measured with this store is
+ * the user interface's own. All structures are concurrent collections and
+ * atomic counters, no locks are taken.
+ */
+public class MemoryStoryStore implements StoryStore
+{
+	/**
+	 * One story and its contributions by sequence
+	 */
+	private static class Story
+	{
+		String name;
+		ConcurrentSkipListMap<Integer, String> segments = new ConcurrentSkipListMap<Integer, String>();
+		volatile boolean finished = false;
+
+		Story(String name)
+		{
+			this.name = name;
+		}
+	}
+
+	private AtomicInteger nextStoryId = new AtomicInteger(1);
+	private ConcurrentHashMap<Integer, Story> stories = new ConcurrentHashMap<Integer, Story>();
+	private ConcurrentHashMap<String, String> passwords = new ConcurrentHashMap<String, String>();
+
+	// Metrics
+	private AtomicLong contributionCount = new AtomicLong();
+	private AtomicLong duplicateCount = new AtomicLong();
+	private AtomicLong charCount = new AtomicLong();
+
+	// Overridden method
+	public boolean connect()
+	{
+		log("Using in-memory story store, stories are not saved");
+		return true;
+	}
+
+	// Overridden method
+	public void disconnect()
+	{
+		log("Memory story store: " + getStatistics());
+	}
+
+	// Overridden method
+	public boolean isReachable()
+	{
+		return true;
+	}
+
+	// Overridden method
+	public int createStory(String storyName)
+	{
+		int id = nextStoryId.getAndIncrement();
+		stories.put(id, new Story(storyName));
+		return id;
+	}
+
+	// Overridden method
+	public boolean saveAddedContributions(List<StoryEvent> contributions)
+	{
+		for(StoryEvent e : contributions)
+		{
+			Story story = stories.get(e.getStoryId());
+			if(story == null)
+			{
+				log("Contribution to unknown story " + e.getStoryId());
+				return false;
+			}
+			if(story.segments.putIfAbsent(e.getSequence(), e.getText().replace("\n", "<br>")) == null)
+			{
+				contributionCount.incrementAndGet();
+				charCount.addAndGet(e.getText().length());
+			}
+			else
+			{
+				duplicateCount.incrementAndGet();
+			}
+		}
+		return true;
+	}
+
+	// Overridden method
+	public boolean finishStory(int storyId)
+	{
+		Story story = stories.get(storyId);
+		if(story != null)
+		{
+			story.finished = true;
+		}
+		return true;
+	}
+
+	// Overridden method
+	public String getStoryText(int storyId)
+	{
+		Story story = stories.get(storyId);
+		if(story == null)
+		{
+			return "";
+		}
+		StringBuilder body = new StringBuilder();
+		for(String segment : story.segments.values())
+		{
+			body.append(segment);
+		}
+		return body.toString();
+	}
+
+	// Overridden method
+	public int forEachStoryText(StoryTextHandler handler)
+	{
+		ArrayList<Integer> ids = new ArrayList<Integer>(stories.keySet());
+		Collections.sort(ids);
+		for(int id : ids)
+		{
+			handler.storyText(id, getStoryText(id));
+		}
+		return ids.size();
+	}
+
+	// Overridden method
+	public String getUserPassword(String nickname)
+	{
+		return passwords.get(nickname);
+	}
+
+	// Overridden method
+	public boolean setUserPassword(String nickname, String password)
+	{
+		passwords.put(nickname, password);
+		return true;
+	}
+
+	// Overridden method
+	public void invalidateUser(String nickname)
+	{
+		// Nothing cached
+	}
+
+	// Overridden method
+	public boolean isReplaySafe()
+	{
+		return true;
+	}
+
+	// Overridden method
+	public String getStatistics()
+	{
+		return "stories=" + stories.size() + " contributions=" + contributionCount.get()
+				+ " duplicates=" + duplicateCount.get() + " chars=" + charCount.get();
+	}
+
+	/**
+	 * Simple convenience method for logging text to console output.
+	 * Should be replaced with a log file in the future
+	 *
+	 * @param log
+	 */
+	private void log(String text)
+	{
+		System.out.println(text);
+	}
+}
@@ -0,0 +1,339 @@
+import java.awt.Dimension;
+import java.awt.Rectangle;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.NoninvertibleTransformException;
+import java.awt.geom.Point2D;
+import java.util.HashMap;
+
+/**
+ * Class for the angle at which a seat sees its components.
+ *
+ * An orientation is shared by every component turned by the same angle,
+ * and computes what depends only on the angle once: the sine and cosine,
+ * exact for quarter turns, and whether the angle is a quarter turn at all.
+ * Quarter turns map pixels onto pixels, so they are drawn without
+ * interpolation, and their transforms are built without rounding errors.
+ *
+ * What depends on the size of a component, its transform, the inverse for
+ * hit testing and the size of its content, is kept by the component in a
+ * Placement, which is only computed again when the size or the orientation
+ * changes.
+ */
+public class Orientation
+{
+	/**
+	 * Transforms of one component for its current size and orientation
+	 */
+	public static class Placement
+	{
+		private Orientation orientation = null;
+		private int width = -1;
+		private int height = -1;
+		private int contentWidth = -1;
+		private int contentHeight = -1;
+		private AffineTransform transform = new AffineTransform();
+		private AffineTransform inverse = new AffineTransform();
+		private Point2D.Double point = new Point2D.Double();
+
+		/**
+		 * Places unrotated content of the given size in the middle of the
+		 * component, turned by the orientation
+		 *
+		 * @param orientation
+		 * @param width Width of the component
+		 * @param height Height of the component
+		 * @param contentWidth Width of the unrotated content
+		 * @param contentHeight Height of the unrotated content
+		 */
+		public void update(Orientation orientation, int width, int height, int contentWidth, int contentHeight)
+		{
+			if(orientation == this.orientation && width == this.width && height == this.height
+					&& contentWidth == this.contentWidth && contentHeight == this.contentHeight)
+			{
+				return;
+			}
+			this.orientation = orientation;
+			this.width = width;
+			this.height = height;
+			this.contentWidth = contentWidth;
+			this.contentHeight = contentHeight;
+			transform = orientation.createTransform(width / 2.0, height / 2.0);
+			transform.translate((width - contentWidth) / 2, (height - contentHeight) / 2);
+			try
+			{
+				inverse = transform.createInverse();
+			}
+			catch(NoninvertibleTransformException e)
+			{
+				inverse = new AffineTransform();
+			}
+		}
+
+		/**
+		 * Places content whose turned bounds are the whole component
+		 *
+		 * @param orientation
+		 * @param width
+		 * @param height
+		 */
+		public void update(Orientation orientation, int width, int height)
+		{
+			if(orientation == this.orientation && width == this.width && height == this.height)
+			{
+				return;
+			}
+			Dimension content = orientation.getUnrotatedSize(width, height);
+			update(orientation, width, height, content.width, content.height);
+		}
+
+		/**
+		 * Returns the transform from content to component coordinates
+		 *
+		 * @return AffineTransform, must not be changed
+		 */
+		public AffineTransform getTransform()
+		{
+			return transform;
+		}
+
+		/**
+		 * Returns the transform from component to content coordinates
+		 *
+		 * @return AffineTransform, must not be changed
+		 */
+		public AffineTransform getInverse()
+		{
+			return inverse;
+		}
+
+		public int getContentWidth()
+		{
+			return contentWidth;
+		}
+
+		public int getContentHeight()
+		{
+			return contentHeight;
+		}
+
+		/**
+		 * Returns whether a point of the component is on the turned content
+		 *
+		 * @param x
+		 * @param y
+		 * @return TRUE if the point hits the content
+		 */
+		public boolean contains(int x, int y)
+		{
+			point.setLocation(x + 0.5, y + 0.5);
+			inverse.transform(point, point);
+			return point.x >= 0 && point.y >= 0 && point.x < contentWidth && point.y < contentHeight;
+		}
+
+		/**
+		 * Returns the component area covering an area of the content
+		 *
+		 * @param r Area in content coordinates
+		 * @return Rectangle
+		 */
+		public Rectangle transformBounds(Rectangle r)
+		{
+			if(orientation.isNormal() && width == contentWidth && height == contentHeight)
+			{
+				return new Rectangle(r);
+			}
+			return transform.createTransformedShape(r).getBounds();
+		}
+	}
+
+	private static final HashMap<Double, Orientation> orientations = new HashMap<Double, Orientation>();
+
+	public static final Orientation NORMAL = get(0);
+	public static final Orientation FLIPPED = get(-Math.PI);
+
+	private double angle;
+	private double sin;
+	private double cos;
+	// Number of quarter turns, -1 if the angle is not a multiple of a quarter turn
+	private int quadrants;
+
+	/**
+	 * Returns the orientation for an angle
+	 *
+	 * @param angle Radians, turned into the range from -pi up to pi
+	 * @return Orientation
+	 */
+	public static synchronized Orientation get(double angle)
+	{
+		double a = Math.IEEEremainder(angle, 2 * Math.PI);
+		if(a >= Math.PI)
+		{
+			a -= 2 * Math.PI;
+		}
+		// The same angle also when it has gone through another calculation
+		a = Math.round(a * 1e9) / 1e9;
+		if(a == 0)
+		{
+			a = 0;
+		}
+		Orientation o = orientations.get(a);
+		if(o == null)
+		{
+			o = new Orientation(a);
+			orientations.put(a, o);
+		}
+		return o;
+	}
+
+	/**
+	 * Returns the orientation for an angle in degrees
+	 *
+	 * @param degrees Counterclockwise on the screen is negative, as in Graphics2D
+	 * @return Orientation
+	 */
+	public static Orientation fromDegrees(double degrees)
+	{
+		return get(Math.toRadians(degrees));
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param angle
+	 */
+	private Orientation(double angle)
+	{
+		this.angle = angle;
+		double turns = angle / (Math.PI / 2);
+		if(Math.abs(turns - Math.rint(turns)) < 1e-9)
+		{
+			quadrants = (((int)Math.rint(turns)) % 4 + 4) % 4;
+			double[] angles = {0, Math.PI / 2, -Math.PI, -Math.PI / 2};
+			this.angle = angles[quadrants];
+			int[] sines = {0, 1, 0, -1};
+			sin = sines[quadrants];
+			cos = sines[(quadrants + 1) % 4];
+		}
+		else
+		{
+			quadrants = -1;
+			sin = Math.sin(angle);
+			cos = Math.cos(angle);
+		}
+	}
+
+	/**
+	 * Returns the angle
+	 *
+	 * @return radians from -pi up to pi
+	 */
+	public double getAngle()
+	{
+		return angle;
+	}
+
+	public boolean isNormal()
+	{
+		return quadrants == 0;
+	}
+
+	/**
+	 * Returns whether this is half a turn, e.g. a seat across the table
+	 *
+	 * @return TRUE for half a turn
+	 */
+	public boolean isHalfTurn()
+	{
+		return quadrants == 2;
+	}
+
+	/**
+	 * Returns whether the angle is a multiple of a quarter turn, which maps
+	 * pixels exactly onto pixels
+	 *
+	 * @return TRUE for 0, 90, 180 and 270 degrees
+	 */
+	public boolean isQuarterTurn()
+	{
+		return quadrants >= 0;
+	}
+
+	/**
+	 * Returns whether the top of the content points more down than up on
+	 * the screen, e.g. for placing things above the keys for the user
+	 *
+	 * @return TRUE if turned more than a quarter turn either way
+	 */
+	public boolean isUpsideDown()
+	{
+		return cos < -1e-9;
+	}
+
+	/**
+	 * Returns the size of the bounds of turned content
+	 *
+	 * @param width Width of the content
+	 * @param height Height of the content
+	 * @return Dimension
+	 */
+	public Dimension getRotatedSize(int width, int height)
+	{
+		if(quadrants >= 0)
+		{
+			return quadrants % 2 == 0 ? new Dimension(width, height) : new Dimension(height, width);
+		}
+		double c = Math.abs(cos);
+		double s = Math.abs(sin);
+		return new Dimension((int)Math.ceil(width * c + height * s - 1e-9), (int)Math.ceil(width * s + height * c - 1e-9));
+	}
+
+	/**
+	 * Returns the size of the content whose turned bounds have the given
+	 * size, the opposite of getRotatedSize()
+	 *
+	 * @param width Width of the bounds
+	 * @param height Height of the bounds
+	 * @return Dimension
+	 */
+	public Dimension getUnrotatedSize(int width, int height)
+	{
+		if(quadrants >= 0)
+		{
+			return quadrants % 2 == 0 ? new Dimension(width, height) : new Dimension(height, width);
+		}
+		double c = Math.abs(cos);
+		double s = Math.abs(sin);
+		double d = c * c - s * s;
+		if(Math.abs(d) < 1e-3)
+		{
+			// Near 45 degrees only a square fits the bounds
+			int side = (int)Math.floor(Math.min(width, height) / (c + s));
+			return new Dimension(side, side);
+		}
+		int w = (int)Math.round((width * c - height * s) / d);
+		int h = (int)Math.round((height * c - width * s) / d);
+		return new Dimension(Math.max(1, w), Math.max(1, h));
+	}
+
+	/**
+	 * Creates the transform turning content around a point
+	 *
+	 * @param x
+	 * @param y
+	 * @return AffineTransform
+	 */
+	public AffineTransform createTransform(double x, double y)
+	{
+		if(quadrants >= 0)
+		{
+			return AffineTransform.getQuadrantRotateInstance(quadrants, x, y);
+		}
+		return AffineTransform.getRotateInstance(angle, x, y);
+	}
+
+	// Overridden method
+	public String toString()
+	{
+		return String.format("%.1f degrees", Math.toDegrees(angle));
+	}
+}
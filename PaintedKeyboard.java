@@ -0,0 +1,625 @@
+import java.awt.Color;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.Window;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
+import java.awt.image.BufferedImage;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.Locale;
+
+import javax.swing.Icon;
+import javax.swing.ImageIcon;
+import javax.swing.JComponent;
+import javax.swing.JDialog;
+import javax.swing.text.JTextComponent;
+
+/**
+ * Class for a virtual keyboard painted as a single component.
+ *
+ * The keys of each layer are painted once into a background image for the
+ * current size; a paint only draws that image and the keys that are down
+ * (the pressed key, shift and caps lock) on top of it. Pointer events are
+ * hit-tested against the key bounds of the layout, and the keys type into
+ * the text component with the same edits as PanelVirtualKeyboardReal.
+ *
+ * A flipped keyboard is painted upside down, which is exactly the flipped
+ * layout, so the key bounds are only kept for the normal orientation.
+ */
+public class PaintedKeyboard extends JComponent implements VirtualKeyboard
+{
+	private static final long serialVersionUID = 1L;
+
+	private static final Font KEY_FONT 		= new Font("Tahoma", Font.BOLD, 13);
+	private static final Color BACKGROUND 	= new Color(214, 217, 223);
+	private static final Color KEY_UP 		= new Color(238, 238, 238);
+	private static final Color KEY_DOWN 	= new Color(184, 207, 229);
+	private static final Color KEY_BORDER 	= new Color(122, 138, 153);
+	private static final Color KEY_TEXT 	= Color.BLACK;
+
+	private KeyboardLayoutModel model = null;
+	private Icon[] icons = new Icon[0];
+	private boolean flipped = false;
+
+	private JTextComponent textComponent = null;
+	private KeyboardEditor editor = new KeyboardEditor(null);
+	private JDialog textDialog = null;
+	private Window window = null;
+	private Locale localeL = null;
+
+	private boolean poitToUp = false;
+	private boolean shiftBs = false;
+	private int layer = 0;
+	private boolean shift = false;
+	private boolean capsLock = false;
+	private int gap = 2;
+	private int tab = 4;
+
+	// Key bounds for the size they were computed for
+	private int[] keyX = new int[0];
+	private int[] keyY = new int[0];
+	private int[] keyW = new int[0];
+	private int[] keyH = new int[0];
+	private int boundsWidth = -1;
+	private int boundsHeight = -1;
+
+	// Painted keys of each layer for the current size
+	private BufferedImage[] backgrounds = new BufferedImage[KeyboardLayoutModel.LAYERS];
+	private int shownLayer = -1;
+
+	// Surface for painting the flipped keyboard without rotating the Graphics
+	private FlippedSurface flippedSurface = new FlippedSurface(true);
+	private FlippedSurface.Painter surfacePainter = new FlippedSurface.Painter() {
+		public void paintSurface(Graphics2D g)
+		{
+			paintUnrotated(g);
+		}
+	};
+
+	// Key under the pointer while a button is down
+	private int pressedKey = -1;
+	private boolean armed = false;
+
+	// Measures keystrokes, can be null
+	private InputLatencyMonitor latencyMonitor = null;
+
+	// Metrics
+	private long paintCount = 0;
+	private long backgroundCount = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param flipped Defines whether this keyboard is rotated upside down or not
+	 */
+	public PaintedKeyboard(boolean flipped)
+	{
+		this.flipped = flipped;
+		setOpaque(true);
+		MouseAdapter mouse = new MouseAdapter() {
+			public void mousePressed(MouseEvent e)
+			{
+				pointerPressed(e.getX(), e.getY());
+			}
+
+			public void mouseDragged(MouseEvent e)
+			{
+				pointerDragged(e.getX(), e.getY());
+			}
+
+			public void mouseReleased(MouseEvent e)
+			{
+				pointerReleased(e.getWhen());
+			}
+		};
+		addMouseListener(mouse);
+		addMouseMotionListener(mouse);
+		setModel(KeyboardLayoutModel.getDefault());
+	}
+
+	/**
+	 * Sets the layout of the keys
+	 *
+	 * @param model
+	 */
+	public void setModel(KeyboardLayoutModel model)
+	{
+		if(model == null)
+		{
+			return;
+		}
+		this.model = model;
+		this.localeL = model.getLocale();
+		int count = model.getKeyCount();
+		icons = new Icon[count];
+		for(int i = 0; i < count; i++)
+		{
+			String icon = model.getIcon(i);
+			URL url = icon == null ? null : getClass().getResource(icon);
+			if(url != null)
+			{
+				icons[i] = new ImageIcon(url);
+			}
+		}
+		keyX = new int[count];
+		keyY = new int[count];
+		keyW = new int[count];
+		keyH = new int[count];
+		pressedKey = -1;
+		setPreferredSize(new Dimension(model.getPreferredWidth(), model.getPreferredHeight()));
+		invalidateKeys();
+		revalidate();
+	}
+
+	public KeyboardLayoutModel getModel()
+	{
+		return model;
+	}
+
+	// Overridden method
+	public void updateGUI()
+	{
+		if(layer != shownLayer)
+		{
+			repaint();
+		}
+	}
+
+	// Overridden method
+	public void shiftsDown()
+	{
+		shift = false;
+		capsLock = false;
+		updateLayer();
+	}
+
+	// Overridden method
+	protected void paintComponent(Graphics g)
+	{
+		paintCount++;
+		if(model == null)
+		{
+			return;
+		}
+		updateBounds();
+		if(flipped && FlippedSurface.isEnabled())
+		{
+			// Only the damaged keys are painted into the surface and mirrored onto the screen
+			flippedSurface.paint(g, this, getWidth(), getHeight(),
+					FlippedSurface.unrotate(g.getClipBounds(), getWidth(), getHeight()), surfacePainter);
+			shownLayer = layer;
+			return;
+		}
+		Graphics2D g2 = (Graphics2D)g.create();
+		try
+		{
+			if(flipped)
+			{
+				g2.rotate(Math.PI, getWidth() / 2.0, getHeight() / 2.0);
+			}
+			paintUnrotated(g2);
+		}
+		finally
+		{
+			g2.dispose();
+		}
+		shownLayer = layer;
+	}
+
+	/**
+	 * Paints the background of the layer and the keys that are down in the
+	 * normal orientation
+	 *
+	 * @param g
+	 */
+	private void paintUnrotated(Graphics2D g)
+	{
+		if(backgrounds[layer] == null)
+		{
+			long phaseStart = InputLatencyMonitor.begin();
+			backgrounds[layer] = paintBackground(layer);
+			InputLatencyMonitor.end(InputLatencyMonitor.IMAGES, phaseStart);
+		}
+		g.drawImage(backgrounds[layer], 0, 0, null);
+		String[] labels = model.getLabels(layer);
+		for(int i = 0; i < keyX.length; i++)
+		{
+			if(isDown(i))
+			{
+				paintKey(g, i, true, labels);
+			}
+		}
+	}
+
+	/**
+	 * Returns how many times the keyboard has been painted
+	 *
+	 * @return count
+	 */
+	public long getPaintCount()
+	{
+		return paintCount;
+	}
+
+	/**
+	 * Returns how many times a layer has been painted into a background image
+	 *
+	 * @return count
+	 */
+	public long getBackgroundCount()
+	{
+		return backgroundCount;
+	}
+
+	/**
+	 * Returns the key at a point of this component
+	 *
+	 * @param x
+	 * @param y
+	 * @return key index in the layout or -1
+	 */
+	public int keyAt(int x, int y)
+	{
+		if(model == null)
+		{
+			return -1;
+		}
+		updateBounds();
+		if(flipped)
+		{
+			x = getWidth() - 1 - x;
+			y = getHeight() - 1 - y;
+		}
+		return model.keyAt(x, y, keyX, keyY, keyW, keyH);
+	}
+
+	// Overridden method
+	public void setLatencyMonitor(InputLatencyMonitor latencyMonitor)
+	{
+		this.latencyMonitor = latencyMonitor;
+	}
+
+	// Overridden method
+	public JTextComponent getTextComponent()
+	{
+		return textComponent;
+	}
+
+	// Overridden method
+	public void setTextComponent(JTextComponent textComponent)
+	{
+		this.textComponent = textComponent;
+		editor.setTextComponent(textComponent);
+	}
+
+	// Overridden method
+	public void setTextDialog(JDialog textDialog)
+	{
+		this.textDialog = textDialog;
+	}
+
+	// Overridden method
+	public void setWindow(Window window)
+	{
+		this.window = window;
+	}
+
+	// Overridden method
+	public boolean isPoitToUp()
+	{
+		return poitToUp;
+	}
+
+	// Overridden method
+	public void setPoitToUp(boolean poitToUp)
+	{
+		this.poitToUp = poitToUp;
+	}
+
+	// Overridden method
+	public boolean isShiftBs()
+	{
+		return shiftBs;
+	}
+
+	// Overridden method
+	public void setShiftBs(boolean shiftBs)
+	{
+		this.shiftBs = shiftBs;
+	}
+
+	// Overridden method
+	public Locale getLocaleL()
+	{
+		return localeL;
+	}
+
+	// Overridden method
+	public void setLocaleL(Locale localeL)
+	{
+		this.localeL = localeL;
+		KeyboardLayoutModel localeModel = KeyboardLayoutModel.forLocale(localeL);
+		if(localeModel != null && localeModel != model)
+		{
+			setModel(localeModel);
+		}
+	}
+
+	// Overridden method
+	public int getGap()
+	{
+		return gap;
+	}
+
+	// Overridden method
+	public void setGap(int gap)
+	{
+		this.gap = gap;
+		invalidateKeys();
+	}
+
+	// Overridden method
+	public int getTab()
+	{
+		return tab;
+	}
+
+	// Overridden method
+	public void setTab(int tab)
+	{
+		this.tab = tab;
+	}
+
+	private void pointerPressed(int x, int y)
+	{
+		pressedKey = keyAt(x, y);
+		armed = pressedKey >= 0;
+		repaintKey(pressedKey);
+	}
+
+	private void pointerDragged(int x, int y)
+	{
+		if(pressedKey < 0)
+		{
+			return;
+		}
+		boolean over = keyAt(x, y) == pressedKey;
+		if(over != armed)
+		{
+			armed = over;
+			repaintKey(pressedKey);
+		}
+	}
+
+	private void pointerReleased(long when)
+	{
+		int key = pressedKey;
+		boolean fire = armed;
+		pressedKey = -1;
+		armed = false;
+		repaintKey(key);
+		if(fire)
+		{
+			if(latencyMonitor != null)
+			{
+				latencyMonitor.keyPressed(when);
+			}
+			keyPressed(key);
+			if(latencyMonitor != null)
+			{
+				latencyMonitor.keyHandled();
+			}
+		}
+	}
+
+	/**
+	 * Handles a key press
+	 *
+	 * @param key Index of the key in the layout
+	 */
+	private void keyPressed(int key)
+	{
+		switch(model.getType(key))
+		{
+			case KeyboardLayoutModel.KEY_CHARACTER:
+				writeValue(model.getLabels(layer)[key]);
+				break;
+			case KeyboardLayoutModel.KEY_BACKSPACE:
+				editor.backspace();
+				break;
+			case KeyboardLayoutModel.KEY_TAB:
+				char[] spaces = new char[tab];
+				Arrays.fill(spaces, ' ');
+				editor.insert(new String(spaces));
+				break;
+			case KeyboardLayoutModel.KEY_ENTER:
+				editor.insert("\n");
+				break;
+			case KeyboardLayoutModel.KEY_SPACE:
+				editor.insert(" ");
+				break;
+			case KeyboardLayoutModel.KEY_SHIFT:
+				shift = !shift;
+				updateLayer();
+				repaintKeys(KeyboardLayoutModel.KEY_SHIFT);
+				break;
+			case KeyboardLayoutModel.KEY_CAPS_LOCK:
+				capsLock = !capsLock;
+				updateLayer();
+				repaintKeys(KeyboardLayoutModel.KEY_CAPS_LOCK);
+				break;
+		}
+	}
+
+	/**
+	 * Writes the label of a character key at the caret
+	 *
+	 * @param value
+	 */
+	private void writeValue(String value)
+	{
+		if(textComponent == null || value == null || value.length() == 0)
+		{
+			return;
+		}
+		editor.insert(value);
+		if(shift)
+		{
+			shift = false;
+			updateLayer();
+			repaintKeys(KeyboardLayoutModel.KEY_SHIFT);
+		}
+		if(poitToUp && value.equals(".") && layer == 0)
+		{
+			shift = true;
+			updateLayer();
+			repaintKeys(KeyboardLayoutModel.KEY_SHIFT);
+		}
+	}
+
+	/**
+	 * Chooses the layer from the shift and caps lock keys
+	 */
+	private void updateLayer()
+	{
+		layer = capsLock != shift ? 1 : 0;
+		updateGUI();
+	}
+
+	private boolean isDown(int key)
+	{
+		int type = model.getType(key);
+		return (key == pressedKey && armed) || (type == KeyboardLayoutModel.KEY_SHIFT && shift)
+				|| (type == KeyboardLayoutModel.KEY_CAPS_LOCK && capsLock);
+	}
+
+	/**
+	 * Forgets the key bounds and painted layers, e.g. when the layout changes
+	 */
+	private void invalidateKeys()
+	{
+		boundsWidth = -1;
+		boundsHeight = -1;
+		Arrays.fill(backgrounds, null);
+		repaint();
+	}
+
+	/**
+	 * Computes the key bounds if the size has changed
+	 */
+	private void updateBounds()
+	{
+		if(getWidth() == boundsWidth && getHeight() == boundsHeight)
+		{
+			return;
+		}
+		model.computeBounds(getWidth(), getHeight(), gap, false, keyX, keyY, keyW, keyH);
+		boundsWidth = getWidth();
+		boundsHeight = getHeight();
+		Arrays.fill(backgrounds, null);
+	}
+
+	/**
+	 * Paints all keys of a layer in their normal state
+	 *
+	 * @param paintLayer
+	 * @return BufferedImage
+	 */
+	private BufferedImage paintBackground(int paintLayer)
+	{
+		backgroundCount++;
+		BufferedImage image = new BufferedImage(Math.max(1, getWidth()), Math.max(1, getHeight()), BufferedImage.TYPE_INT_RGB);
+		Graphics2D g = image.createGraphics();
+		try
+		{
+			g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+			g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+			g.setColor(BACKGROUND);
+			g.fillRect(0, 0, image.getWidth(), image.getHeight());
+			String[] labels = model.getLabels(paintLayer);
+			for(int i = 0; i < keyX.length; i++)
+			{
+				paintKey(g, i, false, labels);
+			}
+		}
+		finally
+		{
+			g.dispose();
+		}
+		return image;
+	}
+
+	/**
+	 * Paints one key
+	 *
+	 * @param g
+	 * @param key
+	 * @param down
+	 * @param labels Labels of the layer
+	 */
+	private void paintKey(Graphics2D g, int key, boolean down, String[] labels)
+	{
+		int x = keyX[key];
+		int y = keyY[key];
+		int w = keyW[key];
+		int h = keyH[key];
+		g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+		g.setColor(down ? KEY_DOWN : KEY_UP);
+		g.fillRoundRect(x, y, w, h, 6, 6);
+		g.setColor(KEY_BORDER);
+		g.drawRoundRect(x, y, w - 1, h - 1, 6, 6);
+		if(icons[key] != null)
+		{
+			icons[key].paintIcon(this, g, x + (w - icons[key].getIconWidth()) / 2, y + (h - icons[key].getIconHeight()) / 2);
+		}
+		else if(labels[key] != null)
+		{
+			g.setFont(KEY_FONT);
+			g.setColor(KEY_TEXT);
+			FontMetrics fm = g.getFontMetrics();
+			g.drawString(labels[key], x + (w - fm.stringWidth(labels[key])) / 2, y + (h - fm.getHeight()) / 2 + fm.getAscent());
+		}
+	}
+
+	/**
+	 * Repaints the area of one key
+	 *
+	 * @param key
+	 */
+	private void repaintKey(int key)
+	{
+		if(key < 0 || key >= keyX.length)
+		{
+			return;
+		}
+		if(flipped)
+		{
+			repaint(getWidth() - keyX[key] - keyW[key], getHeight() - keyY[key] - keyH[key], keyW[key], keyH[key]);
+		}
+		else
+		{
+			repaint(keyX[key], keyY[key], keyW[key], keyH[key]);
+		}
+	}
+
+	/**
+	 * Repaints all keys of a type
+	 *
+	 * @param type
+	 */
+	private void repaintKeys(int type)
+	{
+		for(int i = 0; i < keyX.length; i++)
+		{
+			if(model.getType(i) == type)
+			{
+				repaintKey(i);
+			}
+		}
+	}
+}
@@ -1,21 +1,20 @@
 
+import java.awt.Component;
 import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
-import java.awt.Toolkit;
+import java.awt.Rectangle;
 import java.awt.Window;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
-import java.awt.geom.AffineTransform;
+import java.net.URL;
+import java.util.Arrays;
 import java.util.Locale;
-import java.util.MissingResourceException;
-import java.util.ResourceBundle;
-import java.util.Vector;
+import java.util.Map;
 
+import javax.swing.AbstractButton;
 import javax.swing.ImageIcon;
-import javax.swing.JButton;
-import javax.swing.JComponent;
 import javax.swing.JDialog;
 import javax.swing.text.JTextComponent;
 
@@ -23,20 +22,37 @@ import javax.swing.text.JTextComponent;
 /**
  * Modified for iUbi from original source code from:
  * http://sourceforge.net/projects/javavirtualkeyb/
- * 
- * Fully in java implemented virtual keyboard, to use for some Textfields (JTextComponent's) in Java(SWING). 
+ *
+ * Fully in java implemented virtual keyboard, to use for some Textfields (JTextComponent's) in Java(SWING).
  * License: BSD
- * 
+ *
+ * The keys are built from a KeyboardLayoutModel into an array in the order
+ * of the layout, so relabelling and layout are loops over the keys.
  */
 
-public class PanelVirtualKeyboardReal extends javax.swing.JPanel {
-    ResourceBundle keyBundle = null;
-    KeyEnums keyEnums = null;
+public class PanelVirtualKeyboardReal extends javax.swing.JPanel implements VirtualKeyboard {
+    private static final Font KEY_FONT = new Font("Tahoma", Font.BOLD, 13);
+
+    KeyboardLayoutModel model = null;
     JTextComponent textComponent;
+    KeyboardEditor editor = new KeyboardEditor(null);
     JDialog textDialog;
     Window window = null;
     Locale localeL;
-    Vector<RotatingButton> buttons = new <RotatingButton>Vector();
+
+    // Keys of the layout and their bounds from the last layout
+    AbstractButton[] keys = new AbstractButton[0];
+    int[] keyX = new int[0];
+    int[] keyY = new int[0];
+    int[] keyW = new int[0];
+    int[] keyH = new int[0];
+
+    KeyboardLayoutModel shownModel = null;
+    int shownLayer = -1;
+    long relabelCount = 0;
+    KeyboardLayout keyboardLayout;
+    long paintCount = 0;
+    InputLatencyMonitor latencyMonitor = null;
 
     boolean poitToUp = false;
     boolean shiftBs = false;
@@ -44,258 +60,116 @@ public class PanelVirtualKeyboardReal extends javax.swing.JPanel {
     int layer=0;
     int gap = 2;
     int tab = 4;
-    boolean flipped = false;
-    
-    private KeyboardSet keyboardSet = null;
+    Orientation orientation = Orientation.NORMAL;
+    // Transform of the unrotated layout for the panel size
+    Orientation.Placement placement = new Orientation.Placement();
+
     public PanelVirtualKeyboardReal(boolean flipped) {
+        this(flipped ? Orientation.FLIPPED : Orientation.NORMAL);
+    }
 
-    	this.flipped = flipped;
-        initComponents();
-        //localeL= Locale.getDefault(); //Set locale to default
+    public PanelVirtualKeyboardReal(Orientation orientation) {
 
-        this.keyboardSet = keyboardSet;
-        localeL= new Locale("fi", "FI");
-        try {
-            //keyBundle = ResourceBundle.getBundle("virtualkeyboard.lang.Keyboard", localeL);
-        	keyBundle = ResourceBundle.getBundle("lang.Keyboard", localeL);
-        } catch (MissingResourceException e) {
-            System.err.println(e);
-        }        
-        updateGUI();
+    	this.orientation = orientation;
+        keyboardLayout = new KeyboardLayout(null, new KeyboardLayout.KeyGeometry() {
+            public void computeKeyBounds(int width, int height, Map<Component, Rectangle> bounds) {
+                PanelVirtualKeyboardReal.this.computeKeyBounds(width, height, bounds);
+            }
+        });
+        setLayout(keyboardLayout);
+        setModel(KeyboardLayoutModel.getDefault());
         layer=0;
     }
-    
+
+    /**
+     * Build the keys of a layout
+     *
+     * @param model
+     */
+    public void setModel(KeyboardLayoutModel model) {
+        if(model==null) return;
+        this.model = model;
+        this.localeL = model.getLocale();
+        removeAll();
+        int count = model.getKeyCount();
+        keys = new AbstractButton[count];
+        keyX = new int[count];
+        keyY = new int[count];
+        keyW = new int[count];
+        keyH = new int[count];
+        for(int i=0; i<count; i++){
+            int type = model.getType(i);
+            AbstractButton b;
+            if(type==KeyboardLayoutModel.KEY_CAPS_LOCK || type==KeyboardLayoutModel.KEY_SHIFT)
+                b = new RotatingToggleButton(orientation);
+            else
+                b = new RotatingButton(orientation);
+            b.setFont(KEY_FONT);
+            String icon = model.getIcon(i);
+            if(icon!=null){
+                URL url = getClass().getResource(icon);
+                if(url!=null) b.setIcon(new ImageIcon(url));
+            }
+            final int key = i;
+            b.addActionListener(new ActionListener() {
+                public void actionPerformed(ActionEvent evt) {
+                    if(latencyMonitor!=null) latencyMonitor.keyPressed(evt.getWhen());
+                    keyPressed(key);
+                    if(latencyMonitor!=null) latencyMonitor.keyHandled();
+                }
+            });
+            keys[i] = b;
+            add(b);
+        }
+        setPreferredSize(orientation.getRotatedSize(model.getPreferredWidth(), model.getPreferredHeight()));
+        shownModel = null;
+        updateGUI();
+        keyboardLayout.reset();
+        revalidate();
+        repaint();
+    }
+
+    public KeyboardLayoutModel getModel() {
+        return model;
+    }
+
     public void shiftsDown()
     {
-    	for(ActionListener a: jTBR4B13_SHIFT_RIGHT.getActionListeners()) {
-    	    a.actionPerformed(new ActionEvent(this, ActionEvent.ACTION_PERFORMED, null) {
-    	          //Nothing need go here, the actionPerformed method (with the
-    	          //above arguments) will trigger the respective listener
-    	    });
-    	}
-    	for(ActionListener a: jTBR4B1_SHIFT_LEFT.getActionListeners()) {
-    	    a.actionPerformed(new ActionEvent(this, ActionEvent.ACTION_PERFORMED, null) {
-    	          //Nothing need go here, the actionPerformed method (with the
-    	          //above arguments) will trigger the respective listener
-    	    });
-    	}
-    	for(ActionListener a: jTBR3B1_CAPS_LOCK.getActionListeners()) {
-    	    a.actionPerformed(new ActionEvent(this, ActionEvent.ACTION_PERFORMED, null) {
-    	          //Nothing need go here, the actionPerformed method (with the
-    	          //above arguments) will trigger the respective listener
-    	    });
-    	}
-        jTBR4B13_SHIFT_RIGHT.setSelected(false);
-        jTBR4B1_SHIFT_LEFT.setSelected(false);
-        jTBR3B1_CAPS_LOCK.setSelected(false);
+        setSelected(KeyboardLayoutModel.KEY_SHIFT, false);
+        setSelected(KeyboardLayoutModel.KEY_CAPS_LOCK, false);
+        layer=0;
+        updateGUI();
     }
 
     /**
-     * Set focus to ENTER button
+     * Show the labels of the current layer. Only keys whose label differs
+     * from the one shown are relabelled, so calling this without a layer
+     * change does not touch the buttons at all.
      */
-    /*public void setFocusToEXE(){
-        jBExe.requestFocus();
-    }*/
-
     public final void updateGUI() {
-        switch (layer) {
-            case 0:
-                //ROW1*********************************************************************
-                jBR1B1.setText(keyBundle.getString(KeyEnums.jBR1B1.toString()));
-                jBR1B2.setText(keyBundle.getString(KeyEnums.jBR1B2.toString()));
-                jBR1B3.setText(keyBundle.getString(KeyEnums.jBR1B3.toString())); // "2"
-                jBR1B4.setText(keyBundle.getString(KeyEnums.jBR1B4.toString()));
-                jBR1B5.setText(keyBundle.getString(KeyEnums.jBR1B5.toString()));
-                jBR1B6.setText(keyBundle.getString(KeyEnums.jBR1B6.toString()));
-                jBR1B7.setText(keyBundle.getString(KeyEnums.jBR1B7.toString()));
-                jBR1B8.setText(keyBundle.getString(KeyEnums.jBR1B8.toString()));
-                jBR1B9.setText(keyBundle.getString(KeyEnums.jBR1B9.toString()));
-                jBR1B10.setText(keyBundle.getString(KeyEnums.jBR1B10.toString()));
-                jBR1B11.setText(keyBundle.getString(KeyEnums.jBR1B11.toString()));
-                jBR1B12.setText(keyBundle.getString(KeyEnums.jBR1B12.toString()));
-                jBR1B13.setText(keyBundle.getString(KeyEnums.jBR1B13.toString()));
-//              jBBackspace.setText(keyBundle.getString(KeyEnums.jBR1BACKSPACE.toString()));
-                //ROW2*********************************************************************
-//                jBR2B1.setText(keyBundle.getString(KeyEnums.jBR2B1.toString())); //Tab Key
-                jBR2B2.setText(keyBundle.getString(KeyEnums.jBR2B2.toString()));
-                jBR2B3.setText(keyBundle.getString(KeyEnums.jBR2B3.toString()));
-                jBR2B4.setText(keyBundle.getString(KeyEnums.jBR2B4.toString()));
-                jBR2B5.setText(keyBundle.getString(KeyEnums.jBR2B5.toString()));
-                jBR2B6.setText(keyBundle.getString(KeyEnums.jBR2B6.toString()));
-                jBR2B7.setText(keyBundle.getString(KeyEnums.jBR2B7.toString()));
-                jBR2B8.setText(keyBundle.getString(KeyEnums.jBR2B8.toString()));
-                jBR2B9.setText(keyBundle.getString(KeyEnums.jBR2B9.toString()));
-                jBR2B10.setText(keyBundle.getString(KeyEnums.jBR2B10.toString()));
-                jBR2B11.setText(keyBundle.getString(KeyEnums.jBR2B11.toString()));
-                jBR2B12.setText(keyBundle.getString(KeyEnums.jBR2B12.toString()));
-                jBR2B13.setText(keyBundle.getString(KeyEnums.jBR2B13.toString()));
-//              jBEnter.setText(keyBundle.getString(KeyEnums.jBENTER.toString()));
-                //ROW3*********************************************************************
-//              jBR3B1.setText(keyBundle.getString(KeyEnums.jBR3B1.toString())); //Cap Key
-                jBR3B2.setText(keyBundle.getString(KeyEnums.jBR3B2.toString())); // "a"
-
-                jBR3B3.setText(keyBundle.getString(KeyEnums.jBR3B3.toString()));
-                jBR3B4.setText(keyBundle.getString(KeyEnums.jBR3B4.toString()));
-                jBR3B5.setText(keyBundle.getString(KeyEnums.jBR3B5.toString()));
-                jBR3B6.setText(keyBundle.getString(KeyEnums.jBR3B6.toString()));
-                jBR3B7.setText(keyBundle.getString(KeyEnums.jBR3B7.toString()));
-                jBR3B8.setText(keyBundle.getString(KeyEnums.jBR3B8.toString()));
-                jBR3B9.setText(keyBundle.getString(KeyEnums.jBR3B9.toString()));
-                jBR3B10.setText(keyBundle.getString(KeyEnums.jBR3B10.toString()));
-                jBR3B11.setText(keyBundle.getString(KeyEnums.jBR3B11.toString()));
-                jBR3B12.setText(keyBundle.getString(KeyEnums.jBR3B12.toString()));
-                jBR3B13.setText(keyBundle.getString(KeyEnums.jBR3B13.toString()));
-                //ROW4*********************************************************************
-//              jBR4B1.setText(keyBundle.getString(KeyEnums.jBR4B1.toString())); //Shift Key
-                jBR4B2.setText(keyBundle.getString(KeyEnums.jBR4B2.toString()));
-                jBR4B3.setText(keyBundle.getString(KeyEnums.jBR4B3.toString()));
-                jBR4B4.setText(keyBundle.getString(KeyEnums.jBR4B4.toString()));
-                jBR4B5.setText(keyBundle.getString(KeyEnums.jBR4B5.toString()));
-                jBR4B6.setText(keyBundle.getString(KeyEnums.jBR4B6.toString()));
-                jBR4B7.setText(keyBundle.getString(KeyEnums.jBR4B7.toString()));
-                jBR4B8.setText(keyBundle.getString(KeyEnums.jBR4B8.toString()));
-                jBR4B9.setText(keyBundle.getString(KeyEnums.jBR4B9.toString()));
-                jBR4B10.setText(keyBundle.getString(KeyEnums.jBR4B10.toString()));
-                jBR4B11.setText(keyBundle.getString(KeyEnums.jBR4B11.toString()));
-                jBR4B12.setText(keyBundle.getString(KeyEnums.jBR4B12.toString()));
-//              jBR4B13.setText(keyBundle.getString(KeyEnums.jBR4B13.toString())); //Shift Key
-                //ROW5*********************************************************************
-//              jBCtrl.setText(keyBundle.getString(KeyEnums.jBCTRL.toString()));  //Ctrl Key
-//              jBSpace.setText(keyBundle.getString(KeyEnums.jBSPACE.toString()));  //Space Key
-              //jTB_ALT_GR.setText(keyBundle.getString(KeyEnums.jTBALT_GR.toString()));  //Alt-Gr Key
-                break;
-            case 1:
-                //ROW1*********************************************************************
-                jBR1B1.setText(keyBundle.getString(KeyEnums.jBR1B1_0.toString()));
-                jBR1B2.setText(keyBundle.getString(KeyEnums.jBR1B2_0.toString()));
-                jBR1B3.setText(keyBundle.getString(KeyEnums.jBR1B3_0.toString()));
-                jBR1B4.setText(keyBundle.getString(KeyEnums.jBR1B4_0.toString()));
-                jBR1B5.setText(keyBundle.getString(KeyEnums.jBR1B5_0.toString()));
-                jBR1B6.setText(keyBundle.getString(KeyEnums.jBR1B6_0.toString()));
-                jBR1B7.setText(keyBundle.getString(KeyEnums.jBR1B7_0.toString()));
-                jBR1B8.setText(keyBundle.getString(KeyEnums.jBR1B8_0.toString()));
-                jBR1B9.setText(keyBundle.getString(KeyEnums.jBR1B9_0.toString()));
-                jBR1B10.setText(keyBundle.getString(KeyEnums.jBR1B10_0.toString()));
-                jBR1B11.setText(keyBundle.getString(KeyEnums.jBR1B11_0.toString()));
-                jBR1B12.setText(keyBundle.getString(KeyEnums.jBR1B12_0.toString()));
-                jBR1B13.setText(keyBundle.getString(KeyEnums.jBR1B13_0.toString()));
-//              jBBackspace.setText(keyBundle.getString(KeyEnums.jBR1BACKSPACE_0.toString()));
-                //ROW2*********************************************************************
-//              jBR2B1.setText(keyBundle.getString(KeyEnums.jBR2B1_0.toString())); //Tab Key
-                jBR2B2.setText(keyBundle.getString(KeyEnums.jBR2B2_0.toString()));
-                jBR2B3.setText(keyBundle.getString(KeyEnums.jBR2B3_0.toString()));
-                jBR2B4.setText(keyBundle.getString(KeyEnums.jBR2B4_0.toString()));
-                jBR2B5.setText(keyBundle.getString(KeyEnums.jBR2B5_0.toString()));
-                jBR2B6.setText(keyBundle.getString(KeyEnums.jBR2B6_0.toString()));
-                jBR2B7.setText(keyBundle.getString(KeyEnums.jBR2B7_0.toString()));
-                jBR2B8.setText(keyBundle.getString(KeyEnums.jBR2B8_0.toString()));
-                jBR2B9.setText(keyBundle.getString(KeyEnums.jBR2B9_0.toString()));
-                jBR2B10.setText(keyBundle.getString(KeyEnums.jBR2B10_0.toString()));
-                jBR2B11.setText(keyBundle.getString(KeyEnums.jBR2B11_0.toString()));
-                jBR2B12.setText(keyBundle.getString(KeyEnums.jBR2B12_0.toString()));
-                jBR2B13.setText(keyBundle.getString(KeyEnums.jBR2B13_0.toString()));
-                
-                
-                
-//              jBEnter.setText(keyBundle.getString(KeyEnums.jBENTER_0.toString()));
-                //ROW3*********************************************************************
-//              jBR3B1.setText(keyBundle.getString(KeyEnums.jBR3B1_0.toString())); //Cap Key
-                jBR3B2.setText(keyBundle.getString(KeyEnums.jBR3B2_0.toString())); // "A"
-                jBR3B3.setText(keyBundle.getString(KeyEnums.jBR3B3_0.toString()));
-                jBR3B4.setText(keyBundle.getString(KeyEnums.jBR3B4_0.toString()));
-                jBR3B5.setText(keyBundle.getString(KeyEnums.jBR3B5_0.toString()));
-                jBR3B6.setText(keyBundle.getString(KeyEnums.jBR3B6_0.toString()));
-                jBR3B7.setText(keyBundle.getString(KeyEnums.jBR3B7_0.toString()));
-                jBR3B8.setText(keyBundle.getString(KeyEnums.jBR3B8_0.toString()));
-                jBR3B9.setText(keyBundle.getString(KeyEnums.jBR3B9_0.toString()));
-                jBR3B10.setText(keyBundle.getString(KeyEnums.jBR3B10_0.toString()));
-                jBR3B11.setText(keyBundle.getString(KeyEnums.jBR3B11_0.toString()));
-                jBR3B12.setText(keyBundle.getString(KeyEnums.jBR3B12_0.toString()));
-                jBR3B13.setText(keyBundle.getString(KeyEnums.jBR3B13_0.toString()));
-                //ROW4*********************************************************************
-//              jBR4B1.setText(keyBundle.getString(KeyEnums.jBR4B1_0.toString())); //Shift Key
-                jBR4B2.setText(keyBundle.getString(KeyEnums.jBR4B2_0.toString()));
-                jBR4B3.setText(keyBundle.getString(KeyEnums.jBR4B3_0.toString()));
-                jBR4B4.setText(keyBundle.getString(KeyEnums.jBR4B4_0.toString()));
-                jBR4B5.setText(keyBundle.getString(KeyEnums.jBR4B5_0.toString()));
-                jBR4B6.setText(keyBundle.getString(KeyEnums.jBR4B6_0.toString()));
-                jBR4B7.setText(keyBundle.getString(KeyEnums.jBR4B7_0.toString()));
-                jBR4B8.setText(keyBundle.getString(KeyEnums.jBR4B8_0.toString()));
-                jBR4B9.setText(keyBundle.getString(KeyEnums.jBR4B9_0.toString()));
-                jBR4B10.setText(keyBundle.getString(KeyEnums.jBR4B10_0.toString()));
-                jBR4B11.setText(keyBundle.getString(KeyEnums.jBR4B11_0.toString()));
-                jBR4B12.setText(keyBundle.getString(KeyEnums.jBR4B12_0.toString()));
-//              jBR4B13.setText(keyBundle.getString(KeyEnums.jBR4B13_0.toString())); //Shift Key
-                //ROW5*********************************************************************
-//              jBCtrl.setText(keyBundle.getString(KeyEnums.jBCTRL_0.toString()));  //Ctrl Key
-//              jBSpace.setText(keyBundle.getString(KeyEnums.jBSPACE_0.toString()));  //Space Key
-              //jTB_ALT_GR.setText(keyBundle.getString(KeyEnums.jTBALT_GR_0.toString()));  //Alt-Gr Key
-                break;
-            case 2:
-                //ROW1*********************************************************************
-                jBR1B1.setText(keyBundle.getString(KeyEnums.jBR1B1_1.toString()));
-                jBR1B2.setText(keyBundle.getString(KeyEnums.jBR1B2_1.toString()));
-                jBR1B3.setText(keyBundle.getString(KeyEnums.jBR1B3_1.toString()));
-                jBR1B4.setText(keyBundle.getString(KeyEnums.jBR1B4_1.toString()));
-                jBR1B5.setText(keyBundle.getString(KeyEnums.jBR1B5_1.toString()));
-                jBR1B6.setText(keyBundle.getString(KeyEnums.jBR1B6_1.toString()));
-                jBR1B7.setText(keyBundle.getString(KeyEnums.jBR1B7_1.toString()));
-                jBR1B8.setText(keyBundle.getString(KeyEnums.jBR1B8_1.toString()));
-                jBR1B9.setText(keyBundle.getString(KeyEnums.jBR1B9_1.toString()));
-                jBR1B10.setText(keyBundle.getString(KeyEnums.jBR1B10_1.toString()));
-                jBR1B11.setText(keyBundle.getString(KeyEnums.jBR1B11_1.toString()));
-                jBR1B12.setText(keyBundle.getString(KeyEnums.jBR1B12_1.toString()));
-                jBR1B13.setText(keyBundle.getString(KeyEnums.jBR1B13_1.toString()));
-//              jBBackspace.setText(keyBundle.getString(KeyEnums.jBR1BACKSPACE_1.toString()));
-                //ROW2*********************************************************************
-//                jBR2B1.setText(keyBundle.getString(KeyEnums.jBR2B1_1.toString())); //Tab Key
-                jBR2B2.setText(keyBundle.getString(KeyEnums.jBR2B2_1.toString()));
-                jBR2B3.setText(keyBundle.getString(KeyEnums.jBR2B3_1.toString()));
-                jBR2B4.setText(keyBundle.getString(KeyEnums.jBR2B4_1.toString()));
-                jBR2B5.setText(keyBundle.getString(KeyEnums.jBR2B5_1.toString()));
-                jBR2B6.setText(keyBundle.getString(KeyEnums.jBR2B6_1.toString()));
-                jBR2B7.setText(keyBundle.getString(KeyEnums.jBR2B7_1.toString()));
-                jBR2B8.setText(keyBundle.getString(KeyEnums.jBR2B8_1.toString()));
-                jBR2B9.setText(keyBundle.getString(KeyEnums.jBR2B9_1.toString()));
-                jBR2B10.setText(keyBundle.getString(KeyEnums.jBR2B10_1.toString()));
-                jBR2B11.setText(keyBundle.getString(KeyEnums.jBR2B11_1.toString()));
-                jBR2B12.setText(keyBundle.getString(KeyEnums.jBR2B12_1.toString()));
-                jBR2B13.setText(keyBundle.getString(KeyEnums.jBR2B13_1.toString()));
-//              jBEnter.setText(keyBundle.getString(KeyEnums.jBENTER_1.toString()));
-                //ROW3*********************************************************************
-//              jBR3B1.setText(keyBundle.getString(KeyEnums.jBR3B1_1.toString())); //Cap Key
-                jBR3B2.setText(keyBundle.getString(KeyEnums.jBR3B2_1.toString()));
-                jBR3B3.setText(keyBundle.getString(KeyEnums.jBR3B3_1.toString()));
-                jBR3B4.setText(keyBundle.getString(KeyEnums.jBR3B4_1.toString()));
-                jBR3B5.setText(keyBundle.getString(KeyEnums.jBR3B5_1.toString()));
-                jBR3B6.setText(keyBundle.getString(KeyEnums.jBR3B6_1.toString()));
-                jBR3B7.setText(keyBundle.getString(KeyEnums.jBR3B7_1.toString()));
-                jBR3B8.setText(keyBundle.getString(KeyEnums.jBR3B8_1.toString()));
-                jBR3B9.setText(keyBundle.getString(KeyEnums.jBR3B9_1.toString()));
-                jBR3B10.setText(keyBundle.getString(KeyEnums.jBR3B10_1.toString()));
-                jBR3B11.setText(keyBundle.getString(KeyEnums.jBR3B11_1.toString()));
-                jBR3B12.setText(keyBundle.getString(KeyEnums.jBR3B12_1.toString()));
-                jBR3B13.setText(keyBundle.getString(KeyEnums.jBR3B13_1.toString()));
-                //ROW4*********************************************************************
-//              jBR4B1.setText(keyBundle.getString(KeyEnums.jBR4B1_1.toString())); //Shift Key
-                jBR4B2.setText(keyBundle.getString(KeyEnums.jBR4B2_1.toString()));
-                jBR4B3.setText(keyBundle.getString(KeyEnums.jBR4B3_1.toString()));
-                jBR4B4.setText(keyBundle.getString(KeyEnums.jBR4B4_1.toString()));
-                jBR4B5.setText(keyBundle.getString(KeyEnums.jBR4B5_1.toString()));
-                jBR4B6.setText(keyBundle.getString(KeyEnums.jBR4B6_1.toString()));
-                jBR4B7.setText(keyBundle.getString(KeyEnums.jBR4B7_1.toString()));
-                jBR4B8.setText(keyBundle.getString(KeyEnums.jBR4B8_1.toString()));
-                jBR4B9.setText(keyBundle.getString(KeyEnums.jBR4B9_1.toString()));
-                jBR4B10.setText(keyBundle.getString(KeyEnums.jBR4B10_1.toString()));
-                jBR4B11.setText(keyBundle.getString(KeyEnums.jBR4B11_1.toString()));
-                jBR4B12.setText(keyBundle.getString(KeyEnums.jBR4B12_1.toString()));
-//              jBR4B13.setText(keyBundle.getString(KeyEnums.jBR4B13_1.toString())); //Shift Key
-                //ROW5*********************************************************************
-//              jBCtrl.setText(keyBundle.getString(KeyEnums.jBCTRL_1.toString()));  //Ctrl Key
-//              jBSpace.setText(keyBundle.getString(KeyEnums.jBSPACE_1.toString()));  //Space Key
-              //jTB_ALT_GR.setText(keyBundle.getString(KeyEnums.jTBALT_GR_1.toString()));  //Alt-Gr Key
-                break;
+        if(model==null) return;
+        if(model==shownModel && layer==shownLayer) return;
+        long phaseStart = InputLatencyMonitor.begin();
+        String[] layerLabels = model.getLabels(layer);
+        for(int i=0; i<keys.length; i++){
+            if(layerLabels[i]==null) continue;
+            if(!layerLabels[i].equals(keys[i].getText())){
+                keys[i].setText(layerLabels[i]);
+                relabelCount++;
+            }
         }
+        shownModel = model;
+        shownLayer = layer;
+        InputLatencyMonitor.end(InputLatencyMonitor.LABELS, phaseStart);
+    }
+
+    /**
+     * Returns how many times a key has been relabelled
+     *
+     * @return count
+     */
+    public long getRelabelCount() {
+        return relabelCount;
     }
 
 	@Override
@@ -304,308 +178,76 @@ public class PanelVirtualKeyboardReal extends javax.swing.JPanel {
          //2D graphic Component loading
         Graphics2D g2D = (Graphics2D) g;
         super.paintComponent( g2D );
+        paintCount++;
+  }
 
-        //Height and width of Panel
-        int lHeight=this.getHeight();
-        int lWidth =this.getWidth();
-
-        int width = lWidth/15-gap;
-        int height = lHeight/5-gap;
-
-        //int width = lWidth/10-gap;
-        //int height = lHeight/8-gap;
-        
-        int x = gap;
-        int y = gap;
-        
-        if(!flipped)
-        {	
-        	//Row 1
-        	jBR1B1.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR1B2.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR1B3.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR1B4.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR1B5.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR1B6.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR1B7.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR1B8.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR1B9.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR1B10.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR1B11.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR1B12.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR1B13.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jB_BACKSPACE.setBounds(x, y, width*2, height);
-
-        	//Row 2
-        	x = gap;
-        	y += height+gap;
-
-        	jBR2B1_TAB.setBounds(x, y, width+gap+width/2, height);
-        	x += width+gap+width/2+gap;
-        	jBR2B2.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR2B3.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR2B4.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR2B5.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR2B6.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR2B7.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR2B8.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR2B9.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR2B10.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR2B11.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR2B12.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR2B13.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jB_ENTER.setBounds(x, y, width+width/2-gap, height+gap+height); // Row 3 (3) ?
-
-        	//Row 3
-        	x = gap;
-        	y += height+gap;
-
-        	jTBR3B1_CAPS_LOCK.setBounds(x, y, width+gap+width/2, height);
-        	x += width+gap+width/2+gap;
-        	jBR3B2.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR3B3.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR3B4.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR3B5.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR3B6.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR3B7.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR3B8.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR3B9.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR3B10.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR3B11.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR3B12.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR3B13.setBounds(x, y, width, height);
-
-        	//Row 4
-        	x = gap;
-        	y += height+gap;
-
-        	jTBR4B1_SHIFT_LEFT.setBounds(x, y, width*2+gap, height);
-        	x += width*2+gap+gap;
-        	jBR4B2.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR4B3.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR4B4.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR4B5.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR4B6.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR4B7.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR4B8.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR4B9.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR4B10.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR4B11.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR4B12.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jTBR4B13_SHIFT_RIGHT.setBounds(x, y, width*2, height);
+    /**
+     * Returns how many times the keyboard panel has been painted
+     *
+     * @return count
+     */
+    public long getPaintCount() {
+        return paintCount;
+    }
 
-        	//Row 5
-        	x = 170 + gap;
-        	y += height+gap;
+    public void setLatencyMonitor(InputLatencyMonitor latencyMonitor) {
+        this.latencyMonitor = latencyMonitor;
+    }
 
-        	jB_SPACE.setBounds(x, y, width*6+gap*4, height);
-        	x += width*5+gap*5;
+    public KeyboardLayout getKeyboardLayout() {
+        return keyboardLayout;
+    }
 
-        	// TODO set Space-button size correctly
-        	double spaceW = jB_SPACE.getBounds().getWidth();
-        	double spaceH = jB_SPACE.getBounds().getHeight(); 
-        	jB_SPACE.setMinimumSize(new Dimension((int)spaceW, (int)spaceH));
-        	jB_SPACE.repaint();
+    /**
+     * Compute the bounds of every key for the given panel size.
+     * Called by the KeyboardLayout only when the size changes.
+     *
+     * @param lWidth Width of panel
+     * @param lHeight Height of panel
+     * @param bounds Bounds of the keys are put here
+     */
+    private void computeKeyBounds(int lWidth, int lHeight, Map<Component, Rectangle> bounds) {
+        if(model==null) return;
+        if(orientation.isNormal() || orientation.isHalfTurn()) {
+            model.computeBounds(lWidth, lHeight, gap, orientation.isHalfTurn(), keyX, keyY, keyW, keyH);
+        } else {
+            // The keys are laid out unrotated and their bounds turned with the panel
+            Dimension content = getContentSize(lWidth, lHeight);
+            model.computeBounds(content.width, content.height, gap, false, keyX, keyY, keyW, keyH);
+            placement.update(orientation, lWidth, lHeight, content.width, content.height);
+            for(int i=0; i<keys.length; i++) {
+                Rectangle r = placement.transformBounds(new Rectangle(keyX[i], keyY[i], keyW[i], keyH[i]));
+                keyX[i] = r.x;
+                keyY[i] = r.y;
+                keyW[i] = r.width;
+                keyH[i] = r.height;
+            }
         }
-        else
-        {
-        	
-        	//Row 1 (5)
-        	x = 170 + gap;
-        	//y += height+gap;
-
-        	jB_SPACE.setBounds(x, y, width*6+gap*4, height);
-
-        	// TODO set Space-button size correctly
-        	double spaceW = jB_SPACE.getBounds().getWidth();
-        	double spaceH = jB_SPACE.getBounds().getHeight(); 
-        	jB_SPACE.setMinimumSize(new Dimension((int)spaceW, (int)spaceH));
-        	jB_SPACE.repaint();
-        	
-           	//Row 2 (4)
-        	x = gap;
-        	y += height+gap;
-
-        	//jTBR4B1_SHIFT_LEFT.setBounds(x, y, width*2+gap, height);
-        	jTBR4B13_SHIFT_RIGHT.setBounds(x, y, width*2, height);
-        	x += width*2+gap;
-        	jBR4B12.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR4B11.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR4B10.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR4B9.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR4B8.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR4B7.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR4B6.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR4B5.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR4B4.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR4B3.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR4B2.setBounds(x, y, width, height);
-        	x += width+gap;
-        	//jTBR4B13_SHIFT_RIGHT.setBounds(x, y, width*2, height);
-        	jTBR4B1_SHIFT_LEFT.setBounds(x, y, width*2+gap, height);
-        	
-        	//Row 3 (3)
-        	x = gap;
-        	//x += width+width/2-gap+gap;
-        	y += height+gap;
-        	
+        for(int i=0; i<keys.length; i++)
+            bounds.put(keys[i], new Rectangle(keyX[i], keyY[i], keyW[i], keyH[i]));
+    }
 
-        	jB_ENTER.setBounds(x, y, width+width/2-gap, height+gap+height);
-        	x += width+width/2-gap+gap;
+    /**
+     * Size of the unrotated layout that fits the panel turned. Quarter
+     * turns fill the panel, other angles keep the shape of the layout.
+     *
+     * @param lWidth Width of panel
+     * @param lHeight Height of panel
+     * @return Dimension
+     */
+    private Dimension getContentSize(int lWidth, int lHeight) {
+        if(orientation.isQuarterTurn())
+            return orientation.getUnrotatedSize(lWidth, lHeight);
+        int pw = model.getPreferredWidth();
+        int ph = model.getPreferredHeight();
+        Dimension turned = orientation.getRotatedSize(pw, ph);
+        double scale = Math.min(lWidth / (double)turned.width, lHeight / (double)turned.height);
+        return new Dimension((int)Math.floor(pw * scale), (int)Math.floor(ph * scale));
+    }
 
-        	//x += width+gap+width/2+gap;
-        	jBR3B13.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR3B12.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR3B11.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR3B10.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR3B9.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR3B8.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR3B7.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR3B6.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR3B5.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR3B4.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR3B3.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR3B2.setBounds(x, y, width, height);
-        	x += width+gap;
-        	
-        	jTBR3B1_CAPS_LOCK.setBounds(x, y, width+gap+width/2, height);
-        	
-        	//Row 4 (2)
-        	x = gap;
-        	x += width+width/2-gap+gap;
-        	y += height+gap;
-        	
-        	jBR2B13.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR2B12.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR2B11.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR2B10.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR2B9.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR2B8.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR2B7.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR2B6.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR2B5.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR2B4.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR2B3.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR2B2.setBounds(x, y, width, height);
-        	x += width+gap;
-        	
-        	jBR2B1_TAB.setBounds(x, y, width+gap+width/2, height);
-        	
-        	//Row 5 (1)
-        	x = gap;
-        	y += height+gap;
-        	
-        	jB_BACKSPACE.setBounds(x, y, width*2+gap, height);
-        	x += width*2+gap+gap;        	
-        	
-        	jBR1B13.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR1B12.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR1B11.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR1B10.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR1B9.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR1B8.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR1B7.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR1B6.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR1B5.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR1B4.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR1B3.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR1B2.setBounds(x, y, width, height);
-        	x += width+gap;
-        	jBR1B1.setBounds(x, y, width, height);
-        	//x += width+gap;
-        	//jB_BACKSPACE.setBounds(x, y, width*2, height);
-        }
-     }
+    public Orientation getOrientation() {
+        return orientation;
+    }
 
     /**
      * Get the value of locale
@@ -617,18 +259,15 @@ public class PanelVirtualKeyboardReal extends javax.swing.JPanel {
     }
 
     /**
-     * Set the value of locale
+     * Set the value of locale. The layout "keyboard_[locale].layout" is
+     * used if there is one.
      *
      * @param locale new value of locale
      */
     public void setLocaleL(Locale localeL) {
         this.localeL = localeL;
-        try {
-            //keyBundle = ResourceBundle.getBundle("virtualkeyboard.lang.Keyboard", this.localeL);
-        	keyBundle = ResourceBundle.getBundle("lang.Keyboard", this.localeL);
-        } catch (MissingResourceException e) {
-            System.err.println(e);
-        }
+        KeyboardLayoutModel localeModel = KeyboardLayoutModel.forLocale(localeL);
+        if(localeModel!=null && localeModel!=model) setModel(localeModel);
         updateGUI();
     }
 
@@ -639,13 +278,14 @@ public class PanelVirtualKeyboardReal extends javax.swing.JPanel {
 
     public void setTextComponent(JTextComponent textComponent) {
         this.textComponent = textComponent;
+        editor.setTextComponent(textComponent);
     }
 
 
-	protected void setTextDialog(JDialog textDialog) {
+	public void setTextDialog(JDialog textDialog) {
 		this.textDialog = textDialog;
-	}    
-    
+	}
+
     public Window getWindow() {
         return window;
     }
@@ -676,6 +316,8 @@ public class PanelVirtualKeyboardReal extends javax.swing.JPanel {
 
     public void setGap(int gap) {
         this.gap = gap;
+        keyboardLayout.reset();
+        revalidate();
     }
 
     public int getTab() {
@@ -685,1151 +327,86 @@ public class PanelVirtualKeyboardReal extends javax.swing.JPanel {
     public void setTab(int tab) {
         this.tab = tab;
     }
-    
-     /**
-     * Write value to the JTextComponent to the right Caret position
+
+    /**
+     * Handle a key press
      *
-     * @param evt
+     * @param key Index of the key in the layout
      */
-    private void writeValue(java.awt.event.ActionEvent evt){
-        if(textComponent==null) return;
-        if(((((JButton)evt.getSource()).getText())).equals("")) return;
-        String text = textComponent.getText();        
-        int index = textComponent.getCaretPosition();
-        text = new StringBuffer(text).insert(index,
-            ((JButton)evt.getSource()).getText()).toString();
-        textComponent.setText(text);
-        textComponent.setCaretPosition(index+(((JButton)evt.getSource()).getText()).toString().length());
-
-        if(jTBR4B13_SHIFT_RIGHT.isSelected()){// && !jTB_ALT_GR.isSelected()){
-            if(layer==0)layer =1;
-            else layer=0;
-            jTBR4B13_SHIFT_RIGHT.setSelected(false);
-            jTBR4B1_SHIFT_LEFT.setSelected(false);
-        }
-
-        if(poitToUp){
-            if(((JButton)evt.getSource()).getText().equals(".") && layer==0){
-                layer = 1;
-                jTBR4B1_SHIFT_LEFT.setSelected(true);
-                jTBR4B13_SHIFT_RIGHT.setSelected(true);
-                updateGUI();
-            }
+    private void keyPressed(int key) {
+        switch (model.getType(key)) {
+            case KeyboardLayoutModel.KEY_CHARACTER:
+                writeValue(keys[key].getText());
+                break;
+            case KeyboardLayoutModel.KEY_BACKSPACE:
+                //Delete char on caret position
+                if(textComponent!=null) editor.backspace();
+                break;
+            case KeyboardLayoutModel.KEY_TAB:
+                if(textComponent==null) return;
+                char[] tabT = new char[tab];
+                Arrays.fill(tabT, ' ');
+                editor.insert(new String(tabT));
+                break;
+            case KeyboardLayoutModel.KEY_ENTER:
+                if(textComponent!=null) editor.insert("\n");
+                break;
+            case KeyboardLayoutModel.KEY_SPACE:
+                if(textComponent!=null) editor.insert(" ");
+                break;
+            case KeyboardLayoutModel.KEY_SHIFT:
+                // Both shift keys go up and down together
+                setSelected(KeyboardLayoutModel.KEY_SHIFT, keys[key].isSelected());
+                updateLayer();
+                break;
+            case KeyboardLayoutModel.KEY_CAPS_LOCK:
+                updateLayer();
+                break;
         }
-        updateGUI();
     }
 
-    /** This method is called from within the constructor to
-     * initialize the form.
-     * WARNING: Do NOT modify this code. The content of this method is
-     * always regenerated by the Form Editor.
+    /**
+     * Choose the layer from the shift and caps lock keys
      */
-    @SuppressWarnings("unchecked")
-    // <editor-fold defaultstate="collapsed" desc="Generated Code">//GEN-BEGIN:initComponents
-    private void initComponents() {
-
-        jBR1B1 = new RotatingButton(flipped);
-        jBR1B2 = new RotatingButton(flipped);
-        jBR1B3 = new RotatingButton(flipped);
-        jBR1B4 = new RotatingButton(flipped);
-        jBR1B5 = new RotatingButton(flipped);
-        jBR1B6 = new RotatingButton(flipped);
-        jBR1B7 = new RotatingButton(flipped);
-        jBR1B8 = new RotatingButton(flipped);
-        jBR1B9 = new RotatingButton(flipped);
-        jBR1B10 = new RotatingButton(flipped);
-        jBR1B11 = new RotatingButton(flipped);
-        jBR1B12 = new RotatingButton(flipped);
-        jBR1B13 = new RotatingButton(flipped);
-        jB_BACKSPACE = new RotatingButton(flipped);
-        jBR2B1_TAB = new RotatingButton(flipped);
-        jBR2B2 = new RotatingButton(flipped);
-        jBR2B3 = new RotatingButton(flipped);
-        jBR2B4 = new RotatingButton(flipped);
-        jBR2B5 = new RotatingButton(flipped);
-        jBR2B6 = new RotatingButton(flipped);
-        jBR2B7 = new RotatingButton(flipped);
-        jBR2B8 = new RotatingButton(flipped);
-        jBR2B9 = new RotatingButton(flipped);
-        jBR2B10 = new RotatingButton(flipped);
-        jBR2B11 = new RotatingButton(flipped);
-        jBR2B12 = new RotatingButton(flipped);
-        jBR2B13 = new RotatingButton(flipped);
-        jB_ENTER = new RotatingButton(flipped);
-        jTBR3B1_CAPS_LOCK = new RotatingToggleButton(flipped);
-        jBR3B2 = new RotatingButton(flipped);
-        jBR3B3 = new RotatingButton(flipped);
-        jBR3B4 = new RotatingButton(flipped);
-        jBR3B5 = new RotatingButton(flipped);
-        jBR3B6 = new RotatingButton(flipped);
-        jBR3B7 = new RotatingButton(flipped);
-        jBR3B8 = new RotatingButton(flipped);
-        jBR3B9 = new RotatingButton(flipped);
-        jBR3B10 = new RotatingButton(flipped);
-        jBR3B11 = new RotatingButton(flipped);
-        jBR3B12 = new RotatingButton(flipped);
-        jBR3B13 = new RotatingButton(flipped);
-        jTBR4B1_SHIFT_LEFT = new RotatingToggleButton(flipped);
-        jBR4B2 = new RotatingButton(flipped);
-        jBR4B3 = new RotatingButton(flipped);
-        jBR4B4 = new RotatingButton(flipped);
-        jBR4B5 = new RotatingButton(flipped);
-        jBR4B6 = new RotatingButton(flipped);
-        jBR4B7 = new RotatingButton(flipped);
-        jBR4B8 = new RotatingButton(flipped);
-        jBR4B9 = new RotatingButton(flipped);
-        jBR4B10 = new RotatingButton(flipped);
-        jBR4B11 = new RotatingButton(flipped);
-        jBR4B12 = new RotatingButton(flipped);
-        jTBR4B13_SHIFT_RIGHT = new RotatingToggleButton(flipped);
-        //jBCtrl = new RotatingButton(flipped);
-        jB_SPACE = new RotatingButton(flipped);//RotatingButton();
-        //jTB_ALT_GR = new javax.swing.JToggleButton();
-        //jBExe = new RotatingButton();
-
-        jBR1B1.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR1B1.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR1B1ActionPerformed(evt);
-            }
-        });
-
-        jBR1B2.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR1B2.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR1B2ActionPerformed(evt);
-            }
-        });
-
-        jBR1B3.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR1B3.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR1B3ActionPerformed(evt);
-            }
-        });
-
-        jBR1B4.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR1B4.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR1B4ActionPerformed(evt);
-            }
-        });
-
-        jBR1B5.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR1B5.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR1B5ActionPerformed(evt);
-            }
-        });
-
-        jBR1B6.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR1B6.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR1B6ActionPerformed(evt);
-            }
-        });
-
-        jBR1B7.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR1B7.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR1B7ActionPerformed(evt);
-            }
-        });
-
-        jBR1B8.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR1B8.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR1B8ActionPerformed(evt);
-            }
-        });
-
-        jBR1B9.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR1B9.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR1B9ActionPerformed(evt);
-            }
-        });
-
-        jBR1B10.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR1B10.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR1B10ActionPerformed(evt);
-            }
-        });
-
-        jBR1B11.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR1B11.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR1B11ActionPerformed(evt);
-            }
-        });
-
-        jBR1B12.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR1B12.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR1B12ActionPerformed(evt);
-            }
-        });
-
-        jBR1B13.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR1B13.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR1B13ActionPerformed(evt);
-            }
-        });
-
-        jB_BACKSPACE.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jB_BACKSPACE.setIcon(new javax.swing.ImageIcon(getClass().getResource("/images/backspace.gif"))); // NOI18N
-        jB_BACKSPACE.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBBackspaceActionPerformed(evt);
-            }
-        });
-
-        jBR2B1_TAB.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR2B1_TAB.setIcon(new javax.swing.ImageIcon(getClass().getResource("/images/tab.gif"))); // NOI18N
-        jBR2B1_TAB.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR2B1ActionPerformed(evt);
-            }
-        });
-
-        jBR2B2.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR2B2.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR2B2ActionPerformed(evt);
-            }
-        });
-
-        jBR2B3.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR2B3.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR2B3ActionPerformed(evt);
-            }
-        });
-
-        jBR2B4.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR2B4.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR2B4ActionPerformed(evt);
-            }
-        });
-
-        jBR2B5.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR2B5.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR2B5ActionPerformed(evt);
-            }
-        });
-
-        jBR2B6.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR2B6.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR2B6ActionPerformed(evt);
-            }
-        });
-
-        jBR2B7.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13)); // NOI18N
-        jBR2B7.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR2B7ActionPerformed(evt);
-            }
-        });
-
-        jBR2B8.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR2B8.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR2B8ActionPerformed(evt);
-            }
-        });
-
-        jBR2B9.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR2B9.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR2B9ActionPerformed(evt);
-            }
-        });
-
-        jBR2B10.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR2B10.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR2B10ActionPerformed(evt);
-            }
-        });
-
-        jBR2B11.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR2B11.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR2B11ActionPerformed(evt);
-            }
-        });
-
-        jBR2B12.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR2B12.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR2B12ActionPerformed(evt);
-            }
-        });
-
-        jBR2B13.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR2B13.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR2B13ActionPerformed(evt);
-            }
-        });
-
-        jB_ENTER.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13)); // NOI18N
-        jB_ENTER.setIcon(new javax.swing.ImageIcon(getClass().getResource("/images/enter.gif"))); // NOI18N
-        jB_ENTER.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBEnterActionPerformed(evt);
-            }
-        });
-
-        jTBR3B1_CAPS_LOCK.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jTBR3B1_CAPS_LOCK.setIcon(new javax.swing.ImageIcon(getClass().getResource("/images/shiftInvert.gif"))); // NOI18N
-        jTBR3B1_CAPS_LOCK.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jTBR3B1ActionPerformed(evt);
-            }
-        });
-
-        jBR3B2.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR3B2.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR3B2ActionPerformed(evt);
-            }
-        });
-
-        jBR3B3.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR3B3.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR3B3ActionPerformed(evt);
-            }
-        });
-
-        jBR3B4.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13)); // NOI18N
-        jBR3B4.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR3B4ActionPerformed(evt);
-            }
-        });
-
-        jBR3B5.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR3B5.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR3B5ActionPerformed(evt);
-            }
-        });
-
-        jBR3B6.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR3B6.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR3B6ActionPerformed(evt);
-            }
-        });
-
-        jBR3B7.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR3B7.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR3B7ActionPerformed(evt);
-            }
-        });
-
-        jBR3B8.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR3B8.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR3B8ActionPerformed(evt);
-            }
-        });
-
-        jBR3B9.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR3B9.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR3B9ActionPerformed(evt);
-            }
-        });
-
-        jBR3B10.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR3B10.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR3B10ActionPerformed(evt);
-            }
-        });
-
-        jBR3B11.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR3B11.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR3B11ActionPerformed(evt);
-            }
-        });
-
-        jBR3B12.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR3B12.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR3B12ActionPerformed(evt);
-            }
-        });
-
-        jBR3B13.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR3B13.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR3B13ActionPerformed(evt);
-            }
-        });
-
-        jTBR4B1_SHIFT_LEFT.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jTBR4B1_SHIFT_LEFT.setIcon(new javax.swing.ImageIcon(getClass().getResource("/images/shift.gif"))); // NOI18N
-        jTBR4B1_SHIFT_LEFT.addMouseListener(new java.awt.event.MouseAdapter() {
-            public void mouseClicked(java.awt.event.MouseEvent evt) {
-                jTBR4B1MouseClicked(evt);
-            }
-        });
-        jTBR4B1_SHIFT_LEFT.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jTBR4B1ActionPerformed(evt);
-            }
-        });
-        
-        jBR4B2.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR4B2.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR4B2ActionPerformed(evt);
-            }
-        });
-
-        jBR4B3.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR4B3.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR4B3ActionPerformed(evt);
-            }
-        });
-
-        jBR4B4.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR4B4.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR4B4ActionPerformed(evt);
-            }
-        });
-
-        jBR4B5.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR4B5.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR4B5ActionPerformed(evt);
-            }
-        });
-
-        jBR4B6.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR4B6.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR4B6ActionPerformed(evt);
-            }
-        });
-
-        jBR4B7.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR4B7.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR4B7ActionPerformed(evt);
-            }
-        });
-
-        jBR4B8.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR4B8.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR4B8ActionPerformed(evt);
-            }
-        });
-
-        jBR4B9.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR4B9.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR4B9ActionPerformed(evt);
-            }
-        });
-
-        jBR4B10.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR4B10.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR4B10ActionPerformed(evt);
-            }
-        });
-
-        jBR4B11.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR4B11.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR4B11ActionPerformed(evt);
-            }
-        });
-
-        jBR4B12.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jBR4B12.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBR4B12ActionPerformed(evt);
-            }
-        });
-
-        jTBR4B13_SHIFT_RIGHT.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jTBR4B13_SHIFT_RIGHT.setIcon(new javax.swing.ImageIcon(getClass().getResource("/images/shift.gif"))); // NOI18N
-        jTBR4B13_SHIFT_RIGHT.addMouseListener(new java.awt.event.MouseAdapter() {
-            public void mouseClicked(java.awt.event.MouseEvent evt) {
-                jTBR4B13MouseClicked(evt);
-            }
-        });
-        jTBR4B13_SHIFT_RIGHT.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jTBR4B13ActionPerformed(evt);
-            }
-        });
-
-        //jBCtrl.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-
-        jB_SPACE.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jB_SPACE.setIcon(new javax.swing.ImageIcon(getClass().getResource("/images/space.gif"))); // NOI18N
-        jB_SPACE.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBSpaceActionPerformed(evt);
-            }
-        });
-
-        /*jTB_ALT_GR.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13));
-        jTB_ALT_GR.addMouseListener(new java.awt.event.MouseAdapter() {
-            public void mouseClicked(java.awt.event.MouseEvent evt) {
-                jTBAlt_GrMouseClicked(evt);
-            }
-        });
-        jTB_ALT_GR.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jTBAlt_GrActionPerformed(evt);
-            }
-        });
-
-        jBExe.setFont(new java.awt.Font("Tahoma",Font.BOLD, 13)); // NOI18N
-        jBExe.setText("EXE");
-        jBExe.addActionListener(new java.awt.event.ActionListener() {
-            public void actionPerformed(java.awt.event.ActionEvent evt) {
-                jBExeActionPerformed(evt);
-            }
-        });*/
-
-        javax.swing.GroupLayout layout = new javax.swing.GroupLayout(this);
-        this.setLayout(layout);
-        layout.setHorizontalGroup(
-            layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
-            .addGroup(layout.createSequentialGroup()
-                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
-                    .addGroup(layout.createSequentialGroup()
-                        .addGap(22, 22, 22)
-                        .addComponent(jBR2B5)
-                        .addGap(5, 5, 5)
-                        .addComponent(jBR2B6)
-                        .addGap(5, 5, 5)
-                        .addComponent(jBR2B7)
-                        .addGap(5, 5, 5)
-                        .addComponent(jBR2B8)
-                        .addGap(5, 5, 5)
-                        .addComponent(jBR2B9)
-                        .addGap(5, 5, 5)
-                        .addComponent(jBR2B10)
-                        .addGap(5, 5, 5)
-                        .addComponent(jBR2B11)
-                        .addGap(5, 5, 5)
-                        .addComponent(jBR2B12)
-                        .addGap(5, 5, 5)
-                        .addComponent(jBR2B13))
-                    .addGroup(layout.createSequentialGroup()
-                        .addGap(21, 21, 21)
-                        .addComponent(jB_ENTER)
-                        .addGap(5, 5, 5)
-                        .addComponent(jTBR3B1_CAPS_LOCK)
-                        .addGap(5, 5, 5)
-                        .addComponent(jBR3B2)
-                        .addGap(5, 5, 5)
-                        .addComponent(jBR3B3)
-                        .addGap(5, 5, 5)
-                        .addComponent(jBR3B4)
-                        .addGap(5, 5, 5)
-                        .addComponent(jBR3B5)
-                        .addGap(5, 5, 5)
-                        .addComponent(jBR3B6)
-                        .addGap(5, 5, 5)
-                        .addComponent(jBR3B7))
-                    .addGroup(layout.createSequentialGroup()
-                        .addGap(12, 12, 12)
-                        .addComponent(jBR3B8)
-                        .addGap(5, 5, 5)
-                        .addComponent(jBR3B9)
-                        .addGap(5, 5, 5)
-                        .addComponent(jBR3B10)
-                        .addGap(5, 5, 5)
-                        .addComponent(jBR3B11)
-                        .addGap(5, 5, 5)
-                        .addComponent(jBR3B12)
-                        .addGap(5, 5, 5)
-                        .addComponent(jBR3B13)
-                        .addGap(5, 5, 5)
-                        .addComponent(jTBR4B1_SHIFT_LEFT)
-                        .addGap(5, 5, 5)
-                        .addComponent(jBR4B2)
-                        .addGap(5, 5, 5)
-                        .addComponent(jBR4B3))
-                    .addGroup(layout.createSequentialGroup()
-                        .addGap(22, 22, 22)
-                        .addComponent(jBR4B4)
-                        .addGap(5, 5, 5)
-                        .addComponent(jBR4B5)
-                        .addGap(5, 5, 5)
-                        .addComponent(jBR4B6)
-                        .addGap(5, 5, 5)
-                        .addComponent(jBR4B7)
-                        .addGap(5, 5, 5)
-                        .addComponent(jBR4B8)
-                        .addGap(5, 5, 5)
-                        .addComponent(jBR4B9)
-                        .addGap(5, 5, 5)
-                        .addComponent(jBR4B10)
-                        .addGap(5, 5, 5)
-                        .addComponent(jBR4B11)
-                        .addGap(5, 5, 5)
-                        .addComponent(jBR4B12))
-                    .addGroup(layout.createSequentialGroup()
-                        .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
-                            .addGroup(layout.createSequentialGroup()
-                                .addGap(3, 3, 3)
-                                .addComponent(jBR1B1)
-                                .addGap(5, 5, 5)
-                                .addComponent(jBR1B2)
-                                .addGap(5, 5, 5)
-                                .addComponent(jBR1B3)
-                                .addGap(5, 5, 5)
-                                .addComponent(jBR1B4)
-                                .addGap(5, 5, 5)
-                                .addComponent(jBR1B5)
-                                .addGap(5, 5, 5)
-                                .addComponent(jBR1B6)
-                                .addGap(5, 5, 5)
-                                .addComponent(jBR1B7)
-                                .addGap(5, 5, 5)
-                                .addComponent(jBR1B8)
-                                .addGap(5, 5, 5)
-                                .addComponent(jBR1B9)
-                                .addGap(5, 5, 5)
-                                .addComponent(jBR1B10))
-                            .addGroup(layout.createSequentialGroup()
-                                .addGap(20, 20, 20)
-                                .addComponent(jBR1B11)
-                                .addGap(5, 5, 5)
-                                .addComponent(jBR1B12)
-                                .addGap(5, 5, 5)
-                                .addComponent(jBR1B13)
-                                .addGap(5, 5, 5)
-                                .addComponent(jB_BACKSPACE)
-                                .addGap(5, 5, 5)
-                                .addComponent(jBR2B1_TAB)
-                                .addGap(5, 5, 5)
-                                .addComponent(jBR2B2)
-                                .addGap(5, 5, 5)
-                                .addComponent(jBR2B3)
-                                .addGap(5, 5, 5)
-                                .addComponent(jBR2B4))
-                            .addGroup(layout.createSequentialGroup()
-                                .addGap(102, 102, 102)
-                                .addComponent(jTBR4B13_SHIFT_RIGHT)
-                                .addGap(5, 5, 5)
-                                //.addComponent(jBCtrl)
-                                //.addGap(5, 5, 5)
-                                .addComponent(jB_SPACE)
-                                /*.addGap(5, 5, 5)
-                                .addComponent(jTB_ALT_GR)*/))
-                        /*.addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
-                        .addComponent(jBExe)*/))
-                .addContainerGap(245, Short.MAX_VALUE))
-        );
-        layout.setVerticalGroup(
-            layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
-            .addGroup(layout.createSequentialGroup()
-                .addGap(5, 5, 5)
-                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
-                    .addComponent(jBR1B1)
-                    .addComponent(jBR1B2)
-                    .addComponent(jBR1B3)
-                    .addComponent(jBR1B4)
-                    .addComponent(jBR1B5)
-                    .addComponent(jBR1B6)
-                    .addComponent(jBR1B7)
-                    .addComponent(jBR1B8)
-                    .addComponent(jBR1B9)
-                    .addComponent(jBR1B10))
-                .addGap(5, 5, 5)
-                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
-                    .addGroup(layout.createSequentialGroup()
-                        .addGap(12, 12, 12)
-                        .addComponent(jBR1B11))
-                    .addGroup(layout.createSequentialGroup()
-                        .addGap(12, 12, 12)
-                        .addComponent(jBR1B12))
-                    .addGroup(layout.createSequentialGroup()
-                        .addGap(12, 12, 12)
-                        .addComponent(jBR1B13))
-                    .addComponent(jB_BACKSPACE)
-                    .addComponent(jBR2B1_TAB)
-                    .addGroup(layout.createSequentialGroup()
-                        .addGap(12, 12, 12)
-                        .addComponent(jBR2B2))
-                    .addGroup(layout.createSequentialGroup()
-                        .addGap(12, 12, 12)
-                        .addComponent(jBR2B3))
-                    .addGroup(layout.createSequentialGroup()
-                        .addGap(12, 12, 12)
-                        .addComponent(jBR2B4)))
-                .addGap(16, 16, 16)
-                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
-                    .addComponent(jBR2B5)
-                    .addComponent(jBR2B6)
-                    .addComponent(jBR2B7)
-                    .addComponent(jBR2B8)
-                    .addComponent(jBR2B9)
-                    .addComponent(jBR2B10)
-                    .addComponent(jBR2B11)
-                    .addComponent(jBR2B12)
-                    .addComponent(jBR2B13))
-                .addGap(5, 5, 5)
-                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
-                    .addComponent(jB_ENTER)
-                    .addGroup(layout.createSequentialGroup()
-                        .addGap(1, 1, 1)
-                        .addComponent(jTBR3B1_CAPS_LOCK))
-                    .addGroup(layout.createSequentialGroup()
-                        .addGap(12, 12, 12)
-                        .addComponent(jBR3B2))
-                    .addGroup(layout.createSequentialGroup()
-                        .addGap(12, 12, 12)
-                        .addComponent(jBR3B3))
-                    .addGroup(layout.createSequentialGroup()
-                        .addGap(12, 12, 12)
-                        .addComponent(jBR3B4))
-                    .addGroup(layout.createSequentialGroup()
-                        .addGap(12, 12, 12)
-                        .addComponent(jBR3B5))
-                    .addGroup(layout.createSequentialGroup()
-                        .addGap(12, 12, 12)
-                        .addComponent(jBR3B6))
-                    .addGroup(layout.createSequentialGroup()
-                        .addGap(12, 12, 12)
-                        .addComponent(jBR3B7)))
-                .addGap(5, 5, 5)
-                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
-                    .addGroup(layout.createSequentialGroup()
-                        .addGap(11, 11, 11)
-                        .addComponent(jBR3B8))
-                    .addGroup(layout.createSequentialGroup()
-                        .addGap(11, 11, 11)
-                        .addComponent(jBR3B9))
-                    .addGroup(layout.createSequentialGroup()
-                        .addGap(11, 11, 11)
-                        .addComponent(jBR3B10))
-                    .addGroup(layout.createSequentialGroup()
-                        .addGap(11, 11, 11)
-                        .addComponent(jBR3B11))
-                    .addGroup(layout.createSequentialGroup()
-                        .addGap(11, 11, 11)
-                        .addComponent(jBR3B12))
-                    .addGroup(layout.createSequentialGroup()
-                        .addGap(11, 11, 11)
-                        .addComponent(jBR3B13))
-                    .addComponent(jTBR4B1_SHIFT_LEFT)
-                    .addGroup(layout.createSequentialGroup()
-                        .addGap(11, 11, 11)
-                        .addComponent(jBR4B2))
-                    .addGroup(layout.createSequentialGroup()
-                        .addGap(11, 11, 11)
-                        .addComponent(jBR4B3)))
-                .addGap(5, 5, 5)
-                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
-                    .addComponent(jBR4B4)
-                    .addComponent(jBR4B5)
-                    .addComponent(jBR4B6)
-                    .addComponent(jBR4B7)
-                    .addComponent(jBR4B8)
-                    .addComponent(jBR4B9)
-                    .addComponent(jBR4B10)
-                    .addComponent(jBR4B11)
-                    .addComponent(jBR4B12))
-                .addGap(5, 5, 5)
-                .addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
-                    .addGroup(layout.createSequentialGroup()
-                        .addGap(1, 1, 1)
-                        .addComponent(jTBR4B13_SHIFT_RIGHT))
-                    .addGroup(layout.createSequentialGroup()
-                        .addGap(12, 12, 12)
-                        //.addComponent(jBCtrl))
-                    ).addComponent(jB_SPACE)
-                    /*.addGroup(layout.createParallelGroup(javax.swing.GroupLayout.Alignment.TRAILING)
-                        .addComponent(jBExe)
-                        .addComponent(jTB_ALT_GR)))
-                .addContainerGap(javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE))*/))
-        );
-    }// </editor-fold>//GEN-END:initComponents
-
-    private void jTBR4B13ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jTBR4B13ActionPerformed
-        if(jTBR3B1_CAPS_LOCK.isSelected()){
-            if(jTBR4B13_SHIFT_RIGHT.isSelected())
-                layer=0;
-            else layer=1;            
-        }else{
-            if(jTBR4B13_SHIFT_RIGHT.isSelected())
-                layer=1;
-            else layer=0;
-        }
-        
-        //jTB_ALT_GR.setSelected(false);
-        jTBR4B1_SHIFT_LEFT.setSelected(jTBR4B13_SHIFT_RIGHT.isSelected());
+    private void updateLayer() {
+        boolean caps = isSelected(KeyboardLayoutModel.KEY_CAPS_LOCK);
+        boolean shift = isSelected(KeyboardLayoutModel.KEY_SHIFT);
+        layer = caps!=shift ? 1 : 0;
         updateGUI();
-    }//GEN-LAST:event_jTBR4B13ActionPerformed
-
-    private void jTBR4B13MouseClicked(java.awt.event.MouseEvent evt) {//GEN-FIRST:event_jTBR4B13MouseClicked
-
-    }//GEN-LAST:event_jTBR4B13MouseClicked
-
-
-    private void jTBAlt_GrMouseClicked(java.awt.event.MouseEvent evt) {//GEN-FIRST:event_jTBAlt_GrMouseClicked
-    }//GEN-LAST:event_jTBAlt_GrMouseClicked
+    }
 
-    private void jTBR4B1ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jTBR4B1ActionPerformed
-            jTBR4B13_SHIFT_RIGHT.setSelected(jTBR4B1_SHIFT_LEFT.isSelected());
-            jTBR4B13ActionPerformed(evt);
-    }//GEN-LAST:event_jTBR4B1ActionPerformed
+    private boolean isSelected(int type) {
+        for(int i=0; i<keys.length; i++)
+            if(model.getType(i)==type && keys[i].isSelected()) return true;
+        return false;
+    }
 
-    private void jTBR4B1MouseClicked(java.awt.event.MouseEvent evt) {//GEN-FIRST:event_jTBR4B1MouseClicked
-        jTBR4B13_SHIFT_RIGHT.setSelected(jTBR4B1_SHIFT_LEFT.isSelected());
-        jTBR4B13MouseClicked(evt);
-    }//GEN-LAST:event_jTBR4B1MouseClicked
+    private void setSelected(int type, boolean selected) {
+        for(int i=0; i<keys.length; i++)
+            if(model.getType(i)==type) keys[i].setSelected(selected);
+    }
 
-    private void jBEnterActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBEnterActionPerformed
+     /**
+     * Write value to the JTextComponent to the right Caret position
+     *
+     * @param value
+     */
+    private void writeValue(String value){
         if(textComponent==null) return;
-        //Delete char on caret position
-        String text = textComponent.getText();
-        int index = textComponent.getCaretPosition();
-        text = new StringBuffer(text).insert(index, "\n").toString();
-        textComponent.setText(text);
-        textComponent.setCaretPosition(index+1);
-    }//GEN-LAST:event_jBEnterActionPerformed
-
-    private void jBR1B1ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR1B1ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR1B1ActionPerformed
-
-    private void jBR1B2ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR1B2ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR1B2ActionPerformed
-
-    private void jBR1B3ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR1B3ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR1B3ActionPerformed
-
-    private void jBR1B4ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR1B4ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR1B4ActionPerformed
-
-    private void jBR1B5ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR1B5ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR1B5ActionPerformed
-
-    private void jBR1B6ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR1B6ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR1B6ActionPerformed
-
-    private void jBR1B7ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR1B7ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR1B7ActionPerformed
-
-    private void jBR1B8ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR1B8ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR1B8ActionPerformed
-
-    private void jBR1B9ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR1B9ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR1B9ActionPerformed
+        if(value==null || value.equals("")) return;
+        editor.insert(value);
 
-    private void jBR1B10ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR1B10ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR1B10ActionPerformed
-
-    private void jBR1B11ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR1B11ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR1B11ActionPerformed
-
-    private void jBR1B12ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR1B12ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR1B12ActionPerformed
-
-    private void jBR1B13ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR1B13ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR1B13ActionPerformed
-
-    private void jBBackspaceActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBBackspaceActionPerformed
-        if(textComponent==null) return;
-        //Delete char on caret position
-        String text = textComponent.getText();
-        int index = textComponent.getCaretPosition();
-        if(index>0){
-            text = new StringBuffer(text).delete(index-1,index).toString();
-            textComponent.setText(text);
-            textComponent.setCaretPosition(index-1);
+        if(isSelected(KeyboardLayoutModel.KEY_SHIFT)){
+            setSelected(KeyboardLayoutModel.KEY_SHIFT, false);
+            updateLayer();
         }
-    }//GEN-LAST:event_jBBackspaceActionPerformed
-
-    private void jBR2B2ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR2B2ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR2B2ActionPerformed
-
-    private void jBR2B3ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR2B3ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR2B3ActionPerformed
-
-    private void jBR2B4ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR2B4ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR2B4ActionPerformed
-
-    private void jBR2B5ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR2B5ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR2B5ActionPerformed
-
-    private void jBR2B6ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR2B6ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR2B6ActionPerformed
 
-    private void jBR2B7ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR2B7ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR2B7ActionPerformed
-
-    private void jBR2B8ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR2B8ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR2B8ActionPerformed
-
-    private void jBR2B9ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR2B9ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR2B9ActionPerformed
-
-    private void jBR2B10ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR2B10ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR2B10ActionPerformed
-
-    private void jBR2B11ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR2B11ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR2B11ActionPerformed
-
-    private void jBR2B12ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR2B12ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR2B12ActionPerformed
-
-    private void jBR2B13ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR2B13ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR2B13ActionPerformed
-
-    private void jBR3B2ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR3B2ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR3B2ActionPerformed
-
-    private void jBR3B3ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR3B3ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR3B3ActionPerformed
-
-    private void jBR3B4ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR3B4ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR3B4ActionPerformed
-
-    private void jBR3B5ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR3B5ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR3B5ActionPerformed
-
-    private void jBR3B6ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR3B6ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR3B6ActionPerformed
-
-    private void jBR3B7ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR3B7ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR3B7ActionPerformed
-
-    private void jBR3B8ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR3B8ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR3B8ActionPerformed
-
-    private void jBR3B9ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR3B9ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR3B9ActionPerformed
-
-    private void jBR3B10ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR3B10ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR3B10ActionPerformed
-
-    private void jBR3B11ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR3B11ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR3B11ActionPerformed
-
-    private void jBR3B12ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR3B12ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR3B12ActionPerformed
-
-    private void jBR3B13ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR3B13ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR3B13ActionPerformed
-
-    private void jBR4B2ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR4B2ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR4B2ActionPerformed
-
-    private void jBR4B3ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR4B3ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR4B3ActionPerformed
-
-    private void jBR4B4ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR4B4ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR4B4ActionPerformed
-
-    private void jBR4B5ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR4B5ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR4B5ActionPerformed
-
-    private void jBR4B6ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR4B6ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR4B6ActionPerformed
-
-    private void jBR4B7ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR4B7ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR4B7ActionPerformed
-
-    private void jBR4B8ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR4B8ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR4B8ActionPerformed
-
-    private void jBR4B9ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR4B9ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR4B9ActionPerformed
-
-    private void jBR4B10ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR4B10ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR4B10ActionPerformed
-
-    private void jBR4B11ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR4B11ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR4B11ActionPerformed
-
-    private void jBR4B12ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR4B12ActionPerformed
-        writeValue(evt);
-    }//GEN-LAST:event_jBR4B12ActionPerformed
-
-    private void jBSpaceActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBSpaceActionPerformed
-        if(textComponent==null) return;
-        String text = textComponent.getText();
-        int index = textComponent.getCaretPosition();
-        text = new StringBuffer(text).insert(index,
-            " ").toString();
-        textComponent.setText(text);
-        textComponent.setCaretPosition(index+1);
-    }//GEN-LAST:event_jBSpaceActionPerformed
-
-    private void jTBR3B1ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jTBR3B1ActionPerformed
-        if(jTBR3B1_CAPS_LOCK.isSelected()){
-            if(jTBR4B13_SHIFT_RIGHT.isSelected())
-                layer=0;
-            else layer=1;
-        }else{
-            if(jTBR4B13_SHIFT_RIGHT.isSelected())
-                layer=1;
-            else layer=0;
+        if(poitToUp){
+            if(value.equals(".") && layer==0){
+                setSelected(KeyboardLayoutModel.KEY_SHIFT, true);
+                updateLayer();
+            }
         }
-        //jTB_ALT_GR.setSelected(false);
         updateGUI();
-    }//GEN-LAST:event_jTBR3B1ActionPerformed
-
-    private void jBR2B1ActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBR2B1ActionPerformed
-        if(textComponent==null) return;
-        //Delete char on caret position
-        String text = textComponent.getText();
-        int index = textComponent.getCaretPosition();
-        String tabT="";
-        for(int i=0; i<tab;i++)
-            tabT+=" ";
-        text = new StringBuffer(text).insert(index, tabT).toString();
-        textComponent.setText(text);
-        textComponent.setCaretPosition(index+tabT.length());
-    }//GEN-LAST:event_jBR2B1ActionPerformed
-
-    private void jBExeActionPerformed(java.awt.event.ActionEvent evt) {//GEN-FIRST:event_jBExeActionPerformed
-        if(window!=null){
-            window.setVisible(false);
-            window.dispose();
-        }
-    }//GEN-LAST:event_jBExeActionPerformed
-    
-    private void log(String log)
-    {
-    	System.out.println(log);
     }
-
-    // Variables declaration - do not modify//GEN-BEGIN:variables
-    private RotatingButton jB_BACKSPACE;
-    //private RotatingButton jBCtrl;
-    private RotatingButton jB_ENTER;
-    //private RotatingButton jBExe;
-    private RotatingButton jBR1B1;
-    private RotatingButton jBR1B10;
-    private RotatingButton jBR1B11;
-    private RotatingButton jBR1B12;
-    private RotatingButton jBR1B13;
-    private RotatingButton jBR1B2;
-    private RotatingButton jBR1B3;
-    private RotatingButton jBR1B4;
-    private RotatingButton jBR1B5;
-    private RotatingButton jBR1B6;
-    private RotatingButton jBR1B7;
-    private RotatingButton jBR1B8;
-    private RotatingButton jBR1B9;
-    private RotatingButton jBR2B1_TAB;
-    private RotatingButton jBR2B10;
-    private RotatingButton jBR2B11;
-    private RotatingButton jBR2B12;
-    private RotatingButton jBR2B13;
-    private RotatingButton jBR2B2;
-    private RotatingButton jBR2B3;
-    private RotatingButton jBR2B4;
-    private RotatingButton jBR2B5;
-    private RotatingButton jBR2B6;
-    private RotatingButton jBR2B7;
-    private RotatingButton jBR2B8;
-    private RotatingButton jBR2B9;
-    private RotatingButton jBR3B10;
-    private RotatingButton jBR3B11;
-    private RotatingButton jBR3B12;
-    private RotatingButton jBR3B13;
-    //private RotatingButton jBR3B2;
-    private RotatingButton jBR3B2;
-    private RotatingButton jBR3B3;
-    private RotatingButton jBR3B4;
-    private RotatingButton jBR3B5;
-    private RotatingButton jBR3B6;
-    private RotatingButton jBR3B7;
-    private RotatingButton jBR3B8;
-    private RotatingButton jBR3B9;
-    private RotatingButton jBR4B10;
-    private RotatingButton jBR4B11;
-    private RotatingButton jBR4B12;
-    private RotatingButton jBR4B2;
-    private RotatingButton jBR4B3;
-    private RotatingButton jBR4B4;
-    private RotatingButton jBR4B5;
-    private RotatingButton jBR4B6;
-    private RotatingButton jBR4B7;
-    private RotatingButton jBR4B8;
-    private RotatingButton jBR4B9;
-    private RotatingButton jB_SPACE;
-    //private javax.swing.JToggleButton jTB_ALT_GR;
-    //private javax.swing.JToggleButton jTBR3B1_CAPS_LOCK;
-    //private javax.swing.JToggleButton jTBR4B1_SHIFT_LEFT;
-    //private javax.swing.JToggleButton jTBR4B13_SHIFT_RIGHT;
-    private RotatingToggleButton jTBR3B1_CAPS_LOCK;
-    private RotatingToggleButton jTBR4B1_SHIFT_LEFT;
-    private RotatingToggleButton jTBR4B13_SHIFT_RIGHT;
-
-    // End of variables declaration//GEN-END:variables
 }
@@ -0,0 +1,181 @@
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.security.SecureRandom;
+
+import javax.crypto.SecretKeyFactory;
+import javax.crypto.spec.PBEKeySpec;
+
+/**
+ * Class for hashing and verifying user passwords.
+ *
+ * Passwords are stored as "pbkdf2$iterations$salt$hash" with a random salt
+ * per password and hex encoded salt and hash. The number of iterations sets
+ * the cost and can be raised later; older hashes are still verified with
+ * the iterations stored in them. Passwords stored in plain text by earlier
+ * versions are still accepted so that they can be replaced with a hash on
+ * the next successful login. All comparisons take the same time whether
+ * or not the password matches.
+ */
+public class PasswordHasher
+{
+	private static final String PREFIX 		= "pbkdf2";
+	private static final String ALGORITHM 	= "PBKDF2WithHmacSHA1";
+	private static final int SALT_BYTES 	= 16;
+	private static final int HASH_BITS 		= 256;
+
+	private int iterations;
+	private SecureRandom random = new SecureRandom();
+
+	/**
+	 * Constructor
+	 *
+	 * @param iterations PBKDF2 iterations for new hashes
+	 */
+	public PasswordHasher(int iterations)
+	{
+		this.iterations = Math.max(1000, iterations);
+	}
+
+	/**
+	 * Hashes a password with a new random salt
+	 *
+	 * @param password
+	 * @return String to be stored in the users table
+	 * @throws GeneralSecurityException
+	 */
+	public String hash(char[] password) throws GeneralSecurityException
+	{
+		byte[] salt = new byte[SALT_BYTES];
+		random.nextBytes(salt);
+		byte[] hash = pbkdf2(password, salt, iterations);
+		return PREFIX + "$" + iterations + "$" + toHex(salt) + "$" + toHex(hash);
+	}
+
+	/**
+	 * Checks a password against a stored hash, or against a plain text
+	 * password stored by earlier versions
+	 *
+	 * @param password
+	 * @param stored
+	 * @return TRUE if the password matches
+	 */
+	public boolean verify(char[] password, String stored)
+	{
+		if(stored == null)
+		{
+			return false;
+		}
+		try
+		{
+			if(!isHash(stored))
+			{
+				// Digests have the same length, so the compare does not reveal the password length
+				MessageDigest sha = MessageDigest.getInstance("SHA-256");
+				byte[] given = sha.digest(new String(password).getBytes("UTF-8"));
+				return MessageDigest.isEqual(given, sha.digest(stored.getBytes("UTF-8")));
+			}
+			String[] parts = stored.split("\\$");
+			if(parts.length != 4)
+			{
+				return false;
+			}
+			byte[] expected = fromHex(parts[3]);
+			byte[] hash = pbkdf2(password, fromHex(parts[2]), Integer.parseInt(parts[1]));
+			return MessageDigest.isEqual(hash, expected);
+		}
+		catch(Exception e)
+		{
+			log("Could not verify password: " + e.getMessage());
+			return false;
+		}
+	}
+
+	/**
+	 * Returns TRUE if the stored password is plain text or was hashed with
+	 * fewer iterations than new hashes use
+	 *
+	 * @param stored
+	 * @return boolean
+	 */
+	public boolean needsRehash(String stored)
+	{
+		if(stored == null || !isHash(stored))
+		{
+			return true;
+		}
+		String[] parts = stored.split("\\$");
+		try
+		{
+			return parts.length != 4 || Integer.parseInt(parts[1]) < iterations;
+		}
+		catch(NumberFormatException e)
+		{
+			return true;
+		}
+	}
+
+	/**
+	 * Returns TRUE if the stored password is a hash made by this class
+	 *
+	 * @param stored
+	 * @return boolean
+	 */
+	public static boolean isHash(String stored)
+	{
+		return stored.startsWith(PREFIX + "$");
+	}
+
+	/**
+	 * Computes a PBKDF2 hash
+	 *
+	 * @param password
+	 * @param salt
+	 * @param iterations
+	 * @return hash bytes
+	 * @throws GeneralSecurityException
+	 */
+	private static byte[] pbkdf2(char[] password, byte[] salt, int iterations) throws GeneralSecurityException
+	{
+		PBEKeySpec spec = new PBEKeySpec(password, salt, iterations, HASH_BITS);
+		try
+		{
+			return SecretKeyFactory.getInstance(ALGORITHM).generateSecret(spec).getEncoded();
+		}
+		finally
+		{
+			spec.clearPassword();
+		}
+	}
+
+	private static String toHex(byte[] bytes)
+	{
+		StringBuilder sb = new StringBuilder(bytes.length * 2);
+		for(byte b : bytes)
+		{
+			sb.append(Character.forDigit((b >> 4) & 0xf, 16));
+			sb.append(Character.forDigit(b & 0xf, 16));
+		}
+		return sb.toString();
+	}
+
+	private static byte[] fromHex(String hex)
+	{
+		byte[] bytes = new byte[hex.length() / 2];
+		for(int i = 0; i < bytes.length; i++)
+		{
+			bytes[i] = (byte)Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+		}
+		return bytes;
+	}
+
+	/**
+	 * Simple convenience method for logging text to console output.
+	 * Should be replaced with a log file in the future
+	 *
+	 * @param log
+	 */
+	private void log(String text)
+	{
+		System.out.println(text);
+	}
+}
@@ -0,0 +1,242 @@
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.ObjectName;
+
+/**
+ * Class for collecting latencies, errors and retries of persistence
+ * operations by name.
+ *
+ * Operations are timed with System.nanoTime() into LatencyHistograms.
+ * The metrics can be read over JMX (iUbiStories:type=PersistenceMetrics)
+ * and are written to the log periodically once start() has been called.
+ * There is one instance for the whole application.
+ */
+public class PersistenceMetrics implements PersistenceMetricsMBean
+{
+	/**
+	 * Metrics of one operation
+	 */
+	private static class Operation
+	{
+		LatencyHistogram latency = new LatencyHistogram();
+		AtomicLong errors = new AtomicLong();
+		AtomicLong retries = new AtomicLong();
+	}
+
+	private static final PersistenceMetrics instance = new PersistenceMetrics();
+
+	private ConcurrentHashMap<String, Operation> operations = new ConcurrentHashMap<String, Operation>();
+	private StoryStore store = null;
+	private Timer timer = null;
+
+	/**
+	 * Returns the metrics of the application
+	 *
+	 * @return PersistenceMetrics
+	 */
+	public static PersistenceMetrics getInstance()
+	{
+		return instance;
+	}
+
+	private PersistenceMetrics()
+	{
+	}
+
+	/**
+	 * Registers the JMX bean and starts writing the metrics to the log
+	 *
+	 * @param store Store whose own statistics are included
+	 * @param logIntervalSeconds 0 disables the periodic log
+	 */
+	public synchronized void start(StoryStore store, int logIntervalSeconds)
+	{
+		this.store = store;
+		try
+		{
+			ObjectName name = new ObjectName("iUbiStories:type=PersistenceMetrics");
+			if(!ManagementFactory.getPlatformMBeanServer().isRegistered(name))
+			{
+				ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+			}
+		}
+		catch(Exception e)
+		{
+			log("Could not register persistence metrics with JMX: " + e.getMessage());
+		}
+		if(logIntervalSeconds > 0 && timer == null)
+		{
+			timer = new Timer("PersistenceMetrics-log", true);
+			long interval = logIntervalSeconds * 1000L;
+			timer.schedule(new TimerTask() {
+				public void run()
+				{
+					logSnapshot();
+				}
+			}, interval, interval);
+		}
+	}
+
+	/**
+	 * Stops the periodic log and writes a last snapshot
+	 */
+	public synchronized void stop()
+	{
+		if(timer != null)
+		{
+			timer.cancel();
+			timer = null;
+		}
+		logSnapshot();
+	}
+
+	/**
+	 * Records a successful operation
+	 *
+	 * @param operation
+	 * @param startNanos System.nanoTime() when the operation started
+	 */
+	public void record(String operation, long startNanos)
+	{
+		get(operation).latency.record(System.nanoTime() - startNanos);
+		// Database work done while a key is handled slows down typing
+		InputLatencyMonitor.phase(InputLatencyMonitor.DATABASE, startNanos);
+	}
+
+	/**
+	 * Records a failed operation
+	 *
+	 * @param operation
+	 */
+	public void error(String operation)
+	{
+		get(operation).errors.incrementAndGet();
+	}
+
+	/**
+	 * Records that an operation is retried
+	 *
+	 * @param operation
+	 */
+	public void retry(String operation)
+	{
+		get(operation).retries.incrementAndGet();
+	}
+
+	/**
+	 * Writes all metrics to the log
+	 */
+	public void logSnapshot()
+	{
+		for(String line : getOperationSummaries())
+		{
+			log("METRICS " + line);
+		}
+		log("METRICS store: " + getStoreStatistics());
+	}
+
+	// Overridden method
+	public String[] getOperations()
+	{
+		ArrayList<String> names = new ArrayList<String>(operations.keySet());
+		Collections.sort(names);
+		return names.toArray(new String[names.size()]);
+	}
+
+	// Overridden method
+	public String[] getOperationSummaries()
+	{
+		String[] names = getOperations();
+		String[] lines = new String[names.length];
+		for(int i = 0; i < names.length; i++)
+		{
+			Operation op = operations.get(names[i]);
+			lines[i] = names[i] + ": " + op.latency + " errors=" + op.errors.get() + " retries=" + op.retries.get();
+		}
+		return lines;
+	}
+
+	// Overridden method
+	public String getStoreStatistics()
+	{
+		StoryStore s = store;
+		return s == null ? "" : s.getStatistics();
+	}
+
+	// Overridden method
+	public long getCount(String operation)
+	{
+		Operation op = operations.get(operation);
+		return op == null ? 0 : op.latency.getCount();
+	}
+
+	// Overridden method
+	public long getErrorCount(String operation)
+	{
+		Operation op = operations.get(operation);
+		return op == null ? 0 : op.errors.get();
+	}
+
+	// Overridden method
+	public long getRetryCount(String operation)
+	{
+		Operation op = operations.get(operation);
+		return op == null ? 0 : op.retries.get();
+	}
+
+	// Overridden method
+	public double getPercentileMillis(String operation, double percentile)
+	{
+		Operation op = operations.get(operation);
+		return op == null ? 0 : op.latency.getPercentile(percentile) / 1e6;
+	}
+
+	// Overridden method
+	public void reset()
+	{
+		for(Operation op : operations.values())
+		{
+			op.latency.reset();
+			op.errors.set(0);
+			op.retries.set(0);
+		}
+	}
+
+	/**
+	 * Returns the metrics of an operation, creating them on first use
+	 *
+	 * @param operation
+	 * @return Operation
+	 */
+	private Operation get(String operation)
+	{
+		Operation op = operations.get(operation);
+		if(op == null)
+		{
+			Operation created = new Operation();
+			op = operations.putIfAbsent(operation, created);
+			if(op == null)
+			{
+				op = created;
+			}
+		}
+		return op;
+	}
+
+	/**
+	 * Simple convenience method for logging text to console output.
+	 * Should be replaced with a log file in the future
+	 *
+	 * @param log
+	 */
+	private void log(String text)
+	{
+		System.out.println(text);
+	}
+}
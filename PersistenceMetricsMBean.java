@@ -0,0 +1,33 @@
+/**
+ * JMX interface of PersistenceMetrics
+ */
+public interface PersistenceMetricsMBean
+{
+	/**
+	 * @return names of the operations recorded so far
+	 */
+	public String[] getOperations();
+
+	/**
+	 * @return one summary line per operation
+	 */
+	public String[] getOperationSummaries();
+
+	/**
+	 * @return metrics of the story store itself, e.g. the connection pool
+	 */
+	public String getStoreStatistics();
+
+	public long getCount(String operation);
+
+	public long getErrorCount(String operation);
+
+	public long getRetryCount(String operation);
+
+	public double getPercentileMillis(String operation, double percentile);
+
+	/**
+	 * Clears all recorded values
+	 */
+	public void reset();
+}
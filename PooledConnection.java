@@ -0,0 +1,158 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * Class for one database connection kept in a ConnectionPool,
+ * together with its prepared statements
+ *
+ */
+public class PooledConnection
+{
+	// The wrapped physical connection
+	private Connection conn;
+
+	// Prepared statements of this connection
+	private StatementCache statements;
+
+	// When the connection was created and when it was last handed back to the pool
+	private long createdAt;
+	private long lastUsedAt;
+
+	/**
+	 * Constructor
+	 *
+	 * @param conn
+	 * @param statementCacheSize Maximum number of cached prepared statements
+	 * @param counters Statement cache counters of the pool
+	 */
+	public PooledConnection(Connection conn, int statementCacheSize, StatementCache.Counters counters)
+	{
+		this.conn = conn;
+		this.statements = new StatementCache(conn, statementCacheSize, counters);
+		this.createdAt = System.currentTimeMillis();
+		this.lastUsedAt = createdAt;
+	}
+
+	/**
+	 * Returns the physical connection
+	 *
+	 * @return Connection
+	 */
+	public Connection getConnection()
+	{
+		return conn;
+	}
+
+	/**
+	 * Returns a prepared statement for the SQL from the statement cache.
+	 * Must be given back with releaseStatement().
+	 *
+	 * @param sql
+	 * @return PreparedStatement
+	 * @throws SQLException
+	 */
+	public PreparedStatement prepareStatement(String sql) throws SQLException
+	{
+		return statements.prepare(sql);
+	}
+
+	/**
+	 * Returns a prepared statement for the SQL from the statement cache.
+	 * Must be given back with releaseStatement().
+	 *
+	 * @param sql
+	 * @param autoGeneratedKeys
+	 * @return PreparedStatement
+	 * @throws SQLException
+	 */
+	public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException
+	{
+		return statements.prepare(sql, autoGeneratedKeys);
+	}
+
+	/**
+	 * Gives back a statement from prepareStatement(), or closes any other statement
+	 *
+	 * @param st may be null
+	 */
+	public void releaseStatement(Statement st)
+	{
+		statements.release(st);
+	}
+
+	/**
+	 * Closes statements that were not given back before the connection
+	 * was returned to the pool
+	 *
+	 * @return number of leaked statements
+	 */
+	int releaseLeakedStatements()
+	{
+		return statements.releaseLeaked();
+	}
+
+	/**
+	 * Returns the number of cached prepared statements
+	 *
+	 * @return int
+	 */
+	public int getCachedStatementCount()
+	{
+		return statements.size();
+	}
+
+	/**
+	 * Returns the time this connection was last returned to the pool
+	 *
+	 * @return milliseconds
+	 */
+	public long getLastUsedAt()
+	{
+		return lastUsedAt;
+	}
+
+	/**
+	 * Marks this connection as used now
+	 */
+	void touch()
+	{
+		lastUsedAt = System.currentTimeMillis();
+	}
+
+	/**
+	 * Checks that the connection is still usable, ie. the socket has not been
+	 * closed by the server or the network
+	 *
+	 * @param timeoutSeconds
+	 * @return TRUE if the connection can be used
+	 */
+	public boolean validate(int timeoutSeconds)
+	{
+		try
+		{
+			return !conn.isClosed() && conn.isValid(timeoutSeconds);
+		}
+		catch(SQLException e)
+		{
+			return false;
+		}
+	}
+
+	/**
+	 * Closes the physical connection, ignoring errors since the connection
+	 * is usually closed because it is already broken
+	 */
+	public void close()
+	{
+		statements.closeAll();
+		try
+		{
+			conn.close();
+		}
+		catch(Exception e)
+		{
+		}
+	}
+}
@@ -0,0 +1,268 @@
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.zip.CRC32;
+
+/**
+ * Class for an append-only file of framed records, the on-disk format of
+ * StoryJournal and FileStoryStore.
+ *
+ * Each record is [int length][payload][long crc32]. Opening the file reads
+ * the records up to the first one that is incomplete or fails its checksum,
+ * and cuts the file off there, so a record torn by a crash during a write
+ * is dropped. Records are appended unsynced; force() puts them on the disk.
+ * The payloads are written by the users of the file, strings with
+ * writeString() and readString().
+ */
+public class RecordFile
+{
+	/**
+	 * Reads the payload of one record
+	 */
+	public interface RecordHandler
+	{
+		public void record(DataInputStream payload) throws IOException;
+	}
+
+	// Longer records are taken for garbage at the end of the file
+	private static final int MAX_RECORD_LENGTH = 16 * 1024 * 1024;
+
+	private File file;
+	private RandomAccessFile raf = null;
+	private FileChannel channel = null;
+
+	// Records written since the last force()
+	private boolean dirty = false;
+
+	/**
+	 * Constructor
+	 *
+	 * @param file
+	 */
+	public RecordFile(File file)
+	{
+		this.file = file;
+	}
+
+	public File getFile()
+	{
+		return file;
+	}
+
+	/**
+	 * Opens the file for appending, passing every valid record to a handler
+	 * first. A torn record at the end of the file is cut off.
+	 *
+	 * @param handler may be null if the records are not needed
+	 * @return number of bytes cut off
+	 * @throws IOException
+	 */
+	public long open(RecordHandler handler) throws IOException
+	{
+		long validLength = 0;
+		if(file.exists())
+		{
+			validLength = read(handler);
+		}
+		raf = new RandomAccessFile(file, "rw");
+		channel = raf.getChannel();
+		long discarded = channel.size() - validLength;
+		if(discarded > 0)
+		{
+			channel.truncate(validLength);
+		}
+		channel.position(validLength);
+		return Math.max(0, discarded);
+	}
+
+	/**
+	 * Opens the file empty, dropping anything in it
+	 *
+	 * @throws IOException
+	 */
+	public void create() throws IOException
+	{
+		raf = new RandomAccessFile(file, "rw");
+		raf.setLength(0);
+		channel = raf.getChannel();
+		dirty = false;
+	}
+
+	/**
+	 * Appends one record. The data reaches the disk on the next force().
+	 *
+	 * @param payload
+	 * @throws IOException
+	 */
+	public void write(byte[] payload) throws IOException
+	{
+		if(channel == null)
+		{
+			throw new IOException("Record file " + file + " is not open");
+		}
+		CRC32 crc = new CRC32();
+		crc.update(payload);
+		ByteBuffer buffer = ByteBuffer.allocate(4 + payload.length + 8);
+		buffer.putInt(payload.length);
+		buffer.put(payload);
+		buffer.putLong(crc.getValue());
+		buffer.flip();
+		while(buffer.hasRemaining())
+		{
+			channel.write(buffer);
+		}
+		dirty = true;
+	}
+
+	/**
+	 * Forces appended records to the disk
+	 *
+	 * @return FALSE if there was nothing to force
+	 * @throws IOException
+	 */
+	public boolean force() throws IOException
+	{
+		if(!dirty)
+		{
+			return false;
+		}
+		channel.force(false);
+		dirty = false;
+		return true;
+	}
+
+	public boolean isOpen()
+	{
+		return channel != null && channel.isOpen();
+	}
+
+	/**
+	 * Returns the size of the file
+	 *
+	 * @return bytes
+	 * @throws IOException
+	 */
+	public long size() throws IOException
+	{
+		return channel == null ? file.length() : channel.size();
+	}
+
+	/**
+	 * Forces the records to the disk and closes the file
+	 *
+	 * @throws IOException
+	 */
+	public void close() throws IOException
+	{
+		if(channel == null)
+		{
+			return;
+		}
+		try
+		{
+			force();
+		}
+		finally
+		{
+			raf.close();
+			channel = null;
+		}
+	}
+
+	/**
+	 * Reads the valid records of the file
+	 *
+	 * @param handler may be null
+	 * @return length of the valid part of the file
+	 * @throws IOException
+	 */
+	private long read(RecordHandler handler) throws IOException
+	{
+		long validLength = 0;
+		DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+		try
+		{
+			while(true)
+			{
+				byte[] payload;
+				try
+				{
+					int length = in.readInt();
+					if(length <= 0 || length > MAX_RECORD_LENGTH)
+					{
+						break;
+					}
+					payload = new byte[length];
+					in.readFully(payload);
+					long crc = in.readLong();
+					CRC32 check = new CRC32();
+					check.update(payload);
+					if(check.getValue() != crc)
+					{
+						break;
+					}
+				}
+				catch(EOFException e)
+				{
+					break;
+				}
+				if(handler != null)
+				{
+					handler.record(new DataInputStream(new ByteArrayInputStream(payload)));
+				}
+				validLength += 4 + payload.length + 8;
+			}
+		}
+		finally
+		{
+			in.close();
+		}
+		return validLength;
+	}
+
+	/**
+	 * Writes a possibly null string as UTF-8 bytes
+	 *
+	 * @param out
+	 * @param s
+	 * @throws IOException
+	 */
+	public static void writeString(DataOutputStream out, String s) throws IOException
+	{
+		if(s == null)
+		{
+			out.writeInt(-1);
+			return;
+		}
+		byte[] b = s.getBytes("UTF-8");
+		out.writeInt(b.length);
+		out.write(b);
+	}
+
+	/**
+	 * Reads a string written by writeString
+	 *
+	 * @param in
+	 * @return String or null
+	 * @throws IOException
+	 */
+	public static String readString(DataInputStream in) throws IOException
+	{
+		int length = in.readInt();
+		if(length < 0)
+		{
+			return null;
+		}
+		byte[] b = new byte[length];
+		in.readFully(b);
+		return new String(b, "UTF-8");
+	}
+}
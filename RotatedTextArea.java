@@ -3,43 +3,115 @@ import java.awt.Dimension;
 import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
+import java.awt.Insets;
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.geom.AffineTransform;
 
 import javax.swing.BorderFactory;
 import javax.swing.JFrame;
 import javax.swing.JTextArea;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
 import javax.swing.border.Border;
 import javax.swing.event.DocumentEvent;
 import javax.swing.event.DocumentListener;
+import javax.swing.plaf.basic.BasicTextAreaUI;
+import javax.swing.text.Element;
+import javax.swing.text.View;
 
 /**
  * Class that represents a rotatable text area
  * 
+ * Repaint requests, from the text view, the caret and document changes,
+ * are collected into one damaged area and repainted at most once per
+ * frame, mapped through the rotation so that only the changed lines are
+ * repainted also when the area is upside down.
+ * 
+ * The text is laid out by a CachedTextView, so paragraphs that have been
+ * shown before are not measured and wrapped again. At angles that are not
+ * quarter turns the text is laid out in the smaller area that still fits
+ * inside the square when turned, so its corners are not cut off.
  */
 public class RotatedTextArea extends JTextArea implements DocumentListener {  
 
-	// Tells whether this dialog is flipped upside down or not
-	private boolean flipped = false;
-	
-	double angle = 0;	
+	// Angle of rotation
+	private Orientation orientation = Orientation.NORMAL;
+	// Transform of the text for the current size
+	private Orientation.Placement placement = new Orientation.Placement();
+
 	boolean showCaret = false;
 
+	// Surface for painting the text upside down without rotating the Graphics,
+	// the text area paints its whole background
+	private FlippedSurface flippedSurface = new FlippedSurface(true);
+	private FlippedSurface.Painter surfacePainter = new FlippedSurface.Painter() {
+		public void paintSurface(Graphics2D g)
+		{
+			paintUnrotated(g);
+		}
+	};
+
+	// Measures keystrokes until they are painted, can be null
+	private InputLatencyMonitor latencyMonitor = null;
+
+	// Repaints are collected into at most one per frame
+	private Timer frameTimer = null;
+	private long frameNanos = 16 * 1000000L;
+	private long lastFrame = 0;
+	private long frameRequested = 0;
+	// Area to repaint on the next frame, in unrotated coordinates, null if none
+	private Rectangle damage = null;
+	private boolean caretToEnd = false;
+
+	// Frame metrics
+	private long repaintRequests = 0;
+	private long frameCount = 0;
+	private LatencyHistogram paintTimes = new LatencyHistogram();
+	private LatencyHistogram frameDelays = new LatencyHistogram();
+
 	/**
 	 * Constructor
 	 * 
 	 * @param flipped
 	 */
 	public RotatedTextArea(boolean flipped)
+	{
+		this(flipped ? Orientation.FLIPPED : Orientation.NORMAL);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param orientation Angle of rotation of the text
+	 */
+	public RotatedTextArea(Orientation orientation)
 	{
 		super();
 		this.setPreferredSize(new Dimension(200, 200));
-		if(flipped)
-		{
-			angle = -Math.PI/1;
-		}
-		else
-		{
-			angle = 0;
-		}
+		frameTimer = new Timer(0, new ActionListener() {
+			public void actionPerformed(ActionEvent e)
+			{
+				frame();
+			}
+		});
+		frameTimer.setRepeats(false);
+		frameTimer.setCoalesce(true);
+		this.orientation = orientation;
+	}
+
+	// Overridden method
+	public void updateUI()
+	{
+		// Paragraph layouts come from the shared TextLayoutCache
+		setUI(new BasicTextAreaUI() {
+			public View create(Element elem)
+			{
+				return new CachedTextView(elem);
+			}
+		});
 	}
 
 	/**
@@ -59,66 +131,311 @@ public class RotatedTextArea extends JTextArea implements DocumentListener {
 	 * @param flipped
 	 */
 	public void setFlipped(boolean flipped)
+	{
+		setOrientation(flipped ? Orientation.FLIPPED : Orientation.NORMAL);
+	}
+
+	/**
+	 * Sets the angle of rotation of the text
+	 * 
+	 * @param orientation
+	 */
+	public void setOrientation(Orientation orientation)
 	{
 		// Set the angle and repaint this component
-		if(flipped)
-		{
-			angle = -Math.PI/1;
-		}
-		else
+		this.orientation = orientation;
+		flippedSurface.invalidate();
+		super.repaint(0, 0, 0, getWidth(), getHeight());
+	}
+
+	public Orientation getOrientation()
+	{
+		return orientation;
+	}
+
+	/**
+	 * Sets the monitor that is told when the text has been painted
+	 * 
+	 * @param latencyMonitor
+	 */
+	public void setLatencyMonitor(InputLatencyMonitor latencyMonitor)
+	{
+		this.latencyMonitor = latencyMonitor;
+	}
+
+	// Overridden method
+	public Insets getInsets()
+	{
+		Insets insets = super.getInsets();
+		if(orientation == null || orientation.isQuarterTurn())
 		{
-			angle = 0;
+			return insets;
 		}
-		this.repaint();
+		// The text is wrapped and clipped to the part that fits when turned
+		int size = Math.min(getWidth(), getHeight());
+		Dimension content = orientation.getUnrotatedSize(size, size);
+		return new Insets(insets.top, insets.left, insets.bottom + Math.max(0, size - content.height),
+				insets.right + Math.max(0, size - content.width));
 	}
 
 	// Overridden method
 	public void paintComponent(Graphics g) 
 	{  
+		long paintStart = System.nanoTime();
 
-		double mid = Math.min(getWidth(), getHeight())/2.0;  
+		int size = Math.min(getWidth(), getHeight());
 		Graphics2D g2d = (Graphics2D)g;  
 
-		g2d.rotate(angle, mid, mid);  
-		super.paintComponent(g2d);  
-		g2d.rotate(-angle, mid, mid);  
+		if(orientation.isHalfTurn() && FlippedSurface.isEnabled())
+		{
+			// Only the damaged part is painted into the surface and mirrored onto the screen
+			flippedSurface.paint(g2d, this, size, size, FlippedSurface.unrotate(g2d.getClipBounds(), size, size), surfacePainter);
+		}
+		else if(orientation.isNormal())
+		{
+			paintUnrotated(g2d);
+		}
+		else
+		{
+			// Turned around the middle of the square, the background outside
+			// the laid out text would stick out of the square
+			AffineTransform old = g2d.getTransform();
+			Shape oldClip = g2d.getClip();
+			Dimension content = orientation.getUnrotatedSize(size, size);
+			placement.update(orientation, size, size, content.width, content.height);
+			g2d.transform(placement.getTransform());
+			g2d.clipRect(0, 0, content.width, content.height);
+			paintUnrotated(g2d);
+			g2d.setTransform(old);
+			g2d.setClip(oldClip);
+		}
+
+		paintTimes.record(System.nanoTime() - paintStart);
+		if(latencyMonitor != null)
+		{
+			latencyMonitor.painted(paintStart);
+		}
 	}
 
-	// Overridden method
-	public void changedUpdate(DocumentEvent e) 
+	/**
+	 * Paints the text and the overlay in the normal orientation
+	 * 
+	 * @param g
+	 */
+	private void paintUnrotated(Graphics2D g)
 	{
-		this.repaint();
-
-		if(showCaret)
+		super.paintComponent(g);
+		if(latencyMonitor != null)
 		{
-			this.getCaret().setVisible(true);
-			setCaretPosition(getDocument().getLength());
+			latencyMonitor.paintOverlay(g, getWidth());
 		}
 	}
+
+	// Overridden method
+	public void changedUpdate(DocumentEvent e) 
+	{
+		documentChanged();
+	}
 	
 	// Overridden method	
 	public void removeUpdate(DocumentEvent e) 
 	{
-		this.repaint();
-		
-		if(showCaret)
-		{
-			this.getCaret().setVisible(true);
-			setCaretPosition(getDocument().getLength());
-		}			
+		documentChanged();
 	}
 	
 	// Overridden method	
 	public void insertUpdate(DocumentEvent e) 
 	{
-		this.repaint();
-		
+		documentChanged();
+	}
+
+	/**
+	 * Moves the caret to the end of the text on the next frame. The text
+	 * view repaints the changed lines itself through repaint().
+	 */
+	private void documentChanged()
+	{
 		if(showCaret)
 		{
+			caretToEnd = true;
+			requestFrame();
+		}
+	}
+
+	// Overridden method
+	public void repaint(long tm, int x, int y, int width, int height)
+	{
+		if(width <= 0 || height <= 0)
+		{
+			return;
+		}
+		if(frameTimer == null || !SwingUtilities.isEventDispatchThread())
+		{
+			// Still being constructed, or called from another thread
+			repaintNow(x, y, width, height);
+			return;
+		}
+		repaintRequests++;
+		if(damage == null)
+		{
+			damage = new Rectangle(x, y, width, height);
+		}
+		else
+		{
+			int x2 = Math.max(damage.x + damage.width, x + width);
+			int y2 = Math.max(damage.y + damage.height, y + height);
+			damage.x = Math.min(damage.x, x);
+			damage.y = Math.min(damage.y, y);
+			damage.width = x2 - damage.x;
+			damage.height = y2 - damage.y;
+		}
+		requestFrame();
+	}
+
+	/**
+	 * Starts the frame timer unless a frame is already coming. A frame is
+	 * repainted right away if the previous one is at least a frame interval
+	 * old, otherwise when the interval is up.
+	 */
+	private void requestFrame()
+	{
+		if(frameTimer == null || frameTimer.isRunning())
+		{
+			return;
+		}
+		long now = System.nanoTime();
+		if(frameRequested == 0)
+		{
+			frameRequested = now;
+		}
+		long wait = (lastFrame + frameNanos - now) / 1000000L;
+		frameTimer.setInitialDelay((int)Math.max(0, Math.min(wait, frameNanos / 1000000L)));
+		frameTimer.start();
+	}
+
+	/**
+	 * Repaints everything collected since the last frame
+	 */
+	private void frame()
+	{
+		long now = System.nanoTime();
+		if(caretToEnd)
+		{
+			caretToEnd = false;
 			this.getCaret().setVisible(true);
 			setCaretPosition(getDocument().getLength());
-		}			
+		}
+		// The caret has added its own damage, no further frame is needed for it
+		frameTimer.stop();
+		if(frameRequested != 0)
+		{
+			frameDelays.record(now - frameRequested);
+			frameRequested = 0;
+		}
+		lastFrame = now;
+		Rectangle r = damage;
+		damage = null;
+		if(r != null)
+		{
+			frameCount++;
+			repaintNow(r.x, r.y, r.width, r.height);
+		}
 	}
 
-}
+	/**
+	 * Repaints an area of the unrotated text on the screen
+	 * 
+	 * @param x
+	 * @param y
+	 * @param width
+	 * @param height
+	 */
+	private void repaintNow(int x, int y, int width, int height)
+	{
+		if(orientation == null || orientation.isNormal())
+		{
+			// Not turned, or still being constructed
+		}
+		else if(orientation.isHalfTurn())
+		{
+			// Rotating half a turn around (mid, mid) mirrors both axes
+			int mid2 = Math.min(getWidth(), getHeight());
+			x = mid2 - x - width;
+			y = mid2 - y - height;
+		}
+		else
+		{
+			// The screen area covering the turned damage
+			int size = Math.min(getWidth(), getHeight());
+			Dimension content = orientation.getUnrotatedSize(size, size);
+			placement.update(orientation, size, size, content.width, content.height);
+			Rectangle r = placement.transformBounds(new Rectangle(x, y, width, height));
+			x = r.x;
+			y = r.y;
+			width = r.width;
+			height = r.height;
+		}
+		super.repaint(0, x, y, width, height);
+	}
 
+	/**
+	 * Sets the shortest time between two repaints
+	 * 
+	 * @param frameMillis
+	 */
+	public void setFrameMillis(int frameMillis)
+	{
+		this.frameNanos = Math.max(1, frameMillis) * 1000000L;
+	}
+
+	/**
+	 * Returns how long painting a frame took
+	 * 
+	 * @return LatencyHistogram
+	 */
+	public LatencyHistogram getPaintTimes()
+	{
+		return paintTimes;
+	}
+
+	/**
+	 * Returns how long changes waited for their frame
+	 * 
+	 * @return LatencyHistogram
+	 */
+	public LatencyHistogram getFrameDelays()
+	{
+		return frameDelays;
+	}
+
+	/**
+	 * Returns how many repaints were requested
+	 * 
+	 * @return count
+	 */
+	public long getRepaintRequestCount()
+	{
+		return repaintRequests;
+	}
+
+	/**
+	 * Returns how many frames were repainted for the requests
+	 * 
+	 * @return count
+	 */
+	public long getFrameCount()
+	{
+		return frameCount;
+	}
+
+	/**
+	 * Returns the frame metrics as text
+	 * 
+	 * @return String
+	 */
+	public String getFrameStatistics()
+	{
+		return "requests=" + repaintRequests + " frames=" + frameCount + " paint: " + paintTimes + " delay: " + frameDelays;
+	}
+
+}
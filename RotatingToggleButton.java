@@ -5,10 +5,7 @@ import java.awt.Font;
 import java.awt.Graphics;
 import java.awt.Graphics2D;
 import java.awt.Insets;
-import java.awt.Rectangle;
 import java.awt.RenderingHints;
-import java.awt.geom.AffineTransform;
-import java.awt.geom.Area;
 import java.awt.image.BufferedImage;
 import java.beans.PropertyChangeEvent;
 import java.beans.PropertyChangeListener;
@@ -48,33 +45,62 @@ public class RotatingToggleButton extends JToggleButton {
 	}
 
 	// Angle of rotation
-	private double rotation = 0;
-	
-	// Tells whether this button is rotated upside down or not
-	private boolean flipped = false;
+	private Orientation orientation = Orientation.NORMAL;
+
+	// Transforms for painting the image and for hit testing, kept for the current size
+	private Orientation.Placement placement = new Orientation.Placement();
+	private Orientation.Placement hitPlacement = new Orientation.Placement();
+
+	// TRUE while the button has the unrotated size for painting its image
+	private boolean sizingImage = false;
 	
 	// Possible image for this button (if no text is shown)
 	private BufferedImage image;
 
+	// Surface for painting the button upside down without rotating the Graphics
+	private FlippedSurface flippedSurface = new FlippedSurface(true);
+
+	// Paints the unrotated button into the flipped surface
+	private FlippedSurface.Painter surfacePainter = new FlippedSurface.Painter() {
+
+		@Override
+		public void paintSurface(Graphics2D g) {
+			paintUnrotated(g);
+		}
+	};
+
+	// Key for looking up the image from the shared sprite cache
+	private GlyphSpriteCache.Key spriteKey = new GlyphSpriteCache.Key();
+
+	// Paints the image when it is not in the sprite cache
+	private GlyphSpriteCache.Painter spritePainter = new GlyphSpriteCache.Painter() {
+
+		@Override
+		public void paintSprite(Graphics2D g) {
+			RotatingToggleButton.super.paint(g);
+		}
+	};
+
 	/**
 	 * Constructor
 	 * 
 	 * @param flipped Defines whether this button is rotated upside down or not
 	 */
 	public RotatingToggleButton(boolean flipped) {
+		this(flipped ? Orientation.FLIPPED : Orientation.NORMAL);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param orientation Angle of rotation of this button
+	 */
+	public RotatingToggleButton(Orientation orientation) {
 		super();
-		this.flipped = flipped;
-		if(flipped)
-		{
-			rotation = -Math.PI/1;
-		}
-		else
-		{
-			rotation = 0;
-		}
+		this.orientation = orientation;
 		init();
 	}
-	
+
 	/**
 	 * Constructor
 	 * 
@@ -82,36 +108,38 @@ public class RotatingToggleButton extends JToggleButton {
 	 * @param flipped Defines whether this button is rotated upside down or not
 	 */
 	public RotatingToggleButton(String text, boolean flipped) {
+		this(text, flipped ? Orientation.FLIPPED : Orientation.NORMAL);
+	}
+
+	/**
+	 * Constructor
+	 * 
+	 * @param text Button text
+	 * @param orientation Angle of rotation of this button
+	 */
+	public RotatingToggleButton(String text, Orientation orientation) {
 		super(text);
 		// TODO add handling for flipped image-buttons
-		this.flipped = flipped;
-		if(flipped)
-		{
-			rotation = -Math.PI/1;
-		}
-		else
-		{
-			rotation = 0;
-		}
+		this.orientation = orientation;
 		init();
 	}
 
 	// Overridden method
 	public Dimension getPreferredSize() {
+		// The size of the bounds of the turned button, computed from the
+		// angle without building the turned shape
 		Dimension size = super.getPreferredSize();
-		Area area = new Area(new Rectangle(size.width, size.height));
-		area.transform(AffineTransform.getRotateInstance(rotation, size
-				.getWidth() / 2.0, size.getHeight() / 2.0));
-		Rectangle bounds = area.getBounds();
-		size.setSize(bounds.width, bounds.height);
-		return size;
+		return orientation.getRotatedSize(size.width, size.height);
 	}
 
 	// Overridden method
 	public void setBounds(int x, int y, int width, int height)
 	{
 		super.setBounds(x, y, width, height);
-		this.setPreferredSize(new Dimension(width, height));
+		// The preferred size is kept unrotated, it is the size of the image
+		if (!sizingImage && !getPreferredSize().equals(new Dimension(width, height))) {
+			this.setPreferredSize(orientation.getUnrotatedSize(width, height));
+		}
 		this.setMargin(new Insets(0, 5, 0, 5));
 
 	}
@@ -122,17 +150,56 @@ public class RotatingToggleButton extends JToggleButton {
 	 * @return double
 	 */
 	public double getRotation() {
-		return rotation;
+		return orientation.getAngle();
+	}
+
+	public Orientation getOrientation() {
+		return orientation;
+	}
+
+	// Overridden method
+	public boolean contains(int x, int y) {
+		if (orientation == null || orientation.isQuarterTurn()) {
+			return super.contains(x, y);
+		}
+		// The corners of the bounds are outside the turned button
+		hitPlacement.update(orientation, getWidth(), getHeight());
+		return hitPlacement.contains(x, y);
 	}
 
 	// Overridden method
 	public void paint(Graphics g) {
+		if (orientation.isHalfTurn() && FlippedSurface.isEnabled()) {
+			// Half a turn is a mirrored blit of the cached button
+			flippedSurface.paint(g, this, getWidth(), getHeight(), null, surfacePainter);
+			return;
+		}
 		Graphics2D g2 = (Graphics2D) g;
-		g2.setRenderingHints(qualityHints);
 		g2.setColor(this.getBackground());
-		g2.fillRect(0, 0, getWidth(), getHeight());
-		g2.rotate(rotation, getWidth() / 2.0, getHeight() / 2.0);
-		g2.drawImage(image, null, (getWidth() - image.getWidth()) / 2,
+		placement.update(orientation, getWidth(), getHeight(), image.getWidth(), image.getHeight());
+		if (orientation.isQuarterTurn()) {
+			// Quarter turns map pixels onto pixels and need no interpolation
+			g2.fillRect(0, 0, getWidth(), getHeight());
+			g2.transform(placement.getTransform());
+		} else {
+			// Only the turned button is painted, the corners of the bounds
+			// belong to the neighbours
+			g2.setRenderingHints(qualityHints);
+			g2.transform(placement.getTransform());
+			g2.fillRect(0, 0, image.getWidth(), image.getHeight());
+		}
+		g2.drawImage(image, 0, 0, null);
+	}
+
+	/**
+	 * Paints the background and the image of this button unrotated
+	 * 
+	 * @param g
+	 */
+	private void paintUnrotated(Graphics2D g) {
+		g.setColor(this.getBackground());
+		g.fillRect(0, 0, getWidth(), getHeight());
+		g.drawImage(image, null, (getWidth() - image.getWidth()) / 2,
 				(getHeight() - image.getHeight()) / 2);
 	}
 
@@ -142,14 +209,27 @@ public class RotatingToggleButton extends JToggleButton {
 	 * @param rotation
 	 */
 	public void setRotation(double rotation) {
-		this.rotation = rotation;
+		setOrientation(Orientation.get(rotation));
+	}
+
+	/**
+	 * Sets the angle of rotation for this button
+	 * 
+	 * @param orientation
+	 */
+	public void setOrientation(Orientation orientation) {
+		// The preferred size is unrotated and stays, only the bounds turn
+		this.orientation = orientation;
+		this.setOpaque(orientation.isQuarterTurn());
 		this.updateImage();
+		this.repaint();
 	}
-	
+
 	/**
 	 * Initalizes this button
 	 */
 	private void init() {
+		this.setOpaque(orientation.isQuarterTurn());
 		updateImage();
 		this.addPropertyChangeListener(new PropertyChangeListener() {
 
@@ -168,21 +248,34 @@ public class RotatingToggleButton extends JToggleButton {
 	}
 
 	/**
-	 * Update image contained by this button
+	 * Update image contained by this button. The image is shared with
+	 * other buttons that look the same, and only this button is repainted
+	 * unless its size changed.
 	 */
 	private void updateImage() {
+		long phaseStart = InputLatencyMonitor.begin();
+		int oldWidth = getWidth();
+		int oldHeight = getHeight();
+		// The image is painted at the unrotated size
+		sizingImage = true;
 		this.setSize(super.getPreferredSize());
+		sizingImage = false;
 
-		image = new BufferedImage(getWidth(), getHeight(),
-				BufferedImage.TYPE_INT_ARGB);
-		Graphics2D ig = image.createGraphics();
-		super.paint(ig);
-		ig.dispose();
+		BufferedImage sprite = GlyphSpriteCache.getInstance().getSprite(this, spriteKey, spritePainter);
 		this.setSize(this.getPreferredSize());
-		if (this.getParent() instanceof JComponent) {
-			((JComponent) this.getParent()).revalidate();
-			((JComponent) this.getParent()).repaint();
+		if (getWidth() != oldWidth || getHeight() != oldHeight) {
+			image = sprite;
+			flippedSurface.invalidate();
+			if (this.getParent() instanceof JComponent) {
+				((JComponent) this.getParent()).revalidate();
+				((JComponent) this.getParent()).repaint();
+			}
+		} else if (sprite != image) {
+			image = sprite;
+			flippedSurface.invalidate();
+			this.repaint();
 		}
+		InputLatencyMonitor.end(InputLatencyMonitor.IMAGES, phaseStart);
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,177 @@
+import java.awt.Graphics2D;
+import java.awt.GraphicsEnvironment;
+import java.awt.Image;
+import java.awt.Transparency;
+import java.awt.image.BufferedImage;
+import java.awt.image.VolatileImage;
+
+import javax.swing.AbstractButton;
+import javax.swing.JComponent;
+import javax.swing.SwingUtilities;
+
+/**
+ * Class for comparing the cost of painting a frame of the flipped and the
+ * normal keyboards, with the flipped ones rotating their Graphics and
+ * painting through a FlippedSurface.
+ *
+ * Each frame presses or releases a key and paints the whole keyboard into
+ * an offscreen image, a VolatileImage of the screen if there is one. The
+ * first frame of each flipped keyboard is also checked against the rotated
+ * painting, as the mirrored surface must give the same pixels.
+ *
+ * Usage: java RotationBenchmark [frames] [width] [height]
+ */
+public class RotationBenchmark
+{
+	public static void main(String[] args) throws Exception
+	{
+		final int frames = args.length > 0 ? Integer.parseInt(args[0]) : 500;
+		final int width = args.length > 1 ? Integer.parseInt(args[1]) : 800;
+		final int height = args.length > 2 ? Integer.parseInt(args[2]) : 300;
+
+		SwingUtilities.invokeAndWait(new Runnable() {
+			public void run()
+			{
+				System.out.println("Frames per keyboard: " + frames + ", size " + width + "x" + height
+						+ (GraphicsEnvironment.isHeadless() ? ", headless" : ""));
+				for(boolean painted : new boolean[] {false, true})
+				{
+					String type = painted ? "painted" : "buttons";
+					report(type, "normal", paintFrames(painted, false, true, frames, width, height));
+					report(type, "flipped rotated", paintFrames(painted, true, false, frames, width, height));
+					report(type, "flipped surface", paintFrames(painted, true, true, frames, width, height));
+					compare(type, painted, width, height);
+				}
+				FlippedSurface.setEnabled(true);
+			}
+		});
+	}
+
+	/**
+	 * Paints frames of a keyboard
+	 *
+	 * @param painted TRUE for PaintedKeyboard, FALSE for PanelVirtualKeyboardReal
+	 * @param flipped
+	 * @param surface Whether flipped components paint through surfaces
+	 * @param frames
+	 * @param width
+	 * @param height
+	 * @return time of each frame
+	 */
+	private static long[] paintFrames(boolean painted, boolean flipped, boolean surface, int frames, int width, int height)
+	{
+		FlippedSurface.setEnabled(surface);
+		JComponent keyboard = createKeyboard(painted, flipped, width, height);
+		Image target = createTarget(width, height);
+		// Warm up the images and the sprite cache
+		for(int i = 0; i < 20; i++)
+		{
+			frame(keyboard, target, i);
+		}
+		long[] nanos = new long[frames];
+		for(int i = 0; i < frames; i++)
+		{
+			long start = System.nanoTime();
+			frame(keyboard, target, i);
+			nanos[i] = System.nanoTime() - start;
+		}
+		return nanos;
+	}
+
+	/**
+	 * Checks that the flipped keyboard looks the same painted both ways
+	 *
+	 * @param type
+	 * @param painted
+	 * @param width
+	 * @param height
+	 */
+	private static void compare(String type, boolean painted, int width, int height)
+	{
+		BufferedImage[] images = new BufferedImage[2];
+		for(int mode = 0; mode < 2; mode++)
+		{
+			FlippedSurface.setEnabled(mode == 1);
+			JComponent keyboard = createKeyboard(painted, true, width, height);
+			images[mode] = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+			frame(keyboard, images[mode], 0);
+		}
+		long differing = 0;
+		for(int y = 0; y < height; y++)
+		{
+			for(int x = 0; x < width; x++)
+			{
+				if(images[0].getRGB(x, y) != images[1].getRGB(x, y))
+				{
+					differing++;
+				}
+			}
+		}
+		System.out.println(String.format("%-8s flipped pixels differing from rotated: %d of %d", type, differing, (long)width * height));
+	}
+
+	private static JComponent createKeyboard(boolean painted, boolean flipped, int width, int height)
+	{
+		JComponent keyboard = painted ? new PaintedKeyboard(flipped) : new PanelVirtualKeyboardReal(flipped);
+		keyboard.setSize(width, height);
+		keyboard.doLayout();
+		return keyboard;
+	}
+
+	private static Image createTarget(int width, int height)
+	{
+		if(!GraphicsEnvironment.isHeadless())
+		{
+			VolatileImage image = GraphicsEnvironment.getLocalGraphicsEnvironment().getDefaultScreenDevice()
+					.getDefaultConfiguration().createCompatibleVolatileImage(width, height, Transparency.OPAQUE);
+			if(image != null)
+			{
+				return image;
+			}
+		}
+		return new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+	}
+
+	/**
+	 * Presses or releases a key and paints the keyboard
+	 *
+	 * @param keyboard
+	 * @param target
+	 * @param frame
+	 */
+	private static void frame(JComponent keyboard, Image target, int frame)
+	{
+		if(keyboard.getComponentCount() > 0)
+		{
+			AbstractButton key = (AbstractButton)keyboard.getComponent((frame / 2) % keyboard.getComponentCount());
+			key.getModel().setArmed(frame % 2 == 0);
+			key.getModel().setPressed(frame % 2 == 0);
+		}
+		Graphics2D g = (Graphics2D)target.getGraphics();
+		try
+		{
+			keyboard.paint(g);
+		}
+		finally
+		{
+			g.dispose();
+		}
+	}
+
+	/**
+	 * Prints the distribution of the given times
+	 *
+	 * @param type
+	 * @param mode
+	 * @param nanos
+	 */
+	private static void report(String type, String mode, long[] nanos)
+	{
+		LatencyHistogram histogram = new LatencyHistogram();
+		for(long n : nanos)
+		{
+			histogram.record(n);
+		}
+		System.out.println(String.format("%-8s %-16s %s", type, mode, histogram));
+	}
+}
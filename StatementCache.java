@@ -0,0 +1,237 @@
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Class for caching the prepared statements of one database connection.
+ *
+ * Statements are kept by their SQL and reused, so the server parses each
+ * statement once per connection instead of once per call. The least recently
+ * used statement is closed when the cache is full. A statement handed out
+ * must be given back with release(); statements still out when the connection
+ * returns to the pool are counted as leaks and closed.
+ *
+ * Not thread safe, a connection is only used by one thread at a time.
+ */
+public class StatementCache
+{
+	/**
+	 * Counters shared by the statement caches of all connections in a pool
+	 */
+	public static class Counters
+	{
+		public final AtomicLong hits = new AtomicLong();
+		public final AtomicLong misses = new AtomicLong();
+		public final AtomicLong evictions = new AtomicLong();
+		public final AtomicLong leaks = new AtomicLong();
+	}
+
+	private Connection conn;
+	private int maxSize;
+	private Counters counters;
+
+	// Cached statements by key, least recently used first
+	private LinkedHashMap<String, PreparedStatement> cache = new LinkedHashMap<String, PreparedStatement>(16, 0.75f, true);
+
+	// Statements handed out and not yet released, cached or not
+	private IdentityHashMap<Statement, Boolean> inUse = new IdentityHashMap<Statement, Boolean>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param conn
+	 * @param maxSize Maximum number of cached statements, 0 disables caching
+	 * @param counters
+	 */
+	public StatementCache(Connection conn, int maxSize, Counters counters)
+	{
+		this.conn = conn;
+		this.maxSize = Math.max(0, maxSize);
+		this.counters = counters;
+	}
+
+	/**
+	 * Returns a prepared statement for the SQL, reusing a cached one if possible
+	 *
+	 * @param sql
+	 * @return PreparedStatement, to be given back with release()
+	 * @throws SQLException
+	 */
+	public PreparedStatement prepare(String sql) throws SQLException
+	{
+		return prepare(sql, Statement.NO_GENERATED_KEYS);
+	}
+
+	/**
+	 * Returns a prepared statement for the SQL, reusing a cached one if possible
+	 *
+	 * @param sql
+	 * @param autoGeneratedKeys Statement.RETURN_GENERATED_KEYS or Statement.NO_GENERATED_KEYS
+	 * @return PreparedStatement, to be given back with release()
+	 * @throws SQLException
+	 */
+	public PreparedStatement prepare(String sql, int autoGeneratedKeys) throws SQLException
+	{
+		String key = autoGeneratedKeys == Statement.RETURN_GENERATED_KEYS ? "K:" + sql : sql;
+		PreparedStatement ps = cache.get(key);
+		if(ps != null && !inUse.containsKey(ps))
+		{
+			counters.hits.incrementAndGet();
+			inUse.put(ps, Boolean.TRUE);
+			return ps;
+		}
+
+		counters.misses.incrementAndGet();
+		PreparedStatement created = conn.prepareStatement(sql, autoGeneratedKeys);
+		// The same SQL already in use (e.g. nested calls) gets an uncached statement
+		if(ps == null && maxSize > 0)
+		{
+			evict(maxSize - 1);
+			cache.put(key, created);
+		}
+		inUse.put(created, Boolean.TRUE);
+		return created;
+	}
+
+	/**
+	 * Gives a statement back. Cached statements are cleared for the next
+	 * use, other statements are closed.
+	 *
+	 * @param st may be null
+	 */
+	public void release(Statement st)
+	{
+		if(st == null)
+		{
+			return;
+		}
+		inUse.remove(st);
+		if(st instanceof PreparedStatement && cache.containsValue(st))
+		{
+			try
+			{
+				PreparedStatement ps = (PreparedStatement)st;
+				ps.clearParameters();
+				ps.clearBatch();
+				ps.clearWarnings();
+				return;
+			}
+			catch(SQLException e)
+			{
+				// Broken statement, do not reuse it
+				remove(st);
+			}
+		}
+		close(st);
+	}
+
+	/**
+	 * Closes statements that were handed out but never released
+	 *
+	 * @return number of leaked statements
+	 */
+	public int releaseLeaked()
+	{
+		int leaked = inUse.size();
+		if(leaked == 0)
+		{
+			return 0;
+		}
+		for(Statement st : inUse.keySet())
+		{
+			remove(st);
+			close(st);
+		}
+		inUse.clear();
+		counters.leaks.addAndGet(leaked);
+		return leaked;
+	}
+
+	/**
+	 * Returns the number of cached statements
+	 *
+	 * @return int
+	 */
+	public int size()
+	{
+		return cache.size();
+	}
+
+	/**
+	 * Closes all statements, before the connection is closed
+	 */
+	public void closeAll()
+	{
+		for(PreparedStatement ps : cache.values())
+		{
+			close(ps);
+		}
+		for(Statement st : inUse.keySet())
+		{
+			close(st);
+		}
+		cache.clear();
+		inUse.clear();
+	}
+
+	/**
+	 * Closes least recently used statements that are not in use until
+	 * at most the given number is cached
+	 *
+	 * @param size
+	 */
+	private void evict(int size)
+	{
+		Iterator<Map.Entry<String, PreparedStatement>> it = cache.entrySet().iterator();
+		while(cache.size() > size && it.hasNext())
+		{
+			PreparedStatement ps = it.next().getValue();
+			if(!inUse.containsKey(ps))
+			{
+				it.remove();
+				close(ps);
+				counters.evictions.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Removes a statement from the cache without closing it
+	 *
+	 * @param st
+	 */
+	private void remove(Statement st)
+	{
+		Iterator<PreparedStatement> it = cache.values().iterator();
+		while(it.hasNext())
+		{
+			if(it.next() == st)
+			{
+				it.remove();
+				return;
+			}
+		}
+	}
+
+	/**
+	 * Closes a statement, ignoring errors
+	 *
+	 * @param st
+	 */
+	private static void close(Statement st)
+	{
+		try
+		{
+			st.close();
+		}
+		catch(Exception e)
+		{
+		}
+	}
+}
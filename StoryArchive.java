@@ -0,0 +1,465 @@
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Class for a local archive of finished stories.
+ *
+ * The archive is three append-only files: the text of the stories as
+ * UTF-16 characters, the start offsets of their lines and an index with one
+ * fixed size record per story. Lines are wrapped at a fixed number of
+ * characters when a story is archived, breaking at spaces, which matches
+ * the monospaced font of the main text screen.
+ *
+ * The files are memory-mapped for reading one story at a time, so the
+ * archive can grow past the 2GB a single mapping can cover. A story is read
+ * straight from its mapping: a line is a CharBuffer view of the mapped
+ * text and nothing is copied onto the heap until it is shown.
+ *
+ * Stories are archived on a worker thread when they are finished. The
+ * index record is written last, so a story cut off by a crash is dropped
+ * when the archive is opened again.
+ */
+public class StoryArchive
+{
+	// Index record: text start (long), name length (int), text length (int),
+	// first line entry (long), line count (int), finished at (long), padding
+	private static final int RECORD_SIZE = 40;
+
+	private File textFile;
+	private File linesFile;
+	private File indexFile;
+	private int lineChars;
+
+	private RandomAccessFile textRaf = null;
+	private RandomAccessFile linesRaf = null;
+	private RandomAccessFile indexRaf = null;
+
+	private int storyCount = 0;
+
+	// Index record and read-only mappings of the story read last, guarded by this
+	private int mappedStory = -1;
+	private ByteBuffer storyRecord = ByteBuffer.allocate(RECORD_SIZE);
+	private CharBuffer text = null;
+	private IntBuffer lines = null;
+
+	private ExecutorService executor;
+
+	// Used by the worker thread only
+	private ByteBuffer textBuffer = ByteBuffer.allocateDirect(64 * 1024);
+	private ByteBuffer linesBuffer = ByteBuffer.allocateDirect(16 * 1024);
+
+	/**
+	 * Constructor
+	 *
+	 * @param fileName Text file, the line offsets and index are kept next to it
+	 * @param lineChars Number of characters per line
+	 */
+	public StoryArchive(String fileName, int lineChars)
+	{
+		this.textFile = new File(fileName);
+		this.linesFile = new File(fileName + ".lines");
+		this.indexFile = new File(fileName + ".index");
+		this.lineChars = Math.max(8, lineChars);
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "StoryArchive");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Opens the archive, dropping a story that was not completely written
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void open() throws IOException
+	{
+		textRaf = new RandomAccessFile(textFile, "rw");
+		linesRaf = new RandomAccessFile(linesFile, "rw");
+		indexRaf = new RandomAccessFile(indexFile, "rw");
+
+		// Everything after the last complete record is from an interrupted write
+		long records = indexRaf.length() / RECORD_SIZE;
+		long textEnd = 0;
+		long linesEnd = 0;
+		while(records > 0)
+		{
+			ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+			indexRaf.getChannel().read(record, (records - 1) * RECORD_SIZE);
+			textEnd = (record.getLong(0) + record.getInt(8) + record.getInt(12)) * 2;
+			linesEnd = (record.getLong(16) + record.getInt(24)) * 4;
+			if(textEnd <= textRaf.length() && linesEnd <= linesRaf.length())
+			{
+				break;
+			}
+			records--;
+			textEnd = 0;
+			linesEnd = 0;
+		}
+		if(records * RECORD_SIZE < indexRaf.length() || textEnd < textRaf.length() || linesEnd < linesRaf.length())
+		{
+			log("Story archive " + textFile.getPath() + " was not closed cleanly, keeping " + records + " stories");
+			indexRaf.getChannel().truncate(records * RECORD_SIZE);
+			textRaf.getChannel().truncate(textEnd);
+			linesRaf.getChannel().truncate(linesEnd);
+		}
+		storyCount = (int)(indexRaf.length() / RECORD_SIZE);
+		log("Story archive " + textFile.getPath() + ": " + storyCount + " stories");
+	}
+
+	/**
+	 * Closes the archive after the stories being archived have been written
+	 */
+	public void close()
+	{
+		executor.shutdown();
+		try
+		{
+			executor.awaitTermination(10, TimeUnit.SECONDS);
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+		synchronized(this)
+		{
+			for(RandomAccessFile raf : new RandomAccessFile[] {textRaf, linesRaf, indexRaf})
+			{
+				try
+				{
+					if(raf != null)
+					{
+						raf.close();
+					}
+				}
+				catch(IOException e)
+				{
+					e.printStackTrace();
+				}
+			}
+			textRaf = null;
+			linesRaf = null;
+			indexRaf = null;
+			mappedStory = -1;
+			text = null;
+			lines = null;
+		}
+	}
+
+	/**
+	 * Archives a finished story in the background
+	 *
+	 * @param name Name of the story, can be null
+	 * @param pieces Text of the story, e.g. from StoryBuffer.getPieces()
+	 */
+	public void archive(final String name, final String[] pieces)
+	{
+		executor.execute(new Runnable() {
+			public void run()
+			{
+				try
+				{
+					write(name == null ? "" : name, pieces);
+				}
+				catch(IOException e)
+				{
+					e.printStackTrace();
+				}
+			}
+		});
+	}
+
+	public synchronized int getStoryCount()
+	{
+		return storyCount;
+	}
+
+	/**
+	 * Returns the name of an archived story
+	 *
+	 * @param story Index of the story, oldest first
+	 * @return String, empty if the story could not be read
+	 */
+	public synchronized String getName(int story)
+	{
+		if(!select(story))
+		{
+			return "";
+		}
+		return text.subSequence(0, storyRecord.getInt(8)).toString();
+	}
+
+	/**
+	 * Returns when a story was finished
+	 *
+	 * @param story
+	 * @return milliseconds since the epoch, 0 if the story could not be read
+	 */
+	public synchronized long getFinishedAt(int story)
+	{
+		return select(story) ? storyRecord.getLong(28) : 0;
+	}
+
+	/**
+	 * Returns the number of characters in a story
+	 *
+	 * @param story
+	 * @return length, 0 if the story could not be read
+	 */
+	public synchronized int getLength(int story)
+	{
+		return select(story) ? storyRecord.getInt(12) : 0;
+	}
+
+	/**
+	 * Returns the number of lines in a story
+	 *
+	 * @param story
+	 * @return count, 0 if the story could not be read
+	 */
+	public synchronized int getLineCount(int story)
+	{
+		return select(story) ? storyRecord.getInt(24) : 0;
+	}
+
+	/**
+	 * Returns the text of a story as a view of the mapped file
+	 *
+	 * @param story
+	 * @return CharSequence, valid also after more stories are archived
+	 */
+	public synchronized CharSequence getText(int story)
+	{
+		if(!select(story))
+		{
+			return "";
+		}
+		int start = storyRecord.getInt(8);
+		return text.subSequence(start, start + storyRecord.getInt(12));
+	}
+
+	/**
+	 * Returns a line of a story without its line break, as a view of the
+	 * mapped file
+	 *
+	 * @param story
+	 * @param line
+	 * @return CharSequence
+	 */
+	public synchronized CharSequence getLine(int story, int line)
+	{
+		if(!select(story))
+		{
+			return "";
+		}
+		int start = storyRecord.getInt(8);
+		int count = storyRecord.getInt(24);
+		int lineStart = start + lines.get(line);
+		int lineEnd = start + (line + 1 < count ? lines.get(line + 1) : storyRecord.getInt(12));
+		if(lineEnd > lineStart && text.get(lineEnd - 1) == '\n')
+		{
+			lineEnd--;
+		}
+		return text.subSequence(lineStart, lineEnd);
+	}
+
+	/**
+	 * Reads the index record of a story and maps its name, text and line
+	 * offsets, unless it is the story read last. Offsets in the files are
+	 * kept as longs, only the mapping of one story has to fit into an int.
+	 *
+	 * @param story
+	 * @return FALSE if the story could not be read
+	 */
+	private boolean select(int story)
+	{
+		if(story == mappedStory)
+		{
+			return true;
+		}
+		if(story < 0 || story >= storyCount || indexRaf == null)
+		{
+			throw new IndexOutOfBoundsException("No archived story " + story);
+		}
+		try
+		{
+			storyRecord.clear();
+			while(storyRecord.hasRemaining())
+			{
+				if(indexRaf.getChannel().read(storyRecord, story * (long)RECORD_SIZE + storyRecord.position()) < 0)
+				{
+					throw new IOException("Story archive index ends before story " + story);
+				}
+			}
+			long textStart = storyRecord.getLong(0);
+			long textChars = (long)storyRecord.getInt(8) + storyRecord.getInt(12);
+			text = textRaf.getChannel().map(FileChannel.MapMode.READ_ONLY, textStart * 2, textChars * 2).asCharBuffer();
+			lines = linesRaf.getChannel().map(FileChannel.MapMode.READ_ONLY, storyRecord.getLong(16) * 4, storyRecord.getInt(24) * 4L).asIntBuffer();
+			mappedStory = story;
+			return true;
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+			mappedStory = -1;
+			return false;
+		}
+	}
+
+	/**
+	 * Appends a story to the files on the worker thread
+	 *
+	 * @param name
+	 * @param pieces
+	 * @throws IOException
+	 */
+	private void write(String name, String[] pieces) throws IOException
+	{
+		long start = System.nanoTime();
+		FileChannel textChannel;
+		FileChannel linesChannel;
+		FileChannel indexChannel;
+		synchronized(this)
+		{
+			if(textRaf == null)
+			{
+				return;
+			}
+			textChannel = textRaf.getChannel();
+			linesChannel = linesRaf.getChannel();
+			indexChannel = indexRaf.getChannel();
+		}
+		long textStart = textChannel.size() / 2;
+		long firstLine = linesChannel.size() / 4;
+		textChannel.position(textChannel.size());
+		linesChannel.position(linesChannel.size());
+
+		int length = 0;
+		int lineCount = 1;
+		try
+		{
+			// Name, then the text, wrapping it into lines on the way
+			writeChars(textChannel, name);
+			int lineStart = 0;
+			int lastSpace = -1;
+			writeInt(linesChannel, 0);
+			for(String piece : pieces)
+			{
+				writeChars(textChannel, piece);
+				for(int i = 0; i < piece.length(); i++, length++)
+				{
+					char c = piece.charAt(i);
+					int next = -1;
+					if(c == '\n')
+					{
+						next = length + 1;
+					}
+					else if(c == ' ')
+					{
+						lastSpace = length;
+					}
+					else if(length - lineStart + 1 > lineChars && length > lineStart)
+					{
+						next = lastSpace >= lineStart ? lastSpace + 1 : length;
+					}
+					if(next >= 0)
+					{
+						writeInt(linesChannel, next);
+						lineCount++;
+						lineStart = next;
+						lastSpace = -1;
+					}
+				}
+			}
+			flush(textChannel, textBuffer);
+			flush(linesChannel, linesBuffer);
+			textChannel.force(false);
+			linesChannel.force(false);
+		}
+		catch(IOException e)
+		{
+			// Drop what this story left behind, so the next one starts clean
+			textChannel.truncate(textStart * 2);
+			linesChannel.truncate(firstLine * 4);
+			throw e;
+		}
+		finally
+		{
+			// A failed write leaves the buffers flipped and half written
+			textBuffer.clear();
+			linesBuffer.clear();
+		}
+
+		// The record makes the story part of the archive
+		ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+		record.putLong(0, textStart);
+		record.putInt(8, name.length());
+		record.putInt(12, length);
+		record.putLong(16, firstLine);
+		record.putInt(24, lineCount);
+		record.putLong(28, System.currentTimeMillis());
+		indexChannel.write(record, indexChannel.size());
+		indexChannel.force(false);
+
+		synchronized(this)
+		{
+			storyCount++;
+		}
+		log("Archived story \"" + name + "\": " + length + " characters, " + lineCount + " lines in "
+				+ (System.nanoTime() - start) / 1000000 + " ms");
+	}
+
+	private void writeChars(FileChannel channel, String s) throws IOException
+	{
+		for(int i = 0; i < s.length(); i++)
+		{
+			if(textBuffer.remaining() < 2)
+			{
+				flush(channel, textBuffer);
+			}
+			textBuffer.putChar(s.charAt(i));
+		}
+	}
+
+	private void writeInt(FileChannel channel, int value) throws IOException
+	{
+		if(linesBuffer.remaining() < 4)
+		{
+			flush(channel, linesBuffer);
+		}
+		linesBuffer.putInt(value);
+	}
+
+	private void flush(FileChannel channel, ByteBuffer buffer) throws IOException
+	{
+		buffer.flip();
+		while(buffer.hasRemaining())
+		{
+			channel.write(buffer);
+		}
+		buffer.clear();
+	}
+
+	/**
+	 * Simple convenience method for logging text to console output.
+	 * Should be replaced with a log file in the future
+	 *
+	 * @param log
+	 */
+	private void log(String text)
+	{
+		System.out.println(text);
+	}
+}
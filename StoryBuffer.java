@@ -0,0 +1,216 @@
+import java.util.Arrays;
+
+/**
+ * Class for the text of the story being written in this session.
+ *
+ * The story is a table of pieces, one per appended text, that are never
+ * copied or changed. The start offset of every piece is kept in an array,
+ * so appending is amortized O(1), finding the piece of an offset is a
+ * binary search and a slice only copies the characters asked for. Reading
+ * the characters in order remembers the last piece, so walking the text
+ * from start to end does not search at all.
+ *
+ * The main text screen shows slices of this buffer and contributions are
+ * stored from the newly appended pieces, so the whole story is never put
+ * together into one string. Used on the Swing event thread only.
+ */
+public class StoryBuffer implements CharSequence
+{
+	private String[] pieces = new String[16];
+	// Offset of each piece, starts[pieceCount] is the length
+	private int[] starts = new int[17];
+	private int pieceCount = 0;
+
+	// Piece of the last charAt(), for reading in order
+	private int cursor = 0;
+
+	/**
+	 * Appends a piece of text
+	 *
+	 * @param text
+	 * @return index of the new piece, -1 if the text was empty
+	 */
+	public int append(CharSequence text)
+	{
+		if(text == null || text.length() == 0)
+		{
+			return -1;
+		}
+		if(pieceCount == pieces.length)
+		{
+			pieces = Arrays.copyOf(pieces, pieceCount * 2);
+			starts = Arrays.copyOf(starts, pieceCount * 2 + 1);
+		}
+		String piece = text.toString();
+		pieces[pieceCount] = piece;
+		starts[pieceCount + 1] = starts[pieceCount] + piece.length();
+		return pieceCount++;
+	}
+
+	/**
+	 * Removes the pieces from an index on, e.g. when an appended
+	 * contribution could not be stored after all
+	 *
+	 * @param pieceCount Number of pieces to keep
+	 */
+	public void truncate(int pieceCount)
+	{
+		pieceCount = Math.max(0, pieceCount);
+		for(int i = pieceCount; i < this.pieceCount; i++)
+		{
+			pieces[i] = null;
+		}
+		this.pieceCount = Math.min(this.pieceCount, pieceCount);
+		cursor = 0;
+	}
+
+	/**
+	 * Removes all text
+	 */
+	public void clear()
+	{
+		truncate(0);
+	}
+
+	public int getPieceCount()
+	{
+		return pieceCount;
+	}
+
+	/**
+	 * Returns an appended piece
+	 *
+	 * @param piece Index returned by append()
+	 * @return String
+	 */
+	public String getPiece(int piece)
+	{
+		return pieces[piece];
+	}
+
+	/**
+	 * Returns the pieces of the text, e.g. for handing the story to another
+	 * thread. Only the array is copied, the pieces are shared.
+	 *
+	 * @return String[]
+	 */
+	public String[] getPieces()
+	{
+		return Arrays.copyOf(pieces, pieceCount);
+	}
+
+	/**
+	 * Returns the offset where a piece starts
+	 *
+	 * @param piece
+	 * @return offset
+	 */
+	public int getPieceStart(int piece)
+	{
+		return starts[piece];
+	}
+
+	/**
+	 * Returns the last character
+	 *
+	 * @return char, 0 if the buffer is empty
+	 */
+	public char lastChar()
+	{
+		return pieceCount == 0 ? 0 : charAt(length() - 1);
+	}
+
+	// Overridden method
+	public int length()
+	{
+		return starts[pieceCount];
+	}
+
+	// Overridden method
+	public char charAt(int index)
+	{
+		if(index < 0 || index >= length())
+		{
+			throw new IndexOutOfBoundsException("Index " + index + ", length " + length());
+		}
+		if(cursor >= pieceCount || index < starts[cursor] || index >= starts[cursor + 1])
+		{
+			cursor = pieceAt(index);
+		}
+		return pieces[cursor].charAt(index - starts[cursor]);
+	}
+
+	// Overridden method
+	public CharSequence subSequence(int start, int end)
+	{
+		return slice(start, end);
+	}
+
+	/**
+	 * Copies a part of the text
+	 *
+	 * @param start
+	 * @param end
+	 * @return String
+	 */
+	public String slice(int start, int end)
+	{
+		if(start < 0 || end > length() || start > end)
+		{
+			throw new IndexOutOfBoundsException("Slice " + start + "-" + end + ", length " + length());
+		}
+		if(start == end)
+		{
+			return "";
+		}
+		int piece = pieceAt(start);
+		if(end <= starts[piece + 1])
+		{
+			// Within one piece
+			return pieces[piece].substring(start - starts[piece], end - starts[piece]);
+		}
+		char[] text = new char[end - start];
+		getChars(start, end, text, 0);
+		return new String(text);
+	}
+
+	/**
+	 * Copies a part of the text into an array
+	 *
+	 * @param start
+	 * @param end
+	 * @param dst
+	 * @param dstBegin
+	 */
+	public void getChars(int start, int end, char[] dst, int dstBegin)
+	{
+		int piece = pieceAt(start);
+		int pos = start;
+		while(pos < end)
+		{
+			int pieceStart = starts[piece];
+			int pieceEnd = Math.min(end, starts[piece + 1]);
+			pieces[piece].getChars(pos - pieceStart, pieceEnd - pieceStart, dst, dstBegin + pos - start);
+			pos = pieceEnd;
+			piece++;
+		}
+	}
+
+	// Overridden method
+	public String toString()
+	{
+		return slice(0, length());
+	}
+
+	/**
+	 * Finds the piece containing an offset
+	 *
+	 * @param offset
+	 * @return piece index
+	 */
+	private int pieceAt(int offset)
+	{
+		int piece = Arrays.binarySearch(starts, 0, pieceCount, offset);
+		return piece >= 0 ? piece : -piece - 2;
+	}
+}
@@ -0,0 +1,174 @@
+/**
+ * Class representing one change to a story that has to be stored
+ * in the database: creating a story, adding a contribution to it or
+ * finishing it.
+ *
+ * Stories are identified by a local key, because the database id of
+ * a new story is not known until the story has actually been written.
+ */
+public class StoryEvent
+{
+	// Event types
+	public static final int CREATE_STORY 	= 1;
+	public static final int CONTRIBUTION 	= 2;
+	public static final int FINISH_STORY 	= 3;
+
+	private int type;
+
+	// Local key of the story this event belongs to
+	private String storyKey = null;
+	private String storyName = null;
+
+	// Contribution data
+	private int sequence = 0;
+	private String userName = null;
+	private String text = null;
+	private int trashedChars = 0;
+
+	// Position of this event in the local journal, 0 if not journaled
+	private long journalSequence = 0;
+
+	// Database id of the story, -1 until it is known to the writer
+	private int storyId = -1;
+
+	// System.nanoTime() when the event was queued, 0 if not queued in this run
+	private long submittedAt = 0;
+
+	/**
+	 * Constructor, use the static factory methods instead
+	 *
+	 * @param type
+	 * @param storyKey
+	 */
+	private StoryEvent(int type, String storyKey)
+	{
+		this.type = type;
+		this.storyKey = storyKey;
+	}
+
+	/**
+	 * Creates an event for creating a new story
+	 *
+	 * @param storyKey
+	 * @param storyName
+	 * @return StoryEvent
+	 */
+	public static StoryEvent createStory(String storyKey, String storyName)
+	{
+		StoryEvent e = new StoryEvent(CREATE_STORY, storyKey);
+		e.storyName = storyName;
+		return e;
+	}
+
+	/**
+	 * Creates an event for one contribution to a story
+	 *
+	 * @param storyKey
+	 * @param sequence Order of this contribution within the story, starting from 0
+	 * @param userName
+	 * @param text
+	 * @param trashedChars number of chars removed by clearing the text field
+	 * @return StoryEvent
+	 */
+	public static StoryEvent contribution(String storyKey, int sequence, String userName, String text, int trashedChars)
+	{
+		StoryEvent e = new StoryEvent(CONTRIBUTION, storyKey);
+		e.sequence = sequence;
+		e.userName = userName;
+		e.text = text;
+		e.trashedChars = trashedChars;
+		return e;
+	}
+
+	/**
+	 * Creates an event for finishing a story
+	 *
+	 * @param storyKey
+	 * @return StoryEvent
+	 */
+	public static StoryEvent finishStory(String storyKey)
+	{
+		return new StoryEvent(FINISH_STORY, storyKey);
+	}
+
+	public int getType()
+	{
+		return type;
+	}
+
+	public String getStoryKey()
+	{
+		return storyKey;
+	}
+
+	public String getStoryName()
+	{
+		return storyName;
+	}
+
+	public int getSequence()
+	{
+		return sequence;
+	}
+
+	public String getUserName()
+	{
+		return userName;
+	}
+
+	public String getText()
+	{
+		return text;
+	}
+
+	public int getTrashedChars()
+	{
+		return trashedChars;
+	}
+
+	public long getJournalSequence()
+	{
+		return journalSequence;
+	}
+
+	void setJournalSequence(long journalSequence)
+	{
+		this.journalSequence = journalSequence;
+	}
+
+	public int getStoryId()
+	{
+		return storyId;
+	}
+
+	void setStoryId(int storyId)
+	{
+		this.storyId = storyId;
+	}
+
+	public long getSubmittedAt()
+	{
+		return submittedAt;
+	}
+
+	void setSubmittedAt(long submittedAt)
+	{
+		this.submittedAt = submittedAt;
+	}
+
+	// Overridden method
+	public String toString()
+	{
+		switch(type)
+		{
+			case CREATE_STORY:
+				return "CREATE_STORY " + storyKey + " \"" + storyName + "\"";
+			case CONTRIBUTION:
+				return "CONTRIBUTION " + storyKey + "#" + sequence + " " + userName + " (" + text.length() + " chars)";
+			case FINISH_STORY:
+				return "FINISH_STORY " + storyKey;
+			default:
+				return "UNKNOWN " + type;
+		}
+	}
+}
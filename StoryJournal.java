@@ -0,0 +1,369 @@
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Class for a local append-only journal of story events.
+ *
+ * Every event is appended to the journal before it is applied to the
+ * database, so that nothing written at the table is lost if the database
+ * is unreachable or the application is closed. Appends are not synced one
+ * by one; the writer thread calls sync() once per batch. Applied events
+ * are acknowledged, and once everything is acknowledged the journal is
+ * compacted down to the database ids of the stories still being written.
+ *
+ * The file is a RecordFile, so a torn record at the end of the file (from
+ * a crash during a write) is cut off when the journal is opened.
+ */
+public class StoryJournal
+{
+	// Record types
+	private static final byte RECORD_EVENT 		= 1;
+	private static final byte RECORD_ACK 		= 2;
+	private static final byte RECORD_STORY_ID 	= 3;
+
+	private File file;
+	private RecordFile records;
+
+	// Sequence number of the last appended event and the last acknowledged one
+	private long lastSequence = 0;
+	private long ackedSequence = 0;
+
+	// Database ids of stories that have been created but not finished
+	private HashMap<String, Integer> liveStories = new HashMap<String, Integer>();
+
+	// Events read from the journal that were never acknowledged
+	private ArrayList<StoryEvent> unacknowledged = new ArrayList<StoryEvent>();
+
+	/**
+	 * Constructor
+	 *
+	 * @param fileName
+	 */
+	public StoryJournal(String fileName)
+	{
+		this.file = new File(fileName);
+		this.records = new RecordFile(file);
+	}
+
+	/**
+	 * Opens the journal, reading any events left from a previous run
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void open() throws IOException
+	{
+		final HashMap<Long, StoryEvent> events = new HashMap<Long, StoryEvent>();
+		long discarded = records.open(new RecordFile.RecordHandler() {
+			public void record(DataInputStream payload) throws IOException
+			{
+				readRecord(payload, events);
+			}
+		});
+		if(discarded > 0)
+		{
+			log("Journal: discarding " + discarded + " bytes of incomplete records");
+		}
+
+		// Collect events after the last acknowledgement in order
+		for(long seq = ackedSequence + 1; seq <= lastSequence; seq++)
+		{
+			StoryEvent e = events.get(seq);
+			if(e != null)
+			{
+				unacknowledged.add(e);
+			}
+		}
+		lastSequence = Math.max(lastSequence, ackedSequence);
+
+		if(!unacknowledged.isEmpty())
+		{
+			log("Journal: " + unacknowledged.size() + " event(s) waiting to be written from a previous run");
+		}
+	}
+
+	/**
+	 * Returns events that were journaled but not acknowledged in a previous run,
+	 * in their original order
+	 *
+	 * @return list of events
+	 */
+	public synchronized ArrayList<StoryEvent> getUnacknowledgedEvents()
+	{
+		return new ArrayList<StoryEvent>(unacknowledged);
+	}
+
+	/**
+	 * Returns database ids of stories created but not finished,
+	 * by their local keys
+	 *
+	 * @return map
+	 */
+	public synchronized HashMap<String, Integer> getStoryIds()
+	{
+		return new HashMap<String, Integer>(liveStories);
+	}
+
+	/**
+	 * Appends an event to the journal and gives it a sequence number.
+	 * The data reaches the disk on the next sync().
+	 *
+	 * @param e
+	 * @throws IOException
+	 */
+	public synchronized void append(StoryEvent e) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + (e.getText() == null ? 0 : e.getText().length() * 2));
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(RECORD_EVENT);
+		out.writeLong(lastSequence + 1);
+		out.writeInt(e.getType());
+		RecordFile.writeString(out, e.getStoryKey());
+		RecordFile.writeString(out, e.getStoryName());
+		out.writeInt(e.getSequence());
+		RecordFile.writeString(out, e.getUserName());
+		RecordFile.writeString(out, e.getText());
+		out.writeInt(e.getTrashedChars());
+		out.flush();
+
+		records.write(bytes.toByteArray());
+		lastSequence++;
+		e.setJournalSequence(lastSequence);
+	}
+
+	/**
+	 * Appends an event that belongs to another journal, e.g. to keep an
+	 * event that could not be applied in a dead letter journal. The event
+	 * keeps its sequence number in its own journal.
+	 *
+	 * @param e
+	 * @throws IOException
+	 */
+	public synchronized void appendCopy(StoryEvent e) throws IOException
+	{
+		long journalSequence = e.getJournalSequence();
+		append(e);
+		e.setJournalSequence(journalSequence);
+	}
+
+	/**
+	 * Records that all events up to and including the given one have been applied
+	 *
+	 * @param e
+	 * @throws IOException
+	 */
+	public synchronized void acknowledge(StoryEvent e) throws IOException
+	{
+		if(e.getJournalSequence() <= ackedSequence)
+		{
+			return;
+		}
+		if(e.getType() == StoryEvent.FINISH_STORY)
+		{
+			liveStories.remove(e.getStoryKey());
+		}
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(16);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(RECORD_ACK);
+		out.writeLong(e.getJournalSequence());
+		out.flush();
+
+		records.write(bytes.toByteArray());
+		ackedSequence = e.getJournalSequence();
+	}
+
+	/**
+	 * Records the database id given to a story, so that it is not created twice
+	 * when the journal is replayed
+	 *
+	 * @param storyKey
+	 * @param storyId
+	 * @throws IOException
+	 */
+	public synchronized void storyCreated(String storyKey, int storyId) throws IOException
+	{
+		liveStories.put(storyKey, storyId);
+		writeStoryId(storyKey, storyId);
+	}
+
+	/**
+	 * Forces appended records to the disk
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void sync() throws IOException
+	{
+		records.force();
+	}
+
+	/**
+	 * Returns TRUE if every appended event has been acknowledged
+	 *
+	 * @return boolean
+	 */
+	public synchronized boolean isFullyAcknowledged()
+	{
+		return ackedSequence >= lastSequence;
+	}
+
+	/**
+	 * Returns the size of the journal file
+	 *
+	 * @return bytes
+	 */
+	public synchronized long getSize()
+	{
+		try
+		{
+			return records.size();
+		}
+		catch(IOException e)
+		{
+			return 0;
+		}
+	}
+
+	/**
+	 * Rewrites the journal with only the ids of unfinished stories, if every
+	 * event has been acknowledged. Does nothing otherwise.
+	 *
+	 * @throws IOException
+	 */
+	public synchronized void compact() throws IOException
+	{
+		if(!isFullyAcknowledged())
+		{
+			return;
+		}
+		long before = records.size();
+
+		// Write the remaining story ids to a new file first, so that a crash
+		// during compaction leaves either the old or the new journal in place
+		File tmp = new File(file.getPath() + ".tmp");
+		records.close();
+		records = new RecordFile(tmp);
+		records.create();
+		for(Map.Entry<String, Integer> story : liveStories.entrySet())
+		{
+			writeStoryId(story.getKey(), story.getValue());
+		}
+		records.close();
+		if(!tmp.renameTo(file))
+		{
+			// Windows does not replace an existing file on rename
+			file.delete();
+			if(!tmp.renameTo(file))
+			{
+				throw new IOException("Could not replace journal " + file);
+			}
+		}
+		records = new RecordFile(file);
+		records.open(null);
+		unacknowledged.clear();
+		log("Journal compacted from " + before + " to " + records.size() + " bytes");
+	}
+
+	/**
+	 * Closes the journal file
+	 */
+	public synchronized void close()
+	{
+		try
+		{
+			records.close();
+		}
+		catch(IOException e)
+		{
+			e.printStackTrace();
+		}
+	}
+
+	/**
+	 * Reads one record of the journal file
+	 *
+	 * @param record
+	 * @param events Events read so far by their journal sequence numbers
+	 * @throws IOException
+	 */
+	private void readRecord(DataInputStream record, HashMap<Long, StoryEvent> events) throws IOException
+	{
+		byte recordType = record.readByte();
+		if(recordType == RECORD_EVENT)
+		{
+			long seq = record.readLong();
+			int type = record.readInt();
+			String storyKey = RecordFile.readString(record);
+			String storyName = RecordFile.readString(record);
+			int sequence = record.readInt();
+			String userName = RecordFile.readString(record);
+			String text = RecordFile.readString(record);
+			int trashed = record.readInt();
+
+			StoryEvent e;
+			if(type == StoryEvent.CREATE_STORY)
+			{
+				e = StoryEvent.createStory(storyKey, storyName);
+			}
+			else if(type == StoryEvent.CONTRIBUTION)
+			{
+				e = StoryEvent.contribution(storyKey, sequence, userName, text, trashed);
+			}
+			else
+			{
+				e = StoryEvent.finishStory(storyKey);
+			}
+			e.setJournalSequence(seq);
+			events.put(seq, e);
+			lastSequence = Math.max(lastSequence, seq);
+		}
+		else if(recordType == RECORD_ACK)
+		{
+			long seq = record.readLong();
+			ackedSequence = Math.max(ackedSequence, seq);
+			StoryEvent e = events.get(seq);
+			if(e != null && e.getType() == StoryEvent.FINISH_STORY)
+			{
+				liveStories.remove(e.getStoryKey());
+			}
+		}
+		else if(recordType == RECORD_STORY_ID)
+		{
+			String storyKey = RecordFile.readString(record);
+			liveStories.put(storyKey, record.readInt());
+		}
+	}
+
+	/**
+	 * Writes a story id record
+	 *
+	 * @param storyKey
+	 * @param storyId
+	 * @throws IOException
+	 */
+	private void writeStoryId(String storyKey, int storyId) throws IOException
+	{
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+		DataOutputStream out = new DataOutputStream(bytes);
+		out.writeByte(RECORD_STORY_ID);
+		RecordFile.writeString(out, storyKey);
+		out.writeInt(storyId);
+		out.flush();
+		records.write(bytes.toByteArray());
+	}
+
+	/**
+	 * Simple convenience method for logging text to console output.
+	 * Should be replaced with a log file in the future
+	 *
+	 * @param log
+	 */
+	private void log(String text)
+	{
+		System.out.println(text);
+	}
+}
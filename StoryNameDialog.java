@@ -44,7 +44,7 @@ public class StoryNameDialog extends JDialog
 	JTextArea rta;
 	LoginInputListener lil;
 
-	DatabasePlugin db = null;
+	StoryStore db = null;
 
 	private void log(String text)
 	{
@@ -64,7 +64,7 @@ public class StoryNameDialog extends JDialog
 	 * @param db
 	 * @param flipped
 	 */
-	public StoryNameDialog(KeyboardSet keyboard, JTextArea rta, DatabasePlugin db, boolean flipped)
+	public StoryNameDialog(KeyboardSet keyboard, JTextArea rta, StoryStore db, boolean flipped)
 	{
 		// Tells whether this dialog is rotated upside down or not
 		this.flipped = flipped;
@@ -0,0 +1,124 @@
+import java.util.List;
+
+/**
+ * Interface for storing stories, contributions and users.
+ *
+ * The backend is chosen with the STORY_STORE setting:
+ * "mysql" (DatabasePlugin, the default), "file" (FileStoryStore, a single
+ * local file for tables without a database server) or "memory"
+ * (MemoryStoryStore, nothing is kept, for load tests and benchmarks).
+ */
+public interface StoryStore
+{
+	/**
+	 * Receives the stories read by forEachStoryText()
+	 */
+	public interface StoryTextHandler
+	{
+		public void storyText(int storyId, String text);
+	}
+
+	/**
+	 * Opens the store
+	 *
+	 * @return TRUE if the store could be opened
+	 * @throws Exception
+	 */
+	public boolean connect() throws Exception;
+
+	/**
+	 * Closes the store
+	 */
+	public void disconnect();
+
+	/**
+	 * Checks whether the store can be written at the moment
+	 *
+	 * @return TRUE if the store is reachable
+	 */
+	public boolean isReachable();
+
+	/**
+	 * Creates a new story
+	 *
+	 * @param storyName
+	 * @return Unique identifier for the story, -1 on failure
+	 */
+	public int createStory(String storyName);
+
+	/**
+	 * Saves a batch of contributions. Saving a contribution again with the
+	 * same story id and sequence must not add its text twice, see
+	 * isReplaySafe().
+	 *
+	 * @param contributions CONTRIBUTION events with their story ids set
+	 * @return TRUE if all contributions were stored
+	 */
+	public boolean saveAddedContributions(List<StoryEvent> contributions);
+
+	/**
+	 * Returns whether saveAddedContributions() ignores contributions that
+	 * are already stored, so events can be replayed from the journal.
+	 * DatabasePlugin with concat storage needs the last_sequence column
+	 * for this.
+	 *
+	 * @return TRUE if replays are ignored
+	 */
+	public boolean isReplaySafe();
+
+	/**
+	 * Finishes a story
+	 *
+	 * @param storyId
+	 * @return TRUE if the story was finished
+	 */
+	public boolean finishStory(int storyId);
+
+	/**
+	 * Returns the whole text of a story
+	 *
+	 * @param storyId
+	 * @return story text, or null on error
+	 */
+	public String getStoryText(int storyId);
+
+	/**
+	 * Passes the text of every stored story, oldest first, to a handler,
+	 * reading them in one pass. A story need not be kept once it is handled.
+	 *
+	 * @param handler
+	 * @return number of stories handled, -1 on error
+	 */
+	public int forEachStoryText(StoryTextHandler handler);
+
+	/**
+	 * Gets a user's stored password (or password hash)
+	 *
+	 * @param nickname
+	 * @return password, null if there is no such user
+	 */
+	public String getUserPassword(String nickname);
+
+	/**
+	 * Replaces a user's stored password
+	 *
+	 * @param nickname
+	 * @param password Value to store
+	 * @return TRUE if the password was replaced
+	 */
+	public boolean setUserPassword(String nickname, String password);
+
+	/**
+	 * Drops any cached data of a user, e.g. when the user logs out
+	 *
+	 * @param nickname
+	 */
+	public void invalidateUser(String nickname);
+
+	/**
+	 * Returns a one line summary of the store's metrics
+	 *
+	 * @return String
+	 */
+	public String getStatistics();
+}
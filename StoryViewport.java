@@ -0,0 +1,436 @@
+import java.awt.FontMetrics;
+import java.awt.Insets;
+import java.awt.event.ComponentAdapter;
+import java.awt.event.ComponentEvent;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import javax.swing.JTextArea;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+
+/**
+ * Class for showing a window of whole lines of a long story in a text area.
+ *
+ * The story is wrapped into lines with the font metrics and width of the
+ * text area, breaking at spaces like a word wrapping text area does, and
+ * the start of every line is kept. Only the lines that fit into the area
+ * are put into its Document, one wrapped line per document line, so the
+ * area itself must not wrap.
+ *
+ * Scrolling and appending change the Document line by line: lines leaving
+ * the window are removed, new lines are inserted and lines whose text
+ * changed are replaced, so the work depends on the number of visible lines
+ * and not on the length of the story. Appended text is wrapped from the
+ * last line on. Used on the Swing event thread only.
+ */
+public class StoryViewport
+{
+	private JTextArea area;
+
+	// The whole story
+	private StoryBuffer story;
+	// Offsets in the story where each wrapped line starts
+	private int[] lineStarts = new int[64];
+	private int lineCount = 1;
+
+	// Layout the lines were wrapped for
+	private FontMetrics metrics = null;
+	private int wrapWidth = -1;
+	private int visibleLines = 1;
+
+	// Lines in the document
+	private int shownFirst = 0;
+	private ArrayList<String> shown = new ArrayList<String>();
+	// Whether the window follows the end of the story when text is appended
+	private boolean following = true;
+	// Whether something else is shown in the text area for now
+	private boolean paused = false;
+
+	// Metrics
+	private long documentEdits = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param area Text area showing the lines, line wrapping is switched off
+	 * @param story Text shown
+	 */
+	public StoryViewport(JTextArea area, StoryBuffer story)
+	{
+		this.area = area;
+		this.story = story;
+		area.setLineWrap(false);
+		area.addComponentListener(new ComponentAdapter() {
+			public void componentResized(ComponentEvent e)
+			{
+				relayout();
+			}
+		});
+		relayout();
+	}
+
+	/**
+	 * Shows the end of the story after it has been replaced or cleared
+	 */
+	public void reset()
+	{
+		wrapFrom(0);
+		following = true;
+		sync(lastFirstLine());
+	}
+
+	/**
+	 * Shows text appended to the story. If the end of the story is shown,
+	 * the window moves along with it.
+	 */
+	public void appended()
+	{
+		wrapFrom(lineCount - 1);
+		sync(following ? lastFirstLine() : shownFirst);
+	}
+
+	/**
+	 * Leaves the text area to something else until redisplay() is called.
+	 * The story is still wrapped when the area is resized, but the document
+	 * is not touched.
+	 */
+	public void pause()
+	{
+		paused = true;
+	}
+
+	/**
+	 * Puts the lines back into the text area after something else has been
+	 * shown in it
+	 */
+	public void redisplay()
+	{
+		paused = false;
+		shown.clear();
+		wrapFrom(0);
+		sync(following ? lastFirstLine() : Math.min(lastFirstLine(), shownFirst));
+	}
+
+	/**
+	 * Moves the window by whole lines
+	 *
+	 * @param delta Lines, negative towards the beginning of the story
+	 */
+	public void scrollLines(int delta)
+	{
+		int first = Math.max(0, Math.min(lastFirstLine(), shownFirst + delta));
+		following = first == lastFirstLine();
+		sync(first);
+	}
+
+	/**
+	 * Wraps the story again for the current size and font of the text area,
+	 * keeping the first shown character in view
+	 */
+	public void relayout()
+	{
+		FontMetrics fm = area.getFontMetrics(area.getFont());
+		Insets insets = area.getInsets();
+		int width = area.getWidth() > 0 ? area.getWidth() : area.getPreferredSize().width;
+		int height = area.getHeight() > 0 ? area.getHeight() : area.getPreferredSize().height;
+		width = Math.max(1, width - insets.left - insets.right);
+		int lines = Math.max(1, (height - insets.top - insets.bottom) / Math.max(1, fm.getHeight()));
+		if(fm.equals(metrics) && width == wrapWidth && lines == visibleLines)
+		{
+			return;
+		}
+		int firstOffset = shownFirst < lineCount ? lineStarts[shownFirst] : 0;
+		metrics = fm;
+		wrapWidth = width;
+		visibleLines = lines;
+		wrapFrom(0);
+		if(paused)
+		{
+			// The document is not ours, redisplay() puts the lines back
+			shownFirst = Math.min(lastFirstLine(), lineAt(firstOffset));
+			return;
+		}
+		// Every line may have changed, so replace the document
+		shown.clear();
+		shownFirst = 0;
+		if(area.getDocument().getLength() > 0)
+		{
+			edit(0, area.getDocument().getLength(), null);
+		}
+		sync(following ? lastFirstLine() : Math.min(lastFirstLine(), lineAt(firstOffset)));
+	}
+
+	public int getFirstLine()
+	{
+		return shownFirst;
+	}
+
+	public int getLineCount()
+	{
+		return lineCount;
+	}
+
+	public int getVisibleLineCount()
+	{
+		return visibleLines;
+	}
+
+	/**
+	 * Returns how many average characters fit on a line
+	 *
+	 * @return columns
+	 */
+	public int getColumns()
+	{
+		return Math.max(1, wrapWidth / Math.max(1, metrics.charWidth('m')));
+	}
+
+	/**
+	 * Returns how many inserts and removes have been done on the document
+	 *
+	 * @return count
+	 */
+	public long getDocumentEditCount()
+	{
+		return documentEdits;
+	}
+
+	/**
+	 * Returns the first line of the window that shows the end of the story
+	 *
+	 * @return line
+	 */
+	private int lastFirstLine()
+	{
+		return Math.max(0, lineCount - visibleLines);
+	}
+
+	/**
+	 * Returns the line containing a story offset
+	 *
+	 * @param offset
+	 * @return line
+	 */
+	private int lineAt(int offset)
+	{
+		int line = Arrays.binarySearch(lineStarts, 0, lineCount, offset);
+		return line >= 0 ? line : Math.max(0, -line - 2);
+	}
+
+	/**
+	 * Returns the text of a line without its line break
+	 *
+	 * @param line
+	 * @return String
+	 */
+	private String lineText(int line)
+	{
+		int start = lineStarts[line];
+		int end = line + 1 < lineCount ? lineStarts[line + 1] : story.length();
+		if(end > start && story.charAt(end - 1) == '\n')
+		{
+			end--;
+		}
+		return story.slice(start, end);
+	}
+
+	/**
+	 * Wraps the story into lines from the start of a line to the end
+	 *
+	 * @param line First line that may change
+	 */
+	private void wrapFrom(int line)
+	{
+		line = Math.max(0, Math.min(line, lineCount - 1));
+		int pos = line == 0 ? 0 : lineStarts[line];
+		lineCount = line;
+		int length = story.length();
+		while(true)
+		{
+			addLine(pos);
+			if(pos >= length)
+			{
+				break;
+			}
+			int next = lineBreak(pos);
+			if(next >= length && story.lastChar() != '\n')
+			{
+				break;
+			}
+			pos = next;
+		}
+	}
+
+	/**
+	 * Finds where the line starting at an offset ends
+	 *
+	 * @param start
+	 * @return offset of the next line
+	 */
+	private int lineBreak(int start)
+	{
+		int length = story.length();
+		int width = 0;
+		int lastSpace = -1;
+		for(int i = start; i < length; i++)
+		{
+			char c = story.charAt(i);
+			if(c == '\n')
+			{
+				return i + 1;
+			}
+			if(c == ' ')
+			{
+				// Spaces may go past the edge, the line breaks after them
+				lastSpace = i;
+				width += metrics.charWidth(c);
+				continue;
+			}
+			width += metrics.charWidth(c);
+			if(width > wrapWidth && i > start)
+			{
+				if(lastSpace >= start)
+				{
+					return lastSpace + 1;
+				}
+				// A word longer than the line is cut
+				return i;
+			}
+		}
+		return length;
+	}
+
+	private void addLine(int start)
+	{
+		if(lineCount == lineStarts.length)
+		{
+			lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+		}
+		lineStarts[lineCount++] = start;
+	}
+
+	/**
+	 * Changes the document to show the lines from first on
+	 *
+	 * @param first
+	 */
+	private void sync(int first)
+	{
+		int count = Math.max(1, Math.min(visibleLines, lineCount - first));
+		int shownCount = shown.size();
+		if(shownCount == 0 || first >= shownFirst + shownCount || first + count <= shownFirst)
+		{
+			// Nothing in common, replace all
+			if(area.getDocument().getLength() > 0)
+			{
+				edit(0, area.getDocument().getLength(), null);
+			}
+			shown.clear();
+			StringBuilder text = new StringBuilder();
+			for(int i = first; i < first + count; i++)
+			{
+				String line = lineText(i);
+				shown.add(line);
+				if(i > first)
+				{
+					text.append('\n');
+				}
+				text.append(line);
+			}
+			edit(0, 0, text.toString());
+			shownFirst = first;
+			return;
+		}
+
+		// Lines leaving at the top
+		while(shownFirst < first)
+		{
+			int remove = shown.get(0).length() + (shown.size() > 1 ? 1 : 0);
+			edit(0, remove, null);
+			shown.remove(0);
+			shownFirst++;
+		}
+		// Lines leaving at the bottom
+		while(shownFirst + shown.size() > first + count)
+		{
+			int last = shown.size() - 1;
+			int remove = shown.get(last).length() + (last > 0 ? 1 : 0);
+			edit(area.getDocument().getLength() - remove, remove, null);
+			shown.remove(last);
+		}
+		// Lines whose text changed, e.g. the last line when text is appended
+		int offset = 0;
+		for(int j = 0; j < shown.size(); j++)
+		{
+			String line = lineText(shownFirst + j);
+			String old = shown.get(j);
+			if(!line.equals(old))
+			{
+				int common = 0;
+				while(common < old.length() && common < line.length() && old.charAt(common) == line.charAt(common))
+				{
+					common++;
+				}
+				edit(offset + common, old.length() - common, line.substring(common));
+				shown.set(j, line);
+			}
+			offset += line.length() + 1;
+		}
+		// Lines coming in at the top
+		while(shownFirst > first)
+		{
+			shownFirst--;
+			String line = lineText(shownFirst);
+			edit(0, 0, line + "\n");
+			shown.add(0, line);
+		}
+		// Lines coming in at the bottom
+		while(shownFirst + shown.size() < first + count)
+		{
+			String line = lineText(shownFirst + shown.size());
+			edit(area.getDocument().getLength(), 0, "\n" + line);
+			shown.add(line);
+		}
+	}
+
+	/**
+	 * Removes and inserts text in the document
+	 *
+	 * @param offset
+	 * @param remove Number of characters to remove
+	 * @param insert Text to insert, can be null
+	 */
+	private void edit(int offset, int remove, String insert)
+	{
+		Document doc = area.getDocument();
+		try
+		{
+			if(remove > 0)
+			{
+				doc.remove(offset, remove);
+				documentEdits++;
+			}
+			if(insert != null && insert.length() > 0)
+			{
+				doc.insertString(offset, insert, null);
+				documentEdits++;
+			}
+		}
+		catch(BadLocationException e)
+		{
+			log("Could not update story view at " + offset + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Simple convenience method for logging text to console output.
+	 * Should be replaced with a log file in the future
+	 *
+	 * @param log
+	 */
+	private void log(String text)
+	{
+		System.out.println(text);
+	}
+}
@@ -0,0 +1,267 @@
+import java.awt.BorderLayout;
+import java.awt.Dimension;
+import java.awt.Font;
+import java.awt.GridLayout;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+import javax.swing.JPanel;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
+import javax.swing.text.BadLocationException;
+import javax.swing.text.Document;
+import javax.swing.text.JTextComponent;
+
+/**
+ * Class for the row of suggested words above a virtual keyboard.
+ *
+ * The strip follows the edits of the text component. After every edit the
+ * letters just before the edit are asked from the WordPredictor, and the
+ * words it finds are shown when they arrive, so typing itself never waits
+ * for a lookup. Pressing a word replaces the typed part with the word and
+ * a space.
+ *
+ * The strip is turned with its keyboard by quarter turns. getEdge() tells
+ * on which side of the keys it goes, so it is above them for the user.
+ */
+public class SuggestionStrip extends JPanel implements DocumentListener, WordPredictor.Callback
+{
+	private static final long serialVersionUID = 1L;
+
+	private static final Font WORD_FONT = new Font("Tahoma", Font.BOLD, 13);
+
+	// Longest word part that is looked for before the caret
+	private static final int MAX_PREFIX_LENGTH = 32;
+
+	private WordPredictor predictor;
+	private KeyboardEditor editor = new KeyboardEditor(null);
+	private JTextComponent textComponent = null;
+	private Orientation orientation;
+	// Whether the words are read from the last button to the first on the screen
+	private boolean reversed;
+
+	private RotatingButton[] buttons;
+	// Words shown on the buttons, by button
+	private String[] shown;
+	// Prefix of the latest request, suggestions for older prefixes are dropped
+	private String requested = "";
+	// Prefix the shown words complete
+	private String shownPrefix = "";
+
+	/**
+	 * Constructor
+	 *
+	 * @param predictor
+	 * @param count Number of words shown
+	 * @param flipped Defines whether the strip is rotated upside down or not
+	 */
+	public SuggestionStrip(WordPredictor predictor, int count, boolean flipped)
+	{
+		this(predictor, count, flipped ? Orientation.FLIPPED : Orientation.NORMAL);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param predictor
+	 * @param count Number of words shown
+	 * @param orientation Angle of the keyboard, a quarter turn
+	 */
+	public SuggestionStrip(WordPredictor predictor, int count, Orientation orientation)
+	{
+		if(!orientation.isQuarterTurn())
+		{
+			throw new IllegalArgumentException("Suggestions can only be turned by quarter turns, not " + orientation);
+		}
+		this.predictor = predictor;
+		this.orientation = orientation;
+		// Turned a quarter turn the words run down the screen (90 degrees) or up it (-90 degrees)
+		boolean sideways = !orientation.isNormal() && !orientation.isHalfTurn();
+		reversed = orientation.isHalfTurn() || (sideways && orientation.getAngle() < 0);
+		setLayout(sideways ? new GridLayout(count, 1, 0, 2) : new GridLayout(1, count, 2, 0));
+		buttons = new RotatingButton[count];
+		shown = new String[count];
+		for(int i = 0; i < count; i++)
+		{
+			final int index = i;
+			buttons[i] = new RotatingButton(orientation);
+			buttons[i].setFont(WORD_FONT);
+			buttons[i].setEnabled(false);
+			buttons[i].addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent evt)
+				{
+					choose(index);
+				}
+			});
+			add(buttons[i]);
+		}
+		setPreferredSize(sideways ? new Dimension(36, 100) : new Dimension(100, 36));
+	}
+
+	/**
+	 * Returns the side of the keyboard the strip goes on, the top for its user
+	 *
+	 * @return BorderLayout constraint
+	 */
+	public String getEdge()
+	{
+		if(orientation.isNormal())
+		{
+			return BorderLayout.NORTH;
+		}
+		if(orientation.isHalfTurn())
+		{
+			return BorderLayout.SOUTH;
+		}
+		// The top of the content turned clockwise faces right
+		return orientation.getAngle() > 0 ? BorderLayout.EAST : BorderLayout.WEST;
+	}
+
+	/**
+	 * Sets the text component whose words are completed
+	 *
+	 * @param textComponent
+	 */
+	public void setTextComponent(JTextComponent textComponent)
+	{
+		if(this.textComponent != null)
+		{
+			this.textComponent.getDocument().removeDocumentListener(this);
+		}
+		this.textComponent = textComponent;
+		editor.setTextComponent(textComponent);
+		if(textComponent != null)
+		{
+			textComponent.getDocument().addDocumentListener(this);
+		}
+		request("");
+	}
+
+	public JTextComponent getTextComponent()
+	{
+		return textComponent;
+	}
+
+	// Overridden method
+	public void insertUpdate(DocumentEvent e)
+	{
+		request(prefixBefore(e.getDocument(), e.getOffset() + e.getLength()));
+	}
+
+	// Overridden method
+	public void removeUpdate(DocumentEvent e)
+	{
+		request(prefixBefore(e.getDocument(), e.getOffset()));
+	}
+
+	// Overridden method
+	public void changedUpdate(DocumentEvent e)
+	{
+	}
+
+	// Overridden method
+	public void suggestionsReady(String prefix, String[] words)
+	{
+		if(!prefix.equals(requested))
+		{
+			return;
+		}
+		show(prefix, words);
+	}
+
+	/**
+	 * Asks for the words of a prefix, or clears the strip if there is no word being typed
+	 *
+	 * @param prefix
+	 */
+	private void request(String prefix)
+	{
+		requested = prefix;
+		if(prefix.length() == 0)
+		{
+			show(prefix, new String[0]);
+			return;
+		}
+		predictor.suggest(prefix, this);
+	}
+
+	/**
+	 * Shows words on the buttons, the best one first in reading direction
+	 *
+	 * @param prefix
+	 * @param words
+	 */
+	private void show(String prefix, String[] words)
+	{
+		shownPrefix = prefix;
+		for(int i = 0; i < buttons.length; i++)
+		{
+			// A strip turned against the reading direction is read from the other end
+			int button = reversed ? buttons.length - 1 - i : i;
+			String word = i < words.length ? words[i] : null;
+			shown[button] = word;
+			String label = word == null ? "" : word;
+			if(!label.equals(buttons[button].getText()))
+			{
+				buttons[button].setText(label);
+			}
+			if(buttons[button].isEnabled() != (word != null))
+			{
+				buttons[button].setEnabled(word != null);
+			}
+		}
+	}
+
+	/**
+	 * Completes the typed word with the word of a button
+	 *
+	 * @param button
+	 */
+	private void choose(int button)
+	{
+		String word = shown[button];
+		if(word == null || textComponent == null)
+		{
+			return;
+		}
+		// The shown words are stale while newer typing waits for its words,
+		// or if the caret is no longer after the word they complete
+		if(!requested.equals(shownPrefix)
+				|| !prefixBefore(textComponent.getDocument(), textComponent.getCaretPosition()).equals(shownPrefix))
+		{
+			return;
+		}
+		editor.replaceBeforeCaret(shownPrefix.length(), word + " ");
+	}
+
+	/**
+	 * Returns the letters just before a position in a document
+	 *
+	 * @param doc
+	 * @param position
+	 * @return prefix, empty if the position is not after a letter or the word is too long
+	 */
+	private String prefixBefore(Document doc, int position)
+	{
+		int start = Math.max(0, position - MAX_PREFIX_LENGTH - 1);
+		try
+		{
+			String before = doc.getText(start, position - start);
+			int i = before.length();
+			while(i > 0 && Character.isLetter(before.charAt(i - 1)))
+			{
+				i--;
+			}
+			if(i == 0 && start > 0)
+			{
+				// The word is longer than anything that is suggested
+				return "";
+			}
+			return before.substring(i);
+		}
+		catch(BadLocationException e)
+		{
+			return "";
+		}
+	}
+}
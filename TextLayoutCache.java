@@ -0,0 +1,432 @@
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Class for sharing the line breaks and glyphs of paragraphs of text.
+ *
+ * A paragraph is laid out for a font and a wrap width once: the offsets
+ * where its lines start and the x position of every character are
+ * computed, and the glyph vector of a line is created the first time the
+ * line is painted. Text areas showing a paragraph that has been laid out
+ * before, e.g. after setText() with mostly the same text, a scroll back to
+ * lines shown earlier or the same text on another keyboard, get the same
+ * layout from this cache instead of measuring the text again.
+ *
+ * The key is the paragraph text, whose hash String keeps, the font, the
+ * font render context, the wrap width and the wrap style. The cache is
+ * bounded and drops the least recently used layouts. There is one cache
+ * for the whole application and it is only used on the Swing event thread.
+ */
+public class TextLayoutCache
+{
+	/**
+	 * Line breaks and glyphs of one paragraph. Must not be changed by users.
+	 */
+	public static class Layout
+	{
+		private String text;
+		private Font font;
+		private FontRenderContext frc;
+		// Offsets where lines start, lineStarts[lineCount] is the text length
+		private int[] lineStarts;
+		private int lineCount;
+		// X of each character from the start of its line, xs[length] ends the last line
+		private int[] xs;
+		private int maxWidth = 0;
+		private GlyphVector[] glyphs;
+
+		/**
+		 * Constructor, lays out the text
+		 *
+		 * @param text Paragraph without its line break
+		 * @param fm Metrics of the font
+		 * @param width Wrap width, Integer.MAX_VALUE for no wrapping
+		 * @param wordWrap TRUE to break lines at spaces, FALSE to break anywhere
+		 */
+		Layout(String text, FontMetrics fm, int width, boolean wordWrap)
+		{
+			this.text = text;
+			this.font = fm.getFont();
+			this.frc = fm.getFontRenderContext();
+			int length = text.length();
+			xs = new int[length + 1];
+			lineStarts = new int[8];
+			lineCount = 0;
+			int start = 0;
+			while(true)
+			{
+				addLine(start);
+				int next = lineBreak(start, fm, width, wordWrap);
+				if(next >= length)
+				{
+					break;
+				}
+				start = next;
+			}
+			lineStarts[lineCount] = length;
+			glyphs = new GlyphVector[lineCount];
+		}
+
+		public String getText()
+		{
+			return text;
+		}
+
+		public int getLineCount()
+		{
+			return lineCount;
+		}
+
+		public int getLineStart(int line)
+		{
+			return lineStarts[line];
+		}
+
+		public int getLineEnd(int line)
+		{
+			return lineStarts[line + 1];
+		}
+
+		/**
+		 * Returns whether this layout was made with a font and render context
+		 *
+		 * @param fm
+		 * @return TRUE if the glyphs and widths are valid for the metrics
+		 */
+		public boolean isFor(FontMetrics fm)
+		{
+			return font.equals(fm.getFont()) && frc.equals(fm.getFontRenderContext());
+		}
+
+		/**
+		 * Returns the width of the widest line
+		 *
+		 * @return pixels
+		 */
+		public int getMaxWidth()
+		{
+			return maxWidth;
+		}
+
+		/**
+		 * Returns the line containing an offset. An offset where a line is
+		 * wrapped belongs to the line after the break.
+		 *
+		 * @param offset
+		 * @return line
+		 */
+		public int lineAt(int offset)
+		{
+			int line = Arrays.binarySearch(lineStarts, 0, lineCount, offset);
+			return line >= 0 ? line : Math.max(0, -line - 2);
+		}
+
+		/**
+		 * Returns the x position of an offset on its line
+		 *
+		 * @param line
+		 * @param offset
+		 * @return pixels from the start of the line
+		 */
+		public int getX(int line, int offset)
+		{
+			offset = Math.max(lineStarts[line], Math.min(offset, lineStarts[line + 1]));
+			return offset == lineStarts[line] ? 0 : xs[offset];
+		}
+
+		/**
+		 * Returns the offset closest to an x position on a line
+		 *
+		 * @param line
+		 * @param x Pixels from the start of the line
+		 * @return offset
+		 */
+		public int getOffset(int line, int x)
+		{
+			int start = lineStarts[line];
+			int end = lineStarts[line + 1];
+			// The caret does not go after the break of a wrapped line
+			int last = line + 1 < lineCount ? Math.max(start, end - 1) : end;
+			for(int i = start; i < last; i++)
+			{
+				int charEnd = xs[i + 1];
+				if(x < (getX(line, i) + charEnd) / 2)
+				{
+					return i;
+				}
+			}
+			return last;
+		}
+
+		/**
+		 * Returns the glyphs of a line, creating them the first time
+		 *
+		 * @param line
+		 * @return GlyphVector
+		 */
+		public GlyphVector getGlyphs(int line)
+		{
+			GlyphVector gv = glyphs[line];
+			if(gv == null)
+			{
+				gv = font.createGlyphVector(frc, text.substring(lineStarts[line], lineStarts[line + 1]));
+				glyphs[line] = gv;
+				instance.glyphVectors++;
+			}
+			return gv;
+		}
+
+		private void addLine(int start)
+		{
+			if(lineCount + 1 >= lineStarts.length)
+			{
+				lineStarts = Arrays.copyOf(lineStarts, lineStarts.length * 2);
+			}
+			lineStarts[lineCount++] = start;
+		}
+
+		/**
+		 * Finds where the line starting at an offset ends, measuring the
+		 * characters on the way
+		 *
+		 * @param start
+		 * @param fm
+		 * @param width
+		 * @param wordWrap
+		 * @return offset of the next line
+		 */
+		private int lineBreak(int start, FontMetrics fm, int width, boolean wordWrap)
+		{
+			int length = text.length();
+			int x = 0;
+			int lastSpace = -1;
+			for(int i = start; i < length; i++)
+			{
+				char c = text.charAt(i);
+				int w = fm.charWidth(c);
+				if(c == ' ' && wordWrap)
+				{
+					// Spaces may go past the edge, the line breaks after them
+					lastSpace = i;
+				}
+				else if(x + w > width && i > start)
+				{
+					int next = wordWrap && lastSpace >= start ? lastSpace + 1 : i;
+					maxWidth = Math.max(maxWidth, xs[next]);
+					return next;
+				}
+				x += w;
+				xs[i + 1] = x;
+			}
+			maxWidth = Math.max(maxWidth, x);
+			return length;
+		}
+	}
+
+	/**
+	 * Everything a layout depends on. The cache keeps one key that is
+	 * refilled for lookups.
+	 */
+	private static class Key
+	{
+		private String text;
+		private Font font;
+		private FontRenderContext frc;
+		private int width;
+		private boolean wordWrap;
+		private int hash;
+
+		void set(String text, Font font, FontRenderContext frc, int width, boolean wordWrap)
+		{
+			this.text = text;
+			this.font = font;
+			this.frc = frc;
+			this.width = width;
+			this.wordWrap = wordWrap;
+			int h = text.hashCode();
+			h = 31 * h + font.hashCode();
+			h = 31 * h + frc.hashCode();
+			h = 31 * h + width;
+			hash = 31 * h + (wordWrap ? 1 : 0);
+		}
+
+		Key copy()
+		{
+			Key k = new Key();
+			k.text = text;
+			k.font = font;
+			k.frc = frc;
+			k.width = width;
+			k.wordWrap = wordWrap;
+			k.hash = hash;
+			return k;
+		}
+
+		// Overridden method
+		public int hashCode()
+		{
+			return hash;
+		}
+
+		// Overridden method
+		public boolean equals(Object o)
+		{
+			if(!(o instanceof Key))
+			{
+				return false;
+			}
+			Key k = (Key)o;
+			return hash == k.hash && width == k.width && wordWrap == k.wordWrap && text.equals(k.text)
+					&& font.equals(k.font) && frc.equals(k.frc);
+		}
+	}
+
+	private static final TextLayoutCache instance = new TextLayoutCache(512);
+
+	private int maxEntries;
+	private LinkedHashMap<Key, Layout> layouts;
+	private Key probe = new Key();
+
+	// Metrics
+	private long hits = 0;
+	private long misses = 0;
+	private long evictions = 0;
+	private long glyphVectors = 0;
+
+	/**
+	 * Returns the cache of the application
+	 *
+	 * @return TextLayoutCache
+	 */
+	public static TextLayoutCache getInstance()
+	{
+		return instance;
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxEntries
+	 */
+	private TextLayoutCache(int maxEntries)
+	{
+		this.maxEntries = maxEntries;
+		layouts = new LinkedHashMap<Key, Layout>(64, 0.75f, true) {
+			private static final long serialVersionUID = 1L;
+
+			protected boolean removeEldestEntry(Map.Entry<Key, Layout> eldest)
+			{
+				if(size() > TextLayoutCache.this.maxEntries)
+				{
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	/**
+	 * Sets the largest number of paragraphs kept
+	 *
+	 * @param maxEntries
+	 */
+	public void setMaxEntries(int maxEntries)
+	{
+		this.maxEntries = Math.max(1, maxEntries);
+		while(layouts.size() > this.maxEntries)
+		{
+			layouts.remove(layouts.keySet().iterator().next());
+			evictions++;
+		}
+	}
+
+	/**
+	 * Returns the layout of a paragraph, laying it out on a miss
+	 *
+	 * @param text Paragraph without its line break
+	 * @param fm Metrics of the font
+	 * @param width Wrap width, Integer.MAX_VALUE for no wrapping
+	 * @param wordWrap TRUE to break lines at spaces, FALSE to break anywhere
+	 * @return Layout
+	 */
+	public Layout getLayout(String text, FontMetrics fm, int width, boolean wordWrap)
+	{
+		probe.set(text, fm.getFont(), fm.getFontRenderContext(), width, wordWrap);
+		Layout layout = layouts.get(probe);
+		if(layout != null)
+		{
+			hits++;
+			return layout;
+		}
+		misses++;
+		layout = new Layout(text, fm, width, wordWrap);
+		layouts.put(probe.copy(), layout);
+		return layout;
+	}
+
+	/**
+	 * Drops all layouts
+	 */
+	public void clear()
+	{
+		layouts.clear();
+	}
+
+	public long getHits()
+	{
+		return hits;
+	}
+
+	public long getMisses()
+	{
+		return misses;
+	}
+
+	public long getEvictions()
+	{
+		return evictions;
+	}
+
+	/**
+	 * Returns how many glyph vectors have been created for painted lines
+	 *
+	 * @return count
+	 */
+	public long getGlyphVectorCount()
+	{
+		return glyphVectors;
+	}
+
+	/**
+	 * Returns the share of lookups that found a layout
+	 *
+	 * @return 0 to 1
+	 */
+	public double getHitRate()
+	{
+		long lookups = hits + misses;
+		return lookups == 0 ? 0 : (double)hits / lookups;
+	}
+
+	public int size()
+	{
+		return layouts.size();
+	}
+
+	/**
+	 * Returns the cache metrics as text
+	 *
+	 * @return String
+	 */
+	public String getStatistics()
+	{
+		return "paragraphs=" + layouts.size() + "/" + maxEntries + " hits=" + hits + " misses=" + misses + " evictions=" + evictions
+				+ " glyphVectors=" + glyphVectors + String.format(" hitRate=%.1f%%", 100 * getHitRate());
+	}
+}
@@ -0,0 +1,146 @@
+import java.util.HashMap;
+
+/**
+ * Class for keeping users looked up from the database in memory.
+ *
+ * Only a few nicknames are active at the table at a time, so contributions
+ * and logins can be resolved without querying the users table every time.
+ * Entries expire after a time to live, so changes made to the users table
+ * by other means are seen eventually, and are dropped when the user logs out.
+ * Nicknames not found in the database are remembered as well (guests), but
+ * only for a short time of their own, so that a user who registers right
+ * after a failed login can log in within seconds.
+ */
+public class UserDirectory
+{
+	/**
+	 * One cached user
+	 */
+	public static class User
+	{
+		private String nickname;
+		private int userId;
+		private String password;
+		private long loadedAt;
+
+		User(String nickname, int userId, String password)
+		{
+			this.nickname = nickname;
+			this.userId = userId;
+			this.password = password;
+			this.loadedAt = System.currentTimeMillis();
+		}
+
+		public String getNickname()
+		{
+			return nickname;
+		}
+
+		/**
+		 * @return user id, -1 if there is no such user in the database
+		 */
+		public int getUserId()
+		{
+			return userId;
+		}
+
+		public String getPassword()
+		{
+			return password;
+		}
+
+		public boolean exists()
+		{
+			return userId != -1;
+		}
+	}
+
+	// Cached users by nickname
+	private HashMap<String, User> users = new HashMap<String, User>();
+	private long ttlMillis;
+	private long missTtlMillis;
+
+	// Metrics
+	private long hitCount = 0;
+	private long missCount = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param ttlSeconds How long a user is kept before it is read again
+	 * @param missTtlSeconds How long a nickname that was not found is kept, 0 to not keep it
+	 */
+	public UserDirectory(int ttlSeconds, int missTtlSeconds)
+	{
+		this.ttlMillis = Math.max(0, ttlSeconds) * 1000L;
+		this.missTtlMillis = Math.max(0, missTtlSeconds) * 1000L;
+	}
+
+	/**
+	 * Returns a cached user, or null if the user has to be read from the database
+	 *
+	 * @param nickname
+	 * @return User or null
+	 */
+	public synchronized User get(String nickname)
+	{
+		User user = users.get(nickname);
+		if(user != null && System.currentTimeMillis() - user.loadedAt >= (user.exists() ? ttlMillis : missTtlMillis))
+		{
+			users.remove(nickname);
+			user = null;
+		}
+		if(user == null)
+		{
+			missCount++;
+		}
+		else
+		{
+			hitCount++;
+		}
+		return user;
+	}
+
+	/**
+	 * Stores a user read from the database
+	 *
+	 * @param nickname
+	 * @param userId -1 if there is no such user
+	 * @param password may be null
+	 * @return the stored user
+	 */
+	public synchronized User put(String nickname, int userId, String password)
+	{
+		User user = new User(nickname, userId, password);
+		users.put(nickname, user);
+		return user;
+	}
+
+	/**
+	 * Drops a user, e.g. when the user logs out
+	 *
+	 * @param nickname
+	 */
+	public synchronized void invalidate(String nickname)
+	{
+		users.remove(nickname);
+	}
+
+	/**
+	 * Drops all users
+	 */
+	public synchronized void clear()
+	{
+		users.clear();
+	}
+
+	/**
+	 * Returns a one line summary of the cache metrics
+	 *
+	 * @return String
+	 */
+	public synchronized String getStatistics()
+	{
+		return "users=" + users.size() + " hits=" + hitCount + " misses=" + missCount;
+	}
+}
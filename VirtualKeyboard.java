@@ -0,0 +1,60 @@
+import java.awt.Window;
+import java.util.Locale;
+
+import javax.swing.JDialog;
+import javax.swing.text.JTextComponent;
+
+/**
+ * Interface for the keyboard components shown by DialogVirtualKeyboardReal.
+ *
+ * PanelVirtualKeyboardReal is made of one Swing button per key and
+ * PaintedKeyboard paints all keys in one component. Both type into the
+ * text component with the same edits.
+ */
+public interface VirtualKeyboard
+{
+	public JTextComponent getTextComponent();
+
+	public void setTextComponent(JTextComponent textComponent);
+
+	public void setTextDialog(JDialog textDialog);
+
+	public void setWindow(Window window);
+
+	public boolean isPoitToUp();
+
+	public void setPoitToUp(boolean poitToUp);
+
+	public boolean isShiftBs();
+
+	public void setShiftBs(boolean shiftBs);
+
+	public Locale getLocaleL();
+
+	public void setLocaleL(Locale localeL);
+
+	public int getGap();
+
+	public void setGap(int gap);
+
+	public int getTab();
+
+	public void setTab(int tab);
+
+	/**
+	 * Sets the monitor that measures the keystrokes of this keyboard
+	 *
+	 * @param latencyMonitor Can be null
+	 */
+	public void setLatencyMonitor(InputLatencyMonitor latencyMonitor);
+
+	/**
+	 * Shows the labels of the current layer
+	 */
+	public void updateGUI();
+
+	/**
+	 * Releases shift and caps lock and returns to the normal layer
+	 */
+	public void shiftsDown();
+}
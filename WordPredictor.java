@@ -0,0 +1,353 @@
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStreamReader;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.regex.Pattern;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Class for suggesting completions for the word being typed.
+ *
+ * Words and their frequencies are kept in a WordTrie that is built from a
+ * seed dictionary and the text of the stored stories, and grows with every
+ * saved contribution. The trie is only touched by one worker thread, so
+ * loading, learning and lookups need no locking and the Swing event thread
+ * never waits for them; suggestions are given to a callback on the event
+ * thread.
+ *
+ * Requests from the same callback are coalesced: if a lookup for a client
+ * is still waiting, a new prefix replaces the old one, so a burst of typing
+ * or a long load at startup never builds up a queue of stale lookups.
+ */
+public class WordPredictor
+{
+	/**
+	 * Callback for suggestions, called on the Swing event thread
+	 */
+	public interface Callback
+	{
+		public void suggestionsReady(String prefix, String[] words);
+	}
+
+	// Words shorter or longer than these are not learned
+	private static final int MIN_WORD_LENGTH = 2;
+	private static final int MAX_WORD_LENGTH = 32;
+
+	// Stored texts have their line breaks as <br>, which must not be learned
+	private static final Pattern MARKUP = Pattern.compile("<[^<>]*>");
+
+	// Used by the worker thread only
+	private WordTrie trie = new WordTrie(64 * 1024);
+	private String[] found = new String[0];
+
+	// Latest prefix waiting for a lookup, by client
+	private ConcurrentHashMap<Callback, String> pending = new ConcurrentHashMap<Callback, String>();
+
+	private int maxSuggestions;
+	private ExecutorService executor;
+
+	// Metrics, written by the worker thread
+	private volatile long lookupCount = 0;
+	private volatile long lookupNanos = 0;
+
+	/**
+	 * Constructor
+	 *
+	 * @param maxSuggestions Maximum number of words suggested at a time
+	 */
+	public WordPredictor(int maxSuggestions)
+	{
+		this.maxSuggestions = Math.max(1, maxSuggestions);
+		executor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable r)
+			{
+				Thread t = new Thread(r, "WordPredictor");
+				t.setDaemon(true);
+				return t;
+			}
+		});
+	}
+
+	/**
+	 * Starts building the word list in the background from a seed
+	 * dictionary and the stored stories. Suggestions asked for before the
+	 * load is done are looked up after it.
+	 *
+	 * The dictionary has one word per line, optionally followed by its
+	 * frequency, e.g. "tarina 120". Lines starting with # are skipped.
+	 *
+	 * @param db Stories are read from here, can be null
+	 * @param seedFile Dictionary file, can be null
+	 */
+	public void load(final StoryStore db, final String seedFile)
+	{
+		executor.execute(new Runnable() {
+			public void run()
+			{
+				long start = System.currentTimeMillis();
+				int seeds = 0;
+				if(seedFile != null)
+				{
+					seeds = readDictionary(new File(seedFile));
+				}
+				int stories = 0;
+				if(db != null)
+				{
+					// Each story is dropped once its words are learned
+					stories = Math.max(0, db.forEachStoryText(new StoryStore.StoryTextHandler() {
+						public void storyText(int storyId, String text)
+						{
+							addWords(text);
+						}
+					}));
+				}
+				log("Word predictor loaded " + seeds + " seed words and " + stories + " stories in "
+						+ (System.currentTimeMillis() - start) + " ms: " + getStatistics());
+			}
+		});
+	}
+
+	/**
+	 * Adds the words of a text, e.g. a saved contribution. Can be called
+	 * from any thread.
+	 *
+	 * @param text
+	 */
+	public void learn(final String text)
+	{
+		if(text == null || text.length() == 0 || executor.isShutdown())
+		{
+			return;
+		}
+		executor.execute(new Runnable() {
+			public void run()
+			{
+				addWords(text);
+			}
+		});
+	}
+
+	/**
+	 * Asks for completions of a prefix. Returns immediately, the words are
+	 * given to the callback later, most frequent first. Words that only
+	 * match the prefix itself are not suggested, and an uppercase prefix
+	 * gives capitalized words.
+	 *
+	 * @param prefix Typed part of the word
+	 * @param callback
+	 */
+	public void suggest(String prefix, final Callback callback)
+	{
+		if(pending.put(callback, prefix) != null)
+		{
+			// A lookup for this client is already waiting and will use the new prefix
+			return;
+		}
+		executor.execute(new Runnable() {
+			public void run()
+			{
+				final String prefix = pending.remove(callback);
+				if(prefix == null)
+				{
+					return;
+				}
+				final String[] words = complete(prefix);
+				SwingUtilities.invokeLater(new Runnable() {
+					public void run()
+					{
+						callback.suggestionsReady(prefix, words);
+					}
+				});
+			}
+		});
+	}
+
+	/**
+	 * Returns the maximum number of words suggested at a time
+	 *
+	 * @return count
+	 */
+	public int getMaxSuggestions()
+	{
+		return maxSuggestions;
+	}
+
+	/**
+	 * Stops the worker thread
+	 */
+	public void shutdown()
+	{
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Returns the word list metrics as text
+	 *
+	 * @return String
+	 */
+	public String getStatistics()
+	{
+		long lookups = lookupCount;
+		return "words=" + trie.getWordCount() + " nodes=" + trie.getNodeCount() + " bytes=" + trie.getMemoryBytes()
+				+ " lookups=" + lookups + String.format(" avgLookup=%.1fus", lookups == 0 ? 0 : lookupNanos / 1000.0 / lookups);
+	}
+
+	/**
+	 * Looks up completions on the worker thread
+	 *
+	 * @param prefix
+	 * @return words, may be empty
+	 */
+	private String[] complete(String prefix)
+	{
+		if(prefix.length() == 0 || prefix.length() > MAX_WORD_LENGTH)
+		{
+			return new String[0];
+		}
+		long start = System.nanoTime();
+		// One extra in case the prefix itself is among the best words
+		if(found.length < maxSuggestions + 1)
+		{
+			found = new String[maxSuggestions + 1];
+		}
+		int n = trie.complete(prefix, maxSuggestions + 1, found);
+		boolean capital = Character.isUpperCase(prefix.charAt(0));
+		String[] words = new String[Math.min(n, maxSuggestions)];
+		int count = 0;
+		for(int i = 0; i < n && count < words.length; i++)
+		{
+			if(found[i].length() <= prefix.length())
+			{
+				continue;
+			}
+			words[count++] = capital ? Character.toUpperCase(found[i].charAt(0)) + found[i].substring(1) : found[i];
+		}
+		lookupNanos += System.nanoTime() - start;
+		lookupCount++;
+		if(count < words.length)
+		{
+			String[] shorter = new String[count];
+			System.arraycopy(words, 0, shorter, 0, count);
+			return shorter;
+		}
+		return words;
+	}
+
+	/**
+	 * Adds every word of a text to the trie, on the worker thread. Markup
+	 * such as <br> is skipped.
+	 *
+	 * @param text
+	 */
+	private void addWords(String text)
+	{
+		if(text.indexOf('<') >= 0)
+		{
+			text = MARKUP.matcher(text).replaceAll(" ");
+		}
+		int length = text.length();
+		int i = 0;
+		while(i < length)
+		{
+			while(i < length && !Character.isLetter(text.charAt(i)))
+			{
+				i++;
+			}
+			int start = i;
+			while(i < length && Character.isLetter(text.charAt(i)))
+			{
+				i++;
+			}
+			int wordLength = i - start;
+			if(wordLength >= MIN_WORD_LENGTH && wordLength <= MAX_WORD_LENGTH)
+			{
+				trie.add(text.subSequence(start, i), 1);
+			}
+		}
+	}
+
+	/**
+	 * Reads a seed dictionary on the worker thread
+	 *
+	 * @param file
+	 * @return number of words read
+	 */
+	private int readDictionary(File file)
+	{
+		if(!file.exists())
+		{
+			log("No word dictionary " + file.getPath() + ", suggesting words from stories only");
+			return 0;
+		}
+		int words = 0;
+		BufferedReader in = null;
+		try
+		{
+			in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+			String line;
+			while((line = in.readLine()) != null)
+			{
+				line = line.trim();
+				if(line.length() == 0 || line.startsWith("#"))
+				{
+					continue;
+				}
+				String word = line;
+				int frequency = 1;
+				int space = line.indexOf(' ');
+				if(space > 0)
+				{
+					word = line.substring(0, space);
+					try
+					{
+						frequency = Integer.parseInt(line.substring(space + 1).trim());
+					}
+					catch(NumberFormatException e)
+					{
+						frequency = 1;
+					}
+				}
+				if(word.length() <= MAX_WORD_LENGTH)
+				{
+					trie.add(word, frequency);
+					words++;
+				}
+			}
+		}
+		catch(Exception e)
+		{
+			e.printStackTrace();
+		}
+		finally
+		{
+			if(in != null)
+			{
+				try
+				{
+					in.close();
+				}
+				catch(Exception e)
+				{
+					// Nothing to do
+				}
+			}
+		}
+		return words;
+	}
+
+	/**
+	 * Simple convenience method for logging text to console output.
+	 * Should be replaced with a log file in the future
+	 *
+	 * @param log
+	 */
+	private void log(String text)
+	{
+		System.out.println(text);
+	}
+}
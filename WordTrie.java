@@ -0,0 +1,317 @@
+import java.util.Arrays;
+
+/**
+ * Class for counting words and finding the most frequent words that start
+ * with a prefix.
+ *
+ * The trie is kept in parallel primitive arrays indexed by node number
+ * instead of node objects, so a dictionary of a hundred thousand words takes
+ * a few megabytes and can be walked without allocating. The children of a
+ * node are a linked list through nextSibling. Every node also stores the
+ * highest count below it, which lets a lookup visit the best words first and
+ * stop after the requested number of words instead of walking the whole
+ * subtree.
+ *
+ * Words are stored in lower case. The trie is not thread safe; WordPredictor
+ * uses it from its own thread only.
+ */
+public class WordTrie
+{
+	// Node arrays, node 0 is the root
+	private char[] label;
+	private int[] parent;
+	private int[] firstChild;
+	private int[] nextSibling;
+	// How many times the word ending at the node has been added, 0 if none
+	private int[] count;
+	// Highest count in the subtree of the node
+	private int[] best;
+	private int nodeCount;
+
+	private int wordCount = 0;
+
+	// Reused buffers
+	private int[] path = new int[32];
+	private long[] heap = new long[64];
+	private char[] word = new char[32];
+
+	/**
+	 * Constructor
+	 */
+	public WordTrie()
+	{
+		this(1024);
+	}
+
+	/**
+	 * Constructor
+	 *
+	 * @param capacity Initial number of nodes
+	 */
+	public WordTrie(int capacity)
+	{
+		capacity = Math.max(16, capacity);
+		label = new char[capacity];
+		parent = new int[capacity];
+		firstChild = new int[capacity];
+		nextSibling = new int[capacity];
+		count = new int[capacity];
+		best = new int[capacity];
+		clear();
+	}
+
+	/**
+	 * Removes all words
+	 */
+	public void clear()
+	{
+		nodeCount = 1;
+		wordCount = 0;
+		parent[0] = -1;
+		firstChild[0] = -1;
+		nextSibling[0] = -1;
+		count[0] = 0;
+		best[0] = 0;
+	}
+
+	/**
+	 * Adds occurrences of a word
+	 *
+	 * @param w Word, stored in lower case
+	 * @param n Number of occurrences
+	 */
+	public void add(CharSequence w, int n)
+	{
+		int length = w.length();
+		if(length == 0 || n <= 0)
+		{
+			return;
+		}
+		if(path.length < length + 1)
+		{
+			path = Arrays.copyOf(path, Math.max(length + 1, path.length * 2));
+		}
+		int node = 0;
+		path[0] = 0;
+		for(int i = 0; i < length; i++)
+		{
+			char c = Character.toLowerCase(w.charAt(i));
+			int child = findChild(node, c);
+			if(child < 0)
+			{
+				child = newNode(node, c);
+			}
+			node = child;
+			path[i + 1] = node;
+		}
+		if(count[node] == 0)
+		{
+			wordCount++;
+		}
+		// Saturate instead of overflowing for very common words
+		int total = count[node] + n < 0 ? Integer.MAX_VALUE : count[node] + n;
+		count[node] = total;
+		for(int i = length; i >= 0 && best[path[i]] < total; i--)
+		{
+			best[path[i]] = total;
+		}
+	}
+
+	/**
+	 * Returns how many times a word has been added
+	 *
+	 * @param w
+	 * @return count, 0 if the word is unknown
+	 */
+	public int getCount(CharSequence w)
+	{
+		int node = findNode(w);
+		return node < 0 ? 0 : count[node];
+	}
+
+	/**
+	 * Finds the most frequent words starting with a prefix, most frequent
+	 * first. The prefix itself is included if it is a word.
+	 *
+	 * @param prefix
+	 * @param max Maximum number of words
+	 * @param result Filled with the words, at least max long
+	 * @return number of words found
+	 */
+	public int complete(CharSequence prefix, int max, String[] result)
+	{
+		int start = findNode(prefix);
+		if(start < 0 || max <= 0)
+		{
+			return 0;
+		}
+		// Max-heap of (score << 32 | node << 1 | isWord). A node is pushed
+		// with the best count below it and its word with its own count, so
+		// a word is popped only when nothing left can beat it.
+		int size = 0;
+		size = push(size, best[start], start, 0);
+		int found = 0;
+		while(size > 0 && found < max)
+		{
+			long top = heap[0];
+			size = pop(size);
+			int node = (int)(top & 0xffffffffL) >>> 1;
+			if((top & 1) != 0)
+			{
+				result[found++] = wordOf(node);
+				continue;
+			}
+			if(count[node] > 0)
+			{
+				size = push(size, count[node], node, 1);
+			}
+			for(int child = firstChild[node]; child >= 0; child = nextSibling[child])
+			{
+				size = push(size, best[child], child, 0);
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Returns the number of different words
+	 *
+	 * @return count
+	 */
+	public int getWordCount()
+	{
+		return wordCount;
+	}
+
+	/**
+	 * Returns the number of nodes in use
+	 *
+	 * @return count
+	 */
+	public int getNodeCount()
+	{
+		return nodeCount;
+	}
+
+	/**
+	 * Returns the approximate size of the node arrays in bytes
+	 *
+	 * @return bytes
+	 */
+	public long getMemoryBytes()
+	{
+		return (long)label.length * (2 + 5 * 4);
+	}
+
+	private int findNode(CharSequence w)
+	{
+		int node = 0;
+		for(int i = 0; i < w.length() && node >= 0; i++)
+		{
+			node = findChild(node, Character.toLowerCase(w.charAt(i)));
+		}
+		return node;
+	}
+
+	private int findChild(int node, char c)
+	{
+		for(int child = firstChild[node]; child >= 0; child = nextSibling[child])
+		{
+			if(label[child] == c)
+			{
+				return child;
+			}
+		}
+		return -1;
+	}
+
+	private int newNode(int node, char c)
+	{
+		if(nodeCount == label.length)
+		{
+			int capacity = label.length * 2;
+			label = Arrays.copyOf(label, capacity);
+			parent = Arrays.copyOf(parent, capacity);
+			firstChild = Arrays.copyOf(firstChild, capacity);
+			nextSibling = Arrays.copyOf(nextSibling, capacity);
+			count = Arrays.copyOf(count, capacity);
+			best = Arrays.copyOf(best, capacity);
+		}
+		int child = nodeCount++;
+		label[child] = c;
+		parent[child] = node;
+		firstChild[child] = -1;
+		nextSibling[child] = firstChild[node];
+		firstChild[node] = child;
+		count[child] = 0;
+		best[child] = 0;
+		return child;
+	}
+
+	private String wordOf(int node)
+	{
+		int length = 0;
+		for(int n = node; n > 0; n = parent[n])
+		{
+			length++;
+		}
+		if(word.length < length)
+		{
+			word = new char[Math.max(length, word.length * 2)];
+		}
+		for(int n = node, i = length - 1; n > 0; n = parent[n], i--)
+		{
+			word[i] = label[n];
+		}
+		return new String(word, 0, length);
+	}
+
+	private int push(int size, int score, int node, int isWord)
+	{
+		if(size == heap.length)
+		{
+			heap = Arrays.copyOf(heap, size * 2);
+		}
+		long entry = ((long)score << 32) | ((long)node << 1) | isWord;
+		int i = size;
+		while(i > 0)
+		{
+			int up = (i - 1) / 2;
+			if(heap[up] >= entry)
+			{
+				break;
+			}
+			heap[i] = heap[up];
+			i = up;
+		}
+		heap[i] = entry;
+		return size + 1;
+	}
+
+	private int pop(int size)
+	{
+		size--;
+		long entry = heap[size];
+		int i = 0;
+		while(true)
+		{
+			int down = 2 * i + 1;
+			if(down >= size)
+			{
+				break;
+			}
+			if(down + 1 < size && heap[down + 1] > heap[down])
+			{
+				down++;
+			}
+			if(heap[down] <= entry)
+			{
+				break;
+			}
+			heap[i] = heap[down];
+			i = down;
+		}
+		heap[i] = entry;
+		return size;
+	}
+}
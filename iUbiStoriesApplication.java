@@ -5,6 +5,7 @@ import java.io.InputStream;
 import java.sql.Connection;
 import java.util.Hashtable;
 import java.util.Properties;
+import java.util.UUID;
 import java.util.Vector;
 
 import javax.swing.JOptionPane;
@@ -19,17 +20,31 @@ import javax.swing.JOptionPane;
 public class iUbiStoriesApplication
 {
 	// Plugin for handling database operations
-	private DatabasePlugin db;
+	private StoryStore db;
 	// Settings read from settings.properties file
 	private Hashtable<String, String> settings;
-	// Id for the story currently being written, given by the database
-	private int currentStoryId = -1;
+	// Background writer that stores story events to the database
+	private ContributionWriter writer;
+	// Checks login passwords off the event thread
+	private LoginVerifier loginVerifier;
+	// Suggests completions for the words being typed, null if switched off
+	private WordPredictor wordPredictor = null;
+	// Local key for the story currently being written, the database id is assigned by the writer
+	private String currentStoryKey = null;
+	// Number of contributions queued for the current story
+	private int currentStorySequence = 0;
 	// Name for the story currently being written
 	private String currentStoryName = null;
 	// Rotatable text screen that shows the whole story
 	private MainTextScreen mainTextScreen = null;
+	// Text of the story being written, shown by the main text screen
+	private StoryBuffer story = new StoryBuffer();
+	// Finished stories for browsing on the main text screen, null if it could not be opened
+	private StoryArchive archive = null;
 	// Queue for keyboards/users
 	private Vector<KeyboardSet> queue = new Vector();
+	// All keyboards
+	private Vector<KeyboardSet> keyboards = new Vector<KeyboardSet>();
 
 	/**
 	 * Constructor
@@ -43,6 +58,32 @@ public class iUbiStoriesApplication
 		// Create database connetion
 		connectToDb();
 
+		// Keys and labels of the keyboards
+		if(settings.containsKey("KEYBOARD_LAYOUT"))
+		{
+			KeyboardLayoutModel.setDefaultLayout(settings.get("KEYBOARD_LAYOUT").trim());
+		}
+		// All keyboards share the images of their keys
+		GlyphSpriteCache.getInstance().setMaxEntries(getIntSetting("SPRITE_CACHE_SIZE", 1024));
+		// Flipped components are mirrored from offscreen surfaces unless switched off
+		FlippedSurface.setEnabled(!(settings.containsKey("ACCELERATED_FLIP") && settings.get("ACCELERATED_FLIP").trim().equalsIgnoreCase("false")));
+		// All text areas share the line breaks and glyphs of their paragraphs
+		TextLayoutCache.getInstance().setMaxEntries(getIntSetting("TEXT_LAYOUT_CACHE_SIZE", 512));
+
+		// Key press latencies of every keyboard, optionally shown on the text areas
+		InputLatencyMonitor.configure(getIntSetting("SLOW_KEYSTROKE_MILLIS", 50),
+				settings.containsKey("LATENCY_OVERLAY") && settings.get("LATENCY_OVERLAY").trim().equalsIgnoreCase("true"));
+		final String latencyFile = settings.containsKey("LATENCY_LOG_FILE") ? settings.get("LATENCY_LOG_FILE").trim() : "latency.log";
+		InputLatencyMonitor.startDump(latencyFile, getIntSetting("LATENCY_LOG_INTERVAL_SECONDS", 60));
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run()
+			{
+				InputLatencyMonitor.stopDump();
+				InputLatencyMonitor.dump(latencyFile);
+				log("Text layout cache: " + TextLayoutCache.getInstance().getStatistics());
+			}
+		});
+
 		// Create all keyboards and their components
 		KeyboardSet kb1 = new KeyboardSet(this, db, settings, "Guest1", KeyboardSet.BOTTOM_LEFT);
 		KeyboardSet kb2 = new KeyboardSet(this, db, settings, "Guest2", KeyboardSet.TOP_LEFT);
@@ -54,9 +95,54 @@ public class iUbiStoriesApplication
 		kb3.setState(KeyboardSet.NO_USER);
 		kb4.setState(KeyboardSet.NO_USER);
 
+		keyboards.add(kb1);
+		keyboards.add(kb2);
+		keyboards.add(kb3);
+		keyboards.add(kb4);
+
 		// Create the main text screen
-		mainTextScreen = new MainTextScreen(settings);
+		mainTextScreen = new MainTextScreen(settings, story);
 		mainTextScreen.initialize();
+
+		// Finished stories are kept in a local archive, wrapped for the main text screen
+		openArchive();
+	}
+
+	/**
+	 * Opens the local archive of finished stories selected with the ARCHIVE_FILE setting
+	 */
+	private void openArchive()
+	{
+		String file = settings.containsKey("ARCHIVE_FILE") ? settings.get("ARCHIVE_FILE").trim() : "stories.archive";
+		archive = new StoryArchive(file, getIntSetting("ARCHIVE_LINE_CHARS", mainTextScreen.getColumns()));
+		try
+		{
+			archive.open();
+		}
+		catch(IOException e)
+		{
+			log("Could not open story archive " + file + ": " + e.getMessage());
+			archive.close();
+			archive = null;
+			return;
+		}
+		mainTextScreen.setStoryArchive(archive);
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run()
+			{
+				archive.close();
+			}
+		});
+	}
+
+	/**
+	 * Returns the archive of finished stories
+	 * 
+	 * @return StoryArchive, null if the archive could not be opened
+	 */
+	public StoryArchive getStoryArchive()
+	{
+		return archive;
 	}
 
 	/**
@@ -70,11 +156,23 @@ public class iUbiStoriesApplication
 	}
 
 	/**
-	 * Creates and initializes database plugin
+	 * Creates and initializes the story store selected with the STORY_STORE setting
 	 */
 	private void connectToDb()
 	{
-		db = new DatabasePlugin(settings);
+		String store = settings.containsKey("STORY_STORE") ? settings.get("STORY_STORE").trim() : "mysql";
+		if(store.equalsIgnoreCase("file"))
+		{
+			db = new FileStoryStore(settings.containsKey("STORY_FILE") ? settings.get("STORY_FILE") : "stories.dat");
+		}
+		else if(store.equalsIgnoreCase("memory"))
+		{
+			db = new MemoryStoryStore();
+		}
+		else
+		{
+			db = new DatabasePlugin(settings);
+		}
 		try
 		{
 			db.connect();
@@ -83,22 +181,131 @@ public class iUbiStoriesApplication
 		{
 			showErrorDialog("Could not connect to database: \n" + e.getMessage());
 		}
+
+		// Start the background writer, stories are stored through it
+		writer = new ContributionWriter(db, getIntSetting("WRITE_QUEUE_CAPACITY", 64), getIntSetting("WRITE_BATCH_SIZE", 16));
+		writer.setBackPressureListener(new ContributionWriter.BackPressureListener() {
+			public void backPressureChanged(boolean saturated)
+			{
+				for(int i = 0; i < keyboards.size(); i++)
+				{
+					keyboards.elementAt(i).setBackPressure(saturated);
+				}
+			}
+		});
+
+		// Every event is journaled locally first, so nothing is lost while the database is unreachable.
+		// Replaying the journal would add text twice to a store that does not ignore stored contributions.
+		String journalFile = settings.containsKey("JOURNAL_FILE") ? settings.get("JOURNAL_FILE") : "stories.journal";
+		if(db.isReplaySafe())
+		{
+			StoryJournal journal = new StoryJournal(journalFile);
+			// Events that can not be written are parked next to it, in the same format
+			StoryJournal deadLetters = new StoryJournal(journalFile + ".dead");
+			try
+			{
+				journal.open();
+				writer.setJournal(journal);
+				deadLetters.open();
+				writer.setDeadLetterJournal(deadLetters);
+			}
+			catch(IOException e)
+			{
+				e.printStackTrace();
+				showErrorDialog("Could not open story journal: \n" + e.getMessage());
+			}
+		}
+		else
+		{
+			log("Story journal " + journalFile + " not used, the story store can not ignore replayed contributions. "
+					+ "Use STORY_STORAGE=segments or run sql/stories_last_sequence.sql");
+		}
+
+		// Words are suggested from a dictionary, the stored stories and every saved contribution
+		if(!settings.containsKey("WORD_PREDICTION") || !settings.get("WORD_PREDICTION").trim().equalsIgnoreCase("false"))
+		{
+			wordPredictor = new WordPredictor(getIntSetting("WORD_SUGGESTIONS", 4));
+			wordPredictor.load(db, settings.containsKey("WORD_DICTIONARY") ? settings.get("WORD_DICTIONARY").trim() : "words.txt");
+			writer.setContributionListener(new ContributionWriter.ContributionListener() {
+				public void contributionSaved(StoryEvent contribution)
+				{
+					wordPredictor.learn(contribution.getText());
+				}
+			});
+		}
+		writer.start();
+
+		PersistenceMetrics.getInstance().start(db, getIntSetting("METRICS_LOG_INTERVAL_SECONDS", 300));
+
+		// Stored passwords are only rewritten as hashes if the users table is migrated, see sql/password_hashes.sql
+		loginVerifier = new LoginVerifier(db, new PasswordHasher(getIntSetting("PASSWORD_HASH_ITERATIONS", 20000)),
+				getIntSetting("LOGIN_CACHE_TTL_SECONDS", 600),
+				settings.containsKey("PASSWORD_REHASH") && settings.get("PASSWORD_REHASH").trim().equalsIgnoreCase("true"));
+
+		// Write everything still queued before the application exits
+		Runtime.getRuntime().addShutdownHook(new Thread() {
+			public void run()
+			{
+				loginVerifier.shutdown();
+				writer.shutdown(getIntSetting("WRITE_SHUTDOWN_TIMEOUT_MILLIS", 10000));
+				if(wordPredictor != null)
+				{
+					wordPredictor.shutdown();
+				}
+				PersistenceMetrics.getInstance().stop();
+				db.disconnect();
+			}
+		});
 	}
 
 	/**
-	 * Finishes the current story and stores its last contribution to the database
+	 * Returns the verifier used for checking login passwords
+	 * 
+	 * @return LoginVerifier
+	 */
+	public LoginVerifier getLoginVerifier()
+	{
+		return loginVerifier;
+	}
+
+	/**
+	 * Returns the word predictor for the keyboards
+	 * 
+	 * @return WordPredictor, null if word prediction is switched off
+	 */
+	public WordPredictor getWordPredictor()
+	{
+		return wordPredictor;
+	}
+
+	/**
+	 * Finishes the current story and stores its last contribution to the database.
+	 * The contribution and the finishing of the story are queued together and
+	 * written in order after all earlier contributions of the story.
 	 * 
 	 * @param text 
 	 * @param userName  
 	 * @param trashedChars number of chars removed by clearing the text field
+	 * @return FALSE if the story could not be queued for finishing, the story
+	 * then stays open and the caller keeps the text
 	 */
-	public void finishStory(String text, String userName, int trashedChars)
+	public boolean finishStory(String text, String userName, int trashedChars)
 	{
-		addContributedText(text, userName, trashedChars);
-		mainTextScreen.setContentText("");
+		if(!queueContribution(text, userName, trashedChars, true))
+		{
+			return false;
+		}
+		if(archive != null && story.length() > 0)
+		{
+			archive.archive(currentStoryName, story.getPieces());
+		}
+		story.clear();
+		mainTextScreen.storyReset();
 		
-		currentStoryId = -1;
+		currentStoryKey = null;
+		currentStorySequence = 0;
 		currentStoryName = null;
+		return true;
 	}	
 	
 	/**
@@ -107,33 +314,76 @@ public class iUbiStoriesApplication
 	 * @param text 
 	 * @param userName 
 	 * @param trashedChars number of chars removed by clearing the text field
+	 * @return FALSE if the text could not be queued for writing and should be kept by the caller
+	 */
+	public boolean addContributedText(String text, String userName, int trashedChars)
+	{
+		return queueContribution(text, userName, trashedChars, false);
+	}
+
+	/**
+	 * Adds contributed text to the current story and queues it for writing
+	 * 
+	 * @param text 
+	 * @param userName 
+	 * @param trashedChars number of chars removed by clearing the text field
+	 * @param finish TRUE to queue the finishing of the story with the text
+	 * @return FALSE if nothing could be queued, the story is then left as it was
 	 */
-	public void addContributedText(String text, String userName, int trashedChars)
+	private boolean queueContribution(String text, String userName, int trashedChars, boolean finish)
 	{
 		if(userName == null || userName.length() == 0)
 		{
 			showErrorDialog("Can't save text, no user name found");
-			return;
+			return false;
 		}
-		String contents = mainTextScreen.getContentText();
 		
-		// Add extra space if last character wasn't a space already
-		if(contents != null && contents.length() > 0 && !contents.endsWith(" "))
+		// The story buffer holds the text, and only the newly appended piece is queued for writing
+		int mark = story.getPieceCount();
+		String piece = "";
+		if(text.length() > 0)
 		{
-			contents += " ";
+			// Add extra space if last character wasn't a space already
+			if(story.length() > 0 && story.lastChar() != ' ')
+			{
+				story.append(" ");
+			}
+			piece = story.getPiece(story.append(text));
 		}
 		
-		contents += text;
-		mainTextScreen.setContentText(contents);
-
-		// If this is the first contribution of a new story, create it in the database
-		if(currentStoryId == -1)
+		// Queue the data for writing. If this is the first contribution of a new story,
+		// create the story first. All events are accepted together or not at all.
+		boolean accepted;
+		if(currentStoryKey == null)
 		{
-			currentStoryId = db.createStory(currentStoryName);
+			String key = UUID.randomUUID().toString();
+			StoryEvent contribution = StoryEvent.contribution(key, 0, userName, piece, trashedChars);
+			accepted = finish ? writer.submit(StoryEvent.createStory(key, currentStoryName), contribution, StoryEvent.finishStory(key))
+					: writer.submit(StoryEvent.createStory(key, currentStoryName), contribution);
+			if(accepted)
+			{
+				currentStoryKey = key;
+				currentStorySequence = 1;
+			}
+		}
+		else
+		{
+			StoryEvent contribution = StoryEvent.contribution(currentStoryKey, currentStorySequence, userName, piece, trashedChars);
+			accepted = finish ? writer.submit(contribution, StoryEvent.finishStory(currentStoryKey)) : writer.submit(contribution);
+			if(accepted)
+			{
+				currentStorySequence++;
+			}
+		}
+		if(!accepted)
+		{
+			// The caller keeps the text, take it out of the story again
+			story.truncate(mark);
+			return false;
 		}
 		
-		// Store the data
-		db.saveAddedContribution(userName, text, trashedChars, currentStoryId);
+		mainTextScreen.storyAppended();
+		return true;
 	}
 	
 
@@ -305,6 +555,31 @@ public class iUbiStoriesApplication
 		}
 	}
 
+	/**
+	 * Reads an integer setting, using the default if it is missing or invalid
+	 * 
+	 * @param name
+	 * @param defaultValue
+	 * @return int
+	 */
+	private int getIntSetting(String name, int defaultValue)
+	{
+		String value = settings.get(name);
+		if(value == null)
+		{
+			return defaultValue;
+		}
+		try
+		{
+			return Integer.parseInt(value.trim());
+		}
+		catch(NumberFormatException e)
+		{
+			log("Invalid value for setting " + name + ": " + value);
+			return defaultValue;
+		}
+	}
+
 	/**
 	 * Shows a simple error message dialog.
 	 * Dialog is currently non-rotatable.
@@ -0,0 +1,18 @@
+-- Prepares the users table for password hashes. With PASSWORD_REHASH=true
+-- the application replaces a plain text users.password with a hash of the
+-- form pbkdf2$<iterations>$<salt hex>$<hash hex> (about 110 characters)
+-- whenever the user logs in successfully, and hashes made with fewer
+-- iterations than PASSWORD_HASH_ITERATIONS with new ones.
+--
+-- The application does not create users. Before turning rehashing on, make
+-- sure that whatever registers users and checks their passwords outside
+-- the application can verify these hashes (PBKDF2WithHmacSHA1, 256 bit
+-- key), or users it has migrated can no longer log in there. Passwords
+-- that do not fit in the column are left as they are.
+--
+-- Run once against the stories database, then set PASSWORD_REHASH=true,
+-- e.g.
+--   mysql -u <user> -p <database> < sql/password_hashes.sql
+-- Keep NOT NULL here if the column is declared with it.
+
+ALTER TABLE users MODIFY password VARCHAR(255);
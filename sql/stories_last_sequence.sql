@@ -0,0 +1,12 @@
+-- Adds the last_sequence column to stories that DatabasePlugin needs with
+-- its default concat storage to ignore contributions replayed from the
+-- story journal after a crash. Each append moves the column to the
+-- sequence of the contribution in the same transaction, and a contribution
+-- whose sequence is not above it is not appended again. Without the column
+-- the application runs without the journal.
+--
+-- Run once against the stories database while the application is stopped,
+-- e.g.
+--   mysql -u <user> -p <database> < sql/stories_last_sequence.sql
+
+ALTER TABLE stories ADD COLUMN last_sequence INT NOT NULL DEFAULT -1;
@@ -0,0 +1,22 @@
+-- Creates the story_segments table that DatabasePlugin uses with
+-- STORY_STORAGE=segments, one row per contribution instead of appending to
+-- stories.body_text. The body_text of a story is only written when the
+-- story is finished, so outside readers see unfinished stories as empty.
+--
+-- Stories written with concat storage are migrated into the table, their
+-- existing text becoming segment -1 so it stays in front of contributions
+-- added later. Stories that already have segments are left alone, so the
+-- script can be run again. Run it before switching to segment storage, e.g.
+--   mysql -u <user> -p <database> < sql/story_segments.sql
+
+CREATE TABLE IF NOT EXISTS story_segments (
+	story_FK INT NOT NULL,
+	sequence INT NOT NULL,
+	body_text TEXT NOT NULL,
+	PRIMARY KEY (story_FK, sequence)
+);
+
+INSERT IGNORE INTO story_segments (story_FK, sequence, body_text)
+	SELECT story_ID, -1, body_text FROM stories
+	WHERE body_text <> ''
+	AND story_ID NOT IN (SELECT DISTINCT story_FK FROM story_segments);
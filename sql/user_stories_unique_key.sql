@@ -0,0 +1,27 @@
+-- Adds the unique (user_FK, story_FK) key to user_stories that DatabasePlugin
+-- needs for saving contributions in batched transactions. Without the key
+-- contributions are saved one statement at a time.
+--
+-- Rows for the same user and story are merged first, keeping the oldest row
+-- and adding up the counters, as the key can not be added while they exist.
+-- Run once against the stories database, e.g.
+--   mysql -u <user> -p <database> < sql/user_stories_unique_key.sql
+
+CREATE TEMPORARY TABLE user_stories_merged AS
+	SELECT MIN(userStory_ID) AS userStory_ID, user_FK, story_FK,
+		SUM(chars_trashed) AS chars_trashed, SUM(chars_contributed) AS chars_contributed
+	FROM user_stories
+	GROUP BY user_FK, story_FK
+	HAVING COUNT(*) > 1;
+
+UPDATE user_stories us
+	JOIN user_stories_merged m ON us.userStory_ID = m.userStory_ID
+	SET us.chars_trashed = m.chars_trashed, us.chars_contributed = m.chars_contributed;
+
+DELETE us FROM user_stories us
+	JOIN user_stories_merged m ON us.user_FK = m.user_FK AND us.story_FK = m.story_FK
+	WHERE us.userStory_ID <> m.userStory_ID;
+
+DROP TEMPORARY TABLE user_stories_merged;
+
+ALTER TABLE user_stories ADD UNIQUE KEY user_story_unique (user_FK, story_FK);